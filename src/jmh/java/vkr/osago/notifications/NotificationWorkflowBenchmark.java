@@ -0,0 +1,59 @@
+package vkr.osago.notifications;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NotificationWorkflowBenchmark {
+
+    @Param({"100", "10000"})
+    private int size;
+
+    private List<NotificationWorkflow.Notification> notifications;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(42);
+        OffsetDateTime start = OffsetDateTime.of(2026, 1, 1, 0, 0, 0, 0, ZoneOffset.UTC);
+        notifications = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            notifications.add(new NotificationWorkflow.Notification(
+                    (long) i,
+                    1L + random.nextInt(10),
+                    "NEW_MESSAGE",
+                    "Новое сообщение",
+                    "Сообщение " + i,
+                    null,
+                    random.nextBoolean(),
+                    start.plusSeconds(random.nextInt(86_400 * 30)),
+                    null
+            ));
+        }
+    }
+
+    @Benchmark
+    public List<NotificationWorkflow.Notification> listForUserSorted() {
+        return NotificationWorkflow.listForUserSorted(notifications, 3L, 20);
+    }
+}
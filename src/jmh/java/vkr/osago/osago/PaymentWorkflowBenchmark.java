@@ -0,0 +1,37 @@
+package vkr.osago.osago;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PaymentWorkflowBenchmark {
+
+    private final String cardNumber = "4111 1111 1111 1111";
+    private final String cardDigits = "4111111111111111";
+
+    @Benchmark
+    public void validateCard(Blackhole blackhole) {
+        PaymentWorkflow.validateCard(cardNumber, 12, 2030, "123");
+        blackhole.consume(cardNumber);
+    }
+
+    @Benchmark
+    public boolean luhnValid() {
+        return PaymentWorkflow.luhnValid(cardDigits);
+    }
+}
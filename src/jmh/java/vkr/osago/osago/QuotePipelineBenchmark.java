@@ -0,0 +1,88 @@
+package vkr.osago.osago;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuotePipelineBenchmark {
+
+    private final LocalDate today = LocalDate.of(2026, 3, 1);
+    private final QuoteService quotes = new QuoteService(null, null, null, 200);
+    private final TariffSnapshot snapshot = new TariffSnapshot(
+            List.of(new TariffSnapshot.TariffVersion(
+                    1L,
+                    LocalDate.of(2026, 1, 1),
+                    null,
+                    Map.of(1L, new BigDecimal("5000.00"), 2L, new BigDecimal("6200.00")),
+                    Map.of(10L, new BigDecimal("1.8000"), 20L, new BigDecimal("1.2000")),
+                    List.of(
+                            new TariffSnapshot.PowerBand(1, 50, new BigDecimal("0.6000")),
+                            new TariffSnapshot.PowerBand(51, 70, new BigDecimal("1.0000")),
+                            new TariffSnapshot.PowerBand(71, 100, new BigDecimal("1.1000")),
+                            new TariffSnapshot.PowerBand(101, 120, new BigDecimal("1.2000")),
+                            new TariffSnapshot.PowerBand(121, 150, new BigDecimal("1.4000")),
+                            new TariffSnapshot.PowerBand(151, null, new BigDecimal("1.6000"))
+                    ),
+                    Map.of(3, new BigDecimal("0.5000"), 6, new BigDecimal("0.7000"), 12, new BigDecimal("1.0000")),
+                    new BigDecimal("1.0000"),
+                    new BigDecimal("2.3200"),
+                    List.of(
+                            new TariffSnapshot.KvsCell(0, 21, 0, 1, new BigDecimal("2.2700")),
+                            new TariffSnapshot.KvsCell(0, 21, 2, null, new BigDecimal("1.9200")),
+                            new TariffSnapshot.KvsCell(22, 29, 0, 1, new BigDecimal("1.8800")),
+                            new TariffSnapshot.KvsCell(22, 29, 2, null, new BigDecimal("1.7200")),
+                            new TariffSnapshot.KvsCell(30, null, 0, 1, new BigDecimal("1.6300")),
+                            new TariffSnapshot.KvsCell(30, null, 2, null, new BigDecimal("1.0000"))
+                    ),
+                    Map.of("M", new BigDecimal("3.9200"), "3", new BigDecimal("1.1700"), "4", new BigDecimal("1.0000"))
+            )),
+            Set.of(1L, 2L),
+            Set.of(10L, 20L),
+            Set.of(3, 6, 12),
+            true,
+            true,
+            OffsetDateTime.now()
+    );
+    private final OsagoController.CalcRequest limitedDrivers = new OsagoController.CalcRequest(
+            1L, 10L, 125, false, 12, LocalDate.of(1990, 5, 20), LocalDate.of(2012, 7, 1), "4"
+    );
+    private final OsagoController.CalcRequest unlimitedDrivers = new OsagoController.CalcRequest(
+            2L, 20L, 90, true, 6, null, null, "3"
+    );
+
+    @Benchmark
+    public QuoteService.Quote priceLimitedDrivers() {
+        return quotes.price(limitedDrivers, snapshot, today, new HashMap<>());
+    }
+
+    @Benchmark
+    public QuoteService.Quote priceUnlimitedDrivers() {
+        return quotes.price(unlimitedDrivers, snapshot, today, new HashMap<>());
+    }
+
+    @Benchmark
+    public TariffSnapshot.TariffVersion findTariff() {
+        return snapshot.findTariff(today, 1L, 10L, 125, 12, "4");
+    }
+}
@@ -0,0 +1,54 @@
+package vkr.osago.osago;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TariffCalculatorBenchmark {
+
+    private final TariffCalculator.TariffConfig config = new TariffCalculator.TariffConfig(
+            new BigDecimal("5000.00"),
+            Map.of(
+                    1L, new BigDecimal("1.00"),
+                    2L, new BigDecimal("1.25"),
+                    3L, new BigDecimal("0.90")
+            ),
+            Map.of(
+                    10L, new BigDecimal("1.00"),
+                    20L, new BigDecimal("1.40"),
+                    30L, new BigDecimal("0.95")
+            ),
+            new BigDecimal("1.00"),
+            new BigDecimal("1.80")
+    );
+
+    private final TariffCalculator.CalcInput input = new TariffCalculator.CalcInput(2L, 20L, 120, true, 6);
+
+    @Benchmark
+    public TariffCalculator.CalcResult calculate() {
+        return TariffCalculator.calculate(input, config);
+    }
+
+    @Benchmark
+    public void validate(Blackhole blackhole) {
+        TariffCalculator.validate(input, config);
+        blackhole.consume(input);
+    }
+}
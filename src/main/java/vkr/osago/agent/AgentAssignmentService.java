@@ -1,17 +1,56 @@
 package vkr.osago.agent;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.OffsetDateTime;
+import java.util.List;
+
 @Service
 public class AgentAssignmentService {
 
+    private static final String ASSIGN_NEXT_AGENT = """
+            with %s, assigned as (
+                update insurance.users u
+                set assigned_agent_id = n.id
+                from next_agent n
+                where u.id = ?
+                  and u.assigned_agent_id is null
+                  and n.id is not null
+                returning u.assigned_agent_id
+            ), counted as (
+                insert into insurance.agent_assignment_counters (agent_id, assigned_count, last_assigned_at)
+                select assigned_agent_id, 1, now()
+                from assigned
+                on conflict (agent_id) do update set
+                    assigned_count = insurance.agent_assignment_counters.assigned_count + 1,
+                    last_assigned_at = excluded.last_assigned_at
+            )
+            select assigned_agent_id from assigned
+            """;
+
     private final JdbcTemplate jdbcTemplate;
+    private final AgentAssignmentStrategy strategy;
+    private final String assignNextAgentSql;
 
-    public AgentAssignmentService(JdbcTemplate jdbcTemplate) {
+    public AgentAssignmentService(
+            JdbcTemplate jdbcTemplate,
+            List<AgentAssignmentStrategy> strategies,
+            @Value("${app.agents.assignment-strategy:least-loaded}") String strategyName
+    ) {
         this.jdbcTemplate = jdbcTemplate;
+        this.strategy = strategies.stream()
+                .filter(candidate -> candidate.name().equalsIgnoreCase(strategyName.trim()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown app.agents.assignment-strategy: " + strategyName));
+        this.assignNextAgentSql = ASSIGN_NEXT_AGENT.formatted(strategy.nextAgentSql());
+    }
+
+    public String strategyName() {
+        return strategy.name();
     }
 
     @Transactional
@@ -21,23 +60,40 @@ public class AgentAssignmentService {
             return existing;
         }
 
-        Long nextAgentId = findNextAgentId();
-        if (nextAgentId == null) {
-            return null;
+        Long assigned = assignNextAgent(userId);
+        if (assigned != null) {
+            return assigned;
         }
 
-        jdbcTemplate.update(
+        // Either no agent is available or a concurrent request assigned one first.
+        return getUserAssignedAgentId(userId);
+    }
+
+    public List<AgentAssignmentCount> assignmentCounts() {
+        return jdbcTemplate.query(
                 """
-                update insurance.users
-                set assigned_agent_id = ?
-                where id = ?
-                  and assigned_agent_id is null
+                select u.id, u.first_name, u.last_name, u.status = 'AGENT' as active,
+                       coalesce(c.assigned_count, 0) as assigned_count, c.last_assigned_at,
+                       coalesce(w.open_applications, 0) as open_applications,
+                       coalesce(w.open_claims, 0) as open_claims
+                from insurance.users u
+                left join insurance.agent_assignment_counters c on c.agent_id = u.id
+                left join insurance.agent_workload w on w.agent_id = u.id
+                where u.status = 'AGENT'
+                   or c.agent_id is not null
+                order by u.id
                 """,
-                nextAgentId,
-                userId
+                (rs, rowNum) -> new AgentAssignmentCount(
+                        rs.getLong("id"),
+                        rs.getString("first_name"),
+                        rs.getString("last_name"),
+                        rs.getBoolean("active"),
+                        rs.getLong("assigned_count"),
+                        rs.getObject("last_assigned_at", OffsetDateTime.class),
+                        rs.getInt("open_applications"),
+                        rs.getInt("open_claims")
+                )
         );
-
-        return getUserAssignedAgentId(userId);
     }
 
     private Long getUserAssignedAgentId(Long userId) {
@@ -52,56 +108,27 @@ public class AgentAssignmentService {
         }
     }
 
-    private Long findNextAgentId() {
+    private Long assignNextAgent(Long userId) {
         try {
-            Long lastAssignedAgentId = jdbcTemplate.query(
-                    """
-                    select x.assigned_agent_id
-                    from (
-                        select assigned_agent_id, created_at
-                        from insurance.policy_applications
-                        where assigned_agent_id is not null
-                        union all
-                        select assigned_agent_id, created_at
-                        from insurance.claims
-                        where assigned_agent_id is not null
-                    ) x
-                    order by x.created_at desc
-                    limit 1
-                    """,
-                    rs -> rs.next() ? (Long) rs.getObject(1) : null
-            );
-
-            if (lastAssignedAgentId != null) {
-                Long nextAfterLast = jdbcTemplate.query(
-                        """
-                        select id
-                        from insurance.users
-                        where status = 'AGENT'
-                          and id > ?
-                        order by id
-                        limit 1
-                        """,
-                        rs -> rs.next() ? rs.getLong(1) : null,
-                        lastAssignedAgentId
-                );
-                if (nextAfterLast != null) {
-                    return nextAfterLast;
-                }
-            }
-
             return jdbcTemplate.query(
-                    """
-                    select id
-                    from insurance.users
-                    where status = 'AGENT'
-                    order by id
-                    limit 1
-                    """,
-                    rs -> rs.next() ? rs.getLong(1) : null
+                    assignNextAgentSql,
+                    rs -> rs.next() ? (Long) rs.getObject(1) : null,
+                    userId
             );
         } catch (DataAccessException ex) {
             return null;
         }
     }
+
+    public record AgentAssignmentCount(
+            Long agentId,
+            String firstName,
+            String lastName,
+            boolean active,
+            long assignedCount,
+            OffsetDateTime lastAssignedAt,
+            int openApplications,
+            int openClaims
+    ) {
+    }
 }
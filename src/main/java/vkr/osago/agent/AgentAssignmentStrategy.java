@@ -0,0 +1,11 @@
+package vkr.osago.agent;
+
+public interface AgentAssignmentStrategy {
+
+    String name();
+
+    /**
+     * Common table expressions ending with {@code next_agent(id)}: the agent a new client should get.
+     */
+    String nextAgentSql();
+}
@@ -20,6 +20,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 import vkr.osago.claims.repo.ClaimAttachmentRepository;
+import vkr.osago.common.SchemaCapabilities;
 import vkr.osago.claims.entity.ClaimStatus;
 import vkr.osago.user.UserEntity;
 import vkr.osago.user.UserRepository;
@@ -44,17 +45,20 @@ public class AgentClaimsController {
     private final JdbcTemplate jdbcTemplate;
     private final UserRepository users;
     private final ClaimAttachmentRepository attachments;
+    private final SchemaCapabilities schema;
     private final Path attachmentsRoot;
 
     public AgentClaimsController(
             JdbcTemplate jdbcTemplate,
             UserRepository users,
             ClaimAttachmentRepository attachments,
+            SchemaCapabilities schema,
             @Value("${app.claims.attachments-root:uploads/claims}") String attachmentsRoot
     ) {
         this.jdbcTemplate = jdbcTemplate;
         this.users = users;
         this.attachments = attachments;
+        this.schema = schema;
         this.attachmentsRoot = Paths.get(attachmentsRoot).toAbsolutePath().normalize();
     }
 
@@ -487,7 +491,7 @@ public class AgentClaimsController {
     }
 
     private List<ClaimHistoryDto> loadHistoryOrFallback(Long claimId, OffsetDateTime createdAt, OffsetDateTime updatedAt, String status) {
-        if (hasTable("insurance.claim_status_history")) {
+        if (schema.hasTable("claim_status_history")) {
             try {
                 var rows = jdbcTemplate.query(
                         """
@@ -519,19 +523,6 @@ public class AgentClaimsController {
         return fallback;
     }
 
-    private boolean hasTable(String qualifiedName) {
-        try {
-            Boolean exists = jdbcTemplate.queryForObject(
-                    "select to_regclass(?) is not null",
-                    Boolean.class,
-                    qualifiedName
-            );
-            return Boolean.TRUE.equals(exists);
-        } catch (Exception ex) {
-            return false;
-        }
-    }
-
     private Resource resolveAttachmentResource(String storageKey) {
         try {
             if (storageKey == null || storageKey.isBlank()) {
@@ -584,7 +575,7 @@ public class AgentClaimsController {
     }
 
     private void writeHistory(Long claimId, String oldStatus, String newStatus, String comment, Long changedByUserId) {
-        if (!hasTable("insurance.claim_status_history")) {
+        if (!schema.hasTable("claim_status_history")) {
             return;
         }
         try {
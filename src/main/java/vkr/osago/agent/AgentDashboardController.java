@@ -12,6 +12,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
 import vkr.osago.user.UserRepository;
+import vkr.osago.user.UserStatus;
 
 import java.time.OffsetDateTime;
 import java.util.List;
@@ -22,10 +23,16 @@ public class AgentDashboardController {
 
     private final JdbcTemplate jdbcTemplate;
     private final UserRepository users;
+    private final AgentAssignmentService agentAssignmentService;
 
-    public AgentDashboardController(JdbcTemplate jdbcTemplate, UserRepository users) {
+    public AgentDashboardController(
+            JdbcTemplate jdbcTemplate,
+            UserRepository users,
+            AgentAssignmentService agentAssignmentService
+    ) {
         this.jdbcTemplate = jdbcTemplate;
         this.users = users;
+        this.agentAssignmentService = agentAssignmentService;
     }
 
     @GetMapping("/summary")
@@ -110,6 +117,15 @@ public class AgentDashboardController {
         );
     }
 
+    @GetMapping("/assignments/stats")
+    public List<AgentAssignmentService.AgentAssignmentCount> assignmentStats(@AuthenticationPrincipal UserDetails principal) {
+        var user = users.findByEmail(principal.getUsername()).orElseThrow();
+        if (user.getStatus() != UserStatus.AGENT && user.getStatus() != UserStatus.ADMIN) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
+        }
+        return agentAssignmentService.assignmentCounts();
+    }
+
     @GetMapping("/notifications")
     public List<AgentNotificationDto> notifications(
             @AuthenticationPrincipal UserDetails principal,
@@ -0,0 +1,100 @@
+package vkr.osago.agent;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@Service
+public class AgentWorkloadReconciliationJob {
+
+    private static final String RECONCILE = """
+            with actual as (
+                select x.agent_id,
+                       sum(x.open_applications)::integer as open_applications,
+                       sum(x.open_claims)::integer as open_claims
+                from (
+                    select assigned_agent_id as agent_id, count(*) as open_applications, 0 as open_claims
+                    from insurance.policy_applications
+                    where assigned_agent_id is not null
+                      and insurance.agent_workload_is_open(status)
+                    group by assigned_agent_id
+                    union all
+                    select assigned_agent_id, 0, count(*)
+                    from insurance.claims
+                    where assigned_agent_id is not null
+                      and insurance.agent_workload_is_open(status::text)
+                    group by assigned_agent_id
+                ) x
+                group by x.agent_id
+            ), upserted as (
+                insert into insurance.agent_workload (agent_id, open_applications, open_claims, updated_at)
+                select agent_id, open_applications, open_claims, now()
+                from actual
+                on conflict (agent_id) do update set
+                    open_applications = excluded.open_applications,
+                    open_claims = excluded.open_claims,
+                    updated_at = now()
+                where insurance.agent_workload.open_applications <> excluded.open_applications
+                   or insurance.agent_workload.open_claims <> excluded.open_claims
+                returning agent_id
+            ), cleared as (
+                update insurance.agent_workload w
+                set open_applications = 0,
+                    open_claims = 0,
+                    updated_at = now()
+                where (w.open_applications <> 0 or w.open_claims <> 0)
+                  and not exists (select 1 from actual a where a.agent_id = w.agent_id)
+                returning w.agent_id
+            )
+            select (select count(*) from upserted) + (select count(*) from cleared)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final boolean enabled;
+
+    public AgentWorkloadReconciliationJob(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.agents.workload.reconcile.enabled:true}") boolean enabled
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+    }
+
+    @Scheduled(
+            initialDelayString = "${app.agents.workload.reconcile.interval-ms:900000}",
+            fixedDelayString = "${app.agents.workload.reconcile.interval-ms:900000}"
+    )
+    public void scheduledReconcile() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            reconcile();
+        } catch (DataAccessException ignored) {
+            // Triggers keep the counters current; the next run repairs any drift.
+        }
+    }
+
+    public long reconcile() {
+        Long corrected = transaction.execute(status -> {
+            Boolean locked = jdbcTemplate.queryForObject(
+                    "select pg_try_advisory_xact_lock(hashtext('agent_workload_reconciliation'))",
+                    Boolean.class
+            );
+            if (!Boolean.TRUE.equals(locked)) {
+                return 0L;
+            }
+            // Waits for in-flight transitions to commit and holds new ones back while the counts are rebuilt.
+            jdbcTemplate.execute("lock table insurance.agent_workload in share row exclusive mode");
+            return jdbcTemplate.queryForObject(RECONCILE, Long.class);
+        });
+        return corrected == null ? 0L : corrected;
+    }
+}
@@ -0,0 +1,31 @@
+package vkr.osago.agent;
+
+import org.springframework.stereotype.Component;
+
+@Component
+public class LeastLoadedAgentAssignment implements AgentAssignmentStrategy {
+
+    public static final String NAME = "least-loaded";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public String nextAgentSql() {
+        // New clients have no open items yet, so ties go to the agent who waited longest for a client.
+        return """
+                next_agent as (
+                    select u.id
+                    from insurance.users u
+                    left join insurance.agent_workload w on w.agent_id = u.id
+                    left join insurance.agent_assignment_counters c on c.agent_id = u.id
+                    where u.status = 'AGENT'
+                    order by coalesce(w.open_applications, 0) + coalesce(w.open_claims, 0),
+                             c.last_assigned_at nulls first,
+                             u.id
+                    limit 1
+                )""";
+    }
+}
@@ -0,0 +1,51 @@
+package vkr.osago.agent;
+
+import org.springframework.stereotype.Component;
+
+@Component
+public class RoundRobinAgentAssignment implements AgentAssignmentStrategy {
+
+    public static final String NAME = "round-robin";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public String nextAgentSql() {
+        return """
+                cursor_row as (
+                    select last_agent_id
+                    from insurance.agent_assignment_cursor
+                    where id = 1
+                    for update
+                ), next_agent as (
+                    select coalesce(
+                        (
+                            select u.id
+                            from insurance.users u, cursor_row c
+                            where u.status = 'AGENT'
+                              and u.id > coalesce(c.last_agent_id, 0)
+                            order by u.id
+                            limit 1
+                        ),
+                        (
+                            select u.id
+                            from insurance.users u
+                            where u.status = 'AGENT'
+                            order by u.id
+                            limit 1
+                        )
+                    ) as id
+                ), advanced as (
+                    update insurance.agent_assignment_cursor c
+                    set last_agent_id = n.id,
+                        updated_at = now()
+                    from next_agent n
+                    where c.id = 1
+                      and n.id is not null
+                    returning c.last_agent_id
+                )""";
+    }
+}
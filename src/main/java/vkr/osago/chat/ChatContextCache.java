@@ -0,0 +1,184 @@
+package vkr.osago.chat;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import vkr.osago.common.CacheInvalidationBus;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+@Service
+public class ChatContextCache {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Long, Set<Key>> keysByClientId = new HashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong invalidations = new AtomicLong();
+    private long generation;
+
+    @Autowired
+    public ChatContextCache(
+            CacheInvalidationBus bus,
+            @Value("${app.chat.context-cache.max-entries:5000}") int maxEntries,
+            @Value("${app.chat.context-cache.ttl-seconds:300}") long ttlSeconds
+    ) {
+        this(maxEntries, ttlSeconds, System::nanoTime);
+        bus.subscribe(CacheInvalidationBus.Topic.CLIENT_CONTEXT, this::onInvalidation);
+    }
+
+    ChatContextCache(int maxEntries, long ttlSeconds, LongSupplier clock) {
+        if (maxEntries < 0) throw new IllegalArgumentException("max-entries must be >= 0");
+        if (ttlSeconds < 0) throw new IllegalArgumentException("ttl-seconds must be >= 0");
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.clock = clock;
+    }
+
+    public boolean enabled() {
+        return maxEntries > 0 && ttlNanos > 0;
+    }
+
+    public ChatContext get(Long clientId, Long chatId, Supplier<ChatContext> loader) {
+        if (!enabled()) {
+            return loader.get();
+        }
+        Key key = new Key(clientId, chatId);
+        long loadedAt;
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt - clock.getAsLong() > 0) {
+                hits.incrementAndGet();
+                return entry.context;
+            }
+            if (entry != null) {
+                remove(key);
+                evictions.incrementAndGet();
+            }
+            misses.incrementAndGet();
+            loadedAt = generation;
+        }
+
+        ChatContext context = loader.get();
+        synchronized (entries) {
+            // An invalidation that arrived while loading may describe a change the loader did not see.
+            if (generation == loadedAt) {
+                put(key, context);
+            }
+        }
+        return context;
+    }
+
+    public void invalidateClient(Long clientId) {
+        if (clientId == null) {
+            return;
+        }
+        synchronized (entries) {
+            generation++;
+            invalidations.incrementAndGet();
+            Set<Key> keys = keysByClientId.remove(clientId);
+            if (keys != null) {
+                keys.forEach(entries::remove);
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            generation++;
+            invalidations.incrementAndGet();
+            entries.clear();
+            keysByClientId.clear();
+        }
+    }
+
+    void onInvalidation(CacheInvalidationBus.Invalidation invalidation) {
+        if (invalidation.key() == null) {
+            clear();
+            return;
+        }
+        try {
+            invalidateClient(Long.parseLong(invalidation.key()));
+        } catch (NumberFormatException ex) {
+            clear();
+        }
+    }
+
+    public Stats stats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        long hitCount = hits.get();
+        long lookups = hitCount + misses.get();
+        double hitRatio = lookups == 0 ? 0 : (double) hitCount / lookups;
+        return new Stats(hitCount, misses.get(), hitRatio, evictions.get(), invalidations.get(), size, maxEntries);
+    }
+
+    private void put(Key key, ChatContext context) {
+        entries.put(key, new Entry(context, clock.getAsLong() + ttlNanos));
+        keysByClientId.computeIfAbsent(key.clientId(), id -> new HashSet<>()).add(key);
+        Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+        while (entries.size() > maxEntries && eldest.hasNext()) {
+            Key victim = eldest.next().getKey();
+            eldest.remove();
+            unindex(victim);
+            evictions.incrementAndGet();
+        }
+    }
+
+    private void remove(Key key) {
+        entries.remove(key);
+        unindex(key);
+    }
+
+    private void unindex(Key key) {
+        Set<Key> keys = keysByClientId.get(key.clientId());
+        if (keys != null) {
+            keys.remove(key);
+            if (keys.isEmpty()) {
+                keysByClientId.remove(key.clientId());
+            }
+        }
+    }
+
+    public record ChatContext(
+            ChatController.ChatAgentDto agent,
+            ChatController.ChatTopicDto topic,
+            ChatController.ChatPolicyDto policy,
+            List<ChatController.ChatPolicyItemDto> clientPolicies,
+            List<ChatController.ChatClaimItemDto> activeClaims
+    ) {
+    }
+
+    private record Key(Long clientId, Long chatId) {
+    }
+
+    private record Entry(ChatContext context, long expiresAt) {
+    }
+
+    public record Stats(
+            long hits,
+            long misses,
+            double hitRatio,
+            long evictions,
+            long invalidations,
+            int size,
+            int maxEntries
+    ) {
+    }
+}
@@ -1,6 +1,7 @@
 package vkr.osago.chat;
 
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -9,9 +10,12 @@ import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 import vkr.osago.agent.AgentAssignmentService;
+import vkr.osago.common.SchemaCapabilities;
 import vkr.osago.user.UserEntity;
 import vkr.osago.user.UserRepository;
 import vkr.osago.user.UserStatus;
@@ -26,43 +30,89 @@ public class ChatController {
     private final JdbcTemplate jdbcTemplate;
     private final UserRepository users;
     private final AgentAssignmentService agentAssignmentService;
+    private final SchemaCapabilities schema;
+    private final ChatEventHub events;
+    private final ChatMessageHistory history;
+    private final ChatContextCache contextCache;
 
     public ChatController(
             JdbcTemplate jdbcTemplate,
             UserRepository users,
-            AgentAssignmentService agentAssignmentService
+            AgentAssignmentService agentAssignmentService,
+            SchemaCapabilities schema,
+            ChatEventHub events,
+            ChatMessageHistory history,
+            ChatContextCache contextCache
     ) {
         this.jdbcTemplate = jdbcTemplate;
         this.users = users;
         this.agentAssignmentService = agentAssignmentService;
+        this.schema = schema;
+        this.events = events;
+        this.history = history;
+        this.contextCache = contextCache;
     }
 
     @GetMapping("/client/chat")
-    public ClientChatDto clientChat(@AuthenticationPrincipal UserDetails principal) {
+    public ClientChatDto clientChat(
+            @AuthenticationPrincipal UserDetails principal,
+            @RequestParam(required = false) Long beforeId,
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(required = false) Long sinceId,
+            @RequestParam(required = false) Integer limit
+    ) {
         ensureChatSchema();
         UserEntity client = requireUser(principal, UserStatus.CLIENT);
         Long chatId = ensureClientChat(client.getId());
         Long agentId = getChatAgentId(chatId);
-        markIncomingMessagesAsRead(chatId, client.getId());
+        markRead(chatId, client.getId(), client.getId(), agentId);
 
-        ChatPolicyDto policy = loadLatestPolicyContext(client.getId());
-        ChatTopicDto topic = loadChatTopic(chatId);
-        List<ChatPolicyItemDto> clientPolicies = loadClientPolicies(client.getId());
-        List<ChatClaimItemDto> activeClaims = loadActiveClaims(client.getId());
+        ChatContextCache.ChatContext context = loadContext(chatId, client.getId());
         long unreadFromAgent = countUnread(chatId, client.getId());
+        ChatMessageHistory.ChatMessagePage page = history.page(chatId, agentId, beforeId, cursor(afterId, sinceId), limit);
 
         return new ClientChatDto(
                 chatId,
-                loadChatAgent(chatId, client.getId()),
-                policy,
-                topic,
-                clientPolicies,
-                activeClaims,
+                context.agent(),
+                context.policy(),
+                context.topic(),
+                context.clientPolicies(),
+                context.activeClaims(),
                 unreadFromAgent,
-                loadMessages(chatId, client.getId(), agentId)
+                page.messages(),
+                page.hasMore()
         );
     }
 
+    @GetMapping("/client/chat/messages")
+    public ChatMessageHistory.ChatMessagePage clientChatMessages(
+            @AuthenticationPrincipal UserDetails principal,
+            @RequestParam(required = false) Long beforeId,
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(required = false) Long sinceId,
+            @RequestParam(required = false) Integer limit
+    ) {
+        ensureChatSchema();
+        UserEntity client = requireUser(principal, UserStatus.CLIENT);
+        Long chatId = ensureClientChat(client.getId());
+        return history.page(chatId, getChatAgentId(chatId), beforeId, cursor(afterId, sinceId), limit);
+    }
+
+    @GetMapping(path = "/client/chat/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter clientChatStream(@AuthenticationPrincipal UserDetails principal) {
+        UserEntity client = requireUser(principal, UserStatus.CLIENT);
+        return events.subscribe(client.getId());
+    }
+
+    @PostMapping("/client/chat/read")
+    public ChatReadDto clientMarkRead(@AuthenticationPrincipal UserDetails principal) {
+        ensureChatSchema();
+        UserEntity client = requireUser(principal, UserStatus.CLIENT);
+        Long chatId = ensureClientChat(client.getId());
+        Long agentId = getChatAgentId(chatId);
+        return new ChatReadDto(chatId, markRead(chatId, client.getId(), client.getId(), agentId));
+    }
+
     @PostMapping("/client/chat/topic")
     public ChatTopicDto clientSetTopic(
             @AuthenticationPrincipal UserDetails principal,
@@ -144,6 +194,8 @@ public class ChatController {
                 chatId,
                 client.getId()
         );
+        // Other nodes drop theirs on the chats trigger notification; this one must not serve the old topic.
+        contextCache.invalidateClient(client.getId());
 
         Long agentId = getChatAgentId(chatId);
         createNotification(
@@ -153,6 +205,7 @@ public class ChatController {
                 "Клиент выбрал тему: " + topicLabel,
                 "CHAT:" + chatId
         );
+        events.publish(ChatEventHub.ChatEvent.topic(chatId, client.getId(), agentId));
 
         return new ChatTopicDto(topicType, topicRefId, topicLabel);
     }
@@ -200,7 +253,9 @@ public class ChatController {
                 "CHAT:" + chatId
         );
 
-        return new ChatMessageDto(messageId, chatId, client.getId(), message, false, OffsetDateTime.now());
+        ChatMessageDto sent = new ChatMessageDto(messageId, chatId, client.getId(), message, false, OffsetDateTime.now());
+        events.publish(ChatEventHub.ChatEvent.message(chatId, client.getId(), agentId, sent));
+        return sent;
     }
 
     @GetMapping("/agent/chats")
@@ -209,44 +264,22 @@ public class ChatController {
         UserEntity agent = requireUser(principal, UserStatus.AGENT);
         return jdbcTemplate.query(
                 """
-                select c.id as chat_id,
-                       c.client_id,
+                select s.chat_id,
+                       s.client_id,
                        u.first_name,
                        u.last_name,
                        u.middle_name,
                        u.email,
-                       lc.contact_phone as client_phone,
+                       s.client_phone,
                        c.topic_label,
-                       lm.message_text as last_message,
-                       lm.created_at as last_message_at,
-                       (
-                           select count(*)
-                           from insurance.chat_messages m
-                           left join insurance.chat_message_reads r
-                             on r.message_id = m.id and r.reader_id = ?
-                           where m.chat_id = c.id
-                             and m.sender_id <> ?
-                             and r.message_id is null
-                       ) as unread_count
-                from insurance.chats c
-                join insurance.users u on u.id = c.client_id
-                left join lateral (
-                    select m.message_text, m.created_at
-                    from insurance.chat_messages m
-                    where m.chat_id = c.id
-                    order by m.created_at desc, m.id desc
-                    limit 1
-                ) lm on true
-                left join lateral (
-                    select cl.contact_phone
-                    from insurance.claims cl
-                    where cl.user_id = c.client_id
-                      and cl.contact_phone is not null
-                    order by cl.created_at desc, cl.id desc
-                    limit 1
-                ) lc on true
-                where c.agent_id = ?
-                order by unread_count desc, lm.created_at desc nulls last, c.id desc
+                       s.last_message_text as last_message,
+                       s.last_message_at,
+                       s.agent_unread as unread_count
+                from insurance.chat_summaries s
+                join insurance.chats c on c.id = s.chat_id
+                join insurance.users u on u.id = s.client_id
+                where s.agent_id = ?
+                order by s.agent_unread desc, s.last_message_at desc nulls last, s.chat_id desc
                 """,
                 (rs, rowNum) -> new AgentChatListItemDto(
                         rs.getLong("chat_id"),
@@ -259,16 +292,37 @@ public class ChatController {
                         rs.getObject("last_message_at", OffsetDateTime.class),
                         rs.getLong("unread_count")
                 ),
-                agent.getId(),
-                agent.getId(),
                 agent.getId()
         );
     }
 
+    @GetMapping("/agent/chats/context-cache-stats")
+    public ChatContextCache.Stats contextCacheStats(@AuthenticationPrincipal UserDetails principal) {
+        if (principal == null) {
+            throw new ResponseStatusException(HttpStatus.UNAUTHORIZED);
+        }
+        UserEntity user = users.findByEmail(principal.getUsername())
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.UNAUTHORIZED));
+        if (user.getStatus() != UserStatus.AGENT && user.getStatus() != UserStatus.ADMIN) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
+        }
+        return contextCache.stats();
+    }
+
+    @GetMapping(path = "/agent/chats/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter agentChatStream(@AuthenticationPrincipal UserDetails principal) {
+        UserEntity agent = requireUser(principal, UserStatus.AGENT);
+        return events.subscribe(agent.getId());
+    }
+
     @GetMapping("/agent/chats/{chatId}")
     public AgentChatDetailsDto agentChatDetails(
             @AuthenticationPrincipal UserDetails principal,
-            @PathVariable Long chatId
+            @PathVariable Long chatId,
+            @RequestParam(required = false) Long beforeId,
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(required = false) Long sinceId,
+            @RequestParam(required = false) Integer limit
     ) {
         ensureChatSchema();
         UserEntity agent = requireUser(principal, UserStatus.AGENT);
@@ -310,19 +364,50 @@ public class ChatController {
         }
 
         AgentChatHeaderDto header = rows.get(0);
-        markIncomingMessagesAsRead(chatId, agent.getId());
+        markRead(chatId, agent.getId(), header.clientId(), agent.getId());
+        ChatMessageHistory.ChatMessagePage page =
+                history.page(chatId, header.clientId(), beforeId, cursor(afterId, sinceId), limit);
+
+        ChatContextCache.ChatContext context = loadContext(chatId, header.clientId());
 
         return new AgentChatDetailsDto(
                 header,
-                loadLatestPolicyContext(header.clientId()),
-                loadChatTopic(chatId),
-                loadClientPolicies(header.clientId()),
-                loadActiveClaims(header.clientId()),
+                context.policy(),
+                context.topic(),
+                context.clientPolicies(),
+                context.activeClaims(),
                 countUnread(chatId, agent.getId()),
-                loadMessages(chatId, agent.getId(), header.clientId())
+                page.messages(),
+                page.hasMore()
         );
     }
 
+    @GetMapping("/agent/chats/{chatId}/messages")
+    public ChatMessageHistory.ChatMessagePage agentChatMessages(
+            @AuthenticationPrincipal UserDetails principal,
+            @PathVariable Long chatId,
+            @RequestParam(required = false) Long beforeId,
+            @RequestParam(required = false) Long afterId,
+            @RequestParam(required = false) Long sinceId,
+            @RequestParam(required = false) Integer limit
+    ) {
+        ensureChatSchema();
+        UserEntity agent = requireUser(principal, UserStatus.AGENT);
+        Long clientId = getAgentChatClientId(chatId, agent.getId());
+        return history.page(chatId, clientId, beforeId, cursor(afterId, sinceId), limit);
+    }
+
+    @PostMapping("/agent/chats/{chatId}/read")
+    public ChatReadDto agentMarkRead(
+            @AuthenticationPrincipal UserDetails principal,
+            @PathVariable Long chatId
+    ) {
+        ensureChatSchema();
+        UserEntity agent = requireUser(principal, UserStatus.AGENT);
+        Long clientId = getAgentChatClientId(chatId, agent.getId());
+        return new ChatReadDto(chatId, markRead(chatId, agent.getId(), clientId, agent.getId()));
+    }
+
     @PostMapping("/agent/chats/{chatId}/messages")
     public ChatMessageDto agentSendMessage(
             @AuthenticationPrincipal UserDetails principal,
@@ -336,20 +421,7 @@ public class ChatController {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "message is required");
         }
 
-        Long clientId = jdbcTemplate.query(
-                """
-                select client_id
-                from insurance.chats
-                where id = ? and agent_id = ?
-                limit 1
-                """,
-                rs -> rs.next() ? rs.getLong("client_id") : null,
-                chatId,
-                agent.getId()
-        );
-        if (clientId == null) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Chat not found");
-        }
+        Long clientId = getAgentChatClientId(chatId, agent.getId());
 
         Long messageId = jdbcTemplate.queryForObject(
                 """
@@ -374,23 +446,33 @@ public class ChatController {
                 "CHAT:" + chatId
         );
 
-        return new ChatMessageDto(messageId, chatId, agent.getId(), message, false, OffsetDateTime.now());
+        ChatMessageDto sent = new ChatMessageDto(messageId, chatId, agent.getId(), message, false, OffsetDateTime.now());
+        events.publish(ChatEventHub.ChatEvent.message(chatId, clientId, agent.getId(), sent));
+        return sent;
     }
 
     private void ensureChatSchema() {
+        if (schema.hasTable("chat_read_watermarks")
+                && schema.hasColumn("chats", "topic_type")
+                && schema.hasColumn("chats", "topic_ref_id")
+                && schema.hasColumn("chats", "topic_label")) {
+            return;
+        }
         ensureChatReadTable();
         ensureChatTopicColumns();
+        schema.refresh();
     }
 
     private void ensureChatReadTable() {
         jdbcTemplate.execute(
                 """
-                create table if not exists insurance.chat_message_reads (
-                    message_id bigint not null,
+                create table if not exists insurance.chat_read_watermarks (
+                    chat_id bigint not null,
                     reader_id bigint not null,
-                    read_at timestamp with time zone not null default now(),
-                    primary key (message_id, reader_id),
-                    foreign key (message_id) references insurance.chat_messages(id) on delete cascade,
+                    last_read_message_id bigint not null default 0,
+                    updated_at timestamp with time zone not null default now(),
+                    primary key (chat_id, reader_id),
+                    foreign key (chat_id) references insurance.chats(id) on delete cascade,
                     foreign key (reader_id) references insurance.users(id) on delete cascade
                 )
                 """
@@ -453,6 +535,34 @@ public class ChatController {
         return agentId;
     }
 
+    private Long getAgentChatClientId(Long chatId, Long agentId) {
+        Long clientId = jdbcTemplate.query(
+                """
+                select client_id
+                from insurance.chats
+                where id = ? and agent_id = ?
+                limit 1
+                """,
+                rs -> rs.next() ? rs.getLong("client_id") : null,
+                chatId,
+                agentId
+        );
+        if (clientId == null) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Chat not found");
+        }
+        return clientId;
+    }
+
+    private ChatContextCache.ChatContext loadContext(Long chatId, Long clientId) {
+        return contextCache.get(clientId, chatId, () -> new ChatContextCache.ChatContext(
+                loadChatAgent(chatId, clientId),
+                loadChatTopic(chatId),
+                loadLatestPolicyContext(clientId),
+                loadClientPolicies(clientId),
+                loadActiveClaims(clientId)
+        ));
+    }
+
     private ChatAgentDto loadChatAgent(Long chatId, Long clientId) {
         var rows = jdbcTemplate.query(
                 """
@@ -499,71 +609,55 @@ public class ChatController {
         return rows.isEmpty() ? null : rows.get(0);
     }
 
-    private void markIncomingMessagesAsRead(Long chatId, Long readerId) {
-        jdbcTemplate.update(
-                """
-                insert into insurance.chat_message_reads (message_id, reader_id, read_at)
-                select m.id, ?, now()
-                from insurance.chat_messages m
-                where m.chat_id = ?
-                  and m.sender_id <> ?
-                  and not exists (
-                    select 1
-                    from insurance.chat_message_reads r
-                    where r.message_id = m.id and r.reader_id = ?
-                  )
-                """,
-                readerId,
-                chatId,
-                readerId,
-                readerId
-        );
+    private Long markRead(Long chatId, Long readerId, Long clientId, Long agentId) {
+        Long lastReadMessageId = advanceReadWatermark(chatId, readerId);
+        if (lastReadMessageId != null) {
+            events.publish(ChatEventHub.ChatEvent.read(chatId, clientId, agentId, readerId, lastReadMessageId));
+        }
+        return lastReadMessageId;
     }
 
-    private long countUnread(Long chatId, Long readerId) {
-        Long count = jdbcTemplate.queryForObject(
+    private Long advanceReadWatermark(Long chatId, Long readerId) {
+        // Returns the new watermark, or null when there was nothing new to read.
+        return jdbcTemplate.query(
                 """
-                select count(*)
+                insert into insurance.chat_read_watermarks (chat_id, reader_id, last_read_message_id, updated_at)
+                select ?, ?, max(m.id), now()
                 from insurance.chat_messages m
-                left join insurance.chat_message_reads r
-                  on r.message_id = m.id and r.reader_id = ?
                 where m.chat_id = ?
                   and m.sender_id <> ?
-                  and r.message_id is null
+                having max(m.id) is not null
+                on conflict (chat_id, reader_id) do update set
+                    last_read_message_id = excluded.last_read_message_id,
+                    updated_at = excluded.updated_at
+                where insurance.chat_read_watermarks.last_read_message_id < excluded.last_read_message_id
+                returning last_read_message_id
                 """,
-                Long.class,
+                rs -> rs.next() ? rs.getLong(1) : null,
+                chatId,
                 readerId,
                 chatId,
                 readerId
         );
-        return count == null ? 0 : count;
     }
 
-    private List<ChatMessageDto> loadMessages(Long chatId, Long currentUserId, Long peerUserId) {
-        return jdbcTemplate.query(
+    long countUnread(Long chatId, Long readerId) {
+        Long count = jdbcTemplate.query(
                 """
-                select m.id, m.chat_id, m.sender_id, m.message_text, m.created_at,
-                       exists (
-                           select 1
-                           from insurance.chat_message_reads r
-                           where r.message_id = m.id
-                             and r.reader_id = ?
-                       ) as read_by_peer
-                from insurance.chat_messages m
-                where m.chat_id = ?
-                order by m.created_at asc, m.id asc
+                select case
+                           when s.client_id = ? then s.client_unread
+                           when s.agent_id = ? then s.agent_unread
+                           else 0
+                       end
+                from insurance.chat_summaries s
+                where s.chat_id = ?
                 """,
-                (rs, rowNum) -> new ChatMessageDto(
-                        rs.getLong("id"),
-                        rs.getLong("chat_id"),
-                        rs.getLong("sender_id"),
-                        rs.getString("message_text"),
-                        rs.getBoolean("read_by_peer"),
-                        rs.getObject("created_at", OffsetDateTime.class)
-                ),
-                peerUserId,
+                rs -> rs.next() ? rs.getLong(1) : null,
+                readerId,
+                readerId,
                 chatId
         );
+        return count == null ? 0 : count;
     }
 
     private ChatPolicyDto loadLatestPolicyContext(Long clientId) {
@@ -662,6 +756,13 @@ public class ChatController {
         return user;
     }
 
+    private Long cursor(Long afterId, Long sinceId) {
+        if (afterId != null && sinceId != null && !afterId.equals(sinceId)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Use either afterId or sinceId");
+        }
+        return afterId != null ? afterId : sinceId;
+    }
+
     private String normalizeMessage(String value) {
         if (value == null) return null;
         String t = value.trim();
@@ -691,6 +792,9 @@ public class ChatController {
     public record SendMessageRequest(String message) {
     }
 
+    public record ChatReadDto(Long chatId, Long lastReadMessageId) {
+    }
+
     public record SetChatTopicRequest(
             String topicType,
             Long policyId,
@@ -740,7 +844,8 @@ public class ChatController {
             List<ChatPolicyItemDto> clientPolicies,
             List<ChatClaimItemDto> activeClaims,
             long unreadFromAgent,
-            List<ChatMessageDto> messages
+            List<ChatMessageDto> messages,
+            boolean hasMoreMessages
     ) {
     }
 
@@ -773,7 +878,8 @@ public class ChatController {
             List<ChatPolicyItemDto> clientPolicies,
             List<ChatClaimItemDto> activeClaims,
             long unreadFromClient,
-            List<ChatMessageDto> messages
+            List<ChatMessageDto> messages,
+            boolean hasMoreMessages
     ) {
     }
 
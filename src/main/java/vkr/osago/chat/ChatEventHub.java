@@ -0,0 +1,331 @@
+package vkr.osago.chat;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.json.JsonMapper;
+import vkr.osago.common.PostgresNotificationListener;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+@Component
+public class ChatEventHub {
+
+    public static final String CHANNEL = "osago_chat_events";
+
+    // pg_notify rejects payloads of 8000 bytes and more.
+    static final int MAX_NOTIFY_PAYLOAD_BYTES = 7_900;
+
+    private static final Supplier<SseEmitter.SseEventBuilder> CONNECTED = () -> SseEmitter.event().comment("connected");
+    private static final Supplier<SseEmitter.SseEventBuilder> HEARTBEAT = () -> SseEmitter.event().comment("heartbeat");
+    private static final Supplier<SseEmitter.SseEventBuilder> RESYNC = () -> frame(ChatEvent.resync());
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JsonMapper jsonMapper;
+    private final boolean relayEnabled;
+    private final int queueCapacity;
+    private final long heartbeatMs;
+    private final long emitterTimeoutMs;
+    private final ExecutorService senders;
+    private final ScheduledExecutorService heartbeats;
+    private final String nodeId = UUID.randomUUID().toString();
+    private final Map<Long, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong relayed = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile boolean running;
+
+    @Autowired
+    public ChatEventHub(
+            JdbcTemplate jdbcTemplate,
+            PostgresNotificationListener notifications,
+            JsonMapper jsonMapper,
+            @Value("${app.chat.events.relay-enabled:true}") boolean relayEnabled,
+            @Value("${app.chat.events.subscriber-queue:256}") int queueCapacity,
+            @Value("${app.chat.events.heartbeat-ms:15000}") long heartbeatMs,
+            @Value("${app.chat.events.timeout-ms:1800000}") long emitterTimeoutMs,
+            @Value("${app.chat.events.sender-threads:4}") int senderThreads
+    ) {
+        this(jdbcTemplate, notifications, jsonMapper, relayEnabled, queueCapacity, heartbeatMs,
+                emitterTimeoutMs, daemonPool(senderThreads), Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, "chat-event-heartbeat");
+                    thread.setDaemon(true);
+                    return thread;
+                }));
+    }
+
+    ChatEventHub(
+            JdbcTemplate jdbcTemplate,
+            PostgresNotificationListener notifications,
+            JsonMapper jsonMapper,
+            boolean relayEnabled,
+            int queueCapacity,
+            long heartbeatMs,
+            long emitterTimeoutMs,
+            ExecutorService senders,
+            ScheduledExecutorService heartbeats
+    ) {
+        if (queueCapacity < 1) throw new IllegalArgumentException("app.chat.events.subscriber-queue must be >= 1");
+        if (heartbeatMs < 1) throw new IllegalArgumentException("app.chat.events.heartbeat-ms must be >= 1");
+        this.jdbcTemplate = jdbcTemplate;
+        this.jsonMapper = jsonMapper;
+        this.relayEnabled = relayEnabled;
+        this.queueCapacity = queueCapacity;
+        this.heartbeatMs = heartbeatMs;
+        this.emitterTimeoutMs = emitterTimeoutMs;
+        this.senders = senders;
+        this.heartbeats = heartbeats;
+        if (relayEnabled) {
+            // Events from other nodes sent while the listener was disconnected are lost; clients reload.
+            notifications.listen(CHANNEL, payloads -> payloads.forEach(this::receive), this::resyncAll);
+        }
+    }
+
+    public SseEmitter subscribe(Long userId) {
+        return subscribe(userId, new SseEmitter(emitterTimeoutMs));
+    }
+
+    SseEmitter subscribe(Long userId, SseEmitter emitter) {
+        Subscriber subscriber = new Subscriber(userId, emitter);
+        subscribers.computeIfAbsent(userId, id -> ConcurrentHashMap.newKeySet()).add(subscriber);
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(error -> subscriber.close());
+        // Flushes the response headers right away so the client knows the stream is open.
+        subscriber.enqueue(CONNECTED);
+        return emitter;
+    }
+
+    public void publish(ChatEvent event) {
+        published.incrementAndGet();
+        deliverLocal(event);
+        if (!relayEnabled) {
+            return;
+        }
+        try {
+            jdbcTemplate.query("select pg_notify(?, ?)", rs -> null, CHANNEL, encode(event));
+        } catch (DataAccessException ignored) {
+            // Local subscribers already have the event; remote ones resync when their relay reconnects.
+        }
+    }
+
+    void deliverLocal(ChatEvent event) {
+        deliverTo(event.clientId(), event);
+        if (event.agentId() != null && !event.agentId().equals(event.clientId())) {
+            deliverTo(event.agentId(), event);
+        }
+    }
+
+    private void deliverTo(Long userId, ChatEvent event) {
+        if (userId == null) return;
+        Set<Subscriber> targets = subscribers.get(userId);
+        if (targets == null) return;
+        Supplier<SseEmitter.SseEventBuilder> frame = () -> frame(event);
+        for (Subscriber subscriber : targets) {
+            subscriber.enqueue(frame);
+        }
+    }
+
+    // SseEventBuilder.build() appends to the builder, so each send needs its own instance.
+    private static SseEmitter.SseEventBuilder frame(ChatEvent event) {
+        return SseEmitter.event()
+                .name(event.type().name().toLowerCase())
+                .data(event, MediaType.APPLICATION_JSON);
+    }
+
+    void receive(String payload) {
+        Envelope envelope;
+        try {
+            envelope = jsonMapper.readValue(payload, Envelope.class);
+        } catch (JacksonException ex) {
+            return;
+        }
+        if (envelope.event() == null || nodeId.equals(envelope.origin())) {
+            return;
+        }
+        relayed.incrementAndGet();
+        deliverLocal(envelope.event());
+    }
+
+    String encode(ChatEvent event) {
+        String payload = jsonMapper.writeValueAsString(new Envelope(nodeId, event));
+        if (payload.getBytes(StandardCharsets.UTF_8).length <= MAX_NOTIFY_PAYLOAD_BYTES) {
+            return payload;
+        }
+        // Long messages travel without the body; remote clients reload the chat instead.
+        return jsonMapper.writeValueAsString(new Envelope(nodeId, event.withoutMessage()));
+    }
+
+    void heartbeat() {
+        subscribers.values().forEach(targets -> targets.forEach(subscriber -> subscriber.enqueue(HEARTBEAT)));
+    }
+
+    private void resyncAll() {
+        subscribers.values().forEach(targets -> targets.forEach(subscriber -> subscriber.enqueue(RESYNC)));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        heartbeats.scheduleWithFixedDelay(this::heartbeat, heartbeatMs, heartbeatMs, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        heartbeats.shutdownNow();
+        subscribers.values().forEach(targets -> targets.forEach(Subscriber::complete));
+        senders.shutdownNow();
+    }
+
+    public Stats stats() {
+        int connections = subscribers.values().stream().mapToInt(Set::size).sum();
+        return new Stats(connections, published.get(), relayed.get(), delivered.get(), dropped.get());
+    }
+
+    private static ExecutorService daemonPool(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("app.chat.events.sender-threads must be >= 1");
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "chat-event-sender-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    private final class Subscriber {
+
+        private final Long userId;
+        private final SseEmitter emitter;
+        private final BlockingQueue<Supplier<SseEmitter.SseEventBuilder>> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final AtomicBoolean draining = new AtomicBoolean();
+        private volatile boolean closed;
+
+        private Subscriber(Long userId, SseEmitter emitter) {
+            this.userId = userId;
+            this.emitter = emitter;
+        }
+
+        void enqueue(Supplier<SseEmitter.SseEventBuilder> frame) {
+            if (closed) return;
+            if (!queue.offer(frame)) {
+                // The client cannot keep up; it reconnects and reloads the chat instead of stalling the others.
+                dropped.incrementAndGet();
+                complete();
+                return;
+            }
+            scheduleDrain();
+        }
+
+        private void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                senders.execute(this::drain);
+            }
+        }
+
+        private void drain() {
+            try {
+                Supplier<SseEmitter.SseEventBuilder> frame;
+                while (!closed && (frame = queue.poll()) != null) {
+                    emitter.send(frame.get());
+                    delivered.incrementAndGet();
+                }
+            } catch (IOException | RuntimeException ex) {
+                close();
+            } finally {
+                draining.set(false);
+            }
+            if (!closed && !queue.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+
+        void complete() {
+            close();
+            try {
+                emitter.complete();
+            } catch (IllegalStateException ignored) {
+                // Already completed by the container.
+            }
+        }
+
+        void close() {
+            closed = true;
+            queue.clear();
+            subscribers.computeIfPresent(userId, (id, targets) -> {
+                targets.remove(this);
+                return targets.isEmpty() ? null : targets;
+            });
+        }
+    }
+
+    public record ChatEvent(
+            Type type,
+            Long chatId,
+            Long clientId,
+            Long agentId,
+            ChatController.ChatMessageDto message,
+            Long readerId,
+            Long lastReadMessageId
+    ) {
+        public static ChatEvent message(Long chatId, Long clientId, Long agentId, ChatController.ChatMessageDto message) {
+            return new ChatEvent(Type.MESSAGE, chatId, clientId, agentId, message, null, null);
+        }
+
+        public static ChatEvent read(Long chatId, Long clientId, Long agentId, Long readerId, Long lastReadMessageId) {
+            return new ChatEvent(Type.READ, chatId, clientId, agentId, null, readerId, lastReadMessageId);
+        }
+
+        public static ChatEvent topic(Long chatId, Long clientId, Long agentId) {
+            return new ChatEvent(Type.TOPIC, chatId, clientId, agentId, null, null, null);
+        }
+
+        static ChatEvent resync() {
+            return new ChatEvent(Type.RESYNC, null, null, null, null, null, null);
+        }
+
+        ChatEvent withoutMessage() {
+            return new ChatEvent(type, chatId, clientId, agentId, null, readerId, lastReadMessageId);
+        }
+
+        public enum Type {
+            MESSAGE,
+            READ,
+            TOPIC,
+            RESYNC
+        }
+    }
+
+    record Envelope(String origin, ChatEvent event) {
+    }
+
+    public record Stats(int connections, long published, long relayed, long delivered, long dropped) {
+    }
+}
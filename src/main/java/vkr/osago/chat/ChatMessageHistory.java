@@ -0,0 +1,104 @@
+package vkr.osago.chat;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.stereotype.Service;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+@Service
+public class ChatMessageHistory {
+
+    private static final String SELECT = """
+            select m.id, m.chat_id, m.sender_id, m.message_text, m.created_at,
+                   coalesce(m.sender_id <> w.reader_id and m.id <= w.last_read_message_id, false) as read_by_peer
+            from insurance.chat_messages m
+            left join insurance.chat_read_watermarks w
+              on w.chat_id = m.chat_id and w.reader_id = ?
+            """;
+
+    private static final String NEWEST = SELECT + """
+            where m.chat_id = ?
+            order by m.id desc
+            limit ?
+            """;
+
+    private static final String BEFORE = SELECT + """
+            where m.chat_id = ?
+              and m.id < ?
+            order by m.id desc
+            limit ?
+            """;
+
+    private static final String AFTER = SELECT + """
+            where m.chat_id = ?
+              and m.id > ?
+            order by m.id asc
+            limit ?
+            """;
+
+    private static final RowMapper<ChatController.ChatMessageDto> MESSAGE = (rs, rowNum) -> new ChatController.ChatMessageDto(
+            rs.getLong("id"),
+            rs.getLong("chat_id"),
+            rs.getLong("sender_id"),
+            rs.getString("message_text"),
+            rs.getBoolean("read_by_peer"),
+            rs.getObject("created_at", OffsetDateTime.class)
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int pageSize;
+    private final int maxPageSize;
+
+    public ChatMessageHistory(
+            JdbcTemplate jdbcTemplate,
+            @Value("${app.chat.messages.page-size:50}") int pageSize,
+            @Value("${app.chat.messages.max-page-size:200}") int maxPageSize
+    ) {
+        if (pageSize < 1 || maxPageSize < pageSize) {
+            throw new IllegalArgumentException("app.chat.messages page sizes are invalid");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.pageSize = pageSize;
+        this.maxPageSize = maxPageSize;
+    }
+
+    /**
+     * Returns one page in ascending id order: the newest page by default, older history with
+     * {@code beforeId}, or the delta after the client's newest message with {@code afterId}.
+     * {@code hasMore} points away from the cursor.
+     */
+    public ChatMessagePage page(Long chatId, Long peerUserId, Long beforeId, Long afterId, Integer limit) {
+        if (beforeId != null && afterId != null) {
+            throw new IllegalArgumentException("beforeId and afterId cannot be combined");
+        }
+        if (limit != null && limit < 1) {
+            throw new IllegalArgumentException("limit must be >= 1");
+        }
+        int size = limit == null ? pageSize : Math.min(limit, maxPageSize);
+
+        // One extra row tells whether another page exists without a count query.
+        List<ChatController.ChatMessageDto> rows;
+        if (afterId != null) {
+            rows = jdbcTemplate.query(AFTER, MESSAGE, peerUserId, chatId, afterId, size + 1);
+        } else if (beforeId != null) {
+            rows = jdbcTemplate.query(BEFORE, MESSAGE, peerUserId, chatId, beforeId, size + 1);
+        } else {
+            rows = jdbcTemplate.query(NEWEST, MESSAGE, peerUserId, chatId, size + 1);
+        }
+
+        boolean hasMore = rows.size() > size;
+        List<ChatController.ChatMessageDto> messages = new ArrayList<>(hasMore ? rows.subList(0, size) : rows);
+        if (afterId == null) {
+            Collections.reverse(messages);
+        }
+        return new ChatMessagePage(messages, hasMore);
+    }
+
+    public record ChatMessagePage(List<ChatController.ChatMessageDto> messages, boolean hasMore) {
+    }
+}
@@ -30,6 +30,7 @@ import vkr.osago.claims.entity.ClaimStatus;
 import vkr.osago.claims.entity.ClaimEntity;
 import vkr.osago.claims.repo.ClaimAttachmentRepository;
 import vkr.osago.claims.repo.ClaimRepository;
+import vkr.osago.common.SchemaCapabilities;
 import vkr.osago.user.UserRepository;
 
 import java.math.BigDecimal;
@@ -57,6 +58,7 @@ public class ClientClaimsController {
     private final UserRepository users;
     private final AgentAssignmentService agentAssignmentService;
     private final JdbcTemplate jdbcTemplate;
+    private final SchemaCapabilities schema;
     private final Path attachmentsRoot;
 
     public ClientClaimsController(
@@ -65,6 +67,7 @@ public class ClientClaimsController {
             UserRepository users,
             AgentAssignmentService agentAssignmentService,
             JdbcTemplate jdbcTemplate,
+            SchemaCapabilities schema,
             @Value("${app.claims.attachments-root:uploads/claims}") String attachmentsRoot
     ) {
         this.claims = claims;
@@ -72,6 +75,7 @@ public class ClientClaimsController {
         this.users = users;
         this.agentAssignmentService = agentAssignmentService;
         this.jdbcTemplate = jdbcTemplate;
+        this.schema = schema;
         this.attachmentsRoot = Paths.get(attachmentsRoot).toAbsolutePath().normalize();
     }
 
@@ -584,6 +588,9 @@ public class ClientClaimsController {
     }
 
     private void ensureClaimPayoutRequestsTable() {
+        if (schema.hasTable("claim_payout_requests")) {
+            return;
+        }
         jdbcTemplate.execute(
                 """
                 create table if not exists insurance.claim_payout_requests (
@@ -597,6 +604,7 @@ public class ClientClaimsController {
                 )
                 """
         );
+        schema.refresh();
     }
 
     private String sanitizeDescription(String description) {
@@ -624,8 +632,7 @@ public class ClientClaimsController {
     }
 
     private void writeHistoryIfPossible(Long claimId, String oldStatus, String newStatus, String comment, Long changedByUserId) {
-        Boolean hasTable = jdbcTemplate.queryForObject("select to_regclass('insurance.claim_status_history') is not null", Boolean.class);
-        if (!Boolean.TRUE.equals(hasTable)) {
+        if (!schema.hasTable("claim_status_history")) {
             return;
         }
         try {
@@ -0,0 +1,96 @@
+package vkr.osago.common;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+@Component
+public class CacheInvalidationBus {
+
+    public static final String CHANNEL = "osago_cache_invalidation";
+
+    private final Map<Topic, List<Consumer<Invalidation>>> subscribers = new EnumMap<>(Topic.class);
+
+    public CacheInvalidationBus(
+            PostgresNotificationListener notifications,
+            @Value("${app.cache.invalidation.enabled:true}") boolean enabled
+    ) {
+        for (Topic topic : Topic.values()) {
+            subscribers.put(topic, new CopyOnWriteArrayList<>());
+        }
+        if (enabled) {
+            notifications.listen(CHANNEL, this::dispatch, this::resyncAll);
+        }
+    }
+
+    public void subscribe(Topic topic, Consumer<Invalidation> subscriber) {
+        subscribers.get(topic).add(subscriber);
+    }
+
+    public void subscribe(Set<Topic> topics, Consumer<Invalidation> subscriber) {
+        topics.forEach(topic -> subscribe(topic, subscriber));
+    }
+
+    public void publishLocal(Invalidation invalidation) {
+        for (Consumer<Invalidation> subscriber : subscribers.get(invalidation.topic())) {
+            try {
+                subscriber.accept(invalidation);
+            } catch (RuntimeException ignored) {
+                // A failing cache must not stop delivery to the others; it will be refreshed on its own schedule.
+            }
+        }
+    }
+
+    public void dispatch(List<String> payloads) {
+        Set<Topic> topics = EnumSet.noneOf(Topic.class);
+        Set<Invalidation> keyed = new HashSet<>();
+        for (String payload : payloads) {
+            if (payload == null) continue;
+            // Row-level triggers send "table:key"; statement-level ones send just the table.
+            int separator = payload.indexOf(':');
+            String table = separator < 0 ? payload : payload.substring(0, separator);
+            String key = separator < 0 ? null : payload.substring(separator + 1);
+            Topic topic = Topic.forTable(table);
+            if (topic == null) continue;
+            if (key == null ? topics.add(topic) : keyed.add(new Invalidation(topic, null, key))) {
+                publishLocal(new Invalidation(topic, table, key));
+            }
+        }
+    }
+
+    private void resyncAll() {
+        // Notifications sent while the listener was disconnected are lost; resync everything.
+        for (Topic topic : Topic.values()) {
+            publishLocal(new Invalidation(topic, null));
+        }
+    }
+
+    public enum Topic {
+        TARIFFS,
+        REFERENCE_DATA,
+        CLIENT_CONTEXT;
+
+        static Topic forTable(String table) {
+            if (table == null) return null;
+            if (table.startsWith("osago_")) return TARIFFS;
+            if (table.startsWith("ref_")) return REFERENCE_DATA;
+            if (Set.of("policies", "policy_applications", "claims", "chats").contains(table)) return CLIENT_CONTEXT;
+            return null;
+        }
+    }
+
+    // A null key invalidates the whole topic; otherwise only that entry (a client id for CLIENT_CONTEXT).
+    public record Invalidation(Topic topic, String table, String key) {
+        public Invalidation(Topic topic, String table) {
+            this(topic, table, null);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package vkr.osago.common;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+@Service
+public class IdempotencyService {
+
+    public static final String HEADER = "Idempotency-Key";
+
+    private static final int MAX_KEY_LENGTH = 255;
+
+    private static final String CLAIM = """
+            insert into insurance.idempotency_keys
+            (user_id, scope, idempotency_key, request_hash, status, created_at, expires_at)
+            values (?, ?, ?, ?, 'IN_FLIGHT', now(), now() + make_interval(secs => ?))
+            on conflict (user_id, scope, idempotency_key) do update set
+                request_hash = excluded.request_hash,
+                status = 'IN_FLIGHT',
+                response_body = null,
+                created_at = excluded.created_at,
+                expires_at = excluded.expires_at
+            where insurance.idempotency_keys.expires_at < now()
+               or (insurance.idempotency_keys.status = 'IN_FLIGHT'
+                   and insurance.idempotency_keys.created_at < now() - make_interval(secs => ?))
+            returning true
+            """;
+
+    private static final String FIND = """
+            select request_hash, status, response_body
+            from insurance.idempotency_keys
+            where user_id = ? and scope = ? and idempotency_key = ?
+              and expires_at >= now()
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final JsonMapper jsonMapper;
+    private final TransactionTemplate transaction;
+    private final long ttlSeconds;
+    private final long inFlightLeaseSeconds;
+    private final long waitTimeoutMs;
+    private final long pollIntervalMs;
+    private final Map<String, CompletableFuture<byte[]>> inFlight = new ConcurrentHashMap<>();
+
+    public IdempotencyService(
+            JdbcTemplate jdbcTemplate,
+            JsonMapper jsonMapper,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.idempotency.ttl-seconds:86400}") long ttlSeconds,
+            @Value("${app.idempotency.in-flight-lease-seconds:120}") long inFlightLeaseSeconds,
+            @Value("${app.idempotency.transaction-timeout-seconds:60}") int transactionTimeoutSeconds,
+            @Value("${app.idempotency.wait-timeout-ms:10000}") long waitTimeoutMs,
+            @Value("${app.idempotency.poll-interval-ms:50}") long pollIntervalMs
+    ) {
+        // Another node may take over an in-flight key once its lease runs out, so the request holding it
+        // must be rolled back by then.
+        if (transactionTimeoutSeconds < 1 || inFlightLeaseSeconds <= transactionTimeoutSeconds) {
+            throw new IllegalArgumentException("app.idempotency.in-flight-lease-seconds must exceed transaction-timeout-seconds");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.jsonMapper = jsonMapper;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.transaction.setTimeout(transactionTimeoutSeconds);
+        this.ttlSeconds = ttlSeconds;
+        this.inFlightLeaseSeconds = inFlightLeaseSeconds;
+        this.waitTimeoutMs = waitTimeoutMs;
+        this.pollIntervalMs = pollIntervalMs;
+    }
+
+    public <T> T execute(
+            Long userId,
+            String scope,
+            String idempotencyKey,
+            Object request,
+            Class<T> responseType,
+            Supplier<T> action
+    ) {
+        if (idempotencyKey == null || idempotencyKey.isBlank()) {
+            return action.get();
+        }
+        String key = idempotencyKey.trim();
+        if (key.length() > MAX_KEY_LENGTH) {
+            throw new IllegalArgumentException(HEADER + " must be at most " + MAX_KEY_LENGTH + " characters");
+        }
+        String requestHash = hash(jsonMapper.writeValueAsBytes(request));
+        String localKey = userId + "\u0000" + scope + "\u0000" + key;
+        long deadline = System.currentTimeMillis() + waitTimeoutMs;
+
+        while (true) {
+            if (claim(userId, scope, key, requestHash)) {
+                return runAndStore(userId, scope, key, localKey, responseType, action);
+            }
+
+            CompletableFuture<byte[]> local = inFlight.get(localKey);
+            if (local != null) {
+                awaitLocal(local, deadline);
+            }
+
+            List<StoredKey> stored = find(userId, scope, key);
+            if (stored.isEmpty()) {
+                // The first attempt failed and released the key, or it just expired: try to claim it again.
+                continue;
+            }
+            StoredKey row = stored.get(0);
+            if (!row.requestHash().equals(requestHash)) {
+                throw new IllegalArgumentException(HEADER + " was already used with a different request");
+            }
+            if ("COMPLETED".equals(row.status())) {
+                return jsonMapper.readValue(row.responseBody(), responseType);
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                throw new IllegalStateException("A request with this " + HEADER + " is still in progress");
+            }
+            sleep();
+        }
+    }
+
+    private <T> T runAndStore(
+            Long userId,
+            String scope,
+            String key,
+            String localKey,
+            Class<T> responseType,
+            Supplier<T> action
+    ) {
+        CompletableFuture<byte[]> local = new CompletableFuture<>();
+        inFlight.put(localKey, local);
+        boolean[] actionReturned = {false};
+        try {
+            // The action joins this transaction, so its changes and the stored response commit together.
+            Stored<T> stored = transaction.execute(status -> {
+                T response = action.get();
+                actionReturned[0] = true;
+                byte[] body = jsonMapper.writeValueAsBytes(response);
+                jdbcTemplate.update(
+                        """
+                        update insurance.idempotency_keys
+                        set status = 'COMPLETED', response_body = ?
+                        where user_id = ? and scope = ? and idempotency_key = ?
+                        """,
+                        body,
+                        userId,
+                        scope,
+                        key
+                );
+                return new Stored<>(response, body);
+            });
+            local.complete(stored.body());
+            return stored.response();
+        } catch (RuntimeException ex) {
+            // Once the action has returned the outcome of the commit is not known for sure; the key stays
+            // in flight until its lease runs out rather than letting a retry repeat the action right away.
+            if (!actionReturned[0]) {
+                release(userId, scope, key);
+            }
+            local.completeExceptionally(ex);
+            throw ex;
+        } finally {
+            inFlight.remove(localKey, local);
+        }
+    }
+
+    private boolean claim(Long userId, String scope, String key, String requestHash) {
+        return !jdbcTemplate.queryForList(
+                CLAIM,
+                Boolean.class,
+                userId,
+                scope,
+                key,
+                requestHash,
+                ttlSeconds,
+                inFlightLeaseSeconds
+        ).isEmpty();
+    }
+
+    private List<StoredKey> find(Long userId, String scope, String key) {
+        return jdbcTemplate.query(
+                FIND,
+                (rs, rowNum) -> new StoredKey(
+                        rs.getString("request_hash"),
+                        rs.getString("status"),
+                        rs.getBytes("response_body")
+                ),
+                userId,
+                scope,
+                key
+        );
+    }
+
+    private void release(Long userId, String scope, String key) {
+        try {
+            jdbcTemplate.update(
+                    "delete from insurance.idempotency_keys where user_id = ? and scope = ? and idempotency_key = ? and status = 'IN_FLIGHT'",
+                    userId,
+                    scope,
+                    key
+            );
+        } catch (DataAccessException ignored) {
+            // The in-flight lease expires on its own and the key becomes claimable again.
+        }
+    }
+
+    private void awaitLocal(CompletableFuture<byte[]> local, long deadline) {
+        long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0) {
+            return;
+        }
+        try {
+            local.get(remaining, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + HEADER + " result");
+        } catch (ExecutionException | TimeoutException ignored) {
+            // Fall through to the stored state, which tells whether to replay, retry or give up.
+        }
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(pollIntervalMs);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + HEADER + " result");
+        }
+    }
+
+    @Scheduled(
+            initialDelayString = "${app.idempotency.cleanup-interval-ms:600000}",
+            fixedDelayString = "${app.idempotency.cleanup-interval-ms:600000}"
+    )
+    public void purgeExpired() {
+        try {
+            jdbcTemplate.update(
+                    """
+                    delete from insurance.idempotency_keys
+                    where ctid in (
+                        select ctid
+                        from insurance.idempotency_keys
+                        where expires_at < now()
+                        limit 5000
+                    )
+                    """
+            );
+        } catch (DataAccessException ignored) {
+            // Expired keys are ignored by lookups; the next run removes them.
+        }
+    }
+
+    static String hash(byte[] body) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(body));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException("SHA-256 is not available", ex);
+        }
+    }
+
+    private record Stored<T>(T response, byte[] body) {
+    }
+
+    private record StoredKey(String requestHash, String status, byte[] responseBody) {
+    }
+}
@@ -0,0 +1,149 @@
+package vkr.osago.common;
+
+import jakarta.annotation.PreDestroy;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.regex.Pattern;
+
+/**
+ * Holds the single pooled connection that LISTENs on every registered channel and hands
+ * notifications to the channel's handler. After a reconnect each channel is told to resync,
+ * since notifications sent while disconnected are lost.
+ */
+@Component
+public class PostgresNotificationListener {
+
+    private static final long MAX_RECONNECT_DELAY_MS = 30_000;
+    private static final Pattern CHANNEL_NAME = Pattern.compile("[a-z_][a-z0-9_]*");
+
+    private final DataSource dataSource;
+    private final int pollTimeoutMs;
+    private final Map<String, Channel> channels = new LinkedHashMap<>();
+    private volatile Thread listener;
+    private volatile boolean running;
+
+    public PostgresNotificationListener(
+            DataSource dataSource,
+            @Value("${app.notifications.poll-timeout-ms:1000}") int pollTimeoutMs
+    ) {
+        this.dataSource = dataSource;
+        this.pollTimeoutMs = pollTimeoutMs;
+    }
+
+    public synchronized void listen(String channel, Consumer<List<String>> handler, Runnable onReconnect) {
+        if (channel == null || !CHANNEL_NAME.matcher(channel).matches()) {
+            throw new IllegalArgumentException("Invalid notification channel: " + channel);
+        }
+        if (running) {
+            throw new IllegalStateException("Channels must be registered before the listener starts");
+        }
+        if (channels.putIfAbsent(channel, new Channel(handler, onReconnect)) != null) {
+            throw new IllegalStateException("Notification channel " + channel + " is already registered");
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (running || channels.isEmpty()) {
+            return;
+        }
+        running = true;
+        listener = new Thread(this::run, "pg-notification-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        Thread current = listener;
+        if (current != null) {
+            current.interrupt();
+        }
+    }
+
+    void deliver(PGNotification[] notifications) {
+        Map<String, List<String>> payloads = new LinkedHashMap<>();
+        for (PGNotification notification : notifications) {
+            payloads.computeIfAbsent(notification.getName(), name -> new ArrayList<>()).add(notification.getParameter());
+        }
+        payloads.forEach((name, batch) -> {
+            Channel channel = channels.get(name);
+            if (channel == null) return;
+            try {
+                channel.handler().accept(batch);
+            } catch (RuntimeException ignored) {
+                // One failing channel must not cost the others their connection.
+            }
+        });
+    }
+
+    void resync() {
+        for (Channel channel : channels.values()) {
+            try {
+                channel.onReconnect().run();
+            } catch (RuntimeException ignored) {
+                // Same isolation as deliver().
+            }
+        }
+    }
+
+    private void run() {
+        long reconnectDelayMs = 1_000;
+        boolean connectedBefore = false;
+        while (running) {
+            try (Connection connection = dataSource.getConnection()) {
+                if (!connection.isWrapperFor(PGConnection.class)) {
+                    running = false;
+                    return;
+                }
+                PGConnection pg = connection.unwrap(PGConnection.class);
+                try (Statement statement = connection.createStatement()) {
+                    for (String channel : channels.keySet()) {
+                        statement.execute("listen " + channel);
+                    }
+                }
+                if (connectedBefore) {
+                    resync();
+                }
+                connectedBefore = true;
+                reconnectDelayMs = 1_000;
+
+                while (running) {
+                    PGNotification[] notifications = pg.getNotifications(pollTimeoutMs);
+                    if (notifications != null && notifications.length > 0) {
+                        deliver(notifications);
+                    }
+                }
+            } catch (SQLException | RuntimeException ex) {
+                if (!running) {
+                    return;
+                }
+                try {
+                    Thread.sleep(reconnectDelayMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                reconnectDelayMs = Math.min(reconnectDelayMs * 2, MAX_RECONNECT_DELAY_MS);
+            }
+        }
+    }
+
+    private record Channel(Consumer<List<String>> handler, Runnable onReconnect) {
+    }
+}
@@ -0,0 +1,77 @@
+package vkr.osago.common;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+@Component
+public class SchemaCapabilities {
+
+    private static final String SCHEMA = "insurance";
+
+    private final JdbcTemplate jdbcTemplate;
+    private volatile Set<String> resolved;
+
+    public SchemaCapabilities(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    public void resolveOnStartup() {
+        refresh();
+    }
+
+    public boolean hasTable(String table) {
+        return capabilities().contains(key(table, null));
+    }
+
+    public boolean hasColumn(String table, String column) {
+        return capabilities().contains(key(table, column));
+    }
+
+    public synchronized void refresh() {
+        try {
+            Set<String> found = new HashSet<>();
+            jdbcTemplate.query(
+                    """
+                    select table_name, column_name
+                    from information_schema.columns
+                    where lower(table_schema) = ?
+                    """,
+                    rs -> {
+                        String table = rs.getString("table_name");
+                        found.add(key(table, null));
+                        found.add(key(table, rs.getString("column_name")));
+                    },
+                    SCHEMA
+            );
+            resolved = Set.copyOf(found);
+        } catch (DataAccessException ex) {
+            // Leave unresolved so the next lookup retries once the database is reachable.
+            resolved = null;
+        }
+    }
+
+    private Set<String> capabilities() {
+        Set<String> current = resolved;
+        if (current == null) {
+            refresh();
+            current = resolved;
+        }
+        return current == null ? Set.of() : current;
+    }
+
+    private static String key(String table, String column) {
+        String t = table.toLowerCase(Locale.ROOT);
+        return column == null ? t : t + "." + column.toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,205 @@
+package vkr.osago.osago;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+import vkr.osago.agent.AgentAssignmentService;
+
+import java.math.BigDecimal;
+
+@Service
+public class ApplicationCheckoutService {
+
+    private static final String COPY_CALC = """
+            with calc as (
+                select *
+                from insurance.osago_calc_requests
+                where id = ?
+                  and (user_id = ? or user_id is null)
+                limit 1
+            ), copied as (
+                insert into insurance.osago_calc_requests
+                select r.*
+                from calc c,
+                     jsonb_populate_record(
+                         null::insurance.osago_calc_requests,
+                         to_jsonb(c) || jsonb_build_object(
+                             'id', nextval('insurance.osago_calc_requests_id_seq'),
+                             'user_id', ?::bigint,
+                             'created_at', now()
+                         )
+                     ) r
+                where c.user_id is null
+                returning *
+            )
+            select id, vehicle_category_id, region_id, power_hp, unlimited_drivers, term_months, result_amount, tariff_version_id
+            from copied
+            union all
+            select id, vehicle_category_id, region_id, power_hp, unlimited_drivers, term_months, result_amount, tariff_version_id
+            from calc
+            where user_id is not null
+            """;
+
+    private static final String CREATE_APPLICATION = """
+            with profile as (
+                insert into insurance.insured_person_profiles
+                (user_id, birth_date, passport_series, passport_number, passport_issue_date, passport_issuer, registration_address, created_at, updated_at)
+                values (?, ?, ?, ?, ?, ?, ?, now(), now())
+                on conflict (user_id) do update set
+                    birth_date = excluded.birth_date,
+                    passport_series = excluded.passport_series,
+                    passport_number = excluded.passport_number,
+                    passport_issue_date = excluded.passport_issue_date,
+                    passport_issuer = excluded.passport_issuer,
+                    registration_address = excluded.registration_address,
+                    updated_at = now()
+                returning user_id
+            ), driver as (
+                insert into insurance.client_driver_info
+                (user_id, driver_license_number, license_issued_date)
+                values (?, ?, ?)
+                on conflict (user_id) do update set
+                    driver_license_number = excluded.driver_license_number,
+                    license_issued_date = excluded.license_issued_date
+                returning user_id
+            ), next_policy as (
+                select nextval('insurance.policies_id_seq') as id
+            ), policy as (
+                insert into insurance.policies
+                (id, number, user_id, type, status, start_date, end_date, created_at, agent_id, vehicle_id, tariff_version_id,
+                 vehicle_category_id, region_id, power_hp, unlimited_drivers, term_months, premium_amount, consent_accuracy, consent_personal_data)
+                select np.id, 'EEE ' || lpad(np.id::text, greatest(9, length(np.id::text)), '0'),
+                       ?, 'OSAGO'::insurance.policy_type, 'DRAFT'::insurance.policy_status, ?, ?, now(), ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?
+                from next_policy np
+                returning id, number
+            ), application as (
+                insert into insurance.policy_applications
+                (user_id, assigned_agent_id, policy_type, vehicle_id, calc_request_id, status, comment, created_at, updated_at, issued_policy_id)
+                select ?, ?, 'OSAGO'::insurance.policy_type, ?, ?, 'NEW', null, now(), now(), p.id
+                from policy p
+                returning id, issued_policy_id
+            ), notification as (
+                insert into insurance.notifications
+                (recipient_id, type, title, message, is_read, created_at)
+                select ?, 'NEW_POLICY_REQUEST', 'Заявка на полис создана',
+                       'Заявка ' || p.number || ' создана и ожидает проверки агентом.', false, now()
+                from policy p
+            )
+            select a.id as application_id, p.id as policy_id, p.number as policy_number
+            from application a
+            join policy p on p.id = a.issued_policy_id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final AgentAssignmentService agentAssignmentService;
+    private final VehicleRegistry vehicles;
+
+    public ApplicationCheckoutService(
+            JdbcTemplate jdbcTemplate,
+            AgentAssignmentService agentAssignmentService,
+            VehicleRegistry vehicles
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.agentAssignmentService = agentAssignmentService;
+        this.vehicles = vehicles;
+    }
+
+    @Transactional
+    public OsagoController.CreateApplicationResponse createApplication(
+            Long userId,
+            OsagoController.CreateApplicationRequest req
+    ) {
+        CalcRow calc = calcForUser(userId, req.calcRequestId());
+
+        Long assignedAgentId = agentAssignmentService.ensureAgentAssignedToUser(userId);
+        Long vehicleId = vehicles.register(userId, req.vehicle());
+
+        var created = jdbcTemplate.queryForObject(
+                CREATE_APPLICATION,
+                (rs, rowNum) -> new OsagoController.CreateApplicationResponse(
+                        rs.getLong("application_id"),
+                        rs.getLong("policy_id"),
+                        rs.getString("policy_number"),
+                        "NEW",
+                        calc.resultAmount()
+                ),
+                userId,
+                req.insuredPerson().birthDate(),
+                trimToNull(req.insuredPerson().passportSeries()),
+                trimToNull(req.insuredPerson().passportNumber()),
+                req.insuredPerson().passportIssueDate(),
+                trimToNull(req.insuredPerson().passportIssuer()),
+                trimToNull(req.insuredPerson().registrationAddress()),
+                userId,
+                trimToNull(req.driverInfo().driverLicenseNumber()),
+                req.driverInfo().licenseIssuedDate(),
+                userId,
+                req.startDate(),
+                req.startDate().plusMonths(calc.termMonths()),
+                assignedAgentId,
+                vehicleId,
+                calc.tariffVersionId(),
+                calc.vehicleCategoryId(),
+                calc.regionId(),
+                calc.powerHp(),
+                calc.unlimitedDrivers(),
+                calc.termMonths(),
+                calc.resultAmount(),
+                req.consentAccuracy(),
+                req.consentPersonalData(),
+                userId,
+                assignedAgentId,
+                vehicleId,
+                calc.id(),
+                userId
+        );
+        if (created == null) {
+            throw new IllegalStateException("Failed to create policy application");
+        }
+        return created;
+    }
+
+    // Anonymous calc rows stay shared between callers; the buyer gets a private copy of the one they chose.
+    private CalcRow calcForUser(Long userId, Long calcRequestId) {
+        var rows = jdbcTemplate.query(
+                COPY_CALC,
+                (rs, rowNum) -> new CalcRow(
+                        rs.getLong("id"),
+                        rs.getLong("vehicle_category_id"),
+                        rs.getLong("region_id"),
+                        rs.getInt("power_hp"),
+                        rs.getBoolean("unlimited_drivers"),
+                        rs.getInt("term_months"),
+                        rs.getBigDecimal("result_amount"),
+                        rs.getLong("tariff_version_id")
+                ),
+                calcRequestId,
+                userId,
+                userId
+        );
+        if (rows.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Calculation not found");
+        }
+        return rows.get(0);
+    }
+
+    private String trimToNull(String value) {
+        if (value == null) return null;
+        String t = value.trim();
+        return t.isEmpty() ? null : t;
+    }
+
+    private record CalcRow(
+            Long id,
+            Long vehicleCategoryId,
+            Long regionId,
+            Integer powerHp,
+            Boolean unlimitedDrivers,
+            Integer termMonths,
+            BigDecimal resultAmount,
+            Long tariffVersionId
+    ) {
+    }
+}
@@ -0,0 +1,170 @@
+package vkr.osago.osago;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import vkr.osago.common.SchemaCapabilities;
+
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+@Service
+public class CalcRequestRetentionJob {
+
+    static final String PARTITION_PREFIX = "osago_calc_requests_p";
+
+    private static final Logger log = LoggerFactory.getLogger(CalcRequestRetentionJob.class);
+
+    private static final Pattern PARTITION_NAME = Pattern.compile("^" + PARTITION_PREFIX + "\\d{6}$");
+    private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+
+    private static final String LIST_PARTITIONS = """
+            select c.relname
+            from pg_inherits i
+            join pg_class c on c.oid = i.inhrelid
+            where i.inhparent = 'insurance.osago_calc_requests'::regclass
+            order by c.relname
+            """;
+
+    private static final String STAGE_RETAINED_ROWS = """
+            create temporary table osago_calc_requests_retained on commit drop as
+            select c.*
+            from insurance.%s c
+            where c.user_id is not null
+               or exists (
+                   select 1
+                   from insurance.policy_applications pa
+                   where pa.calc_request_id = c.id
+               )
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SchemaCapabilities schema;
+    private final TransactionTemplate transaction;
+    private final boolean enabled;
+    private final int retentionMonths;
+    private final int partitionsAhead;
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong droppedPartitions = new AtomicLong();
+    private volatile OffsetDateTime lastRunAt;
+    private volatile OffsetDateTime lastSuccessAt;
+    private volatile String lastError;
+
+    public CalcRequestRetentionJob(
+            JdbcTemplate jdbcTemplate,
+            SchemaCapabilities schema,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.osago.calc.retention.enabled:true}") boolean enabled,
+            @Value("${app.osago.calc.retention.months:6}") int retentionMonths,
+            @Value("${app.osago.calc.partitions-ahead:3}") int partitionsAhead
+    ) {
+        if (retentionMonths < 1) throw new IllegalArgumentException("app.osago.calc.retention.months must be >= 1");
+        if (partitionsAhead < 1) throw new IllegalArgumentException("app.osago.calc.partitions-ahead must be >= 1");
+        this.jdbcTemplate = jdbcTemplate;
+        this.schema = schema;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.retentionMonths = retentionMonths;
+        this.partitionsAhead = partitionsAhead;
+    }
+
+    @Scheduled(cron = "${app.osago.calc.retention.cron:0 30 3 * * *}")
+    public void scheduledRun() {
+        if (!enabled) {
+            return;
+        }
+        lastRunAt = OffsetDateTime.now();
+        try {
+            run(LocalDate.now());
+            lastSuccessAt = lastRunAt;
+            lastError = null;
+        } catch (RuntimeException ex) {
+            // Partitions are created months ahead, so the next run usually recovers; repeated failures
+            // show up in the stats before the horizon runs out.
+            failures.incrementAndGet();
+            lastError = ex.getClass().getSimpleName() + ": " + ex.getMessage();
+            log.error("Calc request retention run failed", ex);
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(lastRunAt, lastSuccessAt, failures.get(), lastError, droppedPartitions.get());
+    }
+
+    public List<String> run(LocalDate today) {
+        if (!schema.hasTable("osago_calc_requests_default")) {
+            return List.of();
+        }
+        jdbcTemplate.queryForObject(
+                "select insurance.ensure_osago_calc_request_partitions(?, ?)",
+                Integer.class,
+                today,
+                partitionsAhead
+        );
+
+        List<String> dropped = new ArrayList<>();
+        YearMonth cutoff = YearMonth.from(today).minusMonths(retentionMonths);
+        for (String partition : expiredPartitions(jdbcTemplate.queryForList(LIST_PARTITIONS, String.class), cutoff)) {
+            Boolean done = transaction.execute(status -> dropPartition(partition));
+            if (Boolean.TRUE.equals(done)) {
+                dropped.add(partition);
+                droppedPartitions.incrementAndGet();
+            }
+        }
+        return dropped;
+    }
+
+    private boolean dropPartition(String partition) {
+        Boolean locked = jdbcTemplate.queryForObject(
+                "select pg_try_advisory_xact_lock(hashtext('osago_calc_requests_retention'))",
+                Boolean.class
+        );
+        if (!Boolean.TRUE.equals(locked)) {
+            return false;
+        }
+        // Only claims of old quotes write to an expired month; blocking them keeps the staged rows exact
+        // while the parent stays open for new quotes until the detach.
+        jdbcTemplate.execute("set local lock_timeout = '5s'");
+        jdbcTemplate.execute("lock table insurance." + partition + " in share mode");
+        jdbcTemplate.execute(STAGE_RETAINED_ROWS.formatted(partition));
+        // Detaching takes an exclusive lock on the parent; from here on only the staged rows are copied.
+        jdbcTemplate.execute("alter table insurance.osago_calc_requests detach partition insurance." + partition);
+        jdbcTemplate.update("insert into insurance.osago_calc_requests select * from osago_calc_requests_retained");
+        jdbcTemplate.execute("drop table insurance." + partition);
+        return true;
+    }
+
+    static List<String> expiredPartitions(List<String> partitions, YearMonth cutoff) {
+        List<String> expired = new ArrayList<>();
+        for (String partition : partitions) {
+            if (partition == null || !PARTITION_NAME.matcher(partition).matches()) {
+                continue;
+            }
+            YearMonth month = YearMonth.parse(partition.substring(PARTITION_PREFIX.length()), PARTITION_MONTH);
+            if (month.isBefore(cutoff)) {
+                expired.add(partition);
+            }
+        }
+        return expired;
+    }
+
+    public record Stats(
+            OffsetDateTime lastRunAt,
+            OffsetDateTime lastSuccessAt,
+            long failures,
+            String lastError,
+            long droppedPartitions
+    ) {
+    }
+}
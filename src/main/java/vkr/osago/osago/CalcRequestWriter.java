@@ -0,0 +1,324 @@
+package vkr.osago.osago;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import vkr.osago.common.SchemaCapabilities;
+
+import java.time.OffsetDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class CalcRequestWriter {
+
+    private static final String INSERT_EXTENDED = """
+            insert into insurance.osago_calc_requests
+            (id, user_id, vehicle_category_id, region_id, power_hp, unlimited_drivers, term_months, result_amount, tariff_version_id,
+             driver_birth_date, license_issued_date, kbm_class_code, coeff_kvs, coeff_kbm, created_at)
+            values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private static final String INSERT_BASIC = """
+            insert into insurance.osago_calc_requests
+            (id, user_id, vehicle_category_id, region_id, power_hp, unlimited_drivers, term_months, result_amount, tariff_version_id, created_at)
+            values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SchemaCapabilities schema;
+    private final boolean writeBehind;
+    private final int idBlockSize;
+    private final int batchSize;
+    private final long flushIntervalMs;
+    private final BlockingQueue<PendingCalc> queue;
+    private final Map<Long, PendingCalc> pending = new ConcurrentHashMap<>();
+    private final ArrayDeque<Long> allocatedIds = new ArrayDeque<>();
+    // Records of a failed chunk, never more than batchSize; retried before anything new is drained.
+    private final List<PendingCalc> carryOver = new ArrayList<>();
+    private final Object flushLock = new Object();
+    private final AtomicLong stored = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private volatile Thread writer;
+    private volatile boolean running;
+
+    public CalcRequestWriter(
+            JdbcTemplate jdbcTemplate,
+            SchemaCapabilities schema,
+            @Value("${app.osago.calc.write-mode:sync}") String writeMode,
+            @Value("${app.osago.calc.id-block-size:100}") int idBlockSize,
+            @Value("${app.osago.calc.write-behind.queue-capacity:10000}") int queueCapacity,
+            @Value("${app.osago.calc.write-behind.batch-size:500}") int batchSize,
+            @Value("${app.osago.calc.write-behind.flush-interval-ms:200}") long flushIntervalMs
+    ) {
+        String mode = writeMode == null ? "sync" : writeMode.trim().toLowerCase(Locale.ROOT);
+        if (!mode.equals("sync") && !mode.equals("write-behind")) {
+            throw new IllegalArgumentException("app.osago.calc.write-mode must be sync or write-behind");
+        }
+        if (idBlockSize <= 0 || queueCapacity <= 0 || batchSize <= 0 || flushIntervalMs <= 0) {
+            throw new IllegalArgumentException("Calc writer sizes and intervals must be > 0");
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.schema = schema;
+        this.writeBehind = mode.equals("write-behind");
+        this.idBlockSize = idBlockSize;
+        this.batchSize = batchSize;
+        this.flushIntervalMs = flushIntervalMs;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    }
+
+    public List<Long> write(Long userId, List<QuoteService.Quote> quotes) {
+        List<Long> ids = allocateIds(quotes.size());
+        OffsetDateTime createdAt = OffsetDateTime.now();
+        List<PendingCalc> records = new ArrayList<>(quotes.size());
+        for (int i = 0; i < quotes.size(); i++) {
+            records.add(new PendingCalc(ids.get(i), userId, quotes.get(i), createdAt));
+        }
+
+        if (!writeBehind) {
+            insert(records);
+            stored.addAndGet(records.size());
+            return ids;
+        }
+
+        List<PendingCalc> overflow = new ArrayList<>();
+        for (PendingCalc record : records) {
+            pending.put(record.id(), record);
+            if (!queue.offer(record)) {
+                overflow.add(record);
+            }
+        }
+        if (!overflow.isEmpty()) {
+            // Queue is full: fall back to a synchronous insert instead of dropping quotes.
+            insert(overflow);
+            overflow.forEach(this::stored);
+        }
+        return ids;
+    }
+
+    public void flushIfPending(Long calcRequestId) {
+        if (calcRequestId != null && pending.containsKey(calcRequestId)) {
+            flush();
+        }
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    public Stats stats() {
+        int retrying;
+        synchronized (flushLock) {
+            retrying = carryOver.size();
+        }
+        return new Stats(pending.size(), retrying, stored.get(), dropped.get());
+    }
+
+    public void flush() {
+        synchronized (flushLock) {
+            flushLocked(null);
+        }
+    }
+
+    // While a failed chunk is retried nothing is drained, so during an outage the queue fills up
+    // and write() inserts synchronously instead of buffering without bound.
+    private void flushLocked(PendingCalc first) {
+        if (!carryOver.isEmpty()) {
+            List<PendingCalc> retry = new ArrayList<>(carryOver);
+            carryOver.clear();
+            store(retry);
+        }
+        List<PendingCalc> chunk = new ArrayList<>(batchSize);
+        if (first != null) {
+            chunk.add(first);
+        }
+        while (true) {
+            queue.drainTo(chunk, batchSize - chunk.size());
+            if (chunk.isEmpty()) {
+                return;
+            }
+            store(chunk);
+            chunk = new ArrayList<>(batchSize);
+        }
+    }
+
+    private void store(List<PendingCalc> chunk) {
+        try {
+            insert(chunk);
+        } catch (DataIntegrityViolationException ex) {
+            storeOneByOne(chunk);
+            return;
+        } catch (DataAccessException ex) {
+            carryOver.addAll(chunk);
+            throw ex;
+        }
+        chunk.forEach(this::stored);
+    }
+
+    // A record that can never be inserted (e.g. its user or tariff version was deleted) is dropped
+    // so it does not block the rest of the queue.
+    private void storeOneByOne(List<PendingCalc> chunk) {
+        for (int i = 0; i < chunk.size(); i++) {
+            PendingCalc record = chunk.get(i);
+            try {
+                insert(List.of(record));
+            } catch (DuplicateKeyException ex) {
+                // Already stored by an earlier attempt.
+            } catch (DataIntegrityViolationException ex) {
+                pending.remove(record.id());
+                dropped.incrementAndGet();
+                continue;
+            } catch (DataAccessException ex) {
+                carryOver.addAll(chunk.subList(i, chunk.size()));
+                throw ex;
+            }
+            stored(record);
+        }
+    }
+
+    private void stored(PendingCalc record) {
+        pending.remove(record.id());
+        stored.incrementAndGet();
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (!writeBehind || running) {
+            return;
+        }
+        running = true;
+        writer = new Thread(this::runWriter, "osago-calc-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        Thread current = writer;
+        if (current != null) {
+            current.interrupt();
+            try {
+                current.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (writeBehind) {
+            flush();
+        }
+    }
+
+    private void runWriter() {
+        while (running) {
+            try {
+                synchronized (flushLock) {
+                    if (!carryOver.isEmpty()) {
+                        flushLocked(null);
+                        continue;
+                    }
+                    // Taking the record under the lock keeps it visible to a concurrent flushIfPending().
+                    // The wait only holds the lock while the queue is empty.
+                    PendingCalc first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                    if (first != null) {
+                        flushLocked(first);
+                    }
+                }
+            } catch (InterruptedException ex) {
+                return;
+            } catch (DataAccessException ex) {
+                // Records stay pending and are retried on the next cycle.
+                sleepQuietly();
+            }
+        }
+    }
+
+    private void sleepQuietly() {
+        try {
+            Thread.sleep(flushIntervalMs);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+    private List<Long> allocateIds(int count) {
+        synchronized (allocatedIds) {
+            if (allocatedIds.size() < count) {
+                allocatedIds.addAll(jdbcTemplate.queryForList(
+                        "select nextval('insurance.osago_calc_requests_id_seq') from generate_series(1, ?)",
+                        Long.class,
+                        Math.max(count - allocatedIds.size(), idBlockSize)
+                ));
+            }
+            List<Long> ids = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                ids.add(allocatedIds.poll());
+            }
+            return ids;
+        }
+    }
+
+    private void insert(List<PendingCalc> records) {
+        boolean extended = schema.hasColumn("osago_calc_requests", "kbm_class_code");
+        List<Object[]> args = new ArrayList<>(records.size());
+        for (PendingCalc record : records) {
+            args.add(record.insertArgs(extended));
+        }
+        jdbcTemplate.batchUpdate(extended ? INSERT_EXTENDED : INSERT_BASIC, args);
+    }
+
+    public record Stats(int pending, int retrying, long stored, long dropped) {
+    }
+
+    private record PendingCalc(long id, Long userId, QuoteService.Quote quote, OffsetDateTime createdAt) {
+        Object[] insertArgs(boolean extended) {
+            OsagoController.CalcRequest request = quote.request();
+            if (!extended) {
+                return new Object[]{
+                        id,
+                        userId,
+                        request.vehicleCategoryId(),
+                        request.regionId(),
+                        request.powerHp(),
+                        request.unlimitedDrivers(),
+                        request.termMonths(),
+                        quote.resultAmount(),
+                        quote.tariffVersionId(),
+                        createdAt
+                };
+            }
+            return new Object[]{
+                    id,
+                    userId,
+                    request.vehicleCategoryId(),
+                    request.regionId(),
+                    request.powerHp(),
+                    request.unlimitedDrivers(),
+                    request.termMonths(),
+                    quote.resultAmount(),
+                    quote.tariffVersionId(),
+                    request.driverBirthDate(),
+                    request.licenseIssuedDate(),
+                    quote.kbmClassCode(),
+                    quote.coeffKvs(),
+                    quote.coeffKbm(),
+                    createdAt
+            };
+        }
+    }
+}
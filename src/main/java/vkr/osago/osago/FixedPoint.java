@@ -0,0 +1,151 @@
+package vkr.osago.osago;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.Arrays;
+
+public final class FixedPoint {
+
+    public static final int COEFFICIENT_SCALE = 4;
+    public static final int AMOUNT_SCALE = 2;
+    public static final long ONE = 10_000L;
+    public static final long NOT_REPRESENTABLE = Long.MIN_VALUE;
+    // Returned by scaled lookups that found no band or cell; never a valid scaled value either.
+    public static final long MISSING = Long.MIN_VALUE + 1;
+
+    private static final long[] POWERS_OF_TEN = {
+            1L,
+            10L,
+            100L,
+            1_000L,
+            10_000L,
+            100_000L,
+            1_000_000L,
+            10_000_000L,
+            100_000_000L,
+            1_000_000_000L,
+            10_000_000_000L,
+            100_000_000_000L,
+            1_000_000_000_000L,
+            10_000_000_000_000L,
+            100_000_000_000_000L,
+            1_000_000_000_000_000L,
+            10_000_000_000_000_000L,
+            100_000_000_000_000_000L,
+            1_000_000_000_000_000_000L
+    };
+
+    private FixedPoint() {
+    }
+
+    public static long scaled(BigDecimal value, int scale) {
+        if (value == null || value.scale() > scale || value.precision() - value.scale() + scale > 18) {
+            return NOT_REPRESENTABLE;
+        }
+        return value.movePointRight(scale).longValue();
+    }
+
+    public static BigDecimal premium(BigDecimal baseRate, BigDecimal... coefficients) {
+        long baseCents = scaled(baseRate, AMOUNT_SCALE);
+        long[] scaledCoefficients = new long[6];
+        Arrays.fill(scaledCoefficients, ONE);
+        boolean representable = baseCents != NOT_REPRESENTABLE && coefficients.length <= scaledCoefficients.length;
+        for (int i = 0; representable && i < coefficients.length; i++) {
+            scaledCoefficients[i] = scaled(coefficients[i], COEFFICIENT_SCALE);
+            representable = scaledCoefficients[i] != NOT_REPRESENTABLE;
+        }
+        if (representable) {
+            long cents = premiumCents(
+                    baseCents,
+                    scaledCoefficients[0],
+                    scaledCoefficients[1],
+                    scaledCoefficients[2],
+                    scaledCoefficients[3],
+                    scaledCoefficients[4],
+                    scaledCoefficients[5]
+            );
+            if (cents != NOT_REPRESENTABLE) {
+                return BigDecimal.valueOf(cents, AMOUNT_SCALE);
+            }
+        }
+        return premiumExact(baseRate, coefficients);
+    }
+
+    public static BigDecimal premiumExact(BigDecimal baseRate, BigDecimal... coefficients) {
+        BigDecimal amount = baseRate;
+        for (BigDecimal coefficient : coefficients) {
+            amount = amount.multiply(coefficient);
+        }
+        return amount.setScale(AMOUNT_SCALE, RoundingMode.HALF_UP);
+    }
+
+    public static long premiumCents(long baseCents, long c1, long c2, long c3, long c4, long c5, long c6) {
+        if (!isScaled(baseCents) || !isScaled(c1) || !isScaled(c2) || !isScaled(c3)
+                || !isScaled(c4) || !isScaled(c5) || !isScaled(c6)) {
+            return NOT_REPRESENTABLE;
+        }
+        try {
+            long product = baseCents;
+            int scale = AMOUNT_SCALE;
+            product = Math.multiplyExact(product, significand(c1));
+            scale += decimals(c1);
+            product = Math.multiplyExact(product, significand(c2));
+            scale += decimals(c2);
+            product = Math.multiplyExact(product, significand(c3));
+            scale += decimals(c3);
+            product = Math.multiplyExact(product, significand(c4));
+            scale += decimals(c4);
+            product = Math.multiplyExact(product, significand(c5));
+            scale += decimals(c5);
+            product = Math.multiplyExact(product, significand(c6));
+            scale += decimals(c6);
+            return roundHalfUp(product, scale - AMOUNT_SCALE);
+        } catch (ArithmeticException ex) {
+            return NOT_REPRESENTABLE;
+        }
+    }
+
+    public static boolean isScaled(long value) {
+        return value != NOT_REPRESENTABLE && value != MISSING;
+    }
+
+    private static long roundHalfUp(long value, int dropDigits) {
+        if (dropDigits == 0) {
+            return value;
+        }
+        if (dropDigits >= POWERS_OF_TEN.length) {
+            return NOT_REPRESENTABLE;
+        }
+        long divisor = POWERS_OF_TEN[dropDigits];
+        long quotient = value / divisor;
+        long remainder = Math.abs(value % divisor);
+        if (remainder >= divisor - remainder) {
+            quotient += Long.signum(value);
+        }
+        return quotient;
+    }
+
+    private static long significand(long coefficient) {
+        if (coefficient == 0) {
+            return 0;
+        }
+        long value = coefficient;
+        for (int i = 0; i < COEFFICIENT_SCALE && value % 10 == 0; i++) {
+            value /= 10;
+        }
+        return value;
+    }
+
+    private static int decimals(long coefficient) {
+        if (coefficient == 0) {
+            return 0;
+        }
+        long value = coefficient;
+        int decimals = COEFFICIENT_SCALE;
+        while (decimals > 0 && value % 10 == 0) {
+            value /= 10;
+            decimals--;
+        }
+        return decimals;
+    }
+}
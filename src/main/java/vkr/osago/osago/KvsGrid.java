@@ -0,0 +1,116 @@
+package vkr.osago.osago;
+
+import java.math.BigDecimal;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.function.Function;
+
+final class KvsGrid {
+
+    private static final int MAX_BOUND = 200;
+
+    private final int[] rowOfAge;
+    private final int openAgeRow;
+    private final int[] columnOfExperience;
+    private final int openExperienceColumn;
+    private final BigDecimal[][] coefficients;
+    private final long[][] scaled;
+
+    KvsGrid(List<TariffSnapshot.KvsCell> cells) {
+        int[] ageBounds = bounds(cells, TariffSnapshot.KvsCell::ageFrom, TariffSnapshot.KvsCell::ageTo);
+        int[] expBounds = bounds(cells, TariffSnapshot.KvsCell::expFrom, TariffSnapshot.KvsCell::expTo);
+        boolean openAge = cells.stream().anyMatch(cell -> cell.ageTo() == null);
+        boolean openExp = cells.stream().anyMatch(cell -> cell.expTo() == null);
+        int rows = cells.isEmpty() ? 0 : (openAge ? ageBounds.length : ageBounds.length - 1);
+        int columns = cells.isEmpty() ? 0 : (openExp ? expBounds.length : expBounds.length - 1);
+
+        coefficients = new BigDecimal[rows][columns];
+        scaled = new long[rows][columns];
+        for (TariffSnapshot.KvsCell cell : cells) {
+            if (cell.coefficient() == null) {
+                throw new IllegalArgumentException("KVS cell for age " + cell.ageFrom() + ", experience " + cell.expFrom() + " has no coefficient");
+            }
+            if ((cell.ageTo() != null && cell.ageTo() < cell.ageFrom()) || (cell.expTo() != null && cell.expTo() < cell.expFrom())) {
+                throw new IllegalArgumentException("KVS cell for age " + cell.ageFrom() + ", experience " + cell.expFrom() + " ends before it starts");
+            }
+            for (int r = 0; r < rows; r++) {
+                if (!covers(ageBounds[r], cell.ageFrom(), cell.ageTo())) continue;
+                for (int c = 0; c < columns; c++) {
+                    if (!covers(expBounds[c], cell.expFrom(), cell.expTo())) continue;
+                    if (coefficients[r][c] != null) {
+                        throw new IllegalArgumentException("KVS cells overlap at age " + ageBounds[r] + ", experience " + expBounds[c]);
+                    }
+                    coefficients[r][c] = cell.coefficient();
+                    scaled[r][c] = FixedPoint.scaled(cell.coefficient(), FixedPoint.COEFFICIENT_SCALE);
+                }
+            }
+        }
+        for (int r = 0; r < rows; r++) {
+            for (int c = 0; c < columns; c++) {
+                if (coefficients[r][c] == null) {
+                    throw new IllegalArgumentException("KVS grid has a gap at age " + ageBounds[r] + ", experience " + expBounds[c]);
+                }
+            }
+        }
+
+        rowOfAge = denseIndex(ageBounds, rows);
+        openAgeRow = openAge ? rows - 1 : -1;
+        columnOfExperience = denseIndex(expBounds, columns);
+        openExperienceColumn = openExp ? columns - 1 : -1;
+    }
+
+    BigDecimal coefficient(int ageYears, int experienceYears) {
+        int row = lookup(rowOfAge, openAgeRow, ageYears);
+        int column = lookup(columnOfExperience, openExperienceColumn, experienceYears);
+        return row < 0 || column < 0 ? null : coefficients[row][column];
+    }
+
+    long scaledCoefficient(int ageYears, int experienceYears) {
+        int row = lookup(rowOfAge, openAgeRow, ageYears);
+        int column = lookup(columnOfExperience, openExperienceColumn, experienceYears);
+        return row < 0 || column < 0 ? FixedPoint.MISSING : scaled[row][column];
+    }
+
+    private static int lookup(int[] dense, int openIndex, int value) {
+        if (value < 0) return -1;
+        return value < dense.length ? dense[value] : openIndex;
+    }
+
+    private static boolean covers(int start, int from, Integer to) {
+        return from <= start && (to == null || to >= start);
+    }
+
+    private static int[] bounds(
+            List<TariffSnapshot.KvsCell> cells,
+            Function<TariffSnapshot.KvsCell, Integer> from,
+            Function<TariffSnapshot.KvsCell, Integer> to
+    ) {
+        TreeSet<Integer> bounds = new TreeSet<>();
+        for (TariffSnapshot.KvsCell cell : cells) {
+            bounds.add(from.apply(cell));
+            Integer end = to.apply(cell);
+            if (end != null) {
+                bounds.add(end + 1);
+            }
+        }
+        if (!bounds.isEmpty() && (bounds.first() < 0 || bounds.last() > MAX_BOUND)) {
+            throw new IllegalArgumentException("KVS bounds must be within 0.." + MAX_BOUND);
+        }
+        return bounds.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static int[] denseIndex(int[] bounds, int segments) {
+        if (bounds.length == 0) {
+            return new int[0];
+        }
+        int[] dense = new int[bounds[bounds.length - 1]];
+        int segment = -1;
+        for (int value = 0; value < dense.length; value++) {
+            while (segment + 1 < segments && bounds[segment + 1] <= value) {
+                segment++;
+            }
+            dense[value] = segment;
+        }
+        return dense;
+    }
+}
@@ -0,0 +1,19 @@
+package vkr.osago.osago;
+
+import org.springframework.stereotype.Component;
+
+@Component
+public class ManualPaymentProvider implements PaymentProvider {
+
+    public static final String NAME = "manual";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public String checkout(PaymentTransitionService.StartedPayment payment, String returnUrl) {
+        return PaymentProvider.defaultReturnUrl(returnUrl);
+    }
+}
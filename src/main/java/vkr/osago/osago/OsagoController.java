@@ -1,603 +1,183 @@
 package vkr.osago.osago;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.dao.DataAccessException;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.server.ResponseStatusException;
-import vkr.osago.agent.AgentAssignmentService;
+import vkr.osago.common.IdempotencyService;
+import vkr.osago.policies.UnpaidApplicationSweeper;
 import vkr.osago.user.UserRepository;
+import vkr.osago.user.UserStatus;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
+import java.time.Duration;
 import java.time.LocalDate;
 import java.time.OffsetDateTime;
 import java.time.Period;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
 
 @RestController
 @RequestMapping("/api/osago")
 public class OsagoController {
 
-    private static final BigDecimal ONE = new BigDecimal("1.0000");
-    private static final List<RefKbmClassDto> DEFAULT_KBM_CLASSES = List.of(
-            new RefKbmClassDto("3", new BigDecimal("1.1700")),
-            new RefKbmClassDto("4", new BigDecimal("1.0000"))
-    );
-
     private final JdbcTemplate jdbcTemplate;
     private final UserRepository users;
-    private final AgentAssignmentService agentAssignmentService;
+    private final QuoteService quotes;
+    private final CalcRequestWriter calcRequests;
+    private final QuoteResultCache quoteResults;
+    private final ApplicationCheckoutService checkout;
+    private final PaymentTransitionService payments;
+    private final PaymentProviders paymentProviders;
+    private final PaymentWebhookInbox paymentWebhooks;
+    private final UnpaidApplicationSweeper unpaidSweeper;
+    private final CalcRequestRetentionJob calcRetention;
+    private final TariffSnapshotService tariffs;
+    private final IdempotencyService idempotency;
+    private final RefDataCache refDataCache;
+    private final Duration refDataMaxAge;
 
     public OsagoController(
             JdbcTemplate jdbcTemplate,
             UserRepository users,
-            AgentAssignmentService agentAssignmentService
+            QuoteService quotes,
+            CalcRequestWriter calcRequests,
+            QuoteResultCache quoteResults,
+            ApplicationCheckoutService checkout,
+            PaymentTransitionService payments,
+            PaymentProviders paymentProviders,
+            PaymentWebhookInbox paymentWebhooks,
+            UnpaidApplicationSweeper unpaidSweeper,
+            CalcRequestRetentionJob calcRetention,
+            TariffSnapshotService tariffs,
+            IdempotencyService idempotency,
+            RefDataCache refDataCache,
+            @Value("${app.ref-data.max-age-seconds:3600}") long refDataMaxAgeSeconds
     ) {
         this.jdbcTemplate = jdbcTemplate;
         this.users = users;
-        this.agentAssignmentService = agentAssignmentService;
+        this.quotes = quotes;
+        this.calcRequests = calcRequests;
+        this.quoteResults = quoteResults;
+        this.checkout = checkout;
+        this.payments = payments;
+        this.paymentProviders = paymentProviders;
+        this.paymentWebhooks = paymentWebhooks;
+        this.unpaidSweeper = unpaidSweeper;
+        this.calcRetention = calcRetention;
+        this.tariffs = tariffs;
+        this.idempotency = idempotency;
+        this.refDataCache = refDataCache;
+        this.refDataMaxAge = Duration.ofSeconds(refDataMaxAgeSeconds);
     }
 
     @GetMapping("/ref-data")
-    public RefDataResponse refData() {
-        var categories = jdbcTemplate.query(
-                """
-                select id, code, name
-                from insurance.ref_vehicle_categories
-                where is_active = true
-                order by id
-                """,
-                (rs, rowNum) -> new RefVehicleCategoryDto(
-                        rs.getLong("id"),
-                        rs.getString("code"),
-                        rs.getString("name")
-                )
-        );
-
-        var regions = jdbcTemplate.query(
-                """
-                select id, code, name
-                from insurance.ref_regions
-                where is_active = true
-                order by id
-                """,
-                (rs, rowNum) -> new RefRegionDto(
-                        rs.getLong("id"),
-                        rs.getString("code"),
-                        rs.getString("name")
-                )
-        );
-
-        var terms = jdbcTemplate.query(
-                """
-                select months, name
-                from insurance.ref_policy_terms
-                where is_active = true
-                order by months desc
-                """,
-                (rs, rowNum) -> new RefTermDto(
-                        rs.getInt("months"),
-                        rs.getString("name")
-                )
-        );
-
-        List<RefKbmClassDto> kbmClasses;
-        try {
-            kbmClasses = jdbcTemplate.query(
-                    """
-                    select kc.class_code, kc.coefficient
-                    from insurance.osago_kbm_coefficients kc
-                    join insurance.osago_tariff_versions tv on tv.id = kc.tariff_version_id
-                    where tv.is_active = true
-                      and tv.valid_from <= current_date
-                      and (tv.valid_to is null or tv.valid_to >= current_date)
-                    order by kc.coefficient desc, kc.class_code
-                    """,
-                    (rs, rowNum) -> new RefKbmClassDto(
-                            rs.getString("class_code"),
-                            rs.getBigDecimal("coefficient")
-                    )
-            );
-            if (kbmClasses.isEmpty()) {
-                kbmClasses = DEFAULT_KBM_CLASSES;
-            }
-        } catch (DataAccessException ex) {
-            kbmClasses = DEFAULT_KBM_CLASSES;
-        }
-
-        return new RefDataResponse(categories, regions, terms, kbmClasses);
+    public ResponseEntity<byte[]> refData() {
+        RefDataCache.CachedRefData refData = refDataCache.current();
+        return ResponseEntity.ok()
+                .eTag(refData.etag())
+                .cacheControl(CacheControl.maxAge(refDataMaxAge).cachePublic().mustRevalidate())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(refData.body());
     }
 
     @PostMapping("/calc")
     public CalcResponse calc(@AuthenticationPrincipal UserDetails principal, @RequestBody CalcRequest req) {
-        Long userId = null;
-        if (principal != null) {
-            userId = users.findByEmail(principal.getUsername()).orElseThrow().getId();
-        }
-        validateCalcRequest(req);
-
-        String normalizedKbmClass = normalizeKbmClass(req.kbmClassCode());
-        Integer driverAgeYears = null;
-        Integer driverExperienceYears = null;
-        if (!req.unlimitedDrivers()) {
-            driverAgeYears = fullYears(req.driverBirthDate(), "driverBirthDate");
-            driverExperienceYears = fullYears(req.licenseIssuedDate(), "licenseIssuedDate");
-        }
-        boolean hasKbmTable = hasTable("insurance.osago_kbm_coefficients");
-        boolean hasKvsTable = hasTable("insurance.osago_kvs_coefficients");
-        boolean hasExtendedCalcColumns = hasColumn("insurance", "osago_calc_requests", "kbm_class_code");
-
-        String tariffSql = hasKbmTable
-                ? """
-                select tv.id
-                from insurance.osago_tariff_versions tv
-                where tv.is_active = true
-                  and tv.valid_from <= current_date
-                  and (tv.valid_to is null or tv.valid_to >= current_date)
-                  and exists (
-                      select 1
-                      from insurance.osago_base_rates br
-                      where br.tariff_version_id = tv.id
-                        and br.vehicle_category_id = ?
-                  )
-                  and exists (
-                      select 1
-                      from insurance.osago_region_coefficients rc
-                      where rc.tariff_version_id = tv.id
-                        and rc.region_id = ?
-                  )
-                  and exists (
-                      select 1
-                      from insurance.osago_power_coefficients pc
-                      where pc.tariff_version_id = tv.id
-                        and pc.hp_from <= ?
-                        and (pc.hp_to is null or pc.hp_to >= ?)
-                  )
-                  and exists (
-                      select 1
-                      from insurance.osago_term_coefficients tc
-                      where tc.tariff_version_id = tv.id
-                        and tc.months = ?
-                  )
-                  and exists (
-                      select 1
-                      from insurance.osago_unlimited_driver_coefficients udc
-                      where udc.tariff_version_id = tv.id
-                  )
-                  and exists (
-                      select 1
-                      from insurance.osago_kbm_coefficients kbm
-                      where kbm.tariff_version_id = tv.id
-                        and upper(kbm.class_code) = ?
-                  )
-                order by tv.valid_from desc, tv.id desc
-                limit 1
-                """
-                : """
-                select tv.id
-                from insurance.osago_tariff_versions tv
-                where tv.is_active = true
-                  and tv.valid_from <= current_date
-                  and (tv.valid_to is null or tv.valid_to >= current_date)
-                  and exists (
-                      select 1
-                      from insurance.osago_base_rates br
-                      where br.tariff_version_id = tv.id
-                        and br.vehicle_category_id = ?
-                  )
-                  and exists (
-                      select 1
-                      from insurance.osago_region_coefficients rc
-                      where rc.tariff_version_id = tv.id
-                        and rc.region_id = ?
-                  )
-                  and exists (
-                      select 1
-                      from insurance.osago_power_coefficients pc
-                      where pc.tariff_version_id = tv.id
-                        and pc.hp_from <= ?
-                        and (pc.hp_to is null or pc.hp_to >= ?)
-                  )
-                  and exists (
-                      select 1
-                      from insurance.osago_term_coefficients tc
-                      where tc.tariff_version_id = tv.id
-                        and tc.months = ?
-                  )
-                  and exists (
-                      select 1
-                      from insurance.osago_unlimited_driver_coefficients udc
-                      where udc.tariff_version_id = tv.id
-                  )
-                order by tv.valid_from desc, tv.id desc
-                limit 1
-                """;
-
-        Long tariffVersionId = hasKbmTable
-                ? findLong(
-                tariffSql,
-                req.vehicleCategoryId(),
-                req.regionId(),
-                req.powerHp(),
-                req.powerHp(),
-                req.termMonths(),
-                normalizedKbmClass
-        )
-                : findLong(
-                tariffSql,
-                req.vehicleCategoryId(),
-                req.regionId(),
-                req.powerHp(),
-                req.powerHp(),
-                req.termMonths()
-        );
-        if (tariffVersionId == null) {
-            throw new IllegalArgumentException("No active OSAGO tariff found for provided parameters");
-        }
-
-        BigDecimal baseRate = findBigDecimal(
-                """
-                select base_rate
-                from insurance.osago_base_rates
-                where tariff_version_id = ?
-                  and vehicle_category_id = ?
-                limit 1
-                """,
-                tariffVersionId,
-                req.vehicleCategoryId()
-        );
-        if (baseRate == null) {
-            throw new IllegalArgumentException("Base rate not found for selected vehicle category");
-        }
-
-        BigDecimal coeffRegion = findBigDecimal(
-                """
-                select coefficient
-                from insurance.osago_region_coefficients
-                where tariff_version_id = ?
-                  and region_id = ?
-                limit 1
-                """,
-                tariffVersionId,
-                req.regionId()
-        );
-        if (coeffRegion == null) {
-            throw new IllegalArgumentException("Region coefficient not found");
-        }
+        return quotes.quote(currentUserIdOrNull(principal), req);
+    }
 
-        BigDecimal coeffPower = findBigDecimal(
-                """
-                select coefficient
-                from insurance.osago_power_coefficients
-                where tariff_version_id = ?
-                  and hp_from <= ?
-                  and (hp_to is null or hp_to >= ?)
-                order by hp_from desc
-                limit 1
-                """,
-                tariffVersionId,
-                req.powerHp(),
-                req.powerHp()
-        );
-        if (coeffPower == null) {
-            throw new IllegalArgumentException("Power coefficient not found");
-        }
+    @PostMapping("/calc/batch")
+    public CalcBatchResponse calcBatch(@AuthenticationPrincipal UserDetails principal, @RequestBody CalcBatchRequest req) {
+        if (principal == null) throw new ResponseStatusException(HttpStatus.UNAUTHORIZED);
+        if (req == null) throw new IllegalArgumentException("Request body is missing");
+        var user = users.findByEmail(principal.getUsername()).orElseThrow();
+        return new CalcBatchResponse(quotes.quoteBatch(user.getId(), req.requests()));
+    }
 
-        BigDecimal coeffDrivers = findBigDecimal(
-                """
-                select case when ? then coeff_unlimited else coeff_limited end
-                from insurance.osago_unlimited_driver_coefficients
-                where tariff_version_id = ?
-                limit 1
-                """,
-                req.unlimitedDrivers(),
-                tariffVersionId
-        );
-        if (coeffDrivers == null) {
-            coeffDrivers = ONE;
-        }
+    @GetMapping("/calc/matrix")
+    public CalcMatrixResponse calcMatrix(
+            @RequestParam(required = false) Long vehicleCategoryId,
+            @RequestParam(required = false) Long regionId,
+            @RequestParam(required = false) Integer powerHp,
+            @RequestParam(required = false) LocalDate driverBirthDate,
+            @RequestParam(required = false) LocalDate licenseIssuedDate
+    ) {
+        return quotes.matrix(vehicleCategoryId, regionId, powerHp, driverBirthDate, licenseIssuedDate);
+    }
 
-        BigDecimal coeffTerm = findBigDecimal(
-                """
-                select coefficient
-                from insurance.osago_term_coefficients
-                where tariff_version_id = ?
-                  and months = ?
-                limit 1
-                """,
-                tariffVersionId,
-                req.termMonths()
-        );
-        if (coeffTerm == null) {
-            throw new IllegalArgumentException("Insurance term coefficient not found");
-        }
+    @GetMapping("/calc/cache-stats")
+    public QuoteResultCache.Stats calcCacheStats(@AuthenticationPrincipal UserDetails principal) {
+        requireStaff(principal);
+        return quoteResults.stats();
+    }
 
-        BigDecimal coeffKvs = ONE;
-        if (!req.unlimitedDrivers() && hasKvsTable) {
-            coeffKvs = findBigDecimal(
-                    """
-                    select coefficient
-                    from insurance.osago_kvs_coefficients
-                    where tariff_version_id = ?
-                      and age_from <= ?
-                      and (age_to is null or age_to >= ?)
-                      and exp_from <= ?
-                      and (exp_to is null or exp_to >= ?)
-                    order by age_from desc, exp_from desc
-                    limit 1
-                    """,
-                    tariffVersionId,
-                    driverAgeYears,
-                    driverAgeYears,
-                    driverExperienceYears,
-                    driverExperienceYears
-            );
-            if (coeffKvs == null) {
-                throw new IllegalArgumentException("KVS coefficient not found for provided age and experience");
-            }
-        }
+    @GetMapping("/calc/writer-stats")
+    public CalcRequestWriter.Stats calcWriterStats(@AuthenticationPrincipal UserDetails principal) {
+        requireStaff(principal);
+        return calcRequests.stats();
+    }
 
-        BigDecimal coeffKbm = hasKbmTable
-                ? findBigDecimal(
-                """
-                select coefficient
-                from insurance.osago_kbm_coefficients
-                where tariff_version_id = ?
-                  and upper(class_code) = ?
-                limit 1
-                """,
-                tariffVersionId,
-                normalizedKbmClass
-        )
-                : defaultKbm(normalizedKbmClass);
-        if (coeffKbm == null) {
-            throw new IllegalArgumentException("KBM class is not available in active tariff");
-        }
+    @GetMapping("/calc/retention-stats")
+    public CalcRequestRetentionJob.Stats calcRetentionStats(@AuthenticationPrincipal UserDetails principal) {
+        requireStaff(principal);
+        return calcRetention.stats();
+    }
 
-        BigDecimal resultAmount = baseRate
-                .multiply(coeffRegion)
-                .multiply(coeffPower)
-                .multiply(coeffDrivers)
-                .multiply(coeffTerm)
-                .multiply(coeffKvs)
-                .multiply(coeffKbm)
-                .setScale(2, RoundingMode.HALF_UP);
+    @GetMapping("/calc/tariff-stats")
+    public TariffSnapshotService.Stats calcTariffStats(@AuthenticationPrincipal UserDetails principal) {
+        requireStaff(principal);
+        return tariffs.stats();
+    }
 
-        Long calcRequestId;
-        if (hasExtendedCalcColumns) {
-            calcRequestId = jdbcTemplate.queryForObject(
-                    """
-                    insert into insurance.osago_calc_requests
-                    (user_id, vehicle_category_id, region_id, power_hp, unlimited_drivers, term_months, result_amount, tariff_version_id,
-                     driver_birth_date, license_issued_date, kbm_class_code, coeff_kvs, coeff_kbm, created_at)
-                    values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, now())
-                    returning id
-                    """,
-                    Long.class,
-                    userId,
-                    req.vehicleCategoryId(),
-                    req.regionId(),
-                    req.powerHp(),
-                    req.unlimitedDrivers(),
-                    req.termMonths(),
-                    resultAmount,
-                    tariffVersionId,
-                    req.driverBirthDate(),
-                    req.licenseIssuedDate(),
-                    normalizedKbmClass,
-                    coeffKvs,
-                    coeffKbm
-            );
-        } else {
-            calcRequestId = jdbcTemplate.queryForObject(
-                    """
-                    insert into insurance.osago_calc_requests
-                    (user_id, vehicle_category_id, region_id, power_hp, unlimited_drivers, term_months, result_amount, tariff_version_id, created_at)
-                    values (?, ?, ?, ?, ?, ?, ?, ?, now())
-                    returning id
-                    """,
-                    Long.class,
-                    userId,
-                    req.vehicleCategoryId(),
-                    req.regionId(),
-                    req.powerHp(),
-                    req.unlimitedDrivers(),
-                    req.termMonths(),
-                    resultAmount,
-                    tariffVersionId
-            );
-        }
-        if (calcRequestId == null) {
-            throw new IllegalStateException("Failed to persist OSAGO calculation");
-        }
+    @GetMapping("/applications/sweeper-stats")
+    public UnpaidApplicationSweeper.Stats applicationSweeperStats(@AuthenticationPrincipal UserDetails principal) {
+        requireStaff(principal);
+        return unpaidSweeper.stats();
+    }
 
-        return new CalcResponse(
-                calcRequestId,
-                tariffVersionId,
-                baseRate,
-                coeffRegion,
-                coeffPower,
-                coeffDrivers,
-                coeffTerm,
-                coeffKvs,
-                normalizedKbmClass,
-                coeffKbm,
-                driverAgeYears,
-                driverExperienceYears,
-                resultAmount
-        );
+    @GetMapping("/payments/webhook-stats")
+    public PaymentWebhookInbox.Stats paymentWebhookStats(@AuthenticationPrincipal UserDetails principal) {
+        requireStaff(principal);
+        return paymentWebhooks.stats();
     }
 
     @PostMapping("/applications")
     public CreateApplicationResponse createApplication(
             @AuthenticationPrincipal UserDetails principal,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
             @RequestBody CreateApplicationRequest req
     ) {
         var user = users.findByEmail(principal.getUsername()).orElseThrow();
         validateApplicationRequest(req);
-
-        var calc = jdbcTemplate.query(
-                """
-                select id, user_id, vehicle_category_id, region_id, power_hp, unlimited_drivers, term_months, result_amount, tariff_version_id
-                from insurance.osago_calc_requests
-                where id = ?
-                  and (user_id = ? or user_id is null)
-                limit 1
-                """,
-                (rs, rowNum) -> new CalcRow(
-                        rs.getLong("id"),
-                        (Long) rs.getObject("user_id"),
-                        rs.getLong("vehicle_category_id"),
-                        rs.getLong("region_id"),
-                        rs.getInt("power_hp"),
-                        rs.getBoolean("unlimited_drivers"),
-                        rs.getInt("term_months"),
-                        rs.getBigDecimal("result_amount"),
-                        rs.getLong("tariff_version_id")
-                ),
-                req.calcRequestId(),
-                user.getId()
-        );
-        if (calc.isEmpty()) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Calculation not found");
-        }
-        var calcRow = calc.get(0);
-
-        if (calcRow.userId() == null) {
-            jdbcTemplate.update(
-                    "update insurance.osago_calc_requests set user_id = ? where id = ? and user_id is null",
-                    user.getId(),
-                    calcRow.id()
-            );
-        }
-
-        Long assignedAgentId = agentAssignmentService.ensureAgentAssignedToUser(user.getId());
-
-        Long vehicleId = saveOrReuseVehicle(user.getId(), req.vehicle());
-        if (vehicleId == null) {
-            throw new IllegalStateException("Failed to save vehicle");
-        }
-
-        jdbcTemplate.update(
-                """
-                insert into insurance.insured_person_profiles
-                (user_id, birth_date, passport_series, passport_number, passport_issue_date, passport_issuer, registration_address, created_at, updated_at)
-                values (?, ?, ?, ?, ?, ?, ?, now(), now())
-                on conflict (user_id) do update set
-                    birth_date = excluded.birth_date,
-                    passport_series = excluded.passport_series,
-                    passport_number = excluded.passport_number,
-                    passport_issue_date = excluded.passport_issue_date,
-                    passport_issuer = excluded.passport_issuer,
-                    registration_address = excluded.registration_address,
-                    updated_at = now()
-                """,
-                user.getId(),
-                req.insuredPerson().birthDate(),
-                trimToNull(req.insuredPerson().passportSeries()),
-                trimToNull(req.insuredPerson().passportNumber()),
-                req.insuredPerson().passportIssueDate(),
-                trimToNull(req.insuredPerson().passportIssuer()),
-                trimToNull(req.insuredPerson().registrationAddress())
-        );
-
-        jdbcTemplate.update(
-                """
-                insert into insurance.client_driver_info
-                (user_id, driver_license_number, license_issued_date)
-                values (?, ?, ?)
-                on conflict (user_id) do update set
-                    driver_license_number = excluded.driver_license_number,
-                    license_issued_date = excluded.license_issued_date
-                """,
-                user.getId(),
-                trimToNull(req.driverInfo().driverLicenseNumber()),
-                req.driverInfo().licenseIssuedDate()
-        );
-
-        Long policyId = jdbcTemplate.queryForObject(
-                """
-                insert into insurance.policies
-                (number, user_id, type, status, start_date, end_date, created_at, agent_id, vehicle_id, tariff_version_id,
-                 vehicle_category_id, region_id, power_hp, unlimited_drivers, term_months, premium_amount, consent_accuracy, consent_personal_data)
-                values (null, ?, 'OSAGO'::insurance.policy_type, 'DRAFT'::insurance.policy_status, ?, ?, now(), ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)
-                returning id
-                """,
-                Long.class,
+        return idempotency.execute(
                 user.getId(),
-                req.startDate(),
-                req.startDate().plusMonths(calcRow.termMonths()),
-                assignedAgentId,
-                vehicleId,
-                calcRow.tariffVersionId(),
-                calcRow.vehicleCategoryId(),
-                calcRow.regionId(),
-                calcRow.powerHp(),
-                calcRow.unlimitedDrivers(),
-                calcRow.termMonths(),
-                calcRow.resultAmount(),
-                req.consentAccuracy(),
-                req.consentPersonalData()
-        );
-        if (policyId == null) {
-            throw new IllegalStateException("Failed to create policy draft");
-        }
-
-        String policyNumber = generatePolicyNumber(policyId);
-        jdbcTemplate.update(
-                "update insurance.policies set number = ? where id = ?",
-                policyNumber,
-                policyId
-        );
-
-        Long applicationId = jdbcTemplate.queryForObject(
-                """
-                insert into insurance.policy_applications
-                (user_id, assigned_agent_id, policy_type, vehicle_id, calc_request_id, status, comment, created_at, updated_at, issued_policy_id)
-                values (?, ?, 'OSAGO'::insurance.policy_type, ?, ?, 'NEW', null, now(), now(), ?)
-                returning id
-                """,
-                Long.class,
-                user.getId(),
-                assignedAgentId,
-                vehicleId,
-                calcRow.id(),
-                policyId
-        );
-        if (applicationId == null) {
-            throw new IllegalStateException("Failed to create policy application");
-        }
-
-        createNotification(
-                user.getId(),
-                "NEW_POLICY_REQUEST",
-                "Заявка на полис создана",
-                "Заявка " + policyNumber + " создана и ожидает проверки агентом."
-        );
-
-        return new CreateApplicationResponse(
-                applicationId,
-                policyId,
-                policyNumber,
-                "NEW",
-                calcRow.resultAmount()
+                "osago.applications.create",
+                idempotencyKey,
+                req,
+                CreateApplicationResponse.class,
+                () -> {
+                    calcRequests.flushIfPending(req.calcRequestId());
+                    return checkout.createApplication(user.getId(), req);
+                }
         );
     }
 
     @GetMapping("/applications/my")
     public List<MyApplicationDto> myApplications(@AuthenticationPrincipal UserDetails principal) {
         var user = users.findByEmail(principal.getUsername()).orElseThrow();
-        purgeExpiredUnpaidApplications(user.getId());
         return jdbcTemplate.query(
                 """
                 select pa.id, pa.status, pa.created_at, pa.updated_at, pa.issued_policy_id,
@@ -605,8 +185,9 @@ public class OsagoController {
                 from insurance.policy_applications pa
                 left join insurance.policies p on p.id = pa.issued_policy_id
                 where pa.user_id = ?
+                  and not %s
                 order by pa.created_at desc
-                """,
+                """.formatted(unpaidSweeper.expiredPredicate("pa")),
                 (rs, rowNum) -> new MyApplicationDto(
                         rs.getLong("id"),
                         rs.getString("status"),
@@ -627,7 +208,6 @@ public class OsagoController {
             @PathVariable Long id
     ) {
         var user = users.findByEmail(principal.getUsername()).orElseThrow();
-        purgeExpiredUnpaidApplications(user.getId());
         boolean deleted = deleteApplicationAndPolicyIfAllowed(id, user.getId());
         if (!deleted) {
             throw new ResponseStatusException(HttpStatus.CONFLICT, "Only unpaid draft applications can be deleted");
@@ -639,73 +219,25 @@ public class OsagoController {
     public PayResponse payApplication(
             @AuthenticationPrincipal UserDetails principal,
             @PathVariable Long id,
+            @RequestHeader(value = IdempotencyService.HEADER, required = false) String idempotencyKey,
             @RequestBody PayRequest req
     ) {
         var user = users.findByEmail(principal.getUsername()).orElseThrow();
-        purgeExpiredUnpaidApplications(user.getId());
         if (req == null || req.provider() == null || req.provider().isBlank()) {
             throw new IllegalArgumentException("provider is required");
         }
-
-        var rows = jdbcTemplate.query(
-                """
-                select pa.id, pa.status, pa.issued_policy_id, p.premium_amount
-                from insurance.policy_applications pa
-                join insurance.policies p on p.id = pa.issued_policy_id
-                where pa.id = ? and pa.user_id = ?
-                limit 1
-                """,
-                (rs, rowNum) -> Map.of(
-                        "appStatus", rs.getString("status"),
-                        "policyId", rs.getLong("issued_policy_id"),
-                        "amount", rs.getBigDecimal("premium_amount")
-                ),
-                id,
-                user.getId()
-        );
-        if (rows.isEmpty()) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Application not found");
-        }
-
-        String appStatus = String.valueOf(rows.get(0).get("appStatus"));
-        if (!"APPROVED".equalsIgnoreCase(appStatus) && !"PAYMENT_PENDING".equalsIgnoreCase(appStatus)) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "Application is not approved by agent");
-        }
-
-        Long policyId = (Long) rows.get(0).get("policyId");
-        BigDecimal amount = (BigDecimal) rows.get(0).get("amount");
-
-        Long paymentId = jdbcTemplate.queryForObject(
-                """
-                insert into insurance.payments
-                (policy_id, amount, status, provider, external_id, created_at)
-                values (?, ?, 'NEW'::insurance.payment_status, ?, ?, now())
-                returning id
-                """,
-                Long.class,
-                policyId,
-                amount,
-                req.provider().trim(),
-                UUID.randomUUID().toString()
-        );
-        if (paymentId == null) {
-            throw new IllegalStateException("Failed to create payment");
-        }
-
-        jdbcTemplate.update(
-                "update insurance.policies set status = 'PENDING_PAY'::insurance.policy_status where id = ?",
-                policyId
-        );
-        jdbcTemplate.update(
-                "update insurance.policy_applications set status = 'PAYMENT_PENDING', updated_at = now() where id = ?",
-                id
+        return idempotency.execute(
+                user.getId(),
+                "osago.applications.pay:" + id,
+                idempotencyKey,
+                req,
+                PayResponse.class,
+                () -> {
+                    var started = payments.start(user.getId(), id, req);
+                    String paymentUrl = paymentProviders.current().checkout(started, req.returnUrl());
+                    return new PayResponse(started.paymentId(), started.status(), paymentUrl);
+                }
         );
-
-        String paymentUrl = (req.returnUrl() == null || req.returnUrl().isBlank())
-                ? "/cabinet/client/index.html"
-                : req.returnUrl();
-
-        return new PayResponse(paymentId, "NEW", paymentUrl);
     }
 
     @PostMapping("/applications/{id}/pay/confirm")
@@ -714,96 +246,21 @@ public class OsagoController {
             @PathVariable Long id
     ) {
         var user = users.findByEmail(principal.getUsername()).orElseThrow();
-        purgeExpiredUnpaidApplications(user.getId());
-
-        var rows = jdbcTemplate.query(
-                """
-                select pa.id as application_id, pa.issued_policy_id as policy_id, p.id as payment_id
-                from insurance.policy_applications pa
-                left join insurance.payments p on p.policy_id = pa.issued_policy_id
-                where pa.id = ? and pa.user_id = ?
-                order by p.created_at desc nulls last
-                limit 1
-                """,
-                (rs, rowNum) -> Map.of(
-                        "policyId", rs.getLong("policy_id"),
-                        "paymentId", rs.getLong("payment_id")
-                ),
-                id,
-                user.getId()
-        );
-        if (rows.isEmpty()) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Application not found");
-        }
-
-        String applicationStatus = jdbcTemplate.queryForObject(
-                "select status from insurance.policy_applications where id = ? and user_id = ? limit 1",
-                String.class,
-                id,
-                user.getId()
-        );
-        if (applicationStatus == null ||
-                (!"PAYMENT_PENDING".equalsIgnoreCase(applicationStatus) && !"APPROVED".equalsIgnoreCase(applicationStatus))) {
-            throw new ResponseStatusException(HttpStatus.CONFLICT, "Payment is not in pending state");
-        }
+        return payments.confirm(user.getId(), id);
+    }
 
-        Long policyId = (Long) rows.get(0).get("policyId");
-        Long paymentId = (Long) rows.get(0).get("paymentId");
-        if (paymentId == null || paymentId == 0L) {
-            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Payment not created");
+    private void requireStaff(UserDetails principal) {
+        var user = users.findByEmail(principal.getUsername()).orElseThrow();
+        if (user.getStatus() != UserStatus.AGENT && user.getStatus() != UserStatus.ADMIN) {
+            throw new ResponseStatusException(HttpStatus.FORBIDDEN, "Access denied");
         }
-
-        jdbcTemplate.update(
-                "update insurance.payments set status = 'SUCCESS'::insurance.payment_status where id = ?",
-                paymentId
-        );
-        jdbcTemplate.update(
-                "update insurance.policies set status = 'ACTIVE'::insurance.policy_status where id = ?",
-                policyId
-        );
-        jdbcTemplate.update(
-                "update insurance.policy_applications set status = 'PAID', updated_at = now() where id = ?",
-                id
-        );
-
-        createNotification(
-                user.getId(),
-                "NEW_MESSAGE",
-                "Оплата полиса успешна",
-                "Полис активирован. Статус: ACTIVE."
-        );
-
-        return new PayConfirmResponse(paymentId, "SUCCESS", "ACTIVE");
     }
 
-    private void validateCalcRequest(CalcRequest req) {
-        if (req == null) throw new IllegalArgumentException("Request body is missing");
-        if (req.vehicleCategoryId() == null) throw new IllegalArgumentException("vehicleCategoryId is required");
-        if (req.regionId() == null) throw new IllegalArgumentException("regionId is required");
-        if (req.powerHp() == null || req.powerHp() <= 0 || req.powerHp() > 2000) {
-            throw new IllegalArgumentException("powerHp must be in range 1..2000");
-        }
-        if (req.termMonths() == null || req.termMonths() <= 0) throw new IllegalArgumentException("termMonths must be > 0");
-        if (req.unlimitedDrivers() == null) throw new IllegalArgumentException("unlimitedDrivers is required");
-        if (!existsActiveRef("ref_vehicle_categories", "id", req.vehicleCategoryId())) {
-            throw new IllegalArgumentException("vehicleCategoryId is invalid");
-        }
-        if (!existsActiveRef("ref_regions", "id", req.regionId())) {
-            throw new IllegalArgumentException("regionId is invalid");
-        }
-        if (!existsActiveRef("ref_policy_terms", "months", req.termMonths())) {
-            throw new IllegalArgumentException("termMonths is invalid");
-        }
-        if (!req.unlimitedDrivers()) {
-            if (req.driverBirthDate() == null) throw new IllegalArgumentException("driverBirthDate is required for limited drivers");
-            if (req.licenseIssuedDate() == null) throw new IllegalArgumentException("licenseIssuedDate is required for limited drivers");
-            if (req.driverBirthDate().isAfter(LocalDate.now())) {
-                throw new IllegalArgumentException("driverBirthDate cannot be in the future");
-            }
-            if (req.licenseIssuedDate().isAfter(LocalDate.now())) {
-                throw new IllegalArgumentException("licenseIssuedDate cannot be in the future");
-            }
+    private Long currentUserIdOrNull(UserDetails principal) {
+        if (principal == null) {
+            return null;
         }
+        return users.findByEmail(principal.getUsername()).orElseThrow().getId();
     }
 
     private void validateApplicationRequest(CreateApplicationRequest req) {
@@ -901,227 +358,6 @@ public class OsagoController {
         return value == null ? "" : value.replaceAll("\\D+", "");
     }
 
-    private boolean existsActiveRef(String tableName, String idColumn, Object value) {
-        Integer count = jdbcTemplate.queryForObject(
-                "select count(*) from insurance." + tableName + " where " + idColumn + " = ? and is_active = true",
-                Integer.class,
-                value
-        );
-        return count != null && count > 0;
-    }
-
-    private Long saveOrReuseVehicle(Long userId, VehicleDto vehicle) {
-        String brand = vehicle.brand().trim();
-        String model = trimToNull(vehicle.model());
-        String vin = trimToNull(vehicle.vin());
-        String regNumber = trimToNull(vehicle.regNumber());
-
-        try {
-            return jdbcTemplate.queryForObject(
-                    """
-                    insert into insurance.vehicles
-                    (owner_user_id, brand, model, vin, reg_number, created_at)
-                    values (?, ?, ?, ?, ?, now())
-                    returning id
-                    """,
-                    Long.class,
-                    userId,
-                    brand,
-                    model,
-                    vin,
-                    regNumber
-            );
-        } catch (DataAccessException ex) {
-            var existing = jdbcTemplate.query(
-                    """
-                    select id, owner_user_id
-                    from insurance.vehicles
-                    where (? is not null and reg_number = ?)
-                       or (? is not null and vin = ?)
-                    order by id desc
-                    limit 1
-                    """,
-                    (rs, rowNum) -> Map.of(
-                            "id", rs.getLong("id"),
-                            "ownerUserId", rs.getLong("owner_user_id")
-                    ),
-                    regNumber,
-                    regNumber,
-                    vin,
-                    vin
-            );
-            if (existing.isEmpty()) {
-                throw ex;
-            }
-
-            Long existingId = (Long) existing.get(0).get("id");
-            Long ownerUserId = (Long) existing.get(0).get("ownerUserId");
-            if (!userId.equals(ownerUserId)) {
-                throw new IllegalArgumentException("Автомобиль с таким VIN/госномером уже привязан к другому пользователю");
-            }
-
-            jdbcTemplate.update(
-                    """
-                    update insurance.vehicles
-                    set brand = ?,
-                        model = ?,
-                        vin = ?,
-                        reg_number = ?
-                    where id = ?
-                    """,
-                    brand,
-                    model,
-                    vin,
-                    regNumber,
-                    existingId
-            );
-            return existingId;
-        }
-    }
-
-    private Long findLong(String sql, Object... args) {
-        var rows = jdbcTemplate.query(sql, (rs, rowNum) -> rs.getLong(1), args);
-        return rows.isEmpty() ? null : rows.get(0);
-    }
-
-    private Integer fullYears(LocalDate fromDate, String fieldName) {
-        if (fromDate == null) {
-            return null;
-        }
-        var now = LocalDate.now();
-        if (fromDate.isAfter(now)) {
-            throw new IllegalArgumentException(fieldName + " cannot be in the future");
-        }
-        int years = Period.between(fromDate, now).getYears();
-        if (years < 0) {
-            throw new IllegalArgumentException(fieldName + " is invalid");
-        }
-        return years;
-    }
-
-    private String normalizeKbmClass(String value) {
-        if (value == null || value.isBlank()) {
-            return "3";
-        }
-        return value.trim().toUpperCase();
-    }
-
-    private BigDecimal findBigDecimal(String sql, Object... args) {
-        var rows = jdbcTemplate.query(sql, (rs, rowNum) -> rs.getBigDecimal(1), args);
-        return rows.isEmpty() ? null : rows.get(0);
-    }
-
-    private boolean hasTable(String qualifiedName) {
-        try {
-            Boolean exists = jdbcTemplate.queryForObject(
-                    "select to_regclass(?) is not null",
-                    Boolean.class,
-                    qualifiedName
-            );
-            return Boolean.TRUE.equals(exists);
-        } catch (DataAccessException ex) {
-            return false;
-        }
-    }
-
-    private boolean hasColumn(String schema, String table, String column) {
-        try {
-            Integer found = jdbcTemplate.queryForObject(
-                    """
-                    select count(*)
-                    from information_schema.columns
-                    where table_schema = ?
-                      and table_name = ?
-                      and column_name = ?
-                    """,
-                    Integer.class,
-                    schema,
-                    table,
-                    column
-            );
-            return found != null && found > 0;
-        } catch (DataAccessException ex) {
-            return false;
-        }
-    }
-
-    private BigDecimal defaultKbm(String classCode) {
-        if ("M".equalsIgnoreCase(classCode)) return new BigDecimal("3.9200");
-        if ("0".equals(classCode)) return new BigDecimal("2.9400");
-        if ("1".equals(classCode)) return new BigDecimal("2.2500");
-        if ("2".equals(classCode)) return new BigDecimal("1.7600");
-        if ("3".equals(classCode)) return new BigDecimal("1.1700");
-        if ("4".equals(classCode)) return new BigDecimal("1.0000");
-        if ("5".equals(classCode)) return new BigDecimal("0.9100");
-        if ("6".equals(classCode)) return new BigDecimal("0.8300");
-        if ("7".equals(classCode)) return new BigDecimal("0.7800");
-        if ("8".equals(classCode)) return new BigDecimal("0.7400");
-        if ("9".equals(classCode)) return new BigDecimal("0.6800");
-        if ("10".equals(classCode)) return new BigDecimal("0.6300");
-        if ("11".equals(classCode)) return new BigDecimal("0.5700");
-        if ("12".equals(classCode)) return new BigDecimal("0.5200");
-        if ("13".equals(classCode)) return new BigDecimal("0.4600");
-        return new BigDecimal("1.1700");
-    }
-
-    private void createNotification(Long recipientId, String type, String title, String message) {
-        jdbcTemplate.update(
-                """
-                insert into insurance.notifications
-                (recipient_id, type, title, message, is_read, created_at)
-                values (?, ?, ?, ?, false, now())
-                """,
-                recipientId,
-                type,
-                title,
-                message
-        );
-    }
-
-    private void purgeExpiredUnpaidApplications(Long userId) {
-        var stale = jdbcTemplate.query(
-                """
-                select pa.id, pa.issued_policy_id
-                from insurance.policy_applications pa
-                left join insurance.policies p on p.id = pa.issued_policy_id
-                where pa.user_id = ?
-                  and upper(pa.status) in ('APPROVED', 'PAYMENT_PENDING')
-                  and pa.updated_at < (now() - interval '1 day')
-                  and (
-                        p.id is null
-                        or p.status in ('DRAFT'::insurance.policy_status, 'PENDING_PAY'::insurance.policy_status)
-                  )
-                """,
-                (rs, rowNum) -> Map.of(
-                        "applicationId", rs.getLong("id"),
-                        "policyId", (Long) rs.getObject("issued_policy_id")
-                ),
-                userId
-        );
-
-        for (var row : stale) {
-            Long applicationId = (Long) row.get("applicationId");
-            Long policyId = (Long) row.get("policyId");
-            jdbcTemplate.update(
-                    "delete from insurance.policy_applications where id = ? and user_id = ?",
-                    applicationId,
-                    userId
-            );
-            if (policyId != null) {
-                jdbcTemplate.update(
-                        """
-                        delete from insurance.policies
-                        where id = ?
-                          and user_id = ?
-                          and status in ('DRAFT'::insurance.policy_status, 'PENDING_PAY'::insurance.policy_status)
-                        """,
-                        policyId,
-                        userId
-                );
-            }
-        }
-    }
-
     private boolean deleteApplicationAndPolicyIfAllowed(Long applicationId, Long userId) {
         var rows = jdbcTemplate.query(
                 """
@@ -1129,8 +365,9 @@ public class OsagoController {
                 from insurance.policy_applications pa
                 left join insurance.policies p on p.id = pa.issued_policy_id
                 where pa.id = ? and pa.user_id = ?
+                  and not %s
                 limit 1
-                """,
+                """.formatted(unpaidSweeper.expiredPredicate("pa")),
                 (rs, rowNum) -> Map.of(
                         "id", rs.getLong("id"),
                         "status", rs.getString("status"),
@@ -1182,10 +419,6 @@ public class OsagoController {
         return true;
     }
 
-    private String generatePolicyNumber(Long id) {
-        return String.format("EEE %09d", id);
-    }
-
     public record RefDataResponse(
             List<RefVehicleCategoryDto> vehicleCategories,
             List<RefRegionDto> regions,
@@ -1218,6 +451,40 @@ public class OsagoController {
     ) {
     }
 
+    public record CalcBatchRequest(List<CalcRequest> requests) {
+    }
+
+    public record CalcBatchItem(int index, CalcResponse result, String error) {
+    }
+
+    public record CalcBatchResponse(List<CalcBatchItem> items) {
+    }
+
+    public record CalcMatrixCell(
+            int termMonths,
+            boolean unlimitedDrivers,
+            String kbmClassCode,
+            Long tariffVersionId,
+            BigDecimal coeffTerm,
+            BigDecimal coeffDrivers,
+            BigDecimal coeffKvs,
+            BigDecimal coeffKbm,
+            BigDecimal resultAmount
+    ) {
+    }
+
+    public record CalcMatrixResponse(
+            Long vehicleCategoryId,
+            Long regionId,
+            Integer powerHp,
+            Integer driverAgeYears,
+            Integer driverExperienceYears,
+            List<Integer> termMonths,
+            List<String> kbmClassCodes,
+            List<CalcMatrixCell> cells
+    ) {
+    }
+
     public record CalcResponse(
             Long calcRequestId,
             Long tariffVersionId,
@@ -1316,19 +583,4 @@ public class OsagoController {
             String policyStatus
     ) {
     }
-
-    private record CalcRow(
-            Long id,
-            Long userId,
-            Long vehicleCategoryId,
-            Long regionId,
-            Integer powerHp,
-            Boolean unlimitedDrivers,
-            Integer termMonths,
-            BigDecimal resultAmount,
-            Long tariffVersionId
-    ) {
-    }
 }
-
-
@@ -0,0 +1,12 @@
+package vkr.osago.osago;
+
+public interface PaymentProvider {
+
+    String name();
+
+    String checkout(PaymentTransitionService.StartedPayment payment, String returnUrl);
+
+    static String defaultReturnUrl(String returnUrl) {
+        return (returnUrl == null || returnUrl.isBlank()) ? "/cabinet/client/index.html" : returnUrl;
+    }
+}
@@ -0,0 +1,26 @@
+package vkr.osago.osago;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+@Component
+public class PaymentProviders {
+
+    private final PaymentProvider current;
+
+    public PaymentProviders(
+            List<PaymentProvider> providers,
+            @Value("${app.payments.provider:manual}") String selected
+    ) {
+        this.current = providers.stream()
+                .filter(provider -> provider.name().equalsIgnoreCase(selected.trim()))
+                .findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("Unknown app.payments.provider: " + selected));
+    }
+
+    public PaymentProvider current() {
+        return current;
+    }
+}
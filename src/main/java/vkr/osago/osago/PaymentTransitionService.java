@@ -0,0 +1,234 @@
+package vkr.osago.osago;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.web.server.ResponseStatusException;
+import vkr.osago.policies.UnpaidApplicationSweeper;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+@Service
+public class PaymentTransitionService {
+
+    private static final String START = """
+            with target as (
+                select pa.id, pa.status
+                from insurance.policy_applications pa
+                where pa.id = ? and pa.user_id = ?
+                  and not %1$s
+            ), application as (
+                update insurance.policy_applications pa
+                set status = ?, updated_at = now()
+                from target t
+                where pa.id = t.id
+                  and upper(pa.status) in (%2$s)
+                returning pa.issued_policy_id
+            ), policy as (
+                update insurance.policies p
+                set status = ?::insurance.policy_status
+                from application a
+                where p.id = a.issued_policy_id
+                  and p.status in (%3$s)
+                returning p.id, p.premium_amount
+            ), payment as (
+                insert into insurance.payments
+                (policy_id, amount, status, provider, external_id, created_at)
+                select p.id, p.premium_amount, ?::insurance.payment_status, ?, ?, now()
+                from policy p
+                returning id, amount
+            )
+            select t.status as application_status,
+                   null::bigint as target_payment_id,
+                   (select count(*) from application) as applications,
+                   (select count(*) from policy) as policies,
+                   (select id from payment) as payment_id,
+                   (select amount from payment) as amount
+            from target t
+            """;
+
+    private static final String CONFIRM = """
+            with target as (
+                select pa.id, pa.issued_policy_id, pa.status, pay.id as payment_id
+                from insurance.policy_applications pa
+                left join lateral (
+                    select p.id
+                    from insurance.payments p
+                    where p.policy_id = pa.issued_policy_id
+                    order by p.created_at desc
+                    limit 1
+                ) pay on true
+                where pa.id = ? and pa.user_id = ?
+                  and not %1$s
+            ), application as (
+                update insurance.policy_applications pa
+                set status = ?, updated_at = now()
+                from target t
+                where pa.id = t.id
+                  and t.payment_id is not null
+                  and upper(pa.status) in (%2$s)
+                returning pa.id
+            ), payment as (
+                update insurance.payments p
+                set status = ?::insurance.payment_status
+                from target t, application a
+                where p.id = t.payment_id
+                  and p.status::text in (%4$s)
+                returning p.id
+            ), policy as (
+                update insurance.policies p
+                set status = ?::insurance.policy_status
+                from target t, application a
+                where p.id = t.issued_policy_id
+                  and p.status in (%3$s)
+                returning p.id
+            ), notification as (
+                insert into insurance.notifications
+                (recipient_id, type, title, message, is_read, created_at)
+                select ?, 'NEW_MESSAGE', ?, ?, false, now()
+                from payment, policy
+                where ?::boolean
+            )
+            select t.status as application_status,
+                   t.payment_id as target_payment_id,
+                   (select count(*) from application) as applications,
+                   (select count(*) from policy) as policies,
+                   (select id from payment) as payment_id,
+                   null::numeric as amount
+            from target t
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final String startSql;
+    private final String confirmSql;
+
+    public PaymentTransitionService(JdbcTemplate jdbcTemplate, UnpaidApplicationSweeper unpaidSweeper) {
+        this.jdbcTemplate = jdbcTemplate;
+        String expired = unpaidSweeper.expiredPredicate("pa");
+        String payable = sqlList(PaymentWorkflow.PAYABLE_APP_STATUSES);
+        String unpaid = sqlList(PaymentWorkflow.UNPAID_POLICY_STATUSES);
+        String open = sqlList(PaymentWorkflow.OPEN_PAYMENT_STATUSES);
+        this.startSql = START.formatted(expired, payable, unpaid);
+        this.confirmSql = CONFIRM.formatted(expired, payable, unpaid, open);
+    }
+
+    @Transactional
+    public StartedPayment start(Long userId, Long applicationId, OsagoController.PayRequest req) {
+        PaymentWorkflow.PaymentStart next = PaymentWorkflow.paymentStarted();
+        String externalId = UUID.randomUUID().toString();
+        Outcome outcome = single(jdbcTemplate.query(
+                startSql,
+                (rs, rowNum) -> outcome(rs),
+                applicationId,
+                userId,
+                next.applicationStatus().name(),
+                next.policyStatus().name(),
+                next.paymentStatus().name(),
+                req.provider().trim(),
+                externalId
+        ));
+        if (!isPayable(outcome.applicationStatus())) {
+            throw new IllegalStateException("Application is not approved by agent");
+        }
+        requireApplied(outcome);
+        if (outcome.policies() == 0 || outcome.paymentId() == null) {
+            throw new IllegalStateException("Failed to create payment");
+        }
+        return new StartedPayment(outcome.paymentId(), externalId, outcome.amount(), next.paymentStatus().name());
+    }
+
+    @Transactional
+    public OsagoController.PayConfirmResponse confirm(Long userId, Long applicationId) {
+        PaymentWorkflow.PaymentConfirm next = PaymentWorkflow.paymentConfirmed();
+        Outcome outcome = single(jdbcTemplate.query(
+                confirmSql,
+                (rs, rowNum) -> outcome(rs),
+                applicationId,
+                userId,
+                next.applicationStatus().name(),
+                next.paymentStatus().name(),
+                next.policyStatus().name(),
+                userId,
+                next.notificationTitle(),
+                next.notificationMessage(),
+                next.notifyClient()
+        ));
+        if (!isPayable(outcome.applicationStatus())) {
+            throw new IllegalStateException("Payment is not in pending state");
+        }
+        if (outcome.targetPaymentId() == null) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Payment not created");
+        }
+        requireApplied(outcome);
+        // The application moved but the payment or policy did not: roll the whole transition back.
+        if (outcome.paymentId() == null || outcome.policies() == 0) {
+            throw new IllegalStateException("Payment was changed by a concurrent request");
+        }
+        return new OsagoController.PayConfirmResponse(
+                outcome.paymentId(),
+                next.paymentStatus().name(),
+                next.policyStatus().name()
+        );
+    }
+
+    private static Outcome single(List<Outcome> rows) {
+        if (rows.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Application not found");
+        }
+        return rows.get(0);
+    }
+
+    private static void requireApplied(Outcome outcome) {
+        if (outcome.applications() == 0) {
+            throw new IllegalStateException("Application status was changed by a concurrent request");
+        }
+    }
+
+    private static boolean isPayable(String status) {
+        return status != null && PaymentWorkflow.PAYABLE_APP_STATUSES.stream()
+                .anyMatch(s -> s.name().equalsIgnoreCase(status));
+    }
+
+    private static Outcome outcome(ResultSet rs) throws SQLException {
+        return new Outcome(
+                rs.getString("application_status"),
+                (Long) rs.getObject("target_payment_id"),
+                rs.getLong("applications"),
+                rs.getLong("policies"),
+                (Long) rs.getObject("payment_id"),
+                rs.getBigDecimal("amount")
+        );
+    }
+
+    static String sqlList(Set<? extends Enum<?>> statuses) {
+        return statuses.stream()
+                .map(status -> "'" + status.name() + "'")
+                .sorted()
+                .collect(Collectors.joining(", "));
+    }
+
+    private record Outcome(
+            String applicationStatus,
+            Long targetPaymentId,
+            long applications,
+            long policies,
+            Long paymentId,
+            BigDecimal amount
+    ) {
+    }
+
+    public record StartedPayment(
+            Long paymentId,
+            String externalId,
+            BigDecimal amount,
+            String status
+    ) {
+    }
+}
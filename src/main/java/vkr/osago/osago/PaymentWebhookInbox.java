@@ -0,0 +1,298 @@
+package vkr.osago.osago;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class PaymentWebhookInbox {
+
+    private static final String RECEIVE = """
+            insert into insurance.payment_webhook_inbox
+            (provider, external_id, outcome, payload, status, received_at)
+            values (?, ?, ?, ?, 'PENDING', now())
+            on conflict (provider, external_id, outcome) do nothing
+            """;
+
+    private static final String CLAIM = """
+            select i.id, i.outcome, pay.id as payment_id, pay.status::text as payment_status,
+                   pa.status as application_status
+            from insurance.payment_webhook_inbox i
+            left join insurance.payments pay on pay.external_id = i.external_id
+            left join insurance.policy_applications pa on pa.issued_policy_id = pay.policy_id
+            where i.status = 'PENDING'
+            order by i.id
+            limit ?
+            for update of i skip locked
+            """;
+
+    private static final String APPLY = """
+            with target as (
+                select pay.id as payment_id, pol.id as policy_id, pa.id as application_id, pa.user_id
+                from insurance.payments pay
+                join insurance.policies pol on pol.id = pay.policy_id
+                join insurance.policy_applications pa on pa.issued_policy_id = pol.id
+                where pay.id = ?
+                  and pay.status::text in (%1$s)
+                  and pol.status in (%2$s)
+                  and upper(pa.status) = ?
+                for update of pay, pol, pa
+            ), payment as (
+                update insurance.payments p
+                set status = ?::insurance.payment_status
+                from target t
+                where p.id = t.payment_id
+                returning p.id
+            ), policy as (
+                update insurance.policies p
+                set status = ?::insurance.policy_status
+                from target t
+                where p.id = t.policy_id
+                returning p.id
+            ), notification as (
+                insert into insurance.notifications
+                (recipient_id, type, title, message, is_read, created_at)
+                select t.user_id, 'NEW_MESSAGE', ?, ?, false, now()
+                from target t
+                where ?::boolean
+            )
+            update insurance.policy_applications pa
+            set status = ?, updated_at = now()
+            from target t
+            where pa.id = t.application_id
+            """;
+
+    private static final String MARK = """
+            update insurance.payment_webhook_inbox
+            set status = ?, error = ?, processed_at = now()
+            where id = ?
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final boolean enabled;
+    private final int workers;
+    private final int batchSize;
+    private final long pollIntervalMs;
+    private final String applySql;
+    private final Semaphore wakeups = new Semaphore(0);
+    private final List<Thread> workerThreads = new ArrayList<>();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private volatile boolean running;
+
+    public PaymentWebhookInbox(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.payments.webhooks.enabled:true}") boolean enabled,
+            @Value("${app.payments.webhooks.workers:2}") int workers,
+            @Value("${app.payments.webhooks.batch-size:100}") int batchSize,
+            @Value("${app.payments.webhooks.poll-interval-ms:1000}") long pollIntervalMs
+    ) {
+        if (workers < 1) throw new IllegalArgumentException("app.payments.webhooks.workers must be >= 1");
+        if (batchSize < 1) throw new IllegalArgumentException("app.payments.webhooks.batch-size must be >= 1");
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.pollIntervalMs = pollIntervalMs;
+        this.applySql = APPLY.formatted(
+                PaymentTransitionService.sqlList(PaymentWorkflow.OPEN_PAYMENT_STATUSES),
+                PaymentTransitionService.sqlList(PaymentWorkflow.UNPAID_POLICY_STATUSES)
+        );
+    }
+
+    public boolean receive(String provider, String externalId, PaymentWorkflow.PaymentStatus outcome, String payload) {
+        if (provider == null || provider.isBlank()) throw new IllegalArgumentException("provider is required");
+        if (externalId == null || externalId.isBlank()) throw new IllegalArgumentException("externalId is required");
+        if (outcome != PaymentWorkflow.PaymentStatus.SUCCESS && outcome != PaymentWorkflow.PaymentStatus.FAILED) {
+            throw new IllegalArgumentException("outcome must be SUCCESS or FAILED");
+        }
+        boolean inserted = jdbcTemplate.update(RECEIVE, provider, externalId, outcome.name(), payload) > 0;
+        if (inserted) {
+            received.incrementAndGet();
+            wakeups.release();
+        }
+        return inserted;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public synchronized void start() {
+        if (!enabled || running) {
+            return;
+        }
+        running = true;
+        for (int i = 1; i <= workers; i++) {
+            Thread worker = new Thread(this::work, "payment-webhook-worker-" + i);
+            worker.setDaemon(true);
+            worker.start();
+            workerThreads.add(worker);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        running = false;
+        workerThreads.forEach(Thread::interrupt);
+        workerThreads.clear();
+    }
+
+    private void work() {
+        while (running) {
+            try {
+                if (drainBatch() < batchSize) {
+                    wakeups.tryAcquire(pollIntervalMs, TimeUnit.MILLISECONDS);
+                    wakeups.drainPermits();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException ex) {
+                // Covers DataAccessException and TransactionException alike: the worker must outlive a lost database.
+                // Claimed rows are released with the rolled back transaction and picked up again.
+                try {
+                    Thread.sleep(pollIntervalMs);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    public int drainBatch() {
+        Integer drained = transaction.execute(status -> drainInTransaction());
+        return drained == null ? 0 : drained;
+    }
+
+    private int drainInTransaction() {
+        List<Event> events = jdbcTemplate.query(
+                CLAIM,
+                (rs, rowNum) -> new Event(
+                        rs.getLong("id"),
+                        PaymentWorkflow.PaymentStatus.valueOf(rs.getString("outcome")),
+                        (Long) rs.getObject("payment_id"),
+                        rs.getString("payment_status"),
+                        rs.getString("application_status")
+                ),
+                batchSize
+        );
+        if (events.isEmpty()) {
+            return 0;
+        }
+
+        List<Event> applying = new ArrayList<>();
+        List<Object[]> applyArgs = new ArrayList<>();
+        List<Object[]> marks = new ArrayList<>();
+        for (Event event : events) {
+            try {
+                Object[] args = transition(event);
+                if (args == null) {
+                    marks.add(new Object[]{"PROCESSED", null, event.id()});
+                } else {
+                    applying.add(event);
+                    applyArgs.add(args);
+                }
+            } catch (IllegalArgumentException | IllegalStateException ex) {
+                marks.add(new Object[]{"REJECTED", ex.getMessage(), event.id()});
+            }
+        }
+
+        int[] counts = applyArgs.isEmpty() ? new int[0] : jdbcTemplate.batchUpdate(applySql, applyArgs);
+        for (int i = 0; i < applying.size(); i++) {
+            boolean applied = i < counts.length && counts[i] != 0;
+            marks.add(applied
+                    ? new Object[]{"PROCESSED", null, applying.get(i).id()}
+                    : new Object[]{"REJECTED", "Payment or application was changed concurrently", applying.get(i).id()});
+        }
+        jdbcTemplate.batchUpdate(MARK, marks);
+
+        for (Object[] mark : marks) {
+            if ("PROCESSED".equals(mark[0])) {
+                processed.incrementAndGet();
+            } else {
+                rejected.incrementAndGet();
+            }
+        }
+        return events.size();
+    }
+
+    private Object[] transition(Event event) {
+        if (event.paymentId() == null) {
+            throw new IllegalArgumentException("Payment not found");
+        }
+        PaymentWorkflow.PaymentStatus current = fromDb(event.paymentStatus());
+        if (current == event.outcome()) {
+            // Redelivery of an outcome that is already applied.
+            return null;
+        }
+        PaymentWorkflow.AppStatus appStatus = event.applicationStatus() == null
+                ? null
+                : PaymentWorkflow.AppStatus.valueOf(event.applicationStatus().trim().toUpperCase());
+
+        if (event.outcome() == PaymentWorkflow.PaymentStatus.SUCCESS) {
+            PaymentWorkflow.PaymentConfirm next = PaymentWorkflow.confirmSuccess(current, appStatus);
+            return new Object[]{
+                    event.paymentId(),
+                    appStatus.name(),
+                    toDb(next.paymentStatus()),
+                    next.policyStatus().name(),
+                    next.notificationTitle(),
+                    next.notificationMessage(),
+                    next.notifyClient(),
+                    next.applicationStatus().name()
+            };
+        }
+        PaymentWorkflow.PaymentFailure next = PaymentWorkflow.failPayment(current, appStatus);
+        return new Object[]{
+                event.paymentId(),
+                appStatus.name(),
+                toDb(next.paymentStatus()),
+                next.policyStatus().name(),
+                null,
+                null,
+                next.notifyClient(),
+                next.applicationStatus().name()
+        };
+    }
+
+    static PaymentWorkflow.PaymentStatus fromDb(String status) {
+        if ("FAIL".equalsIgnoreCase(status)) {
+            return PaymentWorkflow.PaymentStatus.FAILED;
+        }
+        return PaymentWorkflow.PaymentStatus.valueOf(status.toUpperCase());
+    }
+
+    static String toDb(PaymentWorkflow.PaymentStatus status) {
+        return status == PaymentWorkflow.PaymentStatus.FAILED ? "FAIL" : status.name();
+    }
+
+    public Stats stats() {
+        return new Stats(received.get(), processed.get(), rejected.get());
+    }
+
+    public record Stats(long received, long processed, long rejected) {
+    }
+
+    private record Event(
+            long id,
+            PaymentWorkflow.PaymentStatus outcome,
+            Long paymentId,
+            String paymentStatus,
+            String applicationStatus
+    ) {
+    }
+}
@@ -1,18 +1,27 @@
 package vkr.osago.osago;
 
 import java.time.OffsetDateTime;
+import java.util.Set;
 
 public final class PaymentWorkflow {
+    public static final Set<AppStatus> PAYABLE_APP_STATUSES = Set.of(AppStatus.APPROVED, AppStatus.PAYMENT_PENDING);
+    public static final Set<PaymentStatus> OPEN_PAYMENT_STATUSES = Set.of(PaymentStatus.NEW, PaymentStatus.PENDING);
+    public static final Set<PolicyStatus> UNPAID_POLICY_STATUSES = Set.of(PolicyStatus.DRAFT, PolicyStatus.PENDING_PAY);
+
     private PaymentWorkflow() {
     }
 
     public static PaymentStart startPayment(PaymentRequest request, AppStatus appStatus) {
         if (request == null) throw new IllegalArgumentException("request is required");
         if (appStatus == null) throw new IllegalArgumentException("application status is required");
-        if (!(appStatus == AppStatus.APPROVED || appStatus == AppStatus.PAYMENT_PENDING)) {
+        if (!PAYABLE_APP_STATUSES.contains(appStatus)) {
             throw new IllegalStateException("Application is not approved by agent");
         }
         validateCard(request.cardNumber(), request.expMonth(), request.expYear(), request.cvv());
+        return paymentStarted();
+    }
+
+    public static PaymentStart paymentStarted() {
         return new PaymentStart(PaymentStatus.NEW, AppStatus.PAYMENT_PENDING, PolicyStatus.PENDING_PAY);
     }
 
@@ -20,12 +29,16 @@ public final class PaymentWorkflow {
         if (currentPaymentStatus == null || currentAppStatus == null) {
             throw new IllegalArgumentException("statuses are required");
         }
-        if (!(currentAppStatus == AppStatus.PAYMENT_PENDING || currentAppStatus == AppStatus.APPROVED)) {
+        if (!PAYABLE_APP_STATUSES.contains(currentAppStatus)) {
             throw new IllegalStateException("Payment is not in pending state");
         }
-        if (!(currentPaymentStatus == PaymentStatus.NEW || currentPaymentStatus == PaymentStatus.PENDING)) {
+        if (!OPEN_PAYMENT_STATUSES.contains(currentPaymentStatus)) {
             throw new IllegalStateException("Payment is not created");
         }
+        return paymentConfirmed();
+    }
+
+    public static PaymentConfirm paymentConfirmed() {
         return new PaymentConfirm(
                 PaymentStatus.SUCCESS,
                 AppStatus.PAID,
@@ -41,7 +54,7 @@ public final class PaymentWorkflow {
         if (currentPaymentStatus == null || appStatus == null) {
             throw new IllegalArgumentException("statuses are required");
         }
-        if (!(currentPaymentStatus == PaymentStatus.NEW || currentPaymentStatus == PaymentStatus.PENDING)) {
+        if (!OPEN_PAYMENT_STATUSES.contains(currentPaymentStatus)) {
             throw new IllegalStateException("Payment cannot be failed in current status");
         }
         return new PaymentFailure(
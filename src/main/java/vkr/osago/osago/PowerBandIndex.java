@@ -0,0 +1,70 @@
+package vkr.osago.osago;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+final class PowerBandIndex {
+
+    private final int[] hpFrom;
+    private final int[] hpTo;
+    private final BigDecimal[] coefficients;
+    private final long[] scaled;
+
+    PowerBandIndex(List<TariffSnapshot.PowerBand> bands) {
+        List<TariffSnapshot.PowerBand> sorted = bands.stream()
+                .sorted(Comparator.comparingInt(TariffSnapshot.PowerBand::hpFrom))
+                .toList();
+        int size = sorted.size();
+        hpFrom = new int[size];
+        hpTo = new int[size];
+        coefficients = new BigDecimal[size];
+        scaled = new long[size];
+
+        for (int i = 0; i < size; i++) {
+            TariffSnapshot.PowerBand band = sorted.get(i);
+            if (band.coefficient() == null) {
+                throw new IllegalArgumentException("Power band from " + band.hpFrom() + " hp has no coefficient");
+            }
+            if (band.hpTo() == null && i < size - 1) {
+                throw new IllegalArgumentException("Power bands overlap: open band from " + band.hpFrom() + " hp is not the last one");
+            }
+            if (band.hpTo() != null && band.hpTo() < band.hpFrom()) {
+                throw new IllegalArgumentException("Power band from " + band.hpFrom() + " hp ends before it starts");
+            }
+            if (i > 0) {
+                int expectedFrom = hpTo[i - 1] + 1;
+                if (band.hpFrom() < expectedFrom) {
+                    throw new IllegalArgumentException("Power bands overlap at " + band.hpFrom() + " hp");
+                }
+                if (band.hpFrom() > expectedFrom) {
+                    throw new IllegalArgumentException("Power bands have a gap at " + expectedFrom + " hp");
+                }
+            }
+            hpFrom[i] = band.hpFrom();
+            hpTo[i] = band.hpTo() == null ? Integer.MAX_VALUE : band.hpTo();
+            coefficients[i] = band.coefficient();
+            scaled[i] = FixedPoint.scaled(band.coefficient(), FixedPoint.COEFFICIENT_SCALE);
+        }
+    }
+
+    BigDecimal coefficient(int powerHp) {
+        int index = indexOf(powerHp);
+        return index < 0 ? null : coefficients[index];
+    }
+
+    long scaledCoefficient(int powerHp) {
+        int index = indexOf(powerHp);
+        return index < 0 ? FixedPoint.MISSING : scaled[index];
+    }
+
+    private int indexOf(int powerHp) {
+        int found = Arrays.binarySearch(hpFrom, powerHp);
+        int index = found >= 0 ? found : -found - 2;
+        if (index < 0 || hpTo[index] < powerHp) {
+            return -1;
+        }
+        return index;
+    }
+}
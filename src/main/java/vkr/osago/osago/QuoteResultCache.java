@@ -0,0 +1,159 @@
+package vkr.osago.osago;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+@Service
+public class QuoteResultCache {
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Long, Key> keysByCalcRequestId = new HashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    @Autowired
+    public QuoteResultCache(
+            @Value("${app.osago.calc.result-cache.max-entries:10000}") int maxEntries,
+            @Value("${app.osago.calc.result-cache.ttl-seconds:60}") long ttlSeconds
+    ) {
+        this(maxEntries, ttlSeconds, System::nanoTime);
+    }
+
+    QuoteResultCache(int maxEntries, long ttlSeconds, LongSupplier clock) {
+        if (maxEntries < 0) throw new IllegalArgumentException("max-entries must be >= 0");
+        if (ttlSeconds < 0) throw new IllegalArgumentException("ttl-seconds must be >= 0");
+        this.maxEntries = maxEntries;
+        this.ttlNanos = TimeUnit.SECONDS.toNanos(ttlSeconds);
+        this.clock = clock;
+    }
+
+    public boolean enabled() {
+        return maxEntries > 0 && ttlNanos > 0;
+    }
+
+    static Key key(Long userId, QuoteService.Quote quote, LocalDate today) {
+        var req = quote.request();
+        boolean unlimited = req.unlimitedDrivers();
+        return new Key(
+                userId,
+                quote.tariffVersionId(),
+                today,
+                req.vehicleCategoryId(),
+                req.regionId(),
+                req.powerHp(),
+                req.termMonths(),
+                unlimited,
+                unlimited ? null : req.driverBirthDate(),
+                unlimited ? null : req.licenseIssuedDate(),
+                quote.kbmClassCode()
+        );
+    }
+
+    OsagoController.CalcResponse get(Key key, QuoteService.Quote quote) {
+        if (!enabled()) {
+            return null;
+        }
+        synchronized (entries) {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt - clock.getAsLong() <= 0) {
+                remove(key, entry);
+                evictions.incrementAndGet();
+                entry = null;
+            }
+            // A tariff edit within the same version changes the price; never hand out a stale result.
+            if (entry == null || !entry.response.equals(quote.toResponse(entry.response.calcRequestId()))) {
+                misses.incrementAndGet();
+                return null;
+            }
+            hits.incrementAndGet();
+            return entry.response;
+        }
+    }
+
+    void put(Key key, OsagoController.CalcResponse response) {
+        if (!enabled()) {
+            return;
+        }
+        synchronized (entries) {
+            Entry previous = entries.put(key, new Entry(response, clock.getAsLong() + ttlNanos));
+            if (previous != null) {
+                keysByCalcRequestId.remove(previous.response.calcRequestId());
+            }
+            keysByCalcRequestId.put(response.calcRequestId(), key);
+            Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+            while (entries.size() > maxEntries && eldest.hasNext()) {
+                Map.Entry<Key, Entry> victim = eldest.next();
+                eldest.remove();
+                keysByCalcRequestId.remove(victim.getValue().response.calcRequestId());
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    public void evictCalcRequest(Long calcRequestId) {
+        if (calcRequestId == null) {
+            return;
+        }
+        synchronized (entries) {
+            Key key = keysByCalcRequestId.remove(calcRequestId);
+            if (key != null) {
+                entries.remove(key);
+            }
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+            keysByCalcRequestId.clear();
+        }
+    }
+
+    public Stats stats() {
+        int size;
+        synchronized (entries) {
+            size = entries.size();
+        }
+        return new Stats(hits.get(), misses.get(), evictions.get(), size, maxEntries);
+    }
+
+    private void remove(Key key, Entry entry) {
+        entries.remove(key);
+        keysByCalcRequestId.remove(entry.response.calcRequestId());
+    }
+
+    record Key(
+            Long userId,
+            Long tariffVersionId,
+            LocalDate pricedOn,
+            long vehicleCategoryId,
+            long regionId,
+            int powerHp,
+            int termMonths,
+            boolean unlimitedDrivers,
+            LocalDate driverBirthDate,
+            LocalDate licenseIssuedDate,
+            String kbmClassCode
+    ) {
+    }
+
+    private record Entry(OsagoController.CalcResponse response, long expiresAt) {
+    }
+
+    public record Stats(long hits, long misses, long evictions, int size, int maxEntries) {
+    }
+}
@@ -0,0 +1,461 @@
+package vkr.osago.osago;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.Period;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+
+@Service
+public class QuoteService {
+
+    private static final BigDecimal ONE = new BigDecimal("1.0000");
+    private static final List<String> DEFAULT_KBM_CLASSES = List.of(
+            "M", "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13"
+    );
+    private static final Comparator<String> KBM_CLASS_ORDER = Comparator.comparingInt(QuoteService::kbmClassRank)
+            .thenComparing(Comparator.naturalOrder());
+
+    private final TariffSnapshotService tariffSnapshots;
+    private final CalcRequestWriter calcRequests;
+    private final QuoteResultCache results;
+    private final int batchMaxItems;
+
+    public QuoteService(
+            TariffSnapshotService tariffSnapshots,
+            CalcRequestWriter calcRequests,
+            QuoteResultCache results,
+            @Value("${app.osago.calc.batch-max-items:200}") int batchMaxItems
+    ) {
+        this.tariffSnapshots = tariffSnapshots;
+        this.calcRequests = calcRequests;
+        this.results = results;
+        this.batchMaxItems = batchMaxItems;
+    }
+
+    public OsagoController.CalcResponse quote(Long userId, OsagoController.CalcRequest req) {
+        LocalDate today = LocalDate.now();
+        Quote quote = price(req, tariffSnapshots.current(), today, new HashMap<>());
+        // Anonymous callers may share a calc row: checkout copies it for the buyer instead of claiming it.
+        QuoteResultCache.Key key = QuoteResultCache.key(userId, quote, today);
+        OsagoController.CalcResponse cached = results.get(key, quote);
+        if (cached != null) {
+            return cached;
+        }
+        Long calcRequestId = calcRequests.write(userId, List.of(quote)).get(0);
+        OsagoController.CalcResponse response = quote.toResponse(calcRequestId);
+        results.put(key, response);
+        return response;
+    }
+
+    public List<OsagoController.CalcBatchItem> quoteBatch(Long userId, List<OsagoController.CalcRequest> requests) {
+        if (requests == null || requests.isEmpty()) {
+            throw new IllegalArgumentException("requests must not be empty");
+        }
+        if (requests.size() > batchMaxItems) {
+            throw new IllegalArgumentException("requests must contain at most " + batchMaxItems + " items");
+        }
+
+        TariffSnapshot snapshot = tariffSnapshots.current();
+        LocalDate today = LocalDate.now();
+        Map<TariffKey, Optional<TariffSnapshot.TariffVersion>> tariffs = new HashMap<>();
+
+        Quote[] quotes = new Quote[requests.size()];
+        QuoteResultCache.Key[] keys = new QuoteResultCache.Key[requests.size()];
+        OsagoController.CalcResponse[] responses = new OsagoController.CalcResponse[requests.size()];
+        String[] errors = new String[requests.size()];
+        List<Quote> priced = new ArrayList<>();
+        Map<QuoteResultCache.Key, Integer> firstByKey = new HashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            try {
+                quotes[i] = price(requests.get(i), snapshot, today, tariffs);
+            } catch (IllegalArgumentException ex) {
+                errors[i] = ex.getMessage();
+                continue;
+            }
+            keys[i] = QuoteResultCache.key(userId, quotes[i], today);
+            if (!firstByKey.containsKey(keys[i])) {
+                responses[i] = results.get(keys[i], quotes[i]);
+                if (responses[i] == null) {
+                    priced.add(quotes[i]);
+                }
+                firstByKey.put(keys[i], i);
+            }
+        }
+
+        List<Long> ids = priced.isEmpty() ? List.of() : calcRequests.write(userId, priced);
+
+        List<OsagoController.CalcBatchItem> items = new ArrayList<>(requests.size());
+        int next = 0;
+        for (int i = 0; i < requests.size(); i++) {
+            if (quotes[i] == null) {
+                items.add(new OsagoController.CalcBatchItem(i, null, errors[i]));
+                continue;
+            }
+            int first = firstByKey.get(keys[i]);
+            if (first == i && responses[i] == null) {
+                responses[i] = quotes[i].toResponse(ids.get(next++));
+                results.put(keys[i], responses[i]);
+            }
+            items.add(new OsagoController.CalcBatchItem(i, responses[first], null));
+        }
+        return items;
+    }
+
+    public OsagoController.CalcMatrixResponse matrix(
+            Long vehicleCategoryId,
+            Long regionId,
+            Integer powerHp,
+            LocalDate driverBirthDate,
+            LocalDate licenseIssuedDate
+    ) {
+        TariffSnapshot snapshot = tariffSnapshots.current();
+        LocalDate today = LocalDate.now();
+        List<Integer> terms = snapshot.activeTermMonths();
+        if (terms.isEmpty()) {
+            throw new IllegalArgumentException("No active insurance terms");
+        }
+        if ((driverBirthDate == null) != (licenseIssuedDate == null)) {
+            throw new IllegalArgumentException("driverBirthDate and licenseIssuedDate must be provided together");
+        }
+        validateCalcRequest(
+                new OsagoController.CalcRequest(vehicleCategoryId, regionId, powerHp, true, terms.get(0), null, null, null),
+                snapshot,
+                today
+        );
+        boolean limitedDrivers = driverBirthDate != null;
+        Integer driverAgeYears = fullYears(driverBirthDate, "driverBirthDate", today);
+        Integer driverExperienceYears = fullYears(licenseIssuedDate, "licenseIssuedDate", today);
+        List<String> kbmClasses = matrixKbmClasses(snapshot, today);
+
+        Map<TariffKey, Optional<TariffSnapshot.TariffVersion>> tariffs = new HashMap<>();
+        List<OsagoController.CalcMatrixCell> cells = new ArrayList<>();
+        for (Integer termMonths : terms) {
+            for (String kbmClass : kbmClasses) {
+                TariffSnapshot.TariffVersion tariff = tariffs.computeIfAbsent(
+                        new TariffKey(vehicleCategoryId, regionId, powerHp, termMonths, kbmClass),
+                        k -> Optional.ofNullable(snapshot.findTariff(
+                                today, k.vehicleCategoryId(), k.regionId(), k.powerHp(), k.termMonths(), k.kbmClassCode()
+                        ))
+                ).orElse(null);
+                if (tariff == null) {
+                    continue;
+                }
+                BigDecimal baseRate = tariff.baseRate(vehicleCategoryId);
+                BigDecimal coeffRegion = tariff.regionCoefficient(regionId);
+                BigDecimal coeffPower = tariff.powerCoefficient(powerHp);
+                BigDecimal coeffTerm = tariff.termCoefficient(termMonths);
+                BigDecimal coeffKbm = snapshot.kbmEnabled() ? tariff.kbmCoefficient(kbmClass) : defaultKbm(kbmClass);
+                if (baseRate == null || coeffRegion == null || coeffPower == null || coeffTerm == null || coeffKbm == null) {
+                    continue;
+                }
+                long baseCents = tariff.baseRateCents(vehicleCategoryId);
+                long scaledRegion = tariff.regionCoefficientScaled(regionId);
+                long scaledPower = tariff.powerCoefficientScaled(powerHp);
+                long scaledTerm = tariff.termCoefficientScaled(termMonths);
+                long scaledKbm = snapshot.kbmEnabled()
+                        ? tariff.kbmCoefficientScaled(kbmClass)
+                        : FixedPoint.scaled(coeffKbm, FixedPoint.COEFFICIENT_SCALE);
+
+                for (boolean unlimited : new boolean[]{true, false}) {
+                    if (!unlimited && !limitedDrivers) {
+                        continue;
+                    }
+                    BigDecimal coeffDrivers = tariff.driversCoefficient(unlimited);
+                    long scaledDrivers = tariff.driversCoefficientScaled(unlimited);
+                    if (coeffDrivers == null) {
+                        coeffDrivers = ONE;
+                        scaledDrivers = FixedPoint.ONE;
+                    }
+                    BigDecimal coeffKvs = ONE;
+                    long scaledKvs = FixedPoint.ONE;
+                    if (!unlimited && snapshot.kvsEnabled()) {
+                        coeffKvs = tariff.kvsCoefficient(driverAgeYears, driverExperienceYears);
+                        if (coeffKvs == null) {
+                            continue;
+                        }
+                        scaledKvs = tariff.kvsCoefficientScaled(driverAgeYears, driverExperienceYears);
+                    }
+                    long cents = FixedPoint.premiumCents(
+                            baseCents, scaledRegion, scaledPower, scaledDrivers, scaledTerm, scaledKvs, scaledKbm
+                    );
+                    cells.add(new OsagoController.CalcMatrixCell(
+                            termMonths,
+                            unlimited,
+                            kbmClass,
+                            tariff.id(),
+                            coeffTerm,
+                            coeffDrivers,
+                            coeffKvs,
+                            coeffKbm,
+                            cents != FixedPoint.NOT_REPRESENTABLE
+                                    ? BigDecimal.valueOf(cents, FixedPoint.AMOUNT_SCALE)
+                                    : FixedPoint.premiumExact(baseRate, coeffRegion, coeffPower, coeffDrivers, coeffTerm, coeffKvs, coeffKbm)
+                    ));
+                }
+            }
+        }
+
+        return new OsagoController.CalcMatrixResponse(
+                vehicleCategoryId,
+                regionId,
+                powerHp,
+                driverAgeYears,
+                driverExperienceYears,
+                terms,
+                kbmClasses,
+                cells
+        );
+    }
+
+    Quote price(
+            OsagoController.CalcRequest req,
+            TariffSnapshot snapshot,
+            LocalDate today,
+            Map<TariffKey, Optional<TariffSnapshot.TariffVersion>> tariffs
+    ) {
+        validateCalcRequest(req, snapshot, today);
+
+        String normalizedKbmClass = normalizeKbmClass(req.kbmClassCode());
+        Integer driverAgeYears = null;
+        Integer driverExperienceYears = null;
+        if (!req.unlimitedDrivers()) {
+            driverAgeYears = fullYears(req.driverBirthDate(), "driverBirthDate", today);
+            driverExperienceYears = fullYears(req.licenseIssuedDate(), "licenseIssuedDate", today);
+        }
+
+        TariffKey key = new TariffKey(
+                req.vehicleCategoryId(),
+                req.regionId(),
+                req.powerHp(),
+                req.termMonths(),
+                normalizedKbmClass
+        );
+        TariffSnapshot.TariffVersion tariff = tariffs.computeIfAbsent(key, k -> Optional.ofNullable(snapshot.findTariff(
+                today,
+                k.vehicleCategoryId(),
+                k.regionId(),
+                k.powerHp(),
+                k.termMonths(),
+                k.kbmClassCode()
+        ))).orElse(null);
+        if (tariff == null) {
+            throw new IllegalArgumentException("No active OSAGO tariff found for provided parameters");
+        }
+
+        BigDecimal baseRate = tariff.baseRate(req.vehicleCategoryId());
+        if (baseRate == null) {
+            throw new IllegalArgumentException("Base rate not found for selected vehicle category");
+        }
+
+        BigDecimal coeffRegion = tariff.regionCoefficient(req.regionId());
+        if (coeffRegion == null) {
+            throw new IllegalArgumentException("Region coefficient not found");
+        }
+
+        BigDecimal coeffPower = tariff.powerCoefficient(req.powerHp());
+        if (coeffPower == null) {
+            throw new IllegalArgumentException("Power coefficient not found");
+        }
+
+        BigDecimal coeffDrivers = tariff.driversCoefficient(req.unlimitedDrivers());
+        long scaledDrivers = tariff.driversCoefficientScaled(req.unlimitedDrivers());
+        if (coeffDrivers == null) {
+            coeffDrivers = ONE;
+            scaledDrivers = FixedPoint.ONE;
+        }
+
+        BigDecimal coeffTerm = tariff.termCoefficient(req.termMonths());
+        if (coeffTerm == null) {
+            throw new IllegalArgumentException("Insurance term coefficient not found");
+        }
+
+        BigDecimal coeffKvs = ONE;
+        long scaledKvs = FixedPoint.ONE;
+        if (!req.unlimitedDrivers() && snapshot.kvsEnabled()) {
+            coeffKvs = tariff.kvsCoefficient(driverAgeYears, driverExperienceYears);
+            if (coeffKvs == null) {
+                throw new IllegalArgumentException("KVS coefficient not found for provided age and experience");
+            }
+            scaledKvs = tariff.kvsCoefficientScaled(driverAgeYears, driverExperienceYears);
+        }
+
+        BigDecimal coeffKbm = snapshot.kbmEnabled()
+                ? tariff.kbmCoefficient(normalizedKbmClass)
+                : defaultKbm(normalizedKbmClass);
+        if (coeffKbm == null) {
+            throw new IllegalArgumentException("KBM class is not available in active tariff");
+        }
+        long scaledKbm = snapshot.kbmEnabled()
+                ? tariff.kbmCoefficientScaled(normalizedKbmClass)
+                : FixedPoint.scaled(coeffKbm, FixedPoint.COEFFICIENT_SCALE);
+
+        long cents = FixedPoint.premiumCents(
+                tariff.baseRateCents(req.vehicleCategoryId()),
+                tariff.regionCoefficientScaled(req.regionId()),
+                tariff.powerCoefficientScaled(req.powerHp()),
+                scaledDrivers,
+                tariff.termCoefficientScaled(req.termMonths()),
+                scaledKvs,
+                scaledKbm
+        );
+        // Coefficients pre-scaled at snapshot load keep BigDecimal arithmetic off the common path.
+        BigDecimal resultAmount = cents != FixedPoint.NOT_REPRESENTABLE
+                ? BigDecimal.valueOf(cents, FixedPoint.AMOUNT_SCALE)
+                : FixedPoint.premiumExact(baseRate, coeffRegion, coeffPower, coeffDrivers, coeffTerm, coeffKvs, coeffKbm);
+
+        return new Quote(
+                req,
+                tariff.id(),
+                baseRate,
+                coeffRegion,
+                coeffPower,
+                coeffDrivers,
+                coeffTerm,
+                coeffKvs,
+                normalizedKbmClass,
+                coeffKbm,
+                driverAgeYears,
+                driverExperienceYears,
+                resultAmount
+        );
+    }
+
+    private void validateCalcRequest(OsagoController.CalcRequest req, TariffSnapshot snapshot, LocalDate today) {
+        if (req == null) throw new IllegalArgumentException("Request body is missing");
+        if (req.vehicleCategoryId() == null) throw new IllegalArgumentException("vehicleCategoryId is required");
+        if (req.regionId() == null) throw new IllegalArgumentException("regionId is required");
+        if (req.powerHp() == null || req.powerHp() <= 0 || req.powerHp() > 2000) {
+            throw new IllegalArgumentException("powerHp must be in range 1..2000");
+        }
+        if (req.termMonths() == null || req.termMonths() <= 0) throw new IllegalArgumentException("termMonths must be > 0");
+        if (req.unlimitedDrivers() == null) throw new IllegalArgumentException("unlimitedDrivers is required");
+        if (!snapshot.isActiveCategory(req.vehicleCategoryId())) {
+            throw new IllegalArgumentException("vehicleCategoryId is invalid");
+        }
+        if (!snapshot.isActiveRegion(req.regionId())) {
+            throw new IllegalArgumentException("regionId is invalid");
+        }
+        if (!snapshot.isActiveTerm(req.termMonths())) {
+            throw new IllegalArgumentException("termMonths is invalid");
+        }
+        if (!req.unlimitedDrivers()) {
+            if (req.driverBirthDate() == null) throw new IllegalArgumentException("driverBirthDate is required for limited drivers");
+            if (req.licenseIssuedDate() == null) throw new IllegalArgumentException("licenseIssuedDate is required for limited drivers");
+            if (req.driverBirthDate().isAfter(today)) {
+                throw new IllegalArgumentException("driverBirthDate cannot be in the future");
+            }
+            if (req.licenseIssuedDate().isAfter(today)) {
+                throw new IllegalArgumentException("licenseIssuedDate cannot be in the future");
+            }
+        }
+    }
+
+    private Integer fullYears(LocalDate fromDate, String fieldName, LocalDate today) {
+        if (fromDate == null) {
+            return null;
+        }
+        if (fromDate.isAfter(today)) {
+            throw new IllegalArgumentException(fieldName + " cannot be in the future");
+        }
+        int years = Period.between(fromDate, today).getYears();
+        if (years < 0) {
+            throw new IllegalArgumentException(fieldName + " is invalid");
+        }
+        return years;
+    }
+
+    private String normalizeKbmClass(String value) {
+        if (value == null || value.isBlank()) {
+            return "3";
+        }
+        return value.trim().toUpperCase();
+    }
+
+    private List<String> matrixKbmClasses(TariffSnapshot snapshot, LocalDate today) {
+        if (!snapshot.kbmEnabled()) {
+            return DEFAULT_KBM_CLASSES;
+        }
+        Set<String> classes = new TreeSet<>(KBM_CLASS_ORDER);
+        for (TariffSnapshot.TariffVersion version : snapshot.versions()) {
+            if (version.isValidOn(today)) {
+                classes.addAll(version.kbmCoefficients().keySet());
+            }
+        }
+        return List.copyOf(classes);
+    }
+
+    private static int kbmClassRank(String classCode) {
+        if ("M".equalsIgnoreCase(classCode)) return -1;
+        try {
+            return Integer.parseInt(classCode);
+        } catch (NumberFormatException ex) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
+    private BigDecimal defaultKbm(String classCode) {
+        if ("M".equalsIgnoreCase(classCode)) return new BigDecimal("3.9200");
+        if ("0".equals(classCode)) return new BigDecimal("2.9400");
+        if ("1".equals(classCode)) return new BigDecimal("2.2500");
+        if ("2".equals(classCode)) return new BigDecimal("1.7600");
+        if ("3".equals(classCode)) return new BigDecimal("1.1700");
+        if ("4".equals(classCode)) return new BigDecimal("1.0000");
+        if ("5".equals(classCode)) return new BigDecimal("0.9100");
+        if ("6".equals(classCode)) return new BigDecimal("0.8300");
+        if ("7".equals(classCode)) return new BigDecimal("0.7800");
+        if ("8".equals(classCode)) return new BigDecimal("0.7400");
+        if ("9".equals(classCode)) return new BigDecimal("0.6800");
+        if ("10".equals(classCode)) return new BigDecimal("0.6300");
+        if ("11".equals(classCode)) return new BigDecimal("0.5700");
+        if ("12".equals(classCode)) return new BigDecimal("0.5200");
+        if ("13".equals(classCode)) return new BigDecimal("0.4600");
+        return new BigDecimal("1.1700");
+    }
+
+    record TariffKey(long vehicleCategoryId, long regionId, int powerHp, int termMonths, String kbmClassCode) {
+    }
+
+    record Quote(
+            OsagoController.CalcRequest request,
+            Long tariffVersionId,
+            BigDecimal baseRate,
+            BigDecimal coeffRegion,
+            BigDecimal coeffPower,
+            BigDecimal coeffDrivers,
+            BigDecimal coeffTerm,
+            BigDecimal coeffKvs,
+            String kbmClassCode,
+            BigDecimal coeffKbm,
+            Integer driverAgeYears,
+            Integer driverExperienceYears,
+            BigDecimal resultAmount
+    ) {
+        OsagoController.CalcResponse toResponse(Long calcRequestId) {
+            return new OsagoController.CalcResponse(
+                    calcRequestId,
+                    tariffVersionId,
+                    baseRate,
+                    coeffRegion,
+                    coeffPower,
+                    coeffDrivers,
+                    coeffTerm,
+                    coeffKvs,
+                    kbmClassCode,
+                    coeffKbm,
+                    driverAgeYears,
+                    driverExperienceYears,
+                    resultAmount
+            );
+        }
+    }
+}
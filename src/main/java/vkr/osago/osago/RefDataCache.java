@@ -0,0 +1,160 @@
+package vkr.osago.osago;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import tools.jackson.databind.json.JsonMapper;
+import vkr.osago.common.SchemaCapabilities;
+
+import java.math.BigDecimal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+@Service
+public class RefDataCache {
+
+    private static final List<OsagoController.RefKbmClassDto> DEFAULT_KBM_CLASSES = List.of(
+            new OsagoController.RefKbmClassDto("3", new BigDecimal("1.1700")),
+            new OsagoController.RefKbmClassDto("4", new BigDecimal("1.0000"))
+    );
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SchemaCapabilities schema;
+    private final JsonMapper jsonMapper;
+    private final AtomicReference<CachedRefData> current = new AtomicReference<>();
+
+    public RefDataCache(JdbcTemplate jdbcTemplate, SchemaCapabilities schema, JsonMapper jsonMapper) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.schema = schema;
+        this.jsonMapper = jsonMapper;
+    }
+
+    public CachedRefData current() {
+        CachedRefData cached = current.get();
+        return cached != null ? cached : refresh();
+    }
+
+    public synchronized CachedRefData refresh() {
+        CachedRefData loaded = serialize(load());
+        CachedRefData previous = current.get();
+        if (previous != null && previous.version().equals(loaded.version())) {
+            return previous;
+        }
+        current.set(loaded);
+        return loaded;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            refresh();
+        } catch (DataAccessException ignored) {
+            // Reference data will be loaded lazily on the first request.
+        }
+    }
+
+    @Scheduled(
+            initialDelayString = "${app.ref-data.refresh-ms:60000}",
+            fixedDelayString = "${app.ref-data.refresh-ms:60000}"
+    )
+    public void scheduledRefresh() {
+        try {
+            refresh();
+        } catch (DataAccessException ignored) {
+            // Keep serving the previous version until the database is reachable again.
+        }
+    }
+
+    CachedRefData serialize(OsagoController.RefDataResponse response) {
+        byte[] body = jsonMapper.writeValueAsBytes(response);
+        return new CachedRefData(contentVersion(body), body);
+    }
+
+    private OsagoController.RefDataResponse load() {
+        var categories = jdbcTemplate.query(
+                """
+                select id, code, name
+                from insurance.ref_vehicle_categories
+                where is_active = true
+                order by id
+                """,
+                (rs, rowNum) -> new OsagoController.RefVehicleCategoryDto(
+                        rs.getLong("id"),
+                        rs.getString("code"),
+                        rs.getString("name")
+                )
+        );
+
+        var regions = jdbcTemplate.query(
+                """
+                select id, code, name
+                from insurance.ref_regions
+                where is_active = true
+                order by id
+                """,
+                (rs, rowNum) -> new OsagoController.RefRegionDto(
+                        rs.getLong("id"),
+                        rs.getString("code"),
+                        rs.getString("name")
+                )
+        );
+
+        var terms = jdbcTemplate.query(
+                """
+                select months, name
+                from insurance.ref_policy_terms
+                where is_active = true
+                order by months desc
+                """,
+                (rs, rowNum) -> new OsagoController.RefTermDto(
+                        rs.getInt("months"),
+                        rs.getString("name")
+                )
+        );
+
+        List<OsagoController.RefKbmClassDto> kbmClasses = DEFAULT_KBM_CLASSES;
+        if (schema.hasTable("osago_kbm_coefficients")) {
+            var loaded = jdbcTemplate.query(
+                    """
+                    select kc.class_code, kc.coefficient
+                    from insurance.osago_kbm_coefficients kc
+                    join insurance.osago_tariff_versions tv on tv.id = kc.tariff_version_id
+                    where tv.is_active = true
+                      and tv.valid_from <= current_date
+                      and (tv.valid_to is null or tv.valid_to >= current_date)
+                    order by kc.coefficient desc, kc.class_code
+                    """,
+                    (rs, rowNum) -> new OsagoController.RefKbmClassDto(
+                            rs.getString("class_code"),
+                            rs.getBigDecimal("coefficient")
+                    )
+            );
+            if (!loaded.isEmpty()) {
+                kbmClasses = loaded;
+            }
+        }
+
+        return new OsagoController.RefDataResponse(categories, regions, terms, kbmClasses);
+    }
+
+    private static String contentVersion(byte[] body) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+            return HexFormat.of().formatHex(digest, 0, 16);
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    public record CachedRefData(String version, byte[] body) {
+        public String etag() {
+            return "\"" + version + "\"";
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package vkr.osago.osago;
+
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleSupplier;
+
+@Component
+public class SimulatedPaymentProvider implements PaymentProvider {
+
+    public static final String NAME = "simulator";
+
+    private final PaymentWebhookInbox inbox;
+    private final JsonMapper jsonMapper;
+    private final long minLatencyMs;
+    private final long maxLatencyMs;
+    private final double failureRate;
+    private final ScheduledExecutorService scheduler;
+    private final DoubleSupplier random;
+    private final AtomicLong scheduled = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    @Autowired
+    public SimulatedPaymentProvider(
+            PaymentWebhookInbox inbox,
+            JsonMapper jsonMapper,
+            @Value("${app.payments.simulator.min-latency-ms:200}") long minLatencyMs,
+            @Value("${app.payments.simulator.max-latency-ms:2000}") long maxLatencyMs,
+            @Value("${app.payments.simulator.failure-rate:0.05}") double failureRate,
+            @Value("${app.payments.simulator.threads:2}") int threads
+    ) {
+        this(inbox, jsonMapper, minLatencyMs, maxLatencyMs, failureRate, schedulerWithThreads(threads),
+                () -> ThreadLocalRandom.current().nextDouble());
+    }
+
+    SimulatedPaymentProvider(
+            PaymentWebhookInbox inbox,
+            JsonMapper jsonMapper,
+            long minLatencyMs,
+            long maxLatencyMs,
+            double failureRate,
+            ScheduledExecutorService scheduler,
+            DoubleSupplier random
+    ) {
+        if (minLatencyMs < 0 || maxLatencyMs < minLatencyMs) {
+            throw new IllegalArgumentException("app.payments.simulator latency range is invalid");
+        }
+        if (failureRate < 0 || failureRate > 1) {
+            throw new IllegalArgumentException("app.payments.simulator.failure-rate must be within [0, 1]");
+        }
+        this.inbox = inbox;
+        this.jsonMapper = jsonMapper;
+        this.minLatencyMs = minLatencyMs;
+        this.maxLatencyMs = maxLatencyMs;
+        this.failureRate = failureRate;
+        this.scheduler = scheduler;
+        this.random = random;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public String checkout(PaymentTransitionService.StartedPayment payment, String returnUrl) {
+        long delayMs = minLatencyMs + Math.round((maxLatencyMs - minLatencyMs) * random.getAsDouble());
+        PaymentWorkflow.PaymentStatus outcome = random.getAsDouble() < failureRate
+                ? PaymentWorkflow.PaymentStatus.FAILED
+                : PaymentWorkflow.PaymentStatus.SUCCESS;
+        String payload = jsonMapper.writeValueAsString(Map.of(
+                "externalId", payment.externalId(),
+                "amount", payment.amount(),
+                "status", outcome.name()
+        ));
+        scheduled.incrementAndGet();
+        scheduler.schedule(() -> deliver(payment.externalId(), outcome, payload), delayMs, TimeUnit.MILLISECONDS);
+        return PaymentProvider.defaultReturnUrl(returnUrl);
+    }
+
+    private void deliver(String externalId, PaymentWorkflow.PaymentStatus outcome, String payload) {
+        try {
+            inbox.receive(NAME, externalId, outcome, payload);
+            delivered.incrementAndGet();
+        } catch (RuntimeException ex) {
+            // A real acquirer would retry; the simulator only counts lost callbacks.
+            failed.incrementAndGet();
+        }
+    }
+
+    public Stats stats() {
+        return new Stats(scheduled.get(), delivered.get(), failed.get());
+    }
+
+    @PreDestroy
+    public void stop() {
+        scheduler.shutdownNow();
+    }
+
+    private static ScheduledExecutorService schedulerWithThreads(int threads) {
+        if (threads < 1) throw new IllegalArgumentException("app.payments.simulator.threads must be >= 1");
+        AtomicInteger counter = new AtomicInteger();
+        return Executors.newScheduledThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "payment-simulator-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public record Stats(long scheduled, long delivered, long failed) {
+    }
+}
@@ -0,0 +1,32 @@
+package vkr.osago.osago;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.stereotype.Component;
+import vkr.osago.common.CacheInvalidationBus;
+
+import java.util.EnumSet;
+
+@Component
+public class TariffCacheInvalidation {
+
+    public TariffCacheInvalidation(
+            CacheInvalidationBus bus,
+            TariffSnapshotService tariffSnapshots,
+            RefDataCache refDataCache
+    ) {
+        bus.subscribe(CacheInvalidationBus.Topic.TARIFFS, invalidation -> refreshQuietly(tariffSnapshots::refresh));
+        // Reference data embeds KBM classes, so tariff changes invalidate it too.
+        bus.subscribe(
+                EnumSet.of(CacheInvalidationBus.Topic.TARIFFS, CacheInvalidationBus.Topic.REFERENCE_DATA),
+                invalidation -> refreshQuietly(refDataCache::refresh)
+        );
+    }
+
+    private static void refreshQuietly(Runnable refresh) {
+        try {
+            refresh.run();
+        } catch (DataAccessException ignored) {
+            // The scheduled refresh will pick the change up once the database is reachable again.
+        }
+    }
+}
@@ -1,10 +1,17 @@
 package vkr.osago.osago;
 
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 import java.util.Map;
 
 public final class TariffCalculator {
+    private static final BigDecimal POWER_UP_TO_70 = new BigDecimal("1.00");
+    private static final BigDecimal POWER_UP_TO_100 = new BigDecimal("1.10");
+    private static final BigDecimal POWER_UP_TO_150 = new BigDecimal("1.30");
+    private static final BigDecimal POWER_ABOVE_150 = new BigDecimal("1.50");
+    private static final BigDecimal TERM_3 = new BigDecimal("0.50");
+    private static final BigDecimal TERM_6 = new BigDecimal("0.70");
+    private static final BigDecimal TERM_12 = new BigDecimal("1.00");
+
     private TariffCalculator() {
     }
 
@@ -19,13 +26,14 @@ public final class TariffCalculator {
                 ? config.unlimitedDriversCoefficient()
                 : config.limitedDriversCoefficient();
 
-        BigDecimal amount = config.baseRate()
-                .multiply(categoryCoeff)
-                .multiply(regionCoeff)
-                .multiply(powerCoeff)
-                .multiply(termCoeff)
-                .multiply(driversCoeff)
-                .setScale(2, RoundingMode.HALF_UP);
+        BigDecimal amount = FixedPoint.premium(
+                config.baseRate(),
+                categoryCoeff,
+                regionCoeff,
+                powerCoeff,
+                termCoeff,
+                driversCoeff
+        );
 
         return new CalcResult(
                 input.vehicleCategoryId(),
@@ -81,17 +89,17 @@ public final class TariffCalculator {
     }
 
     static BigDecimal powerCoefficient(int hp) {
-        if (hp <= 70) return new BigDecimal("1.00");
-        if (hp <= 100) return new BigDecimal("1.10");
-        if (hp <= 150) return new BigDecimal("1.30");
-        return new BigDecimal("1.50");
+        if (hp <= 70) return POWER_UP_TO_70;
+        if (hp <= 100) return POWER_UP_TO_100;
+        if (hp <= 150) return POWER_UP_TO_150;
+        return POWER_ABOVE_150;
     }
 
     static BigDecimal termCoefficient(int months) {
         return switch (months) {
-            case 3 -> new BigDecimal("0.50");
-            case 6 -> new BigDecimal("0.70");
-            case 12 -> new BigDecimal("1.00");
+            case 3 -> TERM_3;
+            case 6 -> TERM_6;
+            case 12 -> TERM_12;
             default -> throw new IllegalArgumentException("termMonths is unsupported");
         };
     }
@@ -0,0 +1,269 @@
+package vkr.osago.osago;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+public final class TariffSnapshot {
+
+    private final List<TariffVersion> versions;
+    private final Set<Long> activeCategoryIds;
+    private final Set<Long> activeRegionIds;
+    private final Set<Integer> activeTermMonths;
+    private final boolean kbmEnabled;
+    private final boolean kvsEnabled;
+    private final OffsetDateTime loadedAt;
+    private final Map<Long, String> rejectedVersions;
+
+    public TariffSnapshot(
+            List<TariffVersion> versions,
+            Set<Long> activeCategoryIds,
+            Set<Long> activeRegionIds,
+            Set<Integer> activeTermMonths,
+            boolean kbmEnabled,
+            boolean kvsEnabled,
+            OffsetDateTime loadedAt
+    ) {
+        this(versions, activeCategoryIds, activeRegionIds, activeTermMonths, kbmEnabled, kvsEnabled, loadedAt, Map.of());
+    }
+
+    public TariffSnapshot(
+            List<TariffVersion> versions,
+            Set<Long> activeCategoryIds,
+            Set<Long> activeRegionIds,
+            Set<Integer> activeTermMonths,
+            boolean kbmEnabled,
+            boolean kvsEnabled,
+            OffsetDateTime loadedAt,
+            Map<Long, String> rejectedVersions
+    ) {
+        this.versions = versions.stream()
+                .sorted(Comparator.comparing(TariffVersion::validFrom).reversed()
+                        .thenComparing(Comparator.comparingLong(TariffVersion::id).reversed()))
+                .toList();
+        this.activeCategoryIds = Set.copyOf(activeCategoryIds);
+        this.activeRegionIds = Set.copyOf(activeRegionIds);
+        this.activeTermMonths = Set.copyOf(activeTermMonths);
+        this.kbmEnabled = kbmEnabled;
+        this.kvsEnabled = kvsEnabled;
+        this.loadedAt = loadedAt;
+        this.rejectedVersions = Map.copyOf(rejectedVersions);
+    }
+
+    public TariffVersion findTariff(
+            LocalDate date,
+            long vehicleCategoryId,
+            long regionId,
+            int powerHp,
+            int termMonths,
+            String kbmClassCode
+    ) {
+        for (TariffVersion version : versions) {
+            if (!version.isValidOn(date)) continue;
+            if (version.baseRate(vehicleCategoryId) == null) continue;
+            if (version.regionCoefficient(regionId) == null) continue;
+            if (version.powerCoefficient(powerHp) == null) continue;
+            if (version.termCoefficient(termMonths) == null) continue;
+            if (!version.hasDriversCoefficients()) continue;
+            if (kbmEnabled && version.kbmCoefficient(kbmClassCode) == null) continue;
+            return version;
+        }
+        return null;
+    }
+
+    public boolean isActiveCategory(Long id) {
+        return id != null && activeCategoryIds.contains(id);
+    }
+
+    public boolean isActiveRegion(Long id) {
+        return id != null && activeRegionIds.contains(id);
+    }
+
+    public boolean isActiveTerm(Integer months) {
+        return months != null && activeTermMonths.contains(months);
+    }
+
+    public List<Integer> activeTermMonths() {
+        return activeTermMonths.stream().sorted().toList();
+    }
+
+    public List<TariffVersion> versions() {
+        return versions;
+    }
+
+    public boolean kbmEnabled() {
+        return kbmEnabled;
+    }
+
+    public boolean kvsEnabled() {
+        return kvsEnabled;
+    }
+
+    public OffsetDateTime loadedAt() {
+        return loadedAt;
+    }
+
+    public Map<Long, String> rejectedVersions() {
+        return rejectedVersions;
+    }
+
+    public static final class TariffVersion {
+        private final long id;
+        private final LocalDate validFrom;
+        private final LocalDate validTo;
+        private final Map<Long, BigDecimal> baseRates;
+        private final Map<Long, BigDecimal> regionCoefficients;
+        private final PowerBandIndex powerBands;
+        private final Map<Integer, BigDecimal> termCoefficients;
+        private final BigDecimal limitedDriversCoefficient;
+        private final BigDecimal unlimitedDriversCoefficient;
+        private final KvsGrid kvsGrid;
+        private final Map<String, BigDecimal> kbmCoefficients;
+        private final Map<Long, Long> baseRateCents;
+        private final Map<Long, Long> regionCoefficientsScaled;
+        private final Map<Integer, Long> termCoefficientsScaled;
+        private final long limitedDriversScaled;
+        private final long unlimitedDriversScaled;
+        private final Map<String, Long> kbmCoefficientsScaled;
+
+        public TariffVersion(
+                long id,
+                LocalDate validFrom,
+                LocalDate validTo,
+                Map<Long, BigDecimal> baseRates,
+                Map<Long, BigDecimal> regionCoefficients,
+                List<PowerBand> powerBands,
+                Map<Integer, BigDecimal> termCoefficients,
+                BigDecimal limitedDriversCoefficient,
+                BigDecimal unlimitedDriversCoefficient,
+                List<KvsCell> kvsCells,
+                Map<String, BigDecimal> kbmCoefficients
+        ) {
+            if (validFrom == null) throw new IllegalArgumentException("validFrom is required");
+            this.id = id;
+            this.validFrom = validFrom;
+            this.validTo = validTo;
+            this.baseRates = Map.copyOf(baseRates);
+            this.regionCoefficients = Map.copyOf(regionCoefficients);
+            this.powerBands = new PowerBandIndex(powerBands);
+            this.termCoefficients = Map.copyOf(termCoefficients);
+            this.limitedDriversCoefficient = limitedDriversCoefficient;
+            this.unlimitedDriversCoefficient = unlimitedDriversCoefficient;
+            this.kvsGrid = new KvsGrid(kvsCells);
+            Map<String, BigDecimal> kbm = new HashMap<>();
+            kbmCoefficients.forEach((code, coefficient) -> kbm.putIfAbsent(code.toUpperCase(), coefficient));
+            this.kbmCoefficients = Map.copyOf(kbm);
+            this.baseRateCents = scaled(this.baseRates, FixedPoint.AMOUNT_SCALE);
+            this.regionCoefficientsScaled = scaled(this.regionCoefficients, FixedPoint.COEFFICIENT_SCALE);
+            this.termCoefficientsScaled = scaled(this.termCoefficients, FixedPoint.COEFFICIENT_SCALE);
+            this.limitedDriversScaled = limitedDriversCoefficient == null
+                    ? FixedPoint.MISSING
+                    : FixedPoint.scaled(limitedDriversCoefficient, FixedPoint.COEFFICIENT_SCALE);
+            this.unlimitedDriversScaled = unlimitedDriversCoefficient == null
+                    ? FixedPoint.MISSING
+                    : FixedPoint.scaled(unlimitedDriversCoefficient, FixedPoint.COEFFICIENT_SCALE);
+            this.kbmCoefficientsScaled = scaled(this.kbmCoefficients, FixedPoint.COEFFICIENT_SCALE);
+        }
+
+        private static <K> Map<K, Long> scaled(Map<K, BigDecimal> values, int scale) {
+            Map<K, Long> scaled = new HashMap<>();
+            values.forEach((key, value) -> scaled.put(key, FixedPoint.scaled(value, scale)));
+            return Map.copyOf(scaled);
+        }
+
+        private static long scaledOrMissing(Long value) {
+            return value == null ? FixedPoint.MISSING : value;
+        }
+
+        public long id() {
+            return id;
+        }
+
+        public LocalDate validFrom() {
+            return validFrom;
+        }
+
+        public LocalDate validTo() {
+            return validTo;
+        }
+
+        public boolean isValidOn(LocalDate date) {
+            return !validFrom.isAfter(date) && (validTo == null || !validTo.isBefore(date));
+        }
+
+        public BigDecimal baseRate(long vehicleCategoryId) {
+            return baseRates.get(vehicleCategoryId);
+        }
+
+        public long baseRateCents(long vehicleCategoryId) {
+            return scaledOrMissing(baseRateCents.get(vehicleCategoryId));
+        }
+
+        public BigDecimal regionCoefficient(long regionId) {
+            return regionCoefficients.get(regionId);
+        }
+
+        public long regionCoefficientScaled(long regionId) {
+            return scaledOrMissing(regionCoefficientsScaled.get(regionId));
+        }
+
+        public BigDecimal powerCoefficient(int powerHp) {
+            return powerBands.coefficient(powerHp);
+        }
+
+        public long powerCoefficientScaled(int powerHp) {
+            return powerBands.scaledCoefficient(powerHp);
+        }
+
+        public BigDecimal termCoefficient(int months) {
+            return termCoefficients.get(months);
+        }
+
+        public long termCoefficientScaled(int months) {
+            return scaledOrMissing(termCoefficientsScaled.get(months));
+        }
+
+        public boolean hasDriversCoefficients() {
+            return unlimitedDriversCoefficient != null;
+        }
+
+        public BigDecimal driversCoefficient(boolean unlimitedDrivers) {
+            return unlimitedDrivers ? unlimitedDriversCoefficient : limitedDriversCoefficient;
+        }
+
+        public long driversCoefficientScaled(boolean unlimitedDrivers) {
+            return unlimitedDrivers ? unlimitedDriversScaled : limitedDriversScaled;
+        }
+
+        public BigDecimal kvsCoefficient(int ageYears, int experienceYears) {
+            return kvsGrid.coefficient(ageYears, experienceYears);
+        }
+
+        public long kvsCoefficientScaled(int ageYears, int experienceYears) {
+            return kvsGrid.scaledCoefficient(ageYears, experienceYears);
+        }
+
+        public BigDecimal kbmCoefficient(String classCode) {
+            return classCode == null ? null : kbmCoefficients.get(classCode.toUpperCase());
+        }
+
+        public long kbmCoefficientScaled(String classCode) {
+            return classCode == null ? FixedPoint.MISSING : scaledOrMissing(kbmCoefficientsScaled.get(classCode.toUpperCase()));
+        }
+
+        public Map<String, BigDecimal> kbmCoefficients() {
+            return kbmCoefficients;
+        }
+    }
+
+    public record PowerBand(int hpFrom, Integer hpTo, BigDecimal coefficient) {
+    }
+
+    public record KvsCell(int ageFrom, Integer ageTo, int expFrom, Integer expTo, BigDecimal coefficient) {
+    }
+}
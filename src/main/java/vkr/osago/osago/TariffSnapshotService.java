@@ -0,0 +1,311 @@
+package vkr.osago.osago;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import vkr.osago.common.SchemaCapabilities;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+@Service
+public class TariffSnapshotService {
+
+    private static final Logger log = LoggerFactory.getLogger(TariffSnapshotService.class);
+
+    private static final String ACTIVE_VERSION_IDS = """
+            select id
+            from insurance.osago_tariff_versions
+            where is_active = true
+              and (valid_to is null or valid_to >= current_date)
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SchemaCapabilities schema;
+    private final TransactionTemplate readTransaction;
+    private final AtomicReference<TariffSnapshot> current = new AtomicReference<>();
+    private final AtomicLong failedRefreshes = new AtomicLong();
+    private volatile String lastRefreshError;
+
+    public TariffSnapshotService(
+            JdbcTemplate jdbcTemplate,
+            SchemaCapabilities schema,
+            PlatformTransactionManager transactionManager
+    ) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.schema = schema;
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.readTransaction.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+    }
+
+    public TariffSnapshot current() {
+        TariffSnapshot snapshot = current.get();
+        return snapshot != null ? snapshot : refresh();
+    }
+
+    public synchronized TariffSnapshot refresh() {
+        TariffSnapshot loaded;
+        try {
+            loaded = readTransaction.execute(status -> load());
+        } catch (RuntimeException ex) {
+            failedRefreshes.incrementAndGet();
+            lastRefreshError = ex.getMessage();
+            throw ex;
+        }
+        lastRefreshError = null;
+        current.set(loaded);
+        return loaded;
+    }
+
+    public Stats stats() {
+        TariffSnapshot snapshot = current.get();
+        return new Stats(
+                snapshot == null ? null : snapshot.loadedAt(),
+                snapshot == null ? List.of() : snapshot.versions().stream().map(TariffSnapshot.TariffVersion::id).toList(),
+                snapshot == null ? Map.of() : snapshot.rejectedVersions(),
+                failedRefreshes.get(),
+                lastRefreshError
+        );
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            refresh();
+        } catch (DataAccessException | IllegalStateException ignored) {
+            // Snapshot will be loaded lazily on the first quote.
+        }
+    }
+
+    @Scheduled(
+            initialDelayString = "${app.tariffs.snapshot-refresh-ms:60000}",
+            fixedDelayString = "${app.tariffs.snapshot-refresh-ms:60000}"
+    )
+    public void scheduledRefresh() {
+        try {
+            refresh();
+        } catch (DataAccessException | IllegalStateException ignored) {
+            // Keep serving the previous snapshot until the database is reachable or the tariff is fixed.
+        }
+    }
+
+    private TariffSnapshot load() {
+        boolean kbmEnabled = schema.hasTable("osago_kbm_coefficients");
+        boolean kvsEnabled = schema.hasTable("osago_kvs_coefficients");
+
+        Map<Long, VersionRows> rows = new LinkedHashMap<>();
+        jdbcTemplate.query(
+                """
+                select id, valid_from, valid_to
+                from insurance.osago_tariff_versions
+                where is_active = true
+                  and (valid_to is null or valid_to >= current_date)
+                """,
+                rs -> {
+                    long id = rs.getLong("id");
+                    rows.put(id, new VersionRows(
+                            id,
+                            rs.getObject("valid_from", LocalDate.class),
+                            rs.getObject("valid_to", LocalDate.class)
+                    ));
+                }
+        );
+
+        jdbcTemplate.query(
+                "select tariff_version_id, vehicle_category_id, base_rate from insurance.osago_base_rates " +
+                        "where tariff_version_id in (" + ACTIVE_VERSION_IDS + ")",
+                rs -> {
+                    VersionRows version = rows.get(rs.getLong("tariff_version_id"));
+                    if (version != null) {
+                        version.baseRates.putIfAbsent(rs.getLong("vehicle_category_id"), rs.getBigDecimal("base_rate"));
+                    }
+                }
+        );
+
+        jdbcTemplate.query(
+                "select tariff_version_id, region_id, coefficient from insurance.osago_region_coefficients " +
+                        "where tariff_version_id in (" + ACTIVE_VERSION_IDS + ")",
+                rs -> {
+                    VersionRows version = rows.get(rs.getLong("tariff_version_id"));
+                    if (version != null) {
+                        version.regionCoefficients.putIfAbsent(rs.getLong("region_id"), rs.getBigDecimal("coefficient"));
+                    }
+                }
+        );
+
+        jdbcTemplate.query(
+                "select tariff_version_id, hp_from, hp_to, coefficient from insurance.osago_power_coefficients " +
+                        "where tariff_version_id in (" + ACTIVE_VERSION_IDS + ")",
+                rs -> {
+                    VersionRows version = rows.get(rs.getLong("tariff_version_id"));
+                    if (version != null) {
+                        version.powerBands.add(new TariffSnapshot.PowerBand(
+                                rs.getInt("hp_from"),
+                                (Integer) rs.getObject("hp_to"),
+                                rs.getBigDecimal("coefficient")
+                        ));
+                    }
+                }
+        );
+
+        jdbcTemplate.query(
+                "select tariff_version_id, months, coefficient from insurance.osago_term_coefficients " +
+                        "where tariff_version_id in (" + ACTIVE_VERSION_IDS + ")",
+                rs -> {
+                    VersionRows version = rows.get(rs.getLong("tariff_version_id"));
+                    if (version != null) {
+                        version.termCoefficients.putIfAbsent(rs.getInt("months"), rs.getBigDecimal("coefficient"));
+                    }
+                }
+        );
+
+        jdbcTemplate.query(
+                "select tariff_version_id, coeff_limited, coeff_unlimited from insurance.osago_unlimited_driver_coefficients " +
+                        "where tariff_version_id in (" + ACTIVE_VERSION_IDS + ")",
+                rs -> {
+                    VersionRows version = rows.get(rs.getLong("tariff_version_id"));
+                    if (version != null && version.unlimitedDrivers == null) {
+                        version.limitedDrivers = rs.getBigDecimal("coeff_limited");
+                        version.unlimitedDrivers = rs.getBigDecimal("coeff_unlimited");
+                    }
+                }
+        );
+
+        if (kvsEnabled) {
+            jdbcTemplate.query(
+                    "select tariff_version_id, age_from, age_to, exp_from, exp_to, coefficient from insurance.osago_kvs_coefficients " +
+                            "where tariff_version_id in (" + ACTIVE_VERSION_IDS + ")",
+                    rs -> {
+                        VersionRows version = rows.get(rs.getLong("tariff_version_id"));
+                        if (version != null) {
+                            version.kvsCells.add(new TariffSnapshot.KvsCell(
+                                    rs.getInt("age_from"),
+                                    (Integer) rs.getObject("age_to"),
+                                    rs.getInt("exp_from"),
+                                    (Integer) rs.getObject("exp_to"),
+                                    rs.getBigDecimal("coefficient")
+                            ));
+                        }
+                    }
+            );
+        }
+
+        if (kbmEnabled) {
+            jdbcTemplate.query(
+                    "select tariff_version_id, class_code, coefficient from insurance.osago_kbm_coefficients " +
+                            "where tariff_version_id in (" + ACTIVE_VERSION_IDS + ")",
+                    rs -> {
+                        VersionRows version = rows.get(rs.getLong("tariff_version_id"));
+                        if (version != null) {
+                            version.kbmCoefficients.putIfAbsent(rs.getString("class_code"), rs.getBigDecimal("coefficient"));
+                        }
+                    }
+            );
+        }
+
+        List<TariffSnapshot.TariffVersion> versions = new ArrayList<>();
+        Map<Long, String> rejected = new HashMap<>();
+        for (VersionRows version : rows.values()) {
+            try {
+                versions.add(version.build());
+            } catch (IllegalArgumentException ex) {
+                rejected.put(version.id, ex.getMessage());
+                log.warn("Tariff version {} rejected: {}", version.id, ex.getMessage());
+            }
+        }
+        // Quoting from an older version instead of a broken newest one would charge outdated premiums.
+        rows.values().stream()
+                .filter(version -> version.validFrom != null)
+                .max(Comparator.comparing((VersionRows version) -> version.validFrom).thenComparingLong(version -> version.id))
+                .filter(newest -> rejected.containsKey(newest.id))
+                .ifPresent(newest -> {
+                    throw new IllegalStateException(
+                            "Newest tariff version " + newest.id + " is rejected: " + rejected.get(newest.id)
+                    );
+                });
+
+        return new TariffSnapshot(
+                versions,
+                new HashSet<>(jdbcTemplate.queryForList(
+                        "select id from insurance.ref_vehicle_categories where is_active = true",
+                        Long.class
+                )),
+                new HashSet<>(jdbcTemplate.queryForList(
+                        "select id from insurance.ref_regions where is_active = true",
+                        Long.class
+                )),
+                new HashSet<>(jdbcTemplate.queryForList(
+                        "select months from insurance.ref_policy_terms where is_active = true",
+                        Integer.class
+                )),
+                kbmEnabled,
+                kvsEnabled,
+                OffsetDateTime.now(),
+                rejected
+        );
+    }
+
+    public record Stats(
+            OffsetDateTime loadedAt,
+            List<Long> versionIds,
+            Map<Long, String> rejectedVersions,
+            long failedRefreshes,
+            String lastRefreshError
+    ) {
+    }
+
+    private static final class VersionRows {
+        private final long id;
+        private final LocalDate validFrom;
+        private final LocalDate validTo;
+        private final Map<Long, BigDecimal> baseRates = new HashMap<>();
+        private final Map<Long, BigDecimal> regionCoefficients = new HashMap<>();
+        private final List<TariffSnapshot.PowerBand> powerBands = new ArrayList<>();
+        private final Map<Integer, BigDecimal> termCoefficients = new HashMap<>();
+        private final List<TariffSnapshot.KvsCell> kvsCells = new ArrayList<>();
+        private final Map<String, BigDecimal> kbmCoefficients = new HashMap<>();
+        private BigDecimal limitedDrivers;
+        private BigDecimal unlimitedDrivers;
+
+        private VersionRows(long id, LocalDate validFrom, LocalDate validTo) {
+            this.id = id;
+            this.validFrom = validFrom;
+            this.validTo = validTo;
+        }
+
+        private TariffSnapshot.TariffVersion build() {
+            return new TariffSnapshot.TariffVersion(
+                    id,
+                    validFrom,
+                    validTo,
+                    baseRates,
+                    regionCoefficients,
+                    powerBands,
+                    termCoefficients,
+                    limitedDrivers,
+                    unlimitedDrivers,
+                    kvsCells,
+                    kbmCoefficients
+            );
+        }
+    }
+}
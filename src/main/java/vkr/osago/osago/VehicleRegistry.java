@@ -0,0 +1,200 @@
+package vkr.osago.osago;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+@Service
+public class VehicleRegistry {
+
+    private static final String UPSERT = """
+            with inserted as (
+                insert into insurance.vehicles
+                (owner_user_id, brand, model, vin, reg_number, created_at)
+                values (?, ?, ?, ?, ?, now())
+                on conflict do nothing
+                returning id
+            ), existing as (
+                select id, owner_user_id
+                from insurance.vehicles
+                where vin = ? or reg_number = ?
+                order by (vin is not distinct from ?) desc, id desc
+                limit 1
+            ), updated as (
+                update insurance.vehicles v
+                set brand = ?,
+                    model = ?,
+                    vin = coalesce(?, v.vin),
+                    reg_number = coalesce(?, v.reg_number)
+                from existing e
+                where v.id = e.id
+                  and e.owner_user_id = ?
+                  and not exists (select 1 from inserted)
+                returning v.id
+            )
+            select coalesce((select id from inserted), (select id from updated)) as id,
+                   (select owner_user_id from existing) as owner_user_id
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int cacheMaxEntries;
+    private final LinkedHashMap<Key, Cached> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Long, Key> keysByVehicleId = new HashMap<>();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    public VehicleRegistry(
+            JdbcTemplate jdbcTemplate,
+            @Value("${app.osago.vehicles.cache.max-entries:10000}") int cacheMaxEntries
+    ) {
+        if (cacheMaxEntries < 0) throw new IllegalArgumentException("app.osago.vehicles.cache.max-entries must be >= 0");
+        this.jdbcTemplate = jdbcTemplate;
+        this.cacheMaxEntries = cacheMaxEntries;
+    }
+
+    public Long register(Long ownerUserId, OsagoController.VehicleDto vehicle) {
+        String brand = vehicle.brand().trim();
+        String model = trimToNull(vehicle.model());
+        String vin = normalizeVin(vehicle.vin());
+        String regNumber = normalizeRegNumber(vehicle.regNumber());
+        Key key = new Key(ownerUserId, vin, regNumber);
+
+        Long cachedId = lookup(key, brand, model);
+        if (cachedId != null) {
+            return cachedId;
+        }
+
+        VehicleRow row = upsert(ownerUserId, brand, model, vin, regNumber);
+        if (row != null && row.id() == null && row.ownerUserId() == null) {
+            // A concurrent insert of the same vehicle committed after this statement's snapshot was taken:
+            // the insert hit the conflict while the lookup could not see the winning row. A new statement can.
+            row = upsert(ownerUserId, brand, model, vin, regNumber);
+        }
+        if (row == null || row.id() == null) {
+            if (row != null && row.ownerUserId() != null && !ownerUserId.equals(row.ownerUserId())) {
+                throw new IllegalArgumentException("Автомобиль с таким VIN/госномером уже привязан к другому пользователю");
+            }
+            throw new IllegalStateException("Failed to save vehicle");
+        }
+        remember(key, new Cached(row.id(), brand, model));
+        return row.id();
+    }
+
+    private VehicleRow upsert(Long ownerUserId, String brand, String model, String vin, String regNumber) {
+        try {
+            return jdbcTemplate.queryForObject(
+                    UPSERT,
+                    (rs, rowNum) -> new VehicleRow((Long) rs.getObject("id"), (Long) rs.getObject("owner_user_id")),
+                    ownerUserId,
+                    brand,
+                    model,
+                    vin,
+                    regNumber,
+                    vin,
+                    regNumber,
+                    vin,
+                    brand,
+                    model,
+                    vin,
+                    regNumber,
+                    ownerUserId
+            );
+        } catch (DuplicateKeyException ex) {
+            throw new IllegalStateException("Vehicle VIN or registration number conflicts with another vehicle");
+        }
+    }
+
+    static String normalizeVin(String vin) {
+        String value = trimToNull(vin);
+        return value == null ? null : value.replaceAll("[\\s-]+", "").toUpperCase();
+    }
+
+    static String normalizeRegNumber(String regNumber) {
+        String value = trimToNull(regNumber);
+        return value == null ? null : value.replaceAll("\\s+", "").toUpperCase();
+    }
+
+    private Long lookup(Key key, String brand, String model) {
+        if (cacheMaxEntries == 0) {
+            return null;
+        }
+        synchronized (cache) {
+            Cached cached = cache.get(key);
+            if (cached != null && cached.brand().equals(brand) && Objects.equals(cached.model(), model)) {
+                hits.incrementAndGet();
+                return cached.vehicleId();
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    private void remember(Key key, Cached cached) {
+        if (cacheMaxEntries == 0) {
+            return;
+        }
+        // Only committed rows may be served from the cache; a rolled back insert leaves no vehicle behind.
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    put(key, cached);
+                }
+            });
+        } else {
+            put(key, cached);
+        }
+    }
+
+    private void put(Key key, Cached cached) {
+        synchronized (cache) {
+            Key previous = keysByVehicleId.put(cached.vehicleId(), key);
+            if (previous != null && !previous.equals(key)) {
+                cache.remove(previous);
+            }
+            Cached replaced = cache.put(key, cached);
+            if (replaced != null && !replaced.vehicleId().equals(cached.vehicleId())) {
+                keysByVehicleId.remove(replaced.vehicleId(), key);
+            }
+            var it = cache.entrySet().iterator();
+            while (cache.size() > cacheMaxEntries && it.hasNext()) {
+                var eldest = it.next();
+                keysByVehicleId.remove(eldest.getValue().vehicleId(), eldest.getKey());
+                it.remove();
+            }
+        }
+    }
+
+    public Stats stats() {
+        synchronized (cache) {
+            return new Stats(hits.get(), misses.get(), cache.size(), cacheMaxEntries);
+        }
+    }
+
+    private static String trimToNull(String value) {
+        if (value == null) return null;
+        String t = value.trim();
+        return t.isEmpty() ? null : t;
+    }
+
+    public record Stats(long hits, long misses, int size, int maxEntries) {
+    }
+
+    private record Key(Long ownerUserId, String vin, String regNumber) {
+    }
+
+    private record Cached(Long vehicleId, String brand, String model) {
+    }
+
+    private record VehicleRow(Long id, Long ownerUserId) {
+    }
+}
@@ -27,16 +27,21 @@ public class ClientPoliciesController {
 
     private final JdbcTemplate jdbcTemplate;
     private final UserRepository users;
+    private final UnpaidApplicationSweeper unpaidSweeper;
 
-    public ClientPoliciesController(JdbcTemplate jdbcTemplate, UserRepository users) {
+    public ClientPoliciesController(
+            JdbcTemplate jdbcTemplate,
+            UserRepository users,
+            UnpaidApplicationSweeper unpaidSweeper
+    ) {
         this.jdbcTemplate = jdbcTemplate;
         this.users = users;
+        this.unpaidSweeper = unpaidSweeper;
     }
 
     @GetMapping
     public List<PolicyDto> myPolicies(@AuthenticationPrincipal UserDetails principal) {
         var user = users.findByEmail(principal.getUsername()).orElseThrow();
-        purgeExpiredUnpaidApplications(user.getId());
         return jdbcTemplate.query(
                 """
                 select p.id, p.number, p.type::text as type, p.status::text as status,
@@ -46,8 +51,14 @@ public class ClientPoliciesController {
                 left join insurance.vehicles v on v.id = p.vehicle_id
                 where p.user_id = ?
                   and p.status <> 'CANCELLED'::insurance.policy_status
+                  and not exists (
+                      select 1
+                      from insurance.policy_applications pa
+                      where pa.issued_policy_id = p.id
+                        and %s
+                  )
                 order by p.created_at desc
-                """,
+                """.formatted(unpaidSweeper.expiredPredicate("pa")),
                 (rs, rowNum) -> new PolicyDto(
                         rs.getLong("id"),
                         rs.getString("number"),
@@ -65,45 +76,6 @@ public class ClientPoliciesController {
         );
     }
 
-    private void purgeExpiredUnpaidApplications(Long userId) {
-        var stale = jdbcTemplate.query(
-                """
-                select pa.id, pa.issued_policy_id
-                from insurance.policy_applications pa
-                left join insurance.policies p on p.id = pa.issued_policy_id
-                where pa.user_id = ?
-                  and upper(pa.status) in ('APPROVED', 'PAYMENT_PENDING')
-                  and pa.updated_at < (now() - interval '1 day')
-                  and (
-                        p.id is null
-                        or p.status in ('DRAFT'::insurance.policy_status, 'PENDING_PAY'::insurance.policy_status)
-                  )
-                """,
-                (rs, rowNum) -> new StaleAppRef(rs.getLong("id"), (Long) rs.getObject("issued_policy_id")),
-                userId
-        );
-
-        for (var ref : stale) {
-            jdbcTemplate.update(
-                    "delete from insurance.policy_applications where id = ? and user_id = ?",
-                    ref.applicationId(),
-                    userId
-            );
-            if (ref.policyId() != null) {
-                jdbcTemplate.update(
-                        """
-                        delete from insurance.policies
-                        where id = ?
-                          and user_id = ?
-                          and status in ('DRAFT'::insurance.policy_status, 'PENDING_PAY'::insurance.policy_status)
-                        """,
-                        ref.policyId(),
-                        userId
-                );
-            }
-        }
-    }
-
     @GetMapping("/{id}")
     public PolicyDetailDto policyById(@AuthenticationPrincipal UserDetails principal, @PathVariable Long id) {
         var user = users.findByEmail(principal.getUsername()).orElseThrow();
@@ -286,7 +258,4 @@ public class ClientPoliciesController {
             String regNumber
     ) {
     }
-
-    private record StaleAppRef(Long applicationId, Long policyId) {
-    }
 }
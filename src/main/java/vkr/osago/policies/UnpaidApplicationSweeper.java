@@ -0,0 +1,161 @@
+package vkr.osago.policies;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.OffsetDateTime;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+@Service
+public class UnpaidApplicationSweeper {
+
+    private static final String SWEEP_BATCH = """
+            with stale as (
+                select pa.id
+                from insurance.policy_applications pa
+                where %s
+                order by pa.id
+                limit ?
+                for update of pa skip locked
+            ), deleted_applications as (
+                delete from insurance.policy_applications pa
+                using stale s
+                where pa.id = s.id
+                returning pa.issued_policy_id
+            ), deleted_policies as (
+                delete from insurance.policies p
+                using deleted_applications d
+                where p.id = d.issued_policy_id
+                  and p.status in ('DRAFT'::insurance.policy_status, 'PENDING_PAY'::insurance.policy_status)
+                returning p.id
+            )
+            select (select count(*) from deleted_applications) as applications,
+                   (select count(*) from deleted_policies) as policies
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transaction;
+    private final boolean enabled;
+    private final int ttlHours;
+    private final int batchSize;
+    private final String sweepBatchSql;
+    private final AtomicLong runs = new AtomicLong();
+    private final AtomicLong skippedRuns = new AtomicLong();
+    private final AtomicLong deletedApplications = new AtomicLong();
+    private final AtomicLong deletedPolicies = new AtomicLong();
+    private final AtomicReference<OffsetDateTime> lastRunAt = new AtomicReference<>();
+    private final AtomicLong lastRunMillis = new AtomicLong();
+
+    public UnpaidApplicationSweeper(
+            JdbcTemplate jdbcTemplate,
+            PlatformTransactionManager transactionManager,
+            @Value("${app.applications.sweeper.enabled:true}") boolean enabled,
+            @Value("${app.applications.unpaid-ttl-hours:24}") int ttlHours,
+            @Value("${app.applications.sweeper.batch-size:500}") int batchSize
+    ) {
+        if (ttlHours <= 0) throw new IllegalArgumentException("app.applications.unpaid-ttl-hours must be > 0");
+        if (batchSize <= 0) throw new IllegalArgumentException("app.applications.sweeper.batch-size must be > 0");
+        this.jdbcTemplate = jdbcTemplate;
+        this.transaction = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.ttlHours = ttlHours;
+        this.batchSize = batchSize;
+        this.sweepBatchSql = SWEEP_BATCH.formatted(expiredPredicate("pa"));
+    }
+
+    public String expiredPredicate(String applicationAlias) {
+        return """
+                (upper(%1$s.status) in ('APPROVED', 'PAYMENT_PENDING')
+                 and %1$s.updated_at < now() - interval '%2$d hours'
+                 and not exists (
+                     select 1
+                     from insurance.policies expired_p
+                     where expired_p.id = %1$s.issued_policy_id
+                       and expired_p.status not in ('DRAFT'::insurance.policy_status, 'PENDING_PAY'::insurance.policy_status)
+                 ))""".formatted(applicationAlias, ttlHours);
+    }
+
+    @Scheduled(
+            initialDelayString = "${app.applications.sweeper.interval-ms:60000}",
+            fixedDelayString = "${app.applications.sweeper.interval-ms:60000}"
+    )
+    public void scheduledSweep() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            sweep();
+        } catch (DataAccessException ignored) {
+            // Stale rows stay hidden from read endpoints until the next successful run.
+        }
+    }
+
+    public SweepResult sweep() {
+        long started = System.nanoTime();
+        long applications = 0;
+        long policies = 0;
+        while (true) {
+            SweepResult batch = transaction.execute(status -> sweepBatch());
+            if (batch == null) {
+                skippedRuns.incrementAndGet();
+                break;
+            }
+            applications += batch.applications();
+            policies += batch.policies();
+            if (batch.applications() < batchSize) {
+                break;
+            }
+        }
+        runs.incrementAndGet();
+        deletedApplications.addAndGet(applications);
+        deletedPolicies.addAndGet(policies);
+        lastRunAt.set(OffsetDateTime.now());
+        lastRunMillis.set((System.nanoTime() - started) / 1_000_000);
+        return new SweepResult(applications, policies);
+    }
+
+    private SweepResult sweepBatch() {
+        Boolean locked = jdbcTemplate.queryForObject(
+                "select pg_try_advisory_xact_lock(hashtext('policy_applications_unpaid_sweeper'))",
+                Boolean.class
+        );
+        if (!Boolean.TRUE.equals(locked)) {
+            return null;
+        }
+        return jdbcTemplate.queryForObject(
+                sweepBatchSql,
+                (rs, rowNum) -> new SweepResult(rs.getLong("applications"), rs.getLong("policies")),
+                batchSize
+        );
+    }
+
+    public Stats stats() {
+        return new Stats(
+                runs.get(),
+                skippedRuns.get(),
+                deletedApplications.get(),
+                deletedPolicies.get(),
+                lastRunAt.get(),
+                lastRunMillis.get()
+        );
+    }
+
+    public record SweepResult(long applications, long policies) {
+    }
+
+    public record Stats(
+            long runs,
+            long skippedRuns,
+            long deletedApplications,
+            long deletedPolicies,
+            OffsetDateTime lastRunAt,
+            long lastRunMillis
+    ) {
+    }
+}
@@ -34,7 +34,7 @@ public class SecurityConfig {
                                 "/favicon.ico"
                         ).permitAll()
                         .requestMatchers("/api/auth/**").permitAll()
-                        .requestMatchers("/api/osago/ref-data", "/api/osago/calc").permitAll()
+                        .requestMatchers("/api/osago/ref-data", "/api/osago/calc", "/api/osago/calc/matrix").permitAll()
                         .requestMatchers("/api/**").authenticated()
                         .anyRequest().permitAll()
                 )
@@ -0,0 +1,23 @@
+-- The vehicle registry upserts on uq_vehicle_vin / uq_vehicle_reg with normalized values,
+-- so bring existing rows to the same form unless that would collide with another vehicle.
+update insurance.vehicles v
+set vin = upper(regexp_replace(v.vin, '[[:space:]-]+', '', 'g'))
+where v.vin is not null
+  and v.vin <> upper(regexp_replace(v.vin, '[[:space:]-]+', '', 'g'))
+  and not exists (
+      select 1
+      from insurance.vehicles o
+      where o.id <> v.id
+        and upper(regexp_replace(o.vin, '[[:space:]-]+', '', 'g')) = upper(regexp_replace(v.vin, '[[:space:]-]+', '', 'g'))
+  );
+
+update insurance.vehicles v
+set reg_number = upper(regexp_replace(v.reg_number, '[[:space:]]+', '', 'g'))
+where v.reg_number is not null
+  and v.reg_number <> upper(regexp_replace(v.reg_number, '[[:space:]]+', '', 'g'))
+  and not exists (
+      select 1
+      from insurance.vehicles o
+      where o.id <> v.id
+        and upper(regexp_replace(o.reg_number, '[[:space:]]+', '', 'g')) = upper(regexp_replace(v.reg_number, '[[:space:]]+', '', 'g'))
+  );
@@ -0,0 +1,21 @@
+create table if not exists insurance.payment_webhook_inbox (
+    id bigserial primary key,
+    provider varchar(50) not null,
+    external_id varchar(128) not null,
+    outcome varchar(16) not null,
+    payload text,
+    status varchar(16) not null default 'PENDING',
+    error text,
+    received_at timestamp with time zone not null default now(),
+    processed_at timestamp with time zone,
+    constraint uq_payment_webhook_inbox_event unique (provider, external_id, outcome),
+    constraint payment_webhook_inbox_outcome_check check (outcome in ('SUCCESS', 'FAILED')),
+    constraint payment_webhook_inbox_status_check check (status in ('PENDING', 'PROCESSED', 'REJECTED'))
+);
+
+create index if not exists idx_payment_webhook_inbox_pending
+    on insurance.payment_webhook_inbox (id)
+    where status = 'PENDING';
+
+create index if not exists idx_payments_external_id
+    on insurance.payments (external_id);
@@ -0,0 +1,42 @@
+create table if not exists insurance.agent_assignment_cursor (
+    id smallint primary key default 1,
+    last_agent_id bigint,
+    updated_at timestamp with time zone not null default now(),
+    constraint agent_assignment_cursor_single_row check (id = 1)
+);
+
+insert into insurance.agent_assignment_cursor (id, last_agent_id, updated_at)
+select 1,
+       (
+           select x.assigned_agent_id
+           from (
+               select assigned_agent_id, created_at
+               from insurance.policy_applications
+               where assigned_agent_id is not null
+               union all
+               select assigned_agent_id, created_at
+               from insurance.claims
+               where assigned_agent_id is not null
+           ) x
+           order by x.created_at desc
+           limit 1
+       ),
+       now()
+on conflict (id) do nothing;
+
+create table if not exists insurance.agent_assignment_counters (
+    agent_id bigint primary key references insurance.users(id) on delete cascade,
+    assigned_count bigint not null default 0,
+    last_assigned_at timestamp with time zone
+);
+
+insert into insurance.agent_assignment_counters (agent_id, assigned_count, last_assigned_at)
+select u.assigned_agent_id, count(*), null
+from insurance.users u
+join insurance.users a on a.id = u.assigned_agent_id
+group by u.assigned_agent_id
+on conflict (agent_id) do nothing;
+
+create index if not exists idx_users_agents
+    on insurance.users (id)
+    where status = 'AGENT';
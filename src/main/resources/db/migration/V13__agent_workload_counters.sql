@@ -0,0 +1,94 @@
+-- Open items per agent, kept in step with every status or assignee change by row triggers.
+create table if not exists insurance.agent_workload (
+    agent_id bigint primary key references insurance.users(id) on delete cascade,
+    open_applications integer not null default 0,
+    open_claims integer not null default 0,
+    updated_at timestamp with time zone not null default now()
+);
+
+create or replace function insurance.agent_workload_is_open(status text)
+returns boolean
+language sql
+immutable
+as $$
+    select upper(status) in ('NEW', 'IN_REVIEW', 'NEED_INFO')
+$$;
+
+create or replace function insurance.bump_agent_workload(agent bigint, source text, delta integer)
+returns void
+language plpgsql
+as $$
+begin
+    insert into insurance.agent_workload (agent_id, open_applications, open_claims, updated_at)
+    values (
+        agent,
+        case when source = 'claims' then 0 else greatest(delta, 0) end,
+        case when source = 'claims' then greatest(delta, 0) else 0 end,
+        now()
+    )
+    on conflict (agent_id) do update set
+        open_applications = insurance.agent_workload.open_applications
+            + case when source = 'claims' then 0 else delta end,
+        open_claims = insurance.agent_workload.open_claims
+            + case when source = 'claims' then delta else 0 end,
+        updated_at = now();
+end;
+$$;
+
+create or replace function insurance.track_agent_workload()
+returns trigger
+language plpgsql
+as $$
+declare
+    old_open boolean := false;
+    new_open boolean := false;
+begin
+    if tg_op in ('UPDATE', 'DELETE') then
+        old_open := old.assigned_agent_id is not null and insurance.agent_workload_is_open(old.status::text);
+    end if;
+    if tg_op in ('INSERT', 'UPDATE') then
+        new_open := new.assigned_agent_id is not null and insurance.agent_workload_is_open(new.status::text);
+    end if;
+    if old_open and new_open and old.assigned_agent_id = new.assigned_agent_id then
+        return null;
+    end if;
+    if old_open then
+        perform insurance.bump_agent_workload(old.assigned_agent_id, tg_table_name, -1);
+    end if;
+    if new_open then
+        perform insurance.bump_agent_workload(new.assigned_agent_id, tg_table_name, 1);
+    end if;
+    return null;
+end;
+$$;
+
+drop trigger if exists trg_policy_applications_agent_workload on insurance.policy_applications;
+create trigger trg_policy_applications_agent_workload
+    after insert or delete or update of status, assigned_agent_id on insurance.policy_applications
+    for each row execute function insurance.track_agent_workload();
+
+drop trigger if exists trg_claims_agent_workload on insurance.claims;
+create trigger trg_claims_agent_workload
+    after insert or delete or update of status, assigned_agent_id on insurance.claims
+    for each row execute function insurance.track_agent_workload();
+
+insert into insurance.agent_workload (agent_id, open_applications, open_claims, updated_at)
+select x.agent_id, sum(x.open_applications), sum(x.open_claims), now()
+from (
+    select assigned_agent_id as agent_id, count(*) as open_applications, 0 as open_claims
+    from insurance.policy_applications
+    where assigned_agent_id is not null
+      and insurance.agent_workload_is_open(status)
+    group by assigned_agent_id
+    union all
+    select assigned_agent_id, 0, count(*)
+    from insurance.claims
+    where assigned_agent_id is not null
+      and insurance.agent_workload_is_open(status::text)
+    group by assigned_agent_id
+) x
+group by x.agent_id
+on conflict (agent_id) do update set
+    open_applications = excluded.open_applications,
+    open_claims = excluded.open_claims,
+    updated_at = now();
@@ -0,0 +1,2 @@
+create index if not exists idx_chat_messages_chat_id
+    on insurance.chat_messages (chat_id, id);
@@ -0,0 +1,25 @@
+create table if not exists insurance.chat_read_watermarks (
+    chat_id bigint not null,
+    reader_id bigint not null,
+    last_read_message_id bigint not null default 0,
+    updated_at timestamp with time zone not null default now(),
+    primary key (chat_id, reader_id),
+    constraint chat_read_watermarks_chat_fkey
+        foreign key (chat_id) references insurance.chats(id) on delete cascade,
+    constraint chat_read_watermarks_reader_fkey
+        foreign key (reader_id) references insurance.users(id) on delete cascade
+);
+
+-- Mark-read always covered every incoming message, so the newest receipt per reader is the watermark.
+insert into insurance.chat_read_watermarks (chat_id, reader_id, last_read_message_id, updated_at)
+select m.chat_id, r.reader_id, max(r.message_id), max(r.read_at)
+from insurance.chat_message_reads r
+join insurance.chat_messages m on m.id = r.message_id
+group by m.chat_id, r.reader_id
+on conflict (chat_id, reader_id) do update set
+    last_read_message_id = greatest(
+        insurance.chat_read_watermarks.last_read_message_id,
+        excluded.last_read_message_id
+    );
+
+drop table if exists insurance.chat_message_reads;
@@ -0,0 +1,187 @@
+-- Agent inbox read model, kept in step with chats, messages, read watermarks and claim phones by row triggers.
+create table if not exists insurance.chat_summaries (
+    chat_id bigint primary key references insurance.chats(id) on delete cascade,
+    client_id bigint not null,
+    agent_id bigint not null,
+    last_message_id bigint,
+    last_message_text text,
+    last_message_at timestamp with time zone,
+    client_unread integer not null default 0,
+    agent_unread integer not null default 0,
+    client_phone varchar(32),
+    updated_at timestamp with time zone not null default now()
+);
+
+create index if not exists idx_chat_summaries_agent_inbox
+    on insurance.chat_summaries (agent_id, agent_unread desc, last_message_at desc nulls last, chat_id desc);
+
+create index if not exists idx_chat_summaries_client
+    on insurance.chat_summaries (client_id);
+
+create or replace function insurance.chat_unread_count(target bigint, reader bigint)
+returns integer
+language sql
+stable
+as $$
+    select count(*)::integer
+    from insurance.chat_messages m
+    where m.chat_id = target
+      and m.sender_id <> reader
+      and m.id > coalesce((
+          select w.last_read_message_id
+          from insurance.chat_read_watermarks w
+          where w.chat_id = target and w.reader_id = reader
+      ), 0)
+$$;
+
+create or replace function insurance.chat_client_phone(client bigint)
+returns varchar
+language sql
+stable
+as $$
+    select cl.contact_phone
+    from insurance.claims cl
+    where cl.user_id = client
+      and cl.contact_phone is not null
+    order by cl.created_at desc, cl.id desc
+    limit 1
+$$;
+
+create or replace function insurance.refresh_chat_summary(target bigint)
+returns void
+language plpgsql
+as $$
+begin
+    insert into insurance.chat_summaries
+    (chat_id, client_id, agent_id, last_message_id, last_message_text, last_message_at,
+     client_unread, agent_unread, client_phone, updated_at)
+    select c.id, c.client_id, c.agent_id, lm.id, lm.message_text, lm.created_at,
+           insurance.chat_unread_count(c.id, c.client_id),
+           insurance.chat_unread_count(c.id, c.agent_id),
+           insurance.chat_client_phone(c.client_id),
+           now()
+    from insurance.chats c
+    left join lateral (
+        select m.id, m.message_text, m.created_at
+        from insurance.chat_messages m
+        where m.chat_id = c.id
+        order by m.id desc
+        limit 1
+    ) lm on true
+    where c.id = target
+    on conflict (chat_id) do update set
+        client_id = excluded.client_id,
+        agent_id = excluded.agent_id,
+        last_message_id = excluded.last_message_id,
+        last_message_text = excluded.last_message_text,
+        last_message_at = excluded.last_message_at,
+        client_unread = excluded.client_unread,
+        agent_unread = excluded.agent_unread,
+        client_phone = excluded.client_phone,
+        updated_at = now();
+end;
+$$;
+
+create or replace function insurance.track_chat_summary_chat()
+returns trigger
+language plpgsql
+as $$
+begin
+    perform insurance.refresh_chat_summary(new.id);
+    return null;
+end;
+$$;
+
+create or replace function insurance.track_chat_summary_message()
+returns trigger
+language plpgsql
+as $$
+begin
+    if tg_op = 'INSERT' then
+        update insurance.chat_summaries s
+        set last_message_id = case when new.id > coalesce(s.last_message_id, 0) then new.id else s.last_message_id end,
+            last_message_text = case when new.id > coalesce(s.last_message_id, 0) then new.message_text else s.last_message_text end,
+            last_message_at = case when new.id > coalesce(s.last_message_id, 0) then new.created_at else s.last_message_at end,
+            client_unread = s.client_unread + case when new.sender_id <> s.client_id then 1 else 0 end,
+            agent_unread = s.agent_unread + case when new.sender_id <> s.agent_id then 1 else 0 end,
+            updated_at = now()
+        where s.chat_id = new.chat_id;
+        if not found then
+            perform insurance.refresh_chat_summary(new.chat_id);
+        end if;
+        return null;
+    end if;
+    if tg_op = 'DELETE' then
+        perform insurance.refresh_chat_summary(old.chat_id);
+        return null;
+    end if;
+    perform insurance.refresh_chat_summary(new.chat_id);
+    if old.chat_id <> new.chat_id then
+        perform insurance.refresh_chat_summary(old.chat_id);
+    end if;
+    return null;
+end;
+$$;
+
+create or replace function insurance.track_chat_summary_read()
+returns trigger
+language plpgsql
+as $$
+begin
+    -- Lock first so the recount runs on a fresh snapshot that includes messages committed meanwhile.
+    perform 1 from insurance.chat_summaries where chat_id = new.chat_id for update;
+    update insurance.chat_summaries s
+    set client_unread = case when new.reader_id = s.client_id
+                             then insurance.chat_unread_count(new.chat_id, new.reader_id)
+                             else s.client_unread end,
+        agent_unread = case when new.reader_id = s.agent_id
+                            then insurance.chat_unread_count(new.chat_id, new.reader_id)
+                            else s.agent_unread end,
+        updated_at = now()
+    where s.chat_id = new.chat_id
+      and new.reader_id in (s.client_id, s.agent_id);
+    return null;
+end;
+$$;
+
+create or replace function insurance.track_chat_summary_phone()
+returns trigger
+language plpgsql
+as $$
+begin
+    update insurance.chat_summaries s
+    set client_phone = insurance.chat_client_phone(s.client_id),
+        updated_at = now()
+    where s.client_id = new.user_id;
+    if tg_op = 'UPDATE' and old.user_id <> new.user_id then
+        update insurance.chat_summaries s
+        set client_phone = insurance.chat_client_phone(s.client_id),
+            updated_at = now()
+        where s.client_id = old.user_id;
+    end if;
+    return null;
+end;
+$$;
+
+drop trigger if exists trg_chats_chat_summary on insurance.chats;
+create trigger trg_chats_chat_summary
+    after insert or update of client_id, agent_id on insurance.chats
+    for each row execute function insurance.track_chat_summary_chat();
+
+drop trigger if exists trg_chat_messages_chat_summary on insurance.chat_messages;
+create trigger trg_chat_messages_chat_summary
+    after insert or delete or update of chat_id, sender_id, message_text on insurance.chat_messages
+    for each row execute function insurance.track_chat_summary_message();
+
+drop trigger if exists trg_chat_read_watermarks_chat_summary on insurance.chat_read_watermarks;
+create trigger trg_chat_read_watermarks_chat_summary
+    after insert or update of last_read_message_id on insurance.chat_read_watermarks
+    for each row execute function insurance.track_chat_summary_read();
+
+drop trigger if exists trg_claims_chat_summary on insurance.claims;
+create trigger trg_claims_chat_summary
+    after insert or update of user_id, contact_phone on insurance.claims
+    for each row execute function insurance.track_chat_summary_phone();
+
+select insurance.refresh_chat_summary(c.id)
+from insurance.chats c;
@@ -0,0 +1,46 @@
+-- Tell every app node which client's chat context changed, so only that entry is dropped.
+
+create or replace function insurance.notify_client_context_invalidation()
+returns trigger
+language plpgsql
+as $$
+declare
+    client bigint;
+begin
+    if tg_table_name = 'chats' then
+        client := case when tg_op = 'DELETE' then old.client_id else new.client_id end;
+        if tg_op = 'UPDATE' and old.client_id <> new.client_id then
+            perform pg_notify('osago_cache_invalidation', tg_table_name || ':' || old.client_id);
+        end if;
+    else
+        client := case when tg_op = 'DELETE' then old.user_id else new.user_id end;
+        if tg_op = 'UPDATE' and old.user_id is distinct from new.user_id and old.user_id is not null then
+            perform pg_notify('osago_cache_invalidation', tg_table_name || ':' || old.user_id);
+        end if;
+    end if;
+    if client is not null then
+        perform pg_notify('osago_cache_invalidation', tg_table_name || ':' || client);
+    end if;
+    return null;
+end;
+$$;
+
+drop trigger if exists trg_policies_client_context on insurance.policies;
+create trigger trg_policies_client_context
+    after insert or delete or update of user_id, number, status on insurance.policies
+    for each row execute function insurance.notify_client_context_invalidation();
+
+drop trigger if exists trg_policy_applications_client_context on insurance.policy_applications;
+create trigger trg_policy_applications_client_context
+    after insert or delete or update of user_id, status, issued_policy_id on insurance.policy_applications
+    for each row execute function insurance.notify_client_context_invalidation();
+
+drop trigger if exists trg_claims_client_context on insurance.claims;
+create trigger trg_claims_client_context
+    after insert or delete or update of user_id, number, status on insurance.claims
+    for each row execute function insurance.notify_client_context_invalidation();
+
+drop trigger if exists trg_chats_client_context on insurance.chats;
+create trigger trg_chats_client_context
+    after insert or delete or update of client_id, agent_id, topic_type, topic_ref_id, topic_label on insurance.chats
+    for each row execute function insurance.notify_client_context_invalidation();
@@ -0,0 +1,63 @@
+-- Rows that landed in the default partition for a month without its own partition (missed retention
+-- runs, clock skew) made "create table ... partition of" fail for that month forever. The month's rows
+-- are now moved out of the default partition into the new one before it is attached.
+
+create or replace function insurance.ensure_osago_calc_request_partitions(from_month date, months_ahead integer)
+returns integer
+language plpgsql
+as $$
+declare
+    month_start date := date_trunc('month', from_month)::date;
+    last_month date := (date_trunc('month', current_date) + make_interval(months => months_ahead))::date;
+    range_start timestamptz;
+    range_end timestamptz;
+    partition_name text;
+    created integer := 0;
+begin
+    while month_start <= last_month loop
+        partition_name := 'osago_calc_requests_p' || to_char(month_start, 'YYYYMM');
+        range_start := month_start::timestamptz;
+        range_end := (month_start + interval '1 month')::timestamptz;
+        if to_regclass('insurance.' || partition_name) is null then
+            if exists (
+                select 1
+                from insurance.osago_calc_requests_default
+                where created_at >= range_start
+                  and created_at < range_end
+            ) then
+                execute format(
+                    'create table insurance.%I (like insurance.osago_calc_requests including defaults including constraints)',
+                    partition_name
+                );
+                execute format(
+                    'with moved as (
+                         delete from insurance.osago_calc_requests_default
+                         where created_at >= %L and created_at < %L
+                         returning *
+                     )
+                     insert into insurance.%I select * from moved',
+                    range_start,
+                    range_end,
+                    partition_name
+                );
+                execute format(
+                    'alter table insurance.osago_calc_requests attach partition insurance.%I for values from (%L) to (%L)',
+                    partition_name,
+                    range_start,
+                    range_end
+                );
+            else
+                execute format(
+                    'create table insurance.%I partition of insurance.osago_calc_requests for values from (%L) to (%L)',
+                    partition_name,
+                    range_start,
+                    range_end
+                );
+            end if;
+            created := created + 1;
+        end if;
+        month_start := (month_start + interval '1 month')::date;
+    end loop;
+    return created;
+end;
+$$;
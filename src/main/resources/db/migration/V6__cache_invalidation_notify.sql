@@ -0,0 +1,42 @@
+-- Broadcast tariff/reference changes so every app node can drop its in-process caches.
+
+create or replace function insurance.notify_cache_invalidation()
+returns trigger
+language plpgsql
+as $$
+begin
+    perform pg_notify('osago_cache_invalidation', tg_table_name);
+    return null;
+end;
+$$;
+
+do $$
+declare
+    t text;
+begin
+    foreach t in array array[
+        'osago_tariff_versions',
+        'osago_base_rates',
+        'osago_region_coefficients',
+        'osago_power_coefficients',
+        'osago_term_coefficients',
+        'osago_unlimited_driver_coefficients',
+        'osago_kbm_coefficients',
+        'osago_kvs_coefficients',
+        'ref_vehicle_categories',
+        'ref_regions',
+        'ref_policy_terms'
+    ]
+    loop
+        if to_regclass('insurance.' || t) is not null then
+            execute format('drop trigger if exists trg_%s_cache_invalidation on insurance.%I', t, t);
+            execute format(
+                'create trigger trg_%s_cache_invalidation
+                     after insert or update or delete or truncate on insurance.%I
+                     for each statement execute function insurance.notify_cache_invalidation()',
+                t, t
+            );
+        end if;
+    end loop;
+end;
+$$;
@@ -0,0 +1,88 @@
+-- Monthly range partitions for osago_calc_requests.
+-- A partitioned table can only be referenced through a key that contains the partition column,
+-- so the policy_applications FK is replaced by the retention job keeping referenced rows.
+
+alter table insurance.policy_applications
+    drop constraint if exists policy_applications_calc_request_id_fkey;
+
+create index if not exists idx_policy_applications_calc_request
+    on insurance.policy_applications (calc_request_id)
+    where calc_request_id is not null;
+
+alter table insurance.osago_calc_requests rename to osago_calc_requests_unpartitioned;
+alter table insurance.osago_calc_requests_unpartitioned
+    rename constraint osago_calc_requests_pkey to osago_calc_requests_unpartitioned_pkey;
+alter index if exists insurance.idx_osago_calc_created rename to idx_osago_calc_created_unpartitioned;
+alter sequence insurance.osago_calc_requests_id_seq owned by none;
+
+create table insurance.osago_calc_requests (
+    id bigint not null default nextval('insurance.osago_calc_requests_id_seq'::regclass),
+    user_id bigint references insurance.users(id) on delete set null,
+    vehicle_category_id bigint not null references insurance.ref_vehicle_categories(id),
+    region_id bigint not null references insurance.ref_regions(id),
+    power_hp integer not null,
+    unlimited_drivers boolean not null,
+    term_months integer not null references insurance.ref_policy_terms(months),
+    result_amount numeric(12,2) not null,
+    tariff_version_id bigint not null references insurance.osago_tariff_versions(id),
+    created_at timestamp with time zone not null default now(),
+    driver_birth_date date,
+    license_issued_date date,
+    kbm_class_code varchar(4),
+    coeff_kvs numeric(8,4),
+    coeff_kbm numeric(8,4),
+    constraint osago_calc_requests_pkey primary key (id, created_at)
+) partition by range (created_at);
+
+alter sequence insurance.osago_calc_requests_id_seq owned by insurance.osago_calc_requests.id;
+
+create index idx_osago_calc_created on insurance.osago_calc_requests (created_at desc);
+create index idx_osago_calc_anonymous on insurance.osago_calc_requests (created_at) where user_id is null;
+
+-- Holds retained rows of months whose partition has been dropped by the retention job.
+create table insurance.osago_calc_requests_default
+    partition of insurance.osago_calc_requests default;
+
+create or replace function insurance.ensure_osago_calc_request_partitions(from_month date, months_ahead integer)
+returns integer
+language plpgsql
+as $$
+declare
+    month_start date := date_trunc('month', from_month)::date;
+    last_month date := (date_trunc('month', current_date) + make_interval(months => months_ahead))::date;
+    partition_name text;
+    created integer := 0;
+begin
+    while month_start <= last_month loop
+        partition_name := 'osago_calc_requests_p' || to_char(month_start, 'YYYYMM');
+        if to_regclass('insurance.' || partition_name) is null then
+            execute format(
+                'create table insurance.%I partition of insurance.osago_calc_requests for values from (%L) to (%L)',
+                partition_name,
+                month_start::timestamptz,
+                (month_start + interval '1 month')::timestamptz
+            );
+            created := created + 1;
+        end if;
+        month_start := (month_start + interval '1 month')::date;
+    end loop;
+    return created;
+end;
+$$;
+
+select insurance.ensure_osago_calc_request_partitions(
+    coalesce((select min(created_at)::date from insurance.osago_calc_requests_unpartitioned), current_date),
+    3
+);
+
+insert into insurance.osago_calc_requests (
+    id, user_id, vehicle_category_id, region_id, power_hp, unlimited_drivers, term_months,
+    result_amount, tariff_version_id, created_at,
+    driver_birth_date, license_issued_date, kbm_class_code, coeff_kvs, coeff_kbm
+)
+select id, user_id, vehicle_category_id, region_id, power_hp, unlimited_drivers, term_months,
+       result_amount, tariff_version_id, created_at,
+       driver_birth_date, license_issued_date, kbm_class_code, coeff_kvs, coeff_kbm
+from insurance.osago_calc_requests_unpartitioned;
+
+drop table insurance.osago_calc_requests_unpartitioned;
@@ -0,0 +1,4 @@
+-- Supports the unpaid application sweeper and the stale-row filter on client read endpoints.
+create index if not exists idx_policy_applications_unpaid
+    on insurance.policy_applications (updated_at)
+    where upper(status) in ('APPROVED', 'PAYMENT_PENDING');
@@ -0,0 +1,15 @@
+create table if not exists insurance.idempotency_keys (
+    user_id bigint not null references insurance.users(id) on delete cascade,
+    scope varchar(64) not null,
+    idempotency_key varchar(255) not null,
+    request_hash char(64) not null,
+    status varchar(16) not null default 'IN_FLIGHT',
+    response_body bytea,
+    created_at timestamp with time zone not null default now(),
+    expires_at timestamp with time zone not null,
+    constraint idempotency_keys_pkey primary key (user_id, scope, idempotency_key),
+    constraint idempotency_keys_status_check check (status in ('IN_FLIGHT', 'COMPLETED'))
+);
+
+create index if not exists idx_idempotency_keys_expires
+    on insurance.idempotency_keys (expires_at);
@@ -1,6 +1,9 @@
-﻿let pollTimer = null;
+﻿let streamAbort = null;
 let meId = null;
 let activeChatId = null;
+let activeMessages = [];
+let activeHasMore = false;
+let loadingOlder = false;
 let activeClientId = null;
 let activeTopicRefId = null;
 let activeTopicType = null;
@@ -59,6 +62,171 @@ async function sendMessage(token, chatId, message) {
     return data;
 }
 
+async function loadMessagesPage(token, chatId, params) {
+    const query = new URLSearchParams(params).toString();
+    const res = await fetch(`/api/agent/chats/${chatId}/messages?${query}`, { headers: { Authorization: "Basic " + token } });
+    const txt = await res.text();
+    let data = {};
+    try { data = txt ? JSON.parse(txt) : {}; } catch {}
+    if (!res.ok) throw new Error(data.message || txt || "Не удалось загрузить сообщения");
+    return data;
+}
+
+async function markRead(token, chatId) {
+    const res = await fetch(`/api/agent/chats/${chatId}/read`, {
+        method: "POST",
+        headers: { Authorization: "Basic " + token }
+    });
+    if (!res.ok) return null;
+    return await res.json();
+}
+
+function sleep(ms) {
+    return new Promise((resolve) => setTimeout(resolve, ms));
+}
+
+async function readStream(token, url, onEvent, onOpen) {
+    streamAbort = new AbortController();
+    const res = await fetch(url, {
+        headers: { Authorization: "Basic " + token, Accept: "text/event-stream" },
+        signal: streamAbort.signal
+    });
+    if (!res.ok || !res.body) throw new Error("Поток событий недоступен");
+    await onOpen();
+
+    const reader = res.body.pipeThrough(new TextDecoderStream()).getReader();
+    let buffer = "";
+    while (true) {
+        const { value, done } = await reader.read();
+        if (done) return;
+        buffer += value.replaceAll("\r\n", "\n");
+        let end;
+        while ((end = buffer.indexOf("\n\n")) >= 0) {
+            const frame = buffer.slice(0, end);
+            buffer = buffer.slice(end + 2);
+            let name = "message";
+            const data = [];
+            for (const line of frame.split("\n")) {
+                if (line.startsWith("event:")) name = line.slice(6).trim();
+                else if (line.startsWith("data:")) data.push(line.slice(5).replace(/^ /, ""));
+            }
+            if (!data.length) continue;
+            try {
+                await onEvent(name, JSON.parse(data.join("\n")));
+            } catch {
+            }
+        }
+    }
+}
+
+async function reloadChatList(token) {
+    renderChatList(await loadChats(token));
+}
+
+function appendMessage(message) {
+    if (activeMessages.some((m) => Number(m.id) === Number(message.id))) return;
+    activeMessages = [...activeMessages, message];
+    renderMessages(activeMessages);
+}
+
+async function catchUp(token) {
+    if (!activeMessages.length) {
+        await refresh(token);
+        return;
+    }
+    const chatId = activeChatId;
+    const page = await loadMessagesPage(token, chatId, { afterId: activeMessages[activeMessages.length - 1].id });
+    if (Number(chatId) !== Number(activeChatId)) return;
+    if (page.hasMore) {
+        await refresh(token);
+        return;
+    }
+    (page.messages || []).forEach(appendMessage);
+    if ((page.messages || []).some((m) => Number(m.senderId) !== Number(meId))) {
+        await markRead(token, chatId);
+    }
+}
+
+async function loadOlder(token) {
+    if (loadingOlder || !activeHasMore || !activeMessages.length) return;
+    loadingOlder = true;
+    const chatId = activeChatId;
+    try {
+        const page = await loadMessagesPage(token, chatId, { beforeId: activeMessages[0].id });
+        if (Number(chatId) !== Number(activeChatId)) return;
+        activeMessages = [...(page.messages || []), ...activeMessages];
+        activeHasMore = page.hasMore;
+        renderMessages(activeMessages, true);
+    } finally {
+        loadingOlder = false;
+    }
+}
+
+async function onChatEvent(token, name, event) {
+    const active = Number(event.chatId) === Number(activeChatId);
+    if (name === "message") {
+        if (active && !event.message) {
+            // Long messages are relayed without a body.
+            await catchUp(token);
+            return;
+        }
+        if (active) {
+            appendMessage(event.message);
+            if (Number(event.message.senderId) !== Number(meId)) {
+                await markRead(token, activeChatId);
+                return;
+            }
+        }
+        await reloadChatList(token);
+        return;
+    }
+    if (name === "read") {
+        if (Number(event.readerId) === Number(meId)) {
+            await reloadChatList(token);
+            return;
+        }
+        if (!active) return;
+        for (const m of activeMessages) {
+            if (Number(m.senderId) === Number(meId) && Number(m.id) <= Number(event.lastReadMessageId)) {
+                m.readByPeer = true;
+            }
+        }
+        renderMessages(activeMessages, true);
+        return;
+    }
+    if (name === "topic" && !active) {
+        await reloadChatList(token);
+        return;
+    }
+    // Topic changes in the open chat and relay resyncs carry no renderable payload.
+    await refresh(token);
+}
+
+async function listen(token) {
+    let delay = 1000;
+    let reconnecting = false;
+    while (true) {
+        let opened = false;
+        try {
+            await readStream(token, "/api/agent/chats/stream", (name, event) => onChatEvent(token, name, event), async () => {
+                opened = true;
+                delay = 1000;
+                // Events sent while the stream was down are not replayed.
+                if (reconnecting) await refresh(token).catch(() => {});
+            });
+        } catch (e) {
+            if (e.name === "AbortError") return;
+        }
+        reconnecting = true;
+        if (!opened) {
+            // Without a stream, fall back to a backed-off reload.
+            await refresh(token).catch(() => {});
+        }
+        await sleep(delay);
+        delay = Math.min(delay * 2, 30000);
+    }
+}
+
 function renderChatList(items) {
     const box = document.getElementById("chatList");
     if (!items || !items.length) {
@@ -74,8 +242,9 @@ function renderChatList(items) {
     `).join("");
 }
 
-function renderMessages(messages) {
+function renderMessages(messages, keepScroll) {
     const box = document.getElementById("messages");
+    const fromBottom = box.scrollHeight - box.scrollTop;
     if (!messages || !messages.length) {
         box.innerHTML = `<div style="color:#64748b;">Сообщений пока нет.</div>`;
         return;
@@ -92,7 +261,7 @@ function renderMessages(messages) {
             </div>
         `;
     }).join("");
-    box.scrollTop = box.scrollHeight;
+    box.scrollTop = keepScroll ? box.scrollHeight - fromBottom : box.scrollHeight;
 }
 
 async function refresh(token) {
@@ -110,6 +279,8 @@ async function refresh(token) {
     if (!activeChatId) {
         document.getElementById("chatTitle").textContent = "Выберите чат";
         document.getElementById("topicLine").textContent = "Тема обращения: —";
+        activeMessages = [];
+        activeHasMore = false;
         renderMessages([]);
         return;
     }
@@ -123,7 +294,9 @@ async function refresh(token) {
     activeTopicType = details.topic?.topicType || null;
     activeTopicRefId = details.topic?.topicRefId || null;
 
-    renderMessages(details.messages || []);
+    activeMessages = details.messages || [];
+    activeHasMore = Boolean(details.hasMoreMessages);
+    renderMessages(activeMessages);
 }
 
 document.addEventListener("DOMContentLoaded", async () => {
@@ -183,28 +356,28 @@ document.addEventListener("DOMContentLoaded", async () => {
         const text = (input.value || "").trim();
         if (!text || !activeChatId) return;
         try {
-            await sendMessage(token, activeChatId, text);
+            const sent = await sendMessage(token, activeChatId, text);
             input.value = "";
-            await refresh(token);
+            appendMessage(sent);
         } catch (e) {
             showError(e.message);
         }
     });
 
+    document.getElementById("messages").addEventListener("scroll", (e) => {
+        if (e.target.scrollTop > 40) return;
+        loadOlder(token).catch((err) => showError(err.message));
+    });
+
     document.getElementById("messageInput").addEventListener("keydown", async (e) => {
         if (e.key !== "Enter") return;
         e.preventDefault();
         document.getElementById("sendBtn").click();
     });
 
-    pollTimer = setInterval(async () => {
-        try {
-            await refresh(token);
-        } catch {
-        }
-    }, 5000);
+    listen(token);
 });
 
 window.addEventListener("beforeunload", () => {
-    if (pollTimer) clearInterval(pollTimer);
+    if (streamAbort) streamAbort.abort();
 });
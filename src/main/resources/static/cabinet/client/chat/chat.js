@@ -1,7 +1,8 @@
-﻿let pollTimer = null;
+﻿let streamAbort = null;
 let meId = null;
 let currentChatId = null;
 let currentData = null;
+let loadingOlder = false;
 
 function showError(message) {
     const box = document.getElementById("errorBox");
@@ -78,8 +79,160 @@ async function sendMessage(token, message) {
     return data;
 }
 
-function renderMessages(messages) {
+async function loadMessagesPage(token, params) {
+    const query = new URLSearchParams(params).toString();
+    const res = await fetch(`/api/client/chat/messages?${query}`, { headers: { Authorization: "Basic " + token } });
+    const txt = await res.text();
+    let data = {};
+    try { data = txt ? JSON.parse(txt) : {}; } catch {}
+    if (!res.ok) throw new Error(data.message || txt || "Не удалось загрузить сообщения");
+    return data;
+}
+
+async function markRead(token) {
+    const res = await fetch("/api/client/chat/read", {
+        method: "POST",
+        headers: { Authorization: "Basic " + token }
+    });
+    if (!res.ok) return null;
+    return await res.json();
+}
+
+function sleep(ms) {
+    return new Promise((resolve) => setTimeout(resolve, ms));
+}
+
+async function readStream(token, url, onEvent, onOpen) {
+    streamAbort = new AbortController();
+    const res = await fetch(url, {
+        headers: { Authorization: "Basic " + token, Accept: "text/event-stream" },
+        signal: streamAbort.signal
+    });
+    if (!res.ok || !res.body) throw new Error("Поток событий недоступен");
+    await onOpen();
+
+    const reader = res.body.pipeThrough(new TextDecoderStream()).getReader();
+    let buffer = "";
+    while (true) {
+        const { value, done } = await reader.read();
+        if (done) return;
+        buffer += value.replaceAll("\r\n", "\n");
+        let end;
+        while ((end = buffer.indexOf("\n\n")) >= 0) {
+            const frame = buffer.slice(0, end);
+            buffer = buffer.slice(end + 2);
+            let name = "message";
+            const data = [];
+            for (const line of frame.split("\n")) {
+                if (line.startsWith("event:")) name = line.slice(6).trim();
+                else if (line.startsWith("data:")) data.push(line.slice(5).replace(/^ /, ""));
+            }
+            if (!data.length) continue;
+            try {
+                await onEvent(name, JSON.parse(data.join("\n")));
+            } catch {
+            }
+        }
+    }
+}
+
+function appendMessage(message) {
+    if (!currentData) return;
+    const messages = currentData.messages || [];
+    if (messages.some((m) => Number(m.id) === Number(message.id))) return;
+    currentData.messages = [...messages, message];
+    renderMessages(currentData.messages);
+}
+
+async function catchUp(token) {
+    const messages = currentData?.messages || [];
+    if (!messages.length) {
+        await refresh(token);
+        return;
+    }
+    const page = await loadMessagesPage(token, { afterId: messages[messages.length - 1].id });
+    if (page.hasMore) {
+        await refresh(token);
+        return;
+    }
+    (page.messages || []).forEach(appendMessage);
+    if ((page.messages || []).some((m) => Number(m.senderId) !== Number(meId))) {
+        await markRead(token);
+    }
+}
+
+async function loadOlder(token) {
+    const messages = currentData?.messages || [];
+    if (loadingOlder || !currentData?.hasMoreMessages || !messages.length) return;
+    loadingOlder = true;
+    try {
+        const page = await loadMessagesPage(token, { beforeId: messages[0].id });
+        currentData.messages = [...(page.messages || []), ...messages];
+        currentData.hasMoreMessages = page.hasMore;
+        renderMessages(currentData.messages, true);
+    } finally {
+        loadingOlder = false;
+    }
+}
+
+async function onChatEvent(token, name, event) {
+    if (name === "message" && event.message && Number(event.chatId) === Number(currentChatId)) {
+        appendMessage(event.message);
+        if (Number(event.message.senderId) !== Number(meId)) {
+            await markRead(token);
+        }
+        return;
+    }
+    if (name === "message" && Number(event.chatId) === Number(currentChatId)) {
+        // Long messages are relayed without a body.
+        await catchUp(token);
+        return;
+    }
+    if (name === "read" && Number(event.chatId) === Number(currentChatId)) {
+        if (Number(event.readerId) === Number(meId)) {
+            document.getElementById("unreadBadge").style.display = "none";
+            return;
+        }
+        for (const m of currentData?.messages || []) {
+            if (Number(m.senderId) === Number(meId) && Number(m.id) <= Number(event.lastReadMessageId)) {
+                m.readByPeer = true;
+            }
+        }
+        renderMessages(currentData?.messages || [], true);
+        return;
+    }
+    // Topic changes and relay resyncs carry no renderable payload.
+    await refresh(token);
+}
+
+async function listen(token) {
+    let delay = 1000;
+    let reconnecting = false;
+    while (true) {
+        let opened = false;
+        try {
+            await readStream(token, "/api/client/chat/stream", (name, event) => onChatEvent(token, name, event), async () => {
+                opened = true;
+                delay = 1000;
+                // Events sent while the stream was down are not replayed.
+                if (reconnecting) await refresh(token).catch(() => {});
+            });
+        } catch (e) {
+            if (e.name === "AbortError") return;
+        }
+        reconnecting = true;
+        if (!opened) {
+            // Without a stream, fall back to a backed-off reload.
+            await refresh(token).catch(() => {});
+        }
+        await sleep(delay);
+        delay = Math.min(delay * 2, 30000);
+    }
+}
+
+function renderMessages(messages, keepScroll) {
     const box = document.getElementById("messages");
+    const fromBottom = box.scrollHeight - box.scrollTop;
     if (!messages || !messages.length) {
         box.innerHTML = `<div style="color:#64748b;">Сообщений пока нет. Напишите первыми.</div>`;
         return;
@@ -96,7 +249,7 @@ function renderMessages(messages) {
             </div>
         `;
     }).join("");
-    box.scrollTop = box.scrollHeight;
+    box.scrollTop = keepScroll ? box.scrollHeight - fromBottom : box.scrollHeight;
 }
 
 function renderTopicSelectors(data) {
@@ -222,28 +375,28 @@ document.addEventListener("DOMContentLoaded", async () => {
         const text = (input.value || "").trim();
         if (!text) return;
         try {
-            await sendMessage(token, text);
+            const sent = await sendMessage(token, text);
             input.value = "";
-            await refresh(token);
+            appendMessage(sent);
         } catch (e) {
             showError(e.message);
         }
     });
 
+    document.getElementById("messages").addEventListener("scroll", (e) => {
+        if (e.target.scrollTop > 40) return;
+        loadOlder(token).catch((err) => showError(err.message));
+    });
+
     document.getElementById("messageInput").addEventListener("keydown", async (e) => {
         if (e.key !== "Enter") return;
         e.preventDefault();
         document.getElementById("sendBtn").click();
     });
 
-    pollTimer = setInterval(async () => {
-        try {
-            if (currentChatId) await refresh(token);
-        } catch {
-        }
-    }, 5000);
+    listen(token);
 });
 
 window.addEventListener("beforeunload", () => {
-    if (pollTimer) clearInterval(pollTimer);
+    if (streamAbort) streamAbort.abort();
 });
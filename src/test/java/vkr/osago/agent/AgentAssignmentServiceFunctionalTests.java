@@ -0,0 +1,115 @@
+package vkr.osago.agent;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+
+import java.sql.ResultSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.*;
+
+class AgentAssignmentServiceFunctionalTests {
+
+    private JdbcTemplate jdbc;
+    private AgentAssignmentService service;
+
+    @BeforeEach
+    void setUp() {
+        jdbc = mock(JdbcTemplate.class);
+        service = service(RoundRobinAgentAssignment.NAME);
+    }
+
+    private AgentAssignmentService service(String strategy) {
+        return new AgentAssignmentService(
+                jdbc,
+                List.of(new RoundRobinAgentAssignment(), new LeastLoadedAgentAssignment()),
+                strategy
+        );
+    }
+
+    private static ResultSetExtractor<Long> anyExtractor() {
+        return ArgumentMatchers.<ResultSetExtractor<Long>>any();
+    }
+
+    private void stub(String marker, Long... values) {
+        var stubbing = when(jdbc.query(contains(marker), anyExtractor(), any(Object[].class)));
+        for (Long value : values) {
+            stubbing = stubbing.thenAnswer(invocation -> {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.next()).thenReturn(value != null);
+                when(rs.getObject(1)).thenReturn(value);
+                return invocation.<ResultSetExtractor<?>>getArgument(1).extractData(rs);
+            });
+        }
+    }
+
+    @Test
+    void shouldKeepExistingAssignment() {
+        stub("select assigned_agent_id from insurance.users", 5L);
+
+        assertEquals(5L, service.ensureAgentAssignedToUser(7L));
+        verify(jdbc, never()).query(contains("next_agent"), anyExtractor(), any(Object[].class));
+    }
+
+    @Test
+    void shouldAssignNextAgentFromCursorInSingleStatement() {
+        stub("select assigned_agent_id from insurance.users", (Long) null);
+        stub("next_agent", 6L);
+
+        assertEquals(6L, service.ensureAgentAssignedToUser(7L));
+        verify(jdbc, times(2)).query(anyString(), anyExtractor(), any(Object[].class));
+        verify(jdbc, never()).query(contains("union all"), anyExtractor(), any(Object[].class));
+    }
+
+    @Test
+    void shouldReturnConcurrentAssignmentWhenRaceIsLost() {
+        stub("select assigned_agent_id from insurance.users", null, 8L);
+        stub("next_agent", (Long) null);
+
+        assertEquals(8L, service.ensureAgentAssignedToUser(7L));
+    }
+
+    @Test
+    void shouldSkipInactiveAgentsAndCountAssignments() {
+        stub("select assigned_agent_id from insurance.users", (Long) null);
+        stub("next_agent", 6L);
+
+        service.ensureAgentAssignedToUser(7L);
+
+        verify(jdbc).query(
+                argThat((String sql) -> sql.contains("u.status = 'AGENT'")
+                        && sql.contains("u.assigned_agent_id is null")
+                        && sql.contains("assigned_count = insurance.agent_assignment_counters.assigned_count + 1")),
+                anyExtractor(),
+                any(Object[].class)
+        );
+    }
+
+    @Test
+    void shouldPickLeastLoadedAgentWhenConfigured() {
+        var leastLoaded = service("LEAST-LOADED");
+        stub("select assigned_agent_id from insurance.users", (Long) null);
+        stub("next_agent", 9L);
+
+        assertEquals(9L, leastLoaded.ensureAgentAssignedToUser(7L));
+        assertEquals(LeastLoadedAgentAssignment.NAME, leastLoaded.strategyName());
+        verify(jdbc).query(
+                argThat((String sql) -> sql.contains("coalesce(w.open_applications, 0) + coalesce(w.open_claims, 0)")
+                        && !sql.contains("agent_assignment_cursor")),
+                any(ResultSetExtractor.class),
+                any(Object[].class)
+        );
+    }
+
+    @Test
+    void shouldRejectUnknownStrategy() {
+        assertThrows(IllegalArgumentException.class, () -> service("random"));
+    }
+}
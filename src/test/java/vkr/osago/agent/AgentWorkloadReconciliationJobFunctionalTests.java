@@ -0,0 +1,54 @@
+package vkr.osago.agent;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class AgentWorkloadReconciliationJobFunctionalTests {
+
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() {
+        jdbc = mock(JdbcTemplate.class);
+    }
+
+    private AgentWorkloadReconciliationJob job(boolean enabled) {
+        return new AgentWorkloadReconciliationJob(jdbc, mock(PlatformTransactionManager.class), enabled);
+    }
+
+    @Test
+    void shouldRebuildCountersUnderTableLock() {
+        when(jdbc.queryForObject(contains("pg_try_advisory_xact_lock"), eq(Boolean.class))).thenReturn(true);
+        when(jdbc.queryForObject(contains("insert into insurance.agent_workload"), eq(Long.class))).thenReturn(2L);
+
+        assertEquals(2L, job(true).reconcile());
+        verify(jdbc).execute(contains("lock table insurance.agent_workload"));
+    }
+
+    @Test
+    void shouldSkipWhenAnotherNodeIsReconciling() {
+        when(jdbc.queryForObject(contains("pg_try_advisory_xact_lock"), eq(Boolean.class))).thenReturn(false);
+
+        assertEquals(0L, job(true).reconcile());
+        verify(jdbc, never()).execute(anyString());
+        verify(jdbc, never()).queryForObject(contains("insert into insurance.agent_workload"), eq(Long.class));
+    }
+
+    @Test
+    void shouldSwallowDatabaseErrorsInScheduledRun() {
+        when(jdbc.queryForObject(anyString(), eq(Boolean.class))).thenThrow(new DataAccessResourceFailureException("down"));
+
+        assertDoesNotThrow(() -> job(true).scheduledReconcile());
+        job(false).scheduledReconcile();
+        verify(jdbc, times(1)).queryForObject(anyString(), eq(Boolean.class));
+    }
+}
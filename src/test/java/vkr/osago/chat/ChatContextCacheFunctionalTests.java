@@ -0,0 +1,98 @@
+package vkr.osago.chat;
+
+import org.junit.jupiter.api.Test;
+import vkr.osago.common.CacheInvalidationBus;
+import vkr.osago.common.PostgresNotificationListener;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+
+class ChatContextCacheFunctionalTests {
+
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private Supplier<ChatContextCache.ChatContext> loader(String topic) {
+        return () -> {
+            loads.incrementAndGet();
+            return new ChatContextCache.ChatContext(
+                    new ChatController.ChatAgentDto(21L, "Агент", null),
+                    new ChatController.ChatTopicDto("OTHER", null, topic),
+                    null,
+                    List.of(),
+                    List.of()
+            );
+        };
+    }
+
+    @Test
+    void shouldServeRepeatedOpensFromCacheAndReportHitRatio() {
+        ChatContextCache cache = new ChatContextCache(10, 60, now::get);
+
+        cache.get(11L, 7L, loader("Иной вопрос"));
+        ChatContextCache.ChatContext second = cache.get(11L, 7L, loader("ignored"));
+        cache.get(11L, 7L, loader("ignored"));
+
+        assertEquals("Иной вопрос", second.topic().label());
+        assertEquals(1, loads.get());
+        ChatContextCache.Stats stats = cache.stats();
+        assertEquals(2, stats.hits());
+        assertEquals(1, stats.misses());
+        assertEquals(2.0 / 3, stats.hitRatio(), 1e-9);
+        assertEquals(1, stats.size());
+    }
+
+    @Test
+    void shouldDropOnlyInvalidatedClientFromBusNotification() {
+        CacheInvalidationBus bus = new CacheInvalidationBus(mock(PostgresNotificationListener.class), false);
+        ChatContextCache cache = new ChatContextCache(bus, 10, 60);
+        cache.get(11L, 7L, loader("a"));
+        cache.get(11L, 8L, loader("b"));
+        cache.get(12L, 9L, loader("c"));
+
+        bus.dispatch(List.of("policy_applications:11", "claims:11"));
+
+        assertEquals(1, cache.stats().size());
+        assertEquals(1, cache.stats().invalidations());
+        cache.get(12L, 9L, loader("c"));
+        assertEquals(3, loads.get());
+
+        bus.dispatch(List.of("policies"));
+        assertEquals(0, cache.stats().size());
+    }
+
+    @Test
+    void shouldNotStoreContextLoadedAcrossAnInvalidation() {
+        ChatContextCache cache = new ChatContextCache(10, 60, now::get);
+
+        cache.get(11L, 7L, () -> {
+            cache.invalidateClient(11L);
+            return loader("stale").get();
+        });
+
+        assertEquals(0, cache.stats().size());
+    }
+
+    @Test
+    void shouldExpireAndEvictLeastRecentlyUsed() {
+        ChatContextCache cache = new ChatContextCache(2, 60, now::get);
+        cache.get(11L, 1L, loader("a"));
+        cache.get(12L, 2L, loader("b"));
+        cache.get(11L, 1L, loader("a"));
+        cache.get(13L, 3L, loader("c"));
+
+        assertEquals(2, cache.stats().size());
+        assertEquals(1, cache.stats().evictions());
+
+        now.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        cache.get(11L, 1L, loader("a"));
+        assertEquals(4, loads.get());
+        assertEquals(2, cache.stats().evictions());
+    }
+}
@@ -0,0 +1,177 @@
+package vkr.osago.chat;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.http.HttpStatus;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.web.server.ResponseStatusException;
+import vkr.osago.agent.AgentAssignmentService;
+import vkr.osago.common.SchemaCapabilities;
+import vkr.osago.user.UserEntity;
+import vkr.osago.user.UserRepository;
+import vkr.osago.user.UserStatus;
+
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ChatControllerFunctionalTests {
+
+    private static final long CHAT_ID = 7L;
+    private static final long CLIENT_ID = 11L;
+    private static final long AGENT_ID = 21L;
+
+    private JdbcTemplate jdbc;
+    private UserRepository users;
+    private ChatEventHub events;
+    private ChatController controller;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        jdbc = mock(JdbcTemplate.class);
+        users = mock(UserRepository.class);
+        events = mock(ChatEventHub.class);
+        SchemaCapabilities schema = mock(SchemaCapabilities.class);
+        when(schema.hasTable(anyString())).thenReturn(true);
+        when(schema.hasColumn(anyString(), anyString())).thenReturn(true);
+        controller = new ChatController(
+                jdbc,
+                users,
+                mock(AgentAssignmentService.class),
+                schema,
+                events,
+                mock(ChatMessageHistory.class),
+                mock(ChatContextCache.class)
+        );
+        when(jdbc.query(contains("where id = ? and agent_id = ?"), any(ResultSetExtractor.class), eq(CHAT_ID), eq(AGENT_ID)))
+                .thenReturn(CLIENT_ID);
+    }
+
+    private UserDetails principal(long id, UserStatus status) {
+        UserEntity user = new UserEntity();
+        user.setId(id);
+        user.setStatus(status);
+        user.setEmail("user" + id + "@test.local");
+        when(users.findByEmail(user.getEmail())).thenReturn(Optional.of(user));
+        UserDetails principal = mock(UserDetails.class);
+        when(principal.getUsername()).thenReturn(user.getEmail());
+        return principal;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void stubWatermarkUpsert(Long returned) {
+        when(jdbc.query(
+                contains("insert into insurance.chat_read_watermarks"),
+                any(ResultSetExtractor.class),
+                eq(CHAT_ID), eq(AGENT_ID), eq(CHAT_ID), eq(AGENT_ID)
+        )).thenReturn(returned);
+    }
+
+    @Test
+    void shouldPublishReadEventWhenWatermarkAdvances() {
+        stubWatermarkUpsert(501L);
+
+        var read = controller.agentMarkRead(principal(AGENT_ID, UserStatus.AGENT), CHAT_ID);
+
+        assertEquals(new ChatController.ChatReadDto(CHAT_ID, 501L), read);
+        verify(events).publish(ChatEventHub.ChatEvent.read(CHAT_ID, CLIENT_ID, AGENT_ID, AGENT_ID, 501L));
+    }
+
+    @Test
+    void shouldStayQuietWhenUpsertReturnsNoRow() {
+        // Nothing new from the peer, or the stored watermark is already at or past it.
+        stubWatermarkUpsert(null);
+
+        var read = controller.agentMarkRead(principal(AGENT_ID, UserStatus.AGENT), CHAT_ID);
+
+        assertEquals(new ChatController.ChatReadDto(CHAT_ID, null), read);
+        verifyNoInteractions(events);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldOnlyMoveWatermarkForwardOverPeerMessages() {
+        stubWatermarkUpsert(null);
+
+        controller.agentMarkRead(principal(AGENT_ID, UserStatus.AGENT), CHAT_ID);
+
+        verify(jdbc).query(
+                argThat((String sql) -> sql.contains("m.sender_id <> ?")
+                        && sql.contains("having max(m.id) is not null")
+                        && sql.contains("where insurance.chat_read_watermarks.last_read_message_id < excluded.last_read_message_id")),
+                any(ResultSetExtractor.class),
+                eq(CHAT_ID), eq(AGENT_ID), eq(CHAT_ID), eq(AGENT_ID)
+        );
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldListAgentInboxFromSummariesForThatAgentOnly() throws Exception {
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<RowMapper<ChatController.AgentChatListItemDto>> mapper = ArgumentCaptor.forClass(RowMapper.class);
+        when(jdbc.query(sql.capture(), mapper.capture(), eq(AGENT_ID))).thenReturn(List.of());
+
+        controller.agentChats(principal(AGENT_ID, UserStatus.AGENT));
+
+        assertTrue(sql.getValue().contains("from insurance.chat_summaries s"));
+        assertTrue(sql.getValue().contains("where s.agent_id = ?"));
+        assertTrue(sql.getValue().contains("s.agent_unread as unread_count"));
+        assertTrue(sql.getValue().contains("order by s.agent_unread desc, s.last_message_at desc nulls last, s.chat_id desc"));
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong("chat_id")).thenReturn(CHAT_ID);
+        when(rs.getLong("client_id")).thenReturn(CLIENT_ID);
+        when(rs.getString("last_name")).thenReturn("Иванов");
+        when(rs.getString("first_name")).thenReturn("Пётр");
+        when(rs.getString("client_phone")).thenReturn("+79990000000");
+        when(rs.getLong("unread_count")).thenReturn(3L);
+        var item = mapper.getValue().mapRow(rs, 0);
+        assertEquals("Иванов Пётр", item.clientName());
+        assertEquals("+79990000000", item.clientPhone());
+        assertEquals(3L, item.unreadCount());
+        verify(jdbc, never()).query(contains("from insurance.chat_messages"), any(RowMapper.class), any(Object[].class));
+    }
+
+    @Test
+    void shouldRejectInboxForNonAgents() {
+        UserDetails client = principal(CLIENT_ID, UserStatus.CLIENT);
+
+        var error = assertThrows(ResponseStatusException.class, () -> controller.agentChats(client));
+
+        assertEquals(HttpStatus.FORBIDDEN, error.getStatusCode());
+        verifyNoInteractions(jdbc);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldCountUnreadFromSideOfReader() throws Exception {
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<ResultSetExtractor<Long>> extractor = ArgumentCaptor.forClass(ResultSetExtractor.class);
+        when(jdbc.query(sql.capture(), extractor.capture(), eq(CLIENT_ID), eq(CLIENT_ID), eq(CHAT_ID))).thenReturn(4L);
+        when(jdbc.query(anyString(), any(ResultSetExtractor.class), eq(AGENT_ID), eq(AGENT_ID), eq(CHAT_ID))).thenReturn(null);
+
+        assertEquals(4L, controller.countUnread(CHAT_ID, CLIENT_ID));
+        assertEquals(0L, controller.countUnread(CHAT_ID, AGENT_ID));
+
+        // The reader id is bound to both branches, so the client gets client_unread and the agent gets agent_unread.
+        assertTrue(sql.getValue().contains("when s.client_id = ? then s.client_unread"));
+        assertTrue(sql.getValue().contains("when s.agent_id = ? then s.agent_unread"));
+        assertTrue(sql.getValue().contains("where s.chat_id = ?"));
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.next()).thenReturn(true, false);
+        when(rs.getLong(1)).thenReturn(2L);
+        assertEquals(2L, extractor.getValue().extractData(rs));
+        assertNull(extractor.getValue().extractData(rs));
+    }
+}
@@ -0,0 +1,209 @@
+package vkr.osago.chat;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.mockito.ArgumentCaptor;
+import tools.jackson.databind.json.JsonMapper;
+import vkr.osago.common.PostgresNotificationListener;
+
+import java.io.IOException;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ChatEventHubFunctionalTests {
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+
+    private final PostgresNotificationListener notifications = mock(PostgresNotificationListener.class);
+
+    private ChatEventHub hub(boolean relayEnabled, int queueCapacity, ExecutorService senders) {
+        return new ChatEventHub(jdbc, notifications, jsonMapper, relayEnabled, queueCapacity, 15_000,
+                60_000, senders, mock(ScheduledExecutorService.class));
+    }
+
+    private static ExecutorService inline() {
+        ExecutorService senders = mock(ExecutorService.class);
+        doAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        }).when(senders).execute(any(Runnable.class));
+        return senders;
+    }
+
+    private static ChatController.ChatMessageDto message(long id, String text) {
+        return new ChatController.ChatMessageDto(id, 7L, 11L, text, false, OffsetDateTime.parse("2026-03-01T10:00:00Z"));
+    }
+
+    @Test
+    void shouldFanOutEventsToClientAndAgentOnly() {
+        ChatEventHub hub = hub(false, 8, inline());
+        RecordingEmitter client = new RecordingEmitter();
+        RecordingEmitter agent = new RecordingEmitter();
+        RecordingEmitter otherClient = new RecordingEmitter();
+        hub.subscribe(11L, client);
+        hub.subscribe(21L, agent);
+        hub.subscribe(12L, otherClient);
+
+        hub.publish(ChatEventHub.ChatEvent.message(7L, 11L, 21L, message(501L, "Здравствуйте")));
+
+        assertEquals(2, client.frames.size());
+        assertTrue(client.frames.get(0).contains(":connected"));
+        assertTrue(client.frames.get(1).contains("event:message"));
+        assertTrue(agent.frames.get(1).contains("Здравствуйте"));
+        assertEquals(1, otherClient.frames.size());
+        assertEquals(3, hub.stats().connections());
+        verifyNoInteractions(jdbc, notifications);
+    }
+
+    @Test
+    void shouldSendIdenticalFramesToEverySubscriber() {
+        ChatEventHub hub = hub(false, 8, inline());
+        RecordingEmitter first = new RecordingEmitter();
+        RecordingEmitter second = new RecordingEmitter();
+        RecordingEmitter third = new RecordingEmitter();
+        hub.subscribe(21L, first);
+        hub.subscribe(21L, second);
+        hub.subscribe(21L, third);
+
+        hub.heartbeat();
+        hub.publish(ChatEventHub.ChatEvent.read(7L, 11L, 21L, 11L, 501L));
+
+        assertEquals(3, first.frames.size());
+        assertEquals(first.frames, second.frames);
+        assertEquals(first.frames, third.frames);
+        assertEquals(":heartbeat\n\n", first.frames.get(1));
+        assertTrue(first.frames.get(2).startsWith("event:read\ndata:"));
+        assertTrue(first.frames.get(2).endsWith("\n\n"));
+    }
+
+    @Test
+    void shouldDropSubscriberWhoseQueueOverflows() {
+        ExecutorService stalled = mock(ExecutorService.class);
+        ChatEventHub hub = hub(false, 2, stalled);
+        RecordingEmitter slow = new RecordingEmitter();
+        hub.subscribe(11L, slow);
+
+        hub.publish(ChatEventHub.ChatEvent.read(7L, 11L, 21L, 21L, 500L));
+        hub.publish(ChatEventHub.ChatEvent.read(7L, 11L, 21L, 21L, 501L));
+
+        assertEquals(0, hub.stats().connections());
+        assertEquals(1, hub.stats().dropped());
+        verify(stalled, times(1)).execute(any(Runnable.class));
+    }
+
+    @Test
+    void shouldRemoveSubscriberWhenSendFails() {
+        ChatEventHub hub = hub(false, 8, inline());
+        RecordingEmitter broken = new RecordingEmitter();
+        hub.subscribe(11L, broken);
+        broken.failing = true;
+
+        hub.heartbeat();
+        hub.publish(ChatEventHub.ChatEvent.topic(7L, 11L, 21L));
+
+        assertEquals(0, hub.stats().connections());
+        assertEquals(1, hub.stats().delivered());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldRelayThroughNotifyAndIgnoreOwnNotifications() {
+        ChatEventHub hub = hub(true, 8, inline());
+        RecordingEmitter agent = new RecordingEmitter();
+        hub.subscribe(21L, agent);
+        ChatEventHub.ChatEvent event = ChatEventHub.ChatEvent.message(7L, 11L, 21L, message(501L, "Вопрос по полису"));
+
+        hub.publish(event);
+        String own = hub.encode(event);
+        hub.receive(own);
+        hub.receive(own.replaceFirst("\"origin\":\"[^\"]+\"", "\"origin\":\"node-b\""));
+        hub.receive("not json");
+
+        verify(jdbc).query(contains("pg_notify"), any(ResultSetExtractor.class), eq(ChatEventHub.CHANNEL), eq(own));
+        assertEquals(3, agent.frames.size());
+        assertTrue(agent.frames.get(2).contains("Вопрос по полису"));
+        assertEquals(1, hub.stats().relayed());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldReceiveThroughSharedListenerAndResyncAfterReconnect() {
+        ChatEventHub hub = hub(true, 8, inline());
+        RecordingEmitter client = new RecordingEmitter();
+        hub.subscribe(11L, client);
+        ArgumentCaptor<Consumer<List<String>>> handler = ArgumentCaptor.forClass(Consumer.class);
+        ArgumentCaptor<Runnable> onReconnect = ArgumentCaptor.forClass(Runnable.class);
+        verify(notifications).listen(eq(ChatEventHub.CHANNEL), handler.capture(), onReconnect.capture());
+
+        String remote = hub.encode(ChatEventHub.ChatEvent.topic(7L, 11L, 21L))
+                .replaceFirst("\"origin\":\"[^\"]+\"", "\"origin\":\"node-b\"");
+        handler.getValue().accept(List.of(remote, "not json"));
+        onReconnect.getValue().run();
+
+        assertEquals(3, client.frames.size());
+        assertTrue(client.frames.get(1).contains("event:topic"));
+        assertTrue(client.frames.get(2).contains("event:resync"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldKeepLocalDeliveryWhenNotifyFails() {
+        when(jdbc.query(contains("pg_notify"), any(ResultSetExtractor.class), any(Object[].class)))
+                .thenThrow(new DataAccessResourceFailureException("db down"));
+        ChatEventHub hub = hub(true, 8, inline());
+        RecordingEmitter client = new RecordingEmitter();
+        hub.subscribe(11L, client);
+
+        assertDoesNotThrow(() -> hub.publish(ChatEventHub.ChatEvent.read(7L, 11L, 21L, 21L, 501L)));
+
+        assertEquals(2, client.frames.size());
+    }
+
+    @Test
+    void shouldStripLongMessagesFromNotifyPayload() throws Exception {
+        ChatEventHub hub = hub(true, 8, inline());
+        String text = "я".repeat(ChatEventHub.MAX_NOTIFY_PAYLOAD_BYTES);
+
+        String payload = hub.encode(ChatEventHub.ChatEvent.message(7L, 11L, 21L, message(501L, text)));
+
+        assertTrue(payload.length() < ChatEventHub.MAX_NOTIFY_PAYLOAD_BYTES);
+        ChatEventHub.Envelope envelope = jsonMapper.readValue(payload, ChatEventHub.Envelope.class);
+        assertEquals(ChatEventHub.ChatEvent.Type.MESSAGE, envelope.event().type());
+        assertNull(envelope.event().message());
+        assertEquals(7L, envelope.event().chatId());
+    }
+
+    private static final class RecordingEmitter extends SseEmitter {
+
+        private final List<String> frames = new ArrayList<>();
+        private boolean failing;
+
+        // Builds the frame the way SseEmitter.send does; a shared builder would show up as drifting frames.
+        @Override
+        public void send(SseEventBuilder builder) throws IOException {
+            if (failing) {
+                throw new IOException("Broken pipe");
+            }
+            frames.add(builder.build().stream()
+                    .map(ResponseBodyEmitter.DataWithMediaType::getData)
+                    .map(String::valueOf)
+                    .collect(Collectors.joining()));
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package vkr.osago.chat;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.stream.LongStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ChatMessageHistoryFunctionalTests {
+
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final ChatMessageHistory history = new ChatMessageHistory(jdbc, 3, 5);
+
+    private static List<ChatController.ChatMessageDto> messages(long... ids) {
+        return LongStream.of(ids)
+                .mapToObj(id -> new ChatController.ChatMessageDto(id, 7L, 11L, "m" + id, false, OffsetDateTime.now()))
+                .toList();
+    }
+
+    private static List<Long> ids(ChatMessageHistory.ChatMessagePage page) {
+        return page.messages().stream().map(ChatController.ChatMessageDto::id).toList();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldReturnNewestPageInAscendingOrder() {
+        when(jdbc.query(contains("order by m.id desc"), any(RowMapper.class), eq(21L), eq(7L), eq(4)))
+                .thenReturn(messages(40, 39, 38, 37));
+
+        ChatMessageHistory.ChatMessagePage page = history.page(7L, 21L, null, null, null);
+
+        assertEquals(List.of(38L, 39L, 40L), ids(page));
+        assertTrue(page.hasMore());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldPageBackwardsFromBeforeId() {
+        when(jdbc.query(contains("and m.id < ?"), any(RowMapper.class), eq(21L), eq(7L), eq(38L), eq(4)))
+                .thenReturn(messages(37, 36));
+
+        ChatMessageHistory.ChatMessagePage page = history.page(7L, 21L, 38L, null, null);
+
+        assertEquals(List.of(36L, 37L), ids(page));
+        assertFalse(page.hasMore());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldReturnDeltaAfterIdAndClampLimit() {
+        when(jdbc.query(contains("and m.id > ?"), any(RowMapper.class), eq(21L), eq(7L), eq(40L), eq(6)))
+                .thenReturn(messages(41, 42, 43, 44, 45, 46));
+
+        ChatMessageHistory.ChatMessagePage page = history.page(7L, 21L, null, 40L, 50);
+
+        assertEquals(List.of(41L, 42L, 43L, 44L, 45L), ids(page));
+        assertTrue(page.hasMore());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldMarkOnlyOwnMessagesAtOrBelowPeerWatermarkAsReadByPeer() throws Exception {
+        ArgumentCaptor<String> sql = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<RowMapper<ChatController.ChatMessageDto>> mapper = ArgumentCaptor.forClass(RowMapper.class);
+        when(jdbc.query(sql.capture(), mapper.capture(), eq(21L), eq(7L), eq(4))).thenReturn(List.of());
+
+        history.page(7L, 21L, null, null, null);
+
+        // The watermark joined is the peer's, so it marks what the peer has read, never the viewer's own reads.
+        assertTrue(sql.getValue().contains("on w.chat_id = m.chat_id and w.reader_id = ?"));
+        assertTrue(sql.getValue().contains(
+                "coalesce(m.sender_id <> w.reader_id and m.id <= w.last_read_message_id, false) as read_by_peer"
+        ));
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong("id")).thenReturn(40L);
+        when(rs.getLong("chat_id")).thenReturn(7L);
+        when(rs.getLong("sender_id")).thenReturn(11L);
+        when(rs.getString("message_text")).thenReturn("Здравствуйте");
+        when(rs.getBoolean("read_by_peer")).thenReturn(true);
+        ChatController.ChatMessageDto mapped = mapper.getValue().mapRow(rs, 0);
+        assertTrue(mapped.readByPeer());
+        assertEquals(11L, mapped.senderId());
+    }
+
+    @Test
+    void shouldRejectInvalidCursors() {
+        assertThrows(IllegalArgumentException.class, () -> history.page(7L, 21L, 10L, 20L, null));
+        assertThrows(IllegalArgumentException.class, () -> history.page(7L, 21L, null, null, 0));
+        assertThrows(IllegalArgumentException.class, () -> new ChatMessageHistory(jdbc, 10, 5));
+        verifyNoInteractions(jdbc);
+    }
+}
@@ -0,0 +1,88 @@
+package vkr.osago.common;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CacheInvalidationBusFunctionalTests {
+
+    private final CacheInvalidationBus bus = new CacheInvalidationBus(mock(PostgresNotificationListener.class), false);
+
+    @Test
+    void shouldRouteTablesToTopicsOncePerBatch() {
+        List<CacheInvalidationBus.Invalidation> tariffs = new ArrayList<>();
+        List<CacheInvalidationBus.Invalidation> both = new ArrayList<>();
+        bus.subscribe(CacheInvalidationBus.Topic.TARIFFS, tariffs::add);
+        bus.subscribe(EnumSet.allOf(CacheInvalidationBus.Topic.class), both::add);
+
+        bus.dispatch(List.of("osago_base_rates", "osago_kvs_coefficients", "ref_regions", "chat_messages"));
+
+        assertEquals(List.of(new CacheInvalidationBus.Invalidation(CacheInvalidationBus.Topic.TARIFFS, "osago_base_rates")), tariffs);
+        assertEquals(
+                List.of(CacheInvalidationBus.Topic.TARIFFS, CacheInvalidationBus.Topic.REFERENCE_DATA),
+                both.stream().map(CacheInvalidationBus.Invalidation::topic).toList()
+        );
+    }
+
+    @Test
+    void shouldKeepDeliveringWhenSubscriberFails() {
+        List<String> delivered = new ArrayList<>();
+        bus.subscribe(CacheInvalidationBus.Topic.REFERENCE_DATA, invalidation -> {
+            throw new IllegalStateException("boom");
+        });
+        bus.subscribe(CacheInvalidationBus.Topic.REFERENCE_DATA, invalidation -> delivered.add(invalidation.table()));
+
+        bus.dispatch(List.of("ref_policy_terms"));
+
+        assertEquals(List.of("ref_policy_terms"), delivered);
+    }
+
+    @Test
+    void shouldRouteKeyedPayloadsOncePerKey() {
+        List<CacheInvalidationBus.Invalidation> contexts = new ArrayList<>();
+        bus.subscribe(CacheInvalidationBus.Topic.CLIENT_CONTEXT, contexts::add);
+
+        bus.dispatch(List.of("policies:11", "policy_applications:11", "claims:12", "chat_messages:11"));
+
+        assertEquals(
+                List.of(
+                        new CacheInvalidationBus.Invalidation(CacheInvalidationBus.Topic.CLIENT_CONTEXT, "policies", "11"),
+                        new CacheInvalidationBus.Invalidation(CacheInvalidationBus.Topic.CLIENT_CONTEXT, "claims", "12")
+                ),
+                contexts
+        );
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldRegisterChannelAndResyncEveryTopicAfterReconnect() {
+        PostgresNotificationListener notifications = mock(PostgresNotificationListener.class);
+        CacheInvalidationBus enabled = new CacheInvalidationBus(notifications, true);
+        List<CacheInvalidationBus.Invalidation> received = new ArrayList<>();
+        enabled.subscribe(EnumSet.allOf(CacheInvalidationBus.Topic.class), received::add);
+        ArgumentCaptor<Consumer<List<String>>> handler = ArgumentCaptor.forClass(Consumer.class);
+        ArgumentCaptor<Runnable> onReconnect = ArgumentCaptor.forClass(Runnable.class);
+        verify(notifications).listen(eq(CacheInvalidationBus.CHANNEL), handler.capture(), onReconnect.capture());
+
+        handler.getValue().accept(List.of("ref_regions"));
+        onReconnect.getValue().run();
+
+        assertEquals(1 + CacheInvalidationBus.Topic.values().length, received.size());
+        assertTrue(received.subList(1, received.size()).stream().allMatch(invalidation -> invalidation.table() == null));
+    }
+
+    @Test
+    void shouldNotListenWhenDisabled() {
+        PostgresNotificationListener notifications = mock(PostgresNotificationListener.class);
+        new CacheInvalidationBus(notifications, false);
+        verifyNoInteractions(notifications);
+    }
+}
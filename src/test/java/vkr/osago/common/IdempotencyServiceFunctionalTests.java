@@ -0,0 +1,180 @@
+package vkr.osago.common;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class IdempotencyServiceFunctionalTests {
+
+    record Payload(String provider) {
+    }
+
+    record Result(Long paymentId, String status) {
+    }
+
+    private final JsonMapper jsonMapper = JsonMapper.builder().build();
+    private JdbcTemplate jdbc;
+    private PlatformTransactionManager transactionManager;
+    private IdempotencyService service;
+    private final AtomicInteger actionCalls = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        jdbc = mock(JdbcTemplate.class);
+        transactionManager = mock(PlatformTransactionManager.class);
+        service = new IdempotencyService(jdbc, jsonMapper, transactionManager, 86400, 120, 60, 200, 5);
+    }
+
+    private Result action() {
+        actionCalls.incrementAndGet();
+        return new Result(42L, "NEW");
+    }
+
+    private Result execute(String key, Payload payload) {
+        return service.execute(7L, "osago.applications.pay:5", key, payload, Result.class, this::action);
+    }
+
+    private void stubClaim(boolean owned) {
+        when(jdbc.queryForList(contains("insert into insurance.idempotency_keys"), eq(Boolean.class), any(Object[].class)))
+                .thenReturn(owned ? List.of(true) : List.of());
+    }
+
+    @SafeVarargs
+    private void stubStored(List<Object>... rows) {
+        var stubbing = when(jdbc.query(contains("from insurance.idempotency_keys"), any(RowMapper.class), any(Object[].class)));
+        for (List<Object> row : rows) {
+            stubbing = stubbing.thenAnswer(invocation -> {
+                if (row.isEmpty()) {
+                    return List.of();
+                }
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getString("request_hash")).thenReturn((String) row.get(0));
+                when(rs.getString("status")).thenReturn((String) row.get(1));
+                when(rs.getBytes("response_body")).thenReturn((byte[]) row.get(2));
+                return List.of(invocation.<RowMapper<?>>getArgument(1).mapRow(rs, 0));
+            });
+        }
+    }
+
+    private String hashOf(Payload payload) {
+        return IdempotencyService.hash(jsonMapper.writeValueAsBytes(payload));
+    }
+
+    @Test
+    void shouldRunDirectlyWithoutKey() {
+        assertEquals(new Result(42L, "NEW"), execute(null, new Payload("card")));
+        assertEquals(new Result(42L, "NEW"), execute("  ", new Payload("card")));
+        verifyNoInteractions(jdbc);
+    }
+
+    @Test
+    void shouldStoreResponseForFirstRequest() {
+        stubClaim(true);
+
+        assertEquals(new Result(42L, "NEW"), execute("k1", new Payload("card")));
+        verify(jdbc).update(contains("set status = 'COMPLETED'"), any(byte[].class), eq(7L), eq("osago.applications.pay:5"), eq("k1"));
+    }
+
+    @Test
+    void shouldCommitActionAndStoredResponseTogether() {
+        stubClaim(true);
+
+        execute("k1", new Payload("card"));
+
+        var order = inOrder(transactionManager, jdbc);
+        order.verify(transactionManager).getTransaction(any());
+        order.verify(jdbc).update(contains("set status = 'COMPLETED'"), any(Object[].class));
+        order.verify(transactionManager).commit(any());
+    }
+
+    @Test
+    void shouldKeepKeyInFlightWhenStoringResponseFailsAfterAction() {
+        stubClaim(true);
+        when(jdbc.update(contains("set status = 'COMPLETED'"), any(Object[].class)))
+                .thenThrow(new DataAccessResourceFailureException("connection reset"));
+
+        assertThrows(DataAccessResourceFailureException.class, () -> execute("k1", new Payload("card")));
+
+        assertEquals(1, actionCalls.get());
+        verify(transactionManager).rollback(any());
+        verify(jdbc, never()).update(contains("delete from insurance.idempotency_keys"), any(Object[].class));
+    }
+
+    @Test
+    void shouldRequireLeaseLongerThanTransactionTimeout() {
+        assertThrows(IllegalArgumentException.class,
+                () -> new IdempotencyService(jdbc, jsonMapper, transactionManager, 86400, 60, 60, 200, 5));
+    }
+
+    @Test
+    void shouldReplayStoredResponseWithoutRunningAction() {
+        stubClaim(false);
+        byte[] body = jsonMapper.writeValueAsBytes(new Result(41L, "NEW"));
+        stubStored(List.of(hashOf(new Payload("card")), "COMPLETED", body));
+
+        assertEquals(new Result(41L, "NEW"), execute("k1", new Payload("card")));
+        assertEquals(0, actionCalls.get());
+        verify(jdbc, never()).update(anyString(), any(Object[].class));
+    }
+
+    @Test
+    void shouldRejectKeyReusedForDifferentRequest() {
+        stubClaim(false);
+        stubStored(List.of(hashOf(new Payload("card")), "COMPLETED", new byte[0]));
+
+        assertThrows(IllegalArgumentException.class, () -> execute("k1", new Payload("sbp")));
+        assertEquals(0, actionCalls.get());
+    }
+
+    @Test
+    void shouldWaitForInFlightDuplicate() {
+        stubClaim(false);
+        byte[] body = jsonMapper.writeValueAsBytes(new Result(43L, "NEW"));
+        String hash = hashOf(new Payload("card"));
+        stubStored(
+                List.of(hash, "IN_FLIGHT", new byte[0]),
+                List.of(hash, "IN_FLIGHT", new byte[0]),
+                List.of(hash, "COMPLETED", body)
+        );
+
+        assertEquals(new Result(43L, "NEW"), execute("k1", new Payload("card")));
+        assertEquals(0, actionCalls.get());
+    }
+
+    @Test
+    void shouldGiveUpWhenFirstRequestNeverFinishes() {
+        stubClaim(false);
+        stubStored(List.of(hashOf(new Payload("card")), "IN_FLIGHT", new byte[0]));
+
+        assertThrows(IllegalStateException.class, () -> execute("k1", new Payload("card")));
+    }
+
+    @Test
+    void shouldReleaseKeyWhenActionFails() {
+        stubClaim(true);
+
+        assertThrows(IllegalArgumentException.class, () -> service.execute(
+                7L, "osago.applications.create", "k2", new Payload("card"), Result.class,
+                () -> {
+                    throw new IllegalArgumentException("calcRequestId is required");
+                }
+        ));
+        verify(jdbc).update(contains("delete from insurance.idempotency_keys"), eq(7L), eq("osago.applications.create"), eq("k2"));
+        verify(jdbc, never()).update(contains("COMPLETED"), any(Object[].class));
+    }
+}
@@ -0,0 +1,100 @@
+package vkr.osago.common;
+
+import org.junit.jupiter.api.Test;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.*;
+
+class PostgresNotificationListenerFunctionalTests {
+
+    private static PGNotification notification(String channel, String payload) {
+        PGNotification notification = mock(PGNotification.class);
+        when(notification.getName()).thenReturn(channel);
+        when(notification.getParameter()).thenReturn(payload);
+        return notification;
+    }
+
+    @Test
+    void shouldDispatchPayloadsByChannelAndIsolateFailingHandlers() {
+        PostgresNotificationListener listener = new PostgresNotificationListener(mock(DataSource.class), 100);
+        List<List<String>> cache = new ArrayList<>();
+        List<List<String>> chat = new ArrayList<>();
+        List<String> resynced = new ArrayList<>();
+        listener.listen("osago_broken", payloads -> {
+            throw new IllegalStateException("boom");
+        }, () -> {
+            throw new IllegalStateException("boom");
+        });
+        listener.listen("osago_cache_invalidation", cache::add, () -> resynced.add("cache"));
+        listener.listen("osago_chat_events", chat::add, () -> resynced.add("chat"));
+
+        listener.deliver(new PGNotification[]{
+                notification("osago_broken", "x"),
+                notification("osago_cache_invalidation", "ref_regions"),
+                notification("osago_chat_events", "{}"),
+                notification("osago_cache_invalidation", "policies:11"),
+                notification("unknown_channel", "ignored")
+        });
+        listener.resync();
+
+        assertEquals(List.of(List.of("ref_regions", "policies:11")), cache);
+        assertEquals(List.of(List.of("{}")), chat);
+        assertEquals(List.of("cache", "chat"), resynced);
+    }
+
+    @Test
+    void shouldListenOnEveryChannelOverOneConnection() throws Exception {
+        DataSource dataSource = mock(DataSource.class);
+        Connection connection = mock(Connection.class);
+        PGConnection pg = mock(PGConnection.class);
+        Statement statement = mock(Statement.class);
+        when(dataSource.getConnection()).thenReturn(connection);
+        when(connection.isWrapperFor(PGConnection.class)).thenReturn(true);
+        when(connection.unwrap(PGConnection.class)).thenReturn(pg);
+        when(connection.createStatement()).thenReturn(statement);
+        when(pg.getNotifications(anyInt())).thenAnswer(invocation -> {
+            try {
+                Thread.sleep(invocation.<Integer>getArgument(0));
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            return new PGNotification[0];
+        });
+        PostgresNotificationListener listener = new PostgresNotificationListener(dataSource, 10);
+        listener.listen("osago_cache_invalidation", payloads -> { }, () -> { });
+        listener.listen("osago_chat_events", payloads -> { }, () -> { });
+
+        listener.start();
+        try {
+            verify(pg, timeout(2_000).atLeast(2)).getNotifications(10);
+        } finally {
+            listener.stop();
+        }
+
+        verify(dataSource, times(1)).getConnection();
+        verify(statement).execute("listen osago_cache_invalidation");
+        verify(statement).execute("listen osago_chat_events");
+    }
+
+    @Test
+    void shouldRejectInvalidOrLateRegistrations() {
+        DataSource dataSource = mock(DataSource.class);
+        PostgresNotificationListener listener = new PostgresNotificationListener(dataSource, 100);
+
+        assertThrows(IllegalArgumentException.class, () -> listener.listen("osago; drop table x", payloads -> { }, () -> { }));
+        listener.start();
+        verifyNoInteractions(dataSource);
+
+        listener.listen("osago_chat_events", payloads -> { }, () -> { });
+        assertThrows(IllegalStateException.class, () -> listener.listen("osago_chat_events", payloads -> { }, () -> { }));
+    }
+}
@@ -0,0 +1,84 @@
+package vkr.osago.common;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class SchemaCapabilitiesFunctionalTests {
+
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final SchemaCapabilities schema = new SchemaCapabilities(jdbc);
+    private final List<String[]> columns = new ArrayList<>();
+
+    private void stubColumns() {
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (String[] column : List.copyOf(columns)) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getString("table_name")).thenReturn(column[0]);
+                when(rs.getString("column_name")).thenReturn(column[1]);
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbc).query(contains("information_schema.columns"), any(RowCallbackHandler.class), eq("insurance"));
+    }
+
+    @Test
+    void shouldMatchTablesAndColumnsIgnoringCase() {
+        columns.add(new String[]{"Chats", "Topic_Type"});
+        columns.add(new String[]{"osago_calc_requests", "kbm_class_code"});
+        stubColumns();
+
+        assertTrue(schema.hasTable("chats"));
+        assertTrue(schema.hasTable("CHATS"));
+        assertTrue(schema.hasColumn("chats", "TOPIC_TYPE"));
+        assertTrue(schema.hasColumn("OSAGO_CALC_REQUESTS", "kbm_class_code"));
+        assertFalse(schema.hasColumn("chats", "topic_label"));
+        assertFalse(schema.hasTable("chat_read_watermarks"));
+        assertFalse(schema.hasTable("topic_type"));
+        verify(jdbc, times(1)).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+    }
+
+    @Test
+    void shouldPickUpNewColumnsOnlyAfterRefresh() {
+        columns.add(new String[]{"chats", "id"});
+        stubColumns();
+        schema.resolveOnStartup();
+        assertFalse(schema.hasColumn("chats", "topic_label"));
+
+        columns.add(new String[]{"chats", "topic_label"});
+        assertFalse(schema.hasColumn("chats", "topic_label"));
+
+        schema.refresh();
+        assertTrue(schema.hasColumn("chats", "topic_label"));
+        verify(jdbc, times(2)).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+    }
+
+    @Test
+    void shouldRetryLookupAfterDatabaseWasUnreachable() {
+        doThrow(new DataAccessResourceFailureException("down"))
+                .when(jdbc).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+        schema.resolveOnStartup();
+
+        assertFalse(schema.hasTable("chats"));
+
+        columns.add(new String[]{"chats", "id"});
+        reset(jdbc);
+        stubColumns();
+        assertTrue(schema.hasTable("chats"));
+        assertTrue(schema.hasColumn("chats", "id"));
+        verify(jdbc, times(1)).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+    }
+}
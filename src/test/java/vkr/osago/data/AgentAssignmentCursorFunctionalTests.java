@@ -0,0 +1,114 @@
+package vkr.osago.data;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import vkr.osago.agent.AgentAssignmentService;
+import vkr.osago.agent.LeastLoadedAgentAssignment;
+import vkr.osago.agent.RoundRobinAgentAssignment;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers(disabledWithoutDocker = true)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class AgentAssignmentCursorFunctionalTests {
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withDatabaseName("osago_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    private DataManagementService service;
+    private JdbcTemplate jdbc;
+    private AgentAssignmentService assignments;
+
+    @BeforeAll
+    void init() {
+        DataSource dataSource = new DriverManagerDataSource(
+                POSTGRES.getJdbcUrl(),
+                POSTGRES.getUsername(),
+                POSTGRES.getPassword()
+        );
+        Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration")
+                .load()
+                .migrate();
+
+        jdbc = new JdbcTemplate(dataSource);
+        service = new DataManagementService(jdbc, dataSource);
+        assignments = new AgentAssignmentService(
+                jdbc,
+                List.of(new RoundRobinAgentAssignment(), new LeastLoadedAgentAssignment()),
+                RoundRobinAgentAssignment.NAME
+        );
+    }
+
+    @BeforeEach
+    void cleanupRuntimeData() {
+        jdbc.execute(
+                "truncate table insurance.agent_assignment_counters, insurance.users restart identity cascade"
+        );
+        jdbc.update("update insurance.agent_assignment_cursor set last_agent_id = null where id = 1");
+    }
+
+    private long agent(String email) {
+        long id = service.createUser(email);
+        jdbc.update("update insurance.users set status = 'AGENT' where id = ?", id);
+        return id;
+    }
+
+    private long assignedCount(long agentId) {
+        return jdbc.queryForObject(
+                "select assigned_count from insurance.agent_assignment_counters where agent_id = ?",
+                Long.class,
+                agentId
+        );
+    }
+
+    @Test
+    void shouldCycleThroughActiveAgentsFromCursor() {
+        long first = agent("cursor-agent1@test.local");
+        long second = agent("cursor-agent2@test.local");
+        long third = agent("cursor-agent3@test.local");
+
+        List<Long> assigned = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            assigned.add(assignments.ensureAgentAssignedToUser(service.createUser("cursor-client" + i + "@test.local")));
+        }
+
+        assertEquals(List.of(first, second, third, first), assigned);
+        assertEquals(first, jdbc.queryForObject(
+                "select last_agent_id from insurance.agent_assignment_cursor where id = 1", Long.class
+        ));
+        assertEquals(2, assignedCount(first));
+        assertEquals(1, assignedCount(third));
+    }
+
+    @Test
+    void shouldSkipDeactivatedAgentsAndKeepExistingAssignment() {
+        long first = agent("cursor-agent4@test.local");
+        long second = agent("cursor-agent5@test.local");
+        long third = agent("cursor-agent6@test.local");
+        long client = service.createUser("cursor-client5@test.local");
+
+        assertEquals(first, assignments.ensureAgentAssignedToUser(client));
+        jdbc.update("update insurance.users set status = 'ACTIVE' where id = ?", second);
+
+        assertEquals(third, assignments.ensureAgentAssignedToUser(service.createUser("cursor-client6@test.local")));
+        assertEquals(first, assignments.ensureAgentAssignedToUser(client));
+        assertEquals(1, assignedCount(first));
+    }
+}
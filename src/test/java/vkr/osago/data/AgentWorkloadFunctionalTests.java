@@ -0,0 +1,145 @@
+package vkr.osago.data;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import vkr.osago.agent.AgentWorkloadReconciliationJob;
+
+import javax.sql.DataSource;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers(disabledWithoutDocker = true)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class AgentWorkloadFunctionalTests {
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withDatabaseName("osago_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    private DataManagementService service;
+    private JdbcTemplate jdbc;
+    private AgentWorkloadReconciliationJob reconciliation;
+
+    @BeforeAll
+    void init() {
+        DataSource dataSource = new DriverManagerDataSource(
+                POSTGRES.getJdbcUrl(),
+                POSTGRES.getUsername(),
+                POSTGRES.getPassword()
+        );
+        Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration")
+                .load()
+                .migrate();
+
+        jdbc = new JdbcTemplate(dataSource);
+        service = new DataManagementService(jdbc, dataSource);
+        reconciliation = new AgentWorkloadReconciliationJob(jdbc, new DataSourceTransactionManager(dataSource), true);
+    }
+
+    @BeforeEach
+    void cleanupRuntimeData() {
+        jdbc.execute(
+                "truncate table insurance.agent_workload, insurance.claims, insurance.policy_applications, " +
+                        "insurance.users restart identity cascade"
+        );
+    }
+
+    private long agent(String email) {
+        long id = service.createUser(email);
+        jdbc.update("update insurance.users set status = 'AGENT' where id = ?", id);
+        return id;
+    }
+
+    private long application(long userId, long agentId, String status) {
+        return jdbc.queryForObject(
+                """
+                insert into insurance.policy_applications (user_id, policy_type, assigned_agent_id, status)
+                values (?, 'OSAGO', ?, ?)
+                returning id
+                """,
+                Long.class,
+                userId, agentId, status
+        );
+    }
+
+    private long claim(long userId, long agentId) {
+        return jdbc.queryForObject(
+                "insert into insurance.claims (user_id, assigned_agent_id) values (?, ?) returning id",
+                Long.class,
+                userId, agentId
+        );
+    }
+
+    private List<Integer> workload(long agentId) {
+        return jdbc.query(
+                "select open_applications, open_claims from insurance.agent_workload where agent_id = ?",
+                rs -> rs.next() ? List.of(rs.getInt(1), rs.getInt(2)) : List.of(0, 0),
+                agentId
+        );
+    }
+
+    @Test
+    void shouldTrackOpenItemsThroughInsertsStatusChangesAndDeletes() {
+        long first = agent("workload-agent1@test.local");
+        long second = agent("workload-agent2@test.local");
+        long client = service.createUser("workload-client1@test.local");
+
+        long openApplication = application(client, first, "NEW");
+        long reviewedApplication = application(client, first, "IN_REVIEW");
+        application(client, first, "PAID");
+        long openClaim = claim(client, first);
+        assertEquals(List.of(2, 1), workload(first));
+
+        jdbc.update("update insurance.policy_applications set status = 'APPROVED' where id = ?", reviewedApplication);
+        jdbc.update("update insurance.policy_applications set status = 'NEED_INFO' where id = ?", openApplication);
+        assertEquals(List.of(1, 1), workload(first));
+
+        jdbc.update("update insurance.policy_applications set assigned_agent_id = ? where id = ?", second, openApplication);
+        jdbc.update("update insurance.claims set status = 'IN_REVIEW', assigned_agent_id = ? where id = ?", second, openClaim);
+        assertEquals(List.of(0, 0), workload(first));
+        assertEquals(List.of(1, 1), workload(second));
+
+        jdbc.update(
+                """
+                update insurance.claims
+                set status = 'REJECTED', decision_comment = 'Not covered', decided_at = now()
+                where id = ?
+                """,
+                openClaim
+        );
+        jdbc.update("delete from insurance.policy_applications where id = ?", openApplication);
+        assertEquals(List.of(0, 0), workload(second));
+    }
+
+    @Test
+    void shouldReconcileDriftedCounters() {
+        long first = agent("workload-agent3@test.local");
+        long second = agent("workload-agent4@test.local");
+        long client = service.createUser("workload-client2@test.local");
+        application(client, first, "NEW");
+        claim(client, first);
+        claim(client, first);
+
+        jdbc.update("update insurance.agent_workload set open_applications = 5, open_claims = 0 where agent_id = ?", first);
+        jdbc.update("insert into insurance.agent_workload (agent_id, open_applications, open_claims) values (?, 3, 1)", second);
+
+        assertEquals(2, reconciliation.reconcile());
+        assertEquals(List.of(1, 2), workload(first));
+        assertEquals(List.of(0, 0), workload(second));
+        assertEquals(0, reconciliation.reconcile());
+    }
+}
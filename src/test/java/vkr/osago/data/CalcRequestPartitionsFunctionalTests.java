@@ -0,0 +1,165 @@
+package vkr.osago.data;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+import vkr.osago.common.SchemaCapabilities;
+import vkr.osago.osago.CalcRequestRetentionJob;
+
+import javax.sql.DataSource;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.time.YearMonth;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers(disabledWithoutDocker = true)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class CalcRequestPartitionsFunctionalTests {
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withDatabaseName("osago_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    private DataManagementService service;
+    private JdbcTemplate jdbc;
+    private CalcRequestRetentionJob job;
+
+    @BeforeAll
+    void init() {
+        DataSource dataSource = new DriverManagerDataSource(
+                POSTGRES.getJdbcUrl(),
+                POSTGRES.getUsername(),
+                POSTGRES.getPassword()
+        );
+        Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration")
+                .load()
+                .migrate();
+
+        jdbc = new JdbcTemplate(dataSource);
+        service = new DataManagementService(jdbc, dataSource);
+        job = new CalcRequestRetentionJob(
+                jdbc, new SchemaCapabilities(jdbc), new DataSourceTransactionManager(dataSource), true, 6, 3
+        );
+    }
+
+    @BeforeEach
+    void cleanupRuntimeData() {
+        jdbc.execute(
+                "truncate table insurance.osago_calc_requests, insurance.policy_applications, " +
+                        "insurance.users restart identity cascade"
+        );
+    }
+
+    private long calc(Long userId, OffsetDateTime createdAt) {
+        return jdbc.queryForObject(
+                """
+                        insert into insurance.osago_calc_requests
+                        (user_id, vehicle_category_id, region_id, power_hp, unlimited_drivers, term_months,
+                         result_amount, tariff_version_id, created_at)
+                        values (?, (select min(id) from insurance.ref_vehicle_categories), (select min(id) from insurance.ref_regions),
+                                120, true, 12, 5000.00, (select min(id) from insurance.osago_tariff_versions), ?)
+                        returning id
+                        """,
+                Long.class,
+                userId,
+                createdAt
+        );
+    }
+
+    private String partitionOf(long calcId) {
+        return jdbc.queryForObject(
+                "select tableoid::regclass::text from insurance.osago_calc_requests where id = ?",
+                String.class,
+                calcId
+        );
+    }
+
+    private static String partitionName(YearMonth month) {
+        return "osago_calc_requests_p" + month.format(DateTimeFormatter.ofPattern("yyyyMM"));
+    }
+
+    private static OffsetDateTime midMonth(YearMonth month) {
+        return month.atDay(15).atStartOfDay().atOffset(ZoneOffset.UTC);
+    }
+
+    @Test
+    void shouldCreateMonthlyPartitionsAheadOfToday() {
+        YearMonth current = YearMonth.now();
+        for (int ahead = 0; ahead <= 3; ahead++) {
+            String name = partitionName(current.plusMonths(ahead));
+            assertNotNull(jdbc.queryForObject("select to_regclass(?)::text", String.class, "insurance." + name), name);
+        }
+        long calcId = calc(null, OffsetDateTime.now());
+        assertEquals("insurance." + partitionName(current), partitionOf(calcId));
+    }
+
+    @Test
+    void shouldMoveRowsOutOfDefaultPartitionWhenTheirMonthIsCreated() {
+        YearMonth beyondHorizon = YearMonth.now().plusMonths(6);
+        long calcId = calc(null, midMonth(beyondHorizon));
+        assertEquals("insurance.osago_calc_requests_default", partitionOf(calcId));
+
+        Integer created = jdbc.queryForObject(
+                "select insurance.ensure_osago_calc_request_partitions(current_date, 7)", Integer.class
+        );
+
+        assertTrue(created >= 1);
+        assertEquals("insurance." + partitionName(beyondHorizon), partitionOf(calcId));
+        assertEquals(0, jdbc.queryForObject(
+                "select count(*) from insurance.osago_calc_requests_default", Integer.class
+        ));
+        // The moved-into partition carries the parent's key like any other.
+        assertThrows(RuntimeException.class, () -> jdbc.update(
+                "insert into insurance." + partitionName(beyondHorizon) + " select * from insurance.osago_calc_requests where id = ?",
+                calcId
+        ));
+    }
+
+    @Test
+    void shouldDropExpiredMonthsKeepingOwnedAndReferencedQuotes() {
+        YearMonth expired = YearMonth.now().minusMonths(9);
+        jdbc.queryForObject(
+                "select insurance.ensure_osago_calc_request_partitions(?, 3)", Integer.class, expired.atDay(1)
+        );
+        long userId = service.createUser("retention-client@test.local");
+        long anonymous = calc(null, midMonth(expired));
+        long owned = calc(userId, midMonth(expired));
+        long referenced = calc(null, midMonth(expired));
+        jdbc.update(
+                "insert into insurance.policy_applications(user_id, policy_type, calc_request_id) values (?, 'OSAGO', ?)",
+                userId,
+                referenced
+        );
+
+        List<String> dropped = job.run(LocalDate.now());
+
+        assertTrue(dropped.contains(partitionName(expired)));
+        assertNull(jdbc.queryForObject("select to_regclass(?)::text", String.class, "insurance." + partitionName(expired)));
+        assertEquals(0, jdbc.queryForObject(
+                "select count(*) from insurance.osago_calc_requests where id = ?", Integer.class, anonymous
+        ));
+        assertEquals("insurance.osago_calc_requests_default", partitionOf(owned));
+        assertEquals("insurance.osago_calc_requests_default", partitionOf(referenced));
+
+        // Retained rows in the default partition belong to dropped months and must not break later runs.
+        assertEquals(List.of(), job.run(LocalDate.now()));
+        job.scheduledRun();
+        assertEquals(0, job.stats().failures());
+    }
+}
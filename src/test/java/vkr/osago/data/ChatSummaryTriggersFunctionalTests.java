@@ -0,0 +1,149 @@
+package vkr.osago.data;
+
+import org.flywaydb.core.Flyway;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import javax.sql.DataSource;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers(disabledWithoutDocker = true)
+@TestInstance(TestInstance.Lifecycle.PER_CLASS)
+class ChatSummaryTriggersFunctionalTests {
+
+    @Container
+    static final PostgreSQLContainer<?> POSTGRES = new PostgreSQLContainer<>("postgres:16-alpine")
+            .withDatabaseName("osago_test")
+            .withUsername("test")
+            .withPassword("test");
+
+    private DataManagementService service;
+    private JdbcTemplate jdbc;
+
+    @BeforeAll
+    void init() {
+        DataSource dataSource = new DriverManagerDataSource(
+                POSTGRES.getJdbcUrl(),
+                POSTGRES.getUsername(),
+                POSTGRES.getPassword()
+        );
+        Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration")
+                .load()
+                .migrate();
+
+        jdbc = new JdbcTemplate(dataSource);
+        service = new DataManagementService(jdbc, dataSource);
+    }
+
+    @BeforeEach
+    void cleanupRuntimeData() {
+        jdbc.execute(
+                "truncate table insurance.chat_read_watermarks, insurance.chat_messages, insurance.chats, " +
+                        "insurance.users restart identity cascade"
+        );
+    }
+
+    private long chat(long clientId, long agentId) {
+        return jdbc.queryForObject(
+                "insert into insurance.chats(client_id, agent_id) values (?, ?) returning id",
+                Long.class,
+                clientId,
+                agentId
+        );
+    }
+
+    private long message(long chatId, long senderId, String text) {
+        return jdbc.queryForObject(
+                "insert into insurance.chat_messages(chat_id, sender_id, message_text) values (?, ?, ?) returning id",
+                Long.class,
+                chatId,
+                senderId,
+                text
+        );
+    }
+
+    private void markRead(long chatId, long readerId, long lastReadMessageId) {
+        jdbc.update(
+                "insert into insurance.chat_read_watermarks(chat_id, reader_id, last_read_message_id) values (?, ?, ?) " +
+                        "on conflict (chat_id, reader_id) do update set last_read_message_id = excluded.last_read_message_id",
+                chatId,
+                readerId,
+                lastReadMessageId
+        );
+    }
+
+    private Map<String, Object> summary(long chatId) {
+        return jdbc.queryForMap(
+                "select last_message_id, last_message_text, client_unread, agent_unread " +
+                        "from insurance.chat_summaries where chat_id = ?",
+                chatId
+        );
+    }
+
+    private void assertMatchesFullRecount(long chatId) {
+        Map<String, Object> maintained = summary(chatId);
+        jdbc.query("select insurance.refresh_chat_summary(?)", rs -> null, chatId);
+        assertEquals(summary(chatId), maintained);
+    }
+
+    @Test
+    void shouldMaintainLastMessageAndUnreadCountsPerSide() {
+        long clientId = service.createUser("summary-client@test.local");
+        long agentId = service.createUser("summary-agent@test.local");
+        long chatId = chat(clientId, agentId);
+
+        assertEquals(0, summary(chatId).get("agent_unread"));
+        message(chatId, clientId, "Здравствуйте");
+        long question = message(chatId, clientId, "Вопрос по полису");
+        long answer = message(chatId, agentId, "Добрый день");
+
+        Map<String, Object> row = summary(chatId);
+        assertEquals(answer, row.get("last_message_id"));
+        assertEquals("Добрый день", row.get("last_message_text"));
+        assertEquals(2, row.get("agent_unread"));
+        assertEquals(1, row.get("client_unread"));
+        assertMatchesFullRecount(chatId);
+
+        markRead(chatId, agentId, question);
+        markRead(chatId, clientId, answer);
+        assertEquals(0, summary(chatId).get("agent_unread"));
+        assertEquals(0, summary(chatId).get("client_unread"));
+
+        message(chatId, clientId, "Спасибо");
+        jdbc.update("delete from insurance.chat_messages where id = ?", answer);
+        assertEquals(1, summary(chatId).get("agent_unread"));
+        assertEquals("Спасибо", summary(chatId).get("last_message_text"));
+        assertMatchesFullRecount(chatId);
+    }
+
+    @Test
+    void shouldFollowReassignedAgentAndCascadeOnChatDelete() {
+        long clientId = service.createUser("summary-client2@test.local");
+        long agentId = service.createUser("summary-agent2@test.local");
+        long otherAgentId = service.createUser("summary-agent3@test.local");
+        long chatId = chat(clientId, agentId);
+        message(chatId, clientId, "Есть кто-нибудь?");
+
+        jdbc.update("update insurance.chats set agent_id = ? where id = ?", otherAgentId, chatId);
+
+        assertEquals(otherAgentId, jdbc.queryForObject(
+                "select agent_id from insurance.chat_summaries where chat_id = ?", Long.class, chatId
+        ));
+        assertEquals(1, summary(chatId).get("agent_unread"));
+
+        jdbc.update("delete from insurance.chat_messages where chat_id = ?", chatId);
+        jdbc.update("delete from insurance.chats where id = ?", chatId);
+        assertEquals(0, jdbc.queryForObject("select count(*) from insurance.chat_summaries", Integer.class));
+    }
+}
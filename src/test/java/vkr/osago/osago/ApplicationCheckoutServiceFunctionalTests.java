@@ -0,0 +1,139 @@
+package vkr.osago.osago;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.web.server.ResponseStatusException;
+import vkr.osago.agent.AgentAssignmentService;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class ApplicationCheckoutServiceFunctionalTests {
+
+    private JdbcTemplate jdbc;
+    private VehicleRegistry vehicles;
+    private ApplicationCheckoutService service;
+
+    @BeforeEach
+    void setUp() {
+        jdbc = mock(JdbcTemplate.class);
+        AgentAssignmentService agents = mock(AgentAssignmentService.class);
+        when(agents.ensureAgentAssignedToUser(7L)).thenReturn(3L);
+        vehicles = mock(VehicleRegistry.class);
+        service = new ApplicationCheckoutService(jdbc, agents, vehicles);
+    }
+
+    private static ResultSet row(Map<String, Object> values) throws SQLException {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getObject(anyString())).thenAnswer(invocation -> values.get(invocation.<String>getArgument(0)));
+        when(rs.getLong(anyString())).thenAnswer(invocation -> ((Number) values.get(invocation.<String>getArgument(0))).longValue());
+        when(rs.getInt(anyString())).thenAnswer(invocation -> ((Number) values.get(invocation.<String>getArgument(0))).intValue());
+        when(rs.getBoolean(anyString())).thenAnswer(invocation -> values.get(invocation.<String>getArgument(0)));
+        when(rs.getBigDecimal(anyString())).thenAnswer(invocation -> values.get(invocation.<String>getArgument(0)));
+        when(rs.getString(anyString())).thenAnswer(invocation -> values.get(invocation.<String>getArgument(0)));
+        return rs;
+    }
+
+    private void stubCalc() {
+        when(jdbc.query(contains("with calc as"), any(RowMapper.class), any(Object[].class))).thenAnswer(invocation ->
+                List.of(invocation.<RowMapper<?>>getArgument(1).mapRow(row(Map.of(
+                        "id", 55L,
+                        "vehicle_category_id", 1L,
+                        "region_id", 10L,
+                        "power_hp", 120,
+                        "unlimited_drivers", true,
+                        "term_months", 12,
+                        "result_amount", new BigDecimal("34201.44"),
+                        "tariff_version_id", 1L
+                )), 0))
+        );
+    }
+
+    private OsagoController.CreateApplicationRequest request() {
+        return new OsagoController.CreateApplicationRequest(
+                55L,
+                new OsagoController.VehicleDto("Audi", " A4 ", null, "A123BC196"),
+                new OsagoController.InsuredPersonDto(
+                        LocalDate.of(1990, 1, 1), "1234", "567890", LocalDate.of(2015, 1, 1), "UFMS", "Ekaterinburg"
+                ),
+                new OsagoController.DriverInfoDto("1234567890", LocalDate.of(2012, 1, 1)),
+                LocalDate.now().plusDays(1),
+                true,
+                true
+        );
+    }
+
+    @Test
+    void shouldCreateApplicationWithPolicyNumberFromSingleStatement() {
+        stubCalc();
+        when(vehicles.register(eq(7L), any())).thenReturn(900L);
+        when(jdbc.queryForObject(contains("with profile as"), any(RowMapper.class), any(Object[].class))).thenAnswer(invocation ->
+                invocation.<RowMapper<?>>getArgument(1).mapRow(row(Map.of(
+                        "application_id", 11L,
+                        "policy_id", 22L,
+                        "policy_number", "EEE 000000022"
+                )), 0)
+        );
+
+        var response = service.createApplication(7L, request());
+
+        assertEquals(new OsagoController.CreateApplicationResponse(11L, 22L, "EEE 000000022", "NEW", new BigDecimal("34201.44")), response);
+        verify(jdbc, times(1)).query(anyString(), any(RowMapper.class), any(Object[].class));
+        verify(jdbc, times(1)).queryForObject(anyString(), any(RowMapper.class), any(Object[].class));
+        verify(jdbc, never()).update(anyString(), any(Object[].class));
+    }
+
+    @Test
+    void shouldCopyAnonymousCalculationForBuyerInsteadOfClaimingIt() {
+        stubCalc();
+        when(vehicles.register(eq(7L), any())).thenReturn(900L);
+        when(jdbc.queryForObject(contains("with profile as"), any(RowMapper.class), any(Object[].class))).thenReturn(
+                new OsagoController.CreateApplicationResponse(11L, 22L, "EEE 000000022", "NEW", new BigDecimal("34201.44"))
+        );
+
+        service.createApplication(7L, request());
+
+        verify(jdbc).query(
+                argThat(sql -> sql.contains("insert into insurance.osago_calc_requests")
+                        && sql.contains("where c.user_id is null")
+                        && !sql.contains("update insurance.osago_calc_requests")),
+                any(RowMapper.class),
+                eq(55L),
+                eq(7L),
+                eq(7L)
+        );
+    }
+
+    @Test
+    void shouldRejectUnknownCalculationBeforeAnyWrite() {
+        when(jdbc.query(contains("with calc as"), any(RowMapper.class), any(Object[].class))).thenReturn(List.of());
+
+        var ex = assertThrows(ResponseStatusException.class, () -> service.createApplication(7L, request()));
+
+        assertEquals(400, ex.getStatusCode().value());
+        verify(jdbc, never()).queryForObject(anyString(), any(RowMapper.class), any(Object[].class));
+    }
+
+    @Test
+    void shouldRejectVehicleOwnedByAnotherUser() {
+        stubCalc();
+        when(vehicles.register(eq(7L), any())).thenThrow(new IllegalArgumentException("owned by another user"));
+
+        assertThrows(IllegalArgumentException.class, () -> service.createApplication(7L, request()));
+        verify(jdbc, never()).queryForObject(contains("with profile as"), any(RowMapper.class), any(Object[].class));
+    }
+}
@@ -0,0 +1,103 @@
+package vkr.osago.osago;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import vkr.osago.common.SchemaCapabilities;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CalcRequestRetentionJobFunctionalTests {
+
+    private JdbcTemplate jdbc;
+    private SchemaCapabilities schema;
+    private CalcRequestRetentionJob job;
+
+    @BeforeEach
+    void setUp() {
+        jdbc = mock(JdbcTemplate.class);
+        schema = mock(SchemaCapabilities.class);
+        when(schema.hasTable("osago_calc_requests_default")).thenReturn(true);
+        job = new CalcRequestRetentionJob(jdbc, schema, mock(PlatformTransactionManager.class), true, 6, 3);
+    }
+
+    @Test
+    void shouldSelectOnlyMonthlyPartitionsOlderThanCutoff() {
+        var expired = CalcRequestRetentionJob.expiredPartitions(List.of(
+                "osago_calc_requests_default",
+                "osago_calc_requests_p202603",
+                "osago_calc_requests_p202604",
+                "osago_calc_requests_p202511",
+                "osago_calc_requests_p2026"
+        ), YearMonth.of(2026, 4));
+
+        assertEquals(List.of("osago_calc_requests_p202603", "osago_calc_requests_p202511"), expired);
+    }
+
+    @Test
+    void shouldStageRetainedRowsBeforeDetachAndDrop() {
+        when(jdbc.queryForList(anyString(), eq(String.class)))
+                .thenReturn(List.of("osago_calc_requests_p202603", "osago_calc_requests_p202610"));
+        when(jdbc.queryForObject(contains("pg_try_advisory_xact_lock"), eq(Boolean.class))).thenReturn(true);
+
+        var dropped = job.run(LocalDate.of(2026, 10, 17));
+
+        assertEquals(List.of("osago_calc_requests_p202603"), dropped);
+        verify(jdbc).queryForObject(contains("ensure_osago_calc_request_partitions"), eq(Integer.class), any(), eq(3));
+        var order = inOrder(jdbc);
+        order.verify(jdbc).execute("lock table insurance.osago_calc_requests_p202603 in share mode");
+        order.verify(jdbc).execute(contains("from insurance.osago_calc_requests_p202603 c"));
+        order.verify(jdbc).execute("alter table insurance.osago_calc_requests detach partition insurance.osago_calc_requests_p202603");
+        order.verify(jdbc).update(contains("from osago_calc_requests_retained"));
+        order.verify(jdbc).execute("drop table insurance.osago_calc_requests_p202603");
+        verify(jdbc, never()).execute(contains("p202610"));
+    }
+
+    @Test
+    void shouldSkipWhenAnotherNodeHoldsTheLock() {
+        when(jdbc.queryForList(anyString(), eq(String.class))).thenReturn(List.of("osago_calc_requests_p202001"));
+        when(jdbc.queryForObject(contains("pg_try_advisory_xact_lock"), eq(Boolean.class))).thenReturn(false);
+
+        assertEquals(List.of(), job.run(LocalDate.of(2026, 10, 17)));
+        verify(jdbc, never()).execute(anyString());
+    }
+
+    @Test
+    void shouldRecordFailedRunsInStats() {
+        when(jdbc.queryForObject(contains("ensure_osago_calc_request_partitions"), eq(Integer.class), any(), any()))
+                .thenThrow(new DataIntegrityViolationException("updated partition constraint for default partition would be violated"));
+
+        assertDoesNotThrow(job::scheduledRun);
+
+        var stats = job.stats();
+        assertEquals(1, stats.failures());
+        assertNotNull(stats.lastRunAt());
+        assertNull(stats.lastSuccessAt());
+        assertTrue(stats.lastError().contains("default partition"));
+
+        reset(jdbc);
+        job.scheduledRun();
+        assertEquals(1, job.stats().failures());
+        assertNull(job.stats().lastError());
+        assertNotNull(job.stats().lastSuccessAt());
+    }
+
+    @Test
+    void shouldDoNothingOnUnpartitionedSchema() {
+        when(schema.hasTable("osago_calc_requests_default")).thenReturn(false);
+
+        assertEquals(List.of(), job.run(LocalDate.of(2026, 10, 17)));
+        verifyNoInteractions(jdbc);
+    }
+}
@@ -0,0 +1,154 @@
+package vkr.osago.osago;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import vkr.osago.common.SchemaCapabilities;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class CalcRequestWriterFunctionalTests {
+
+    private JdbcTemplate jdbc;
+    private SchemaCapabilities schema;
+    private final AtomicLong sequence = new AtomicLong();
+
+    @BeforeEach
+    void setUp() {
+        jdbc = mock(JdbcTemplate.class);
+        schema = mock(SchemaCapabilities.class);
+        when(schema.hasColumn("osago_calc_requests", "kbm_class_code")).thenReturn(true);
+        when(jdbc.queryForList(anyString(), eq(Long.class), anyInt())).thenAnswer(invocation -> {
+            int count = invocation.getArgument(2);
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                ids.add(sequence.incrementAndGet());
+            }
+            return ids;
+        });
+    }
+
+    private CalcRequestWriter writer(String mode, int batchSize) {
+        return writer(mode, 100, batchSize);
+    }
+
+    private CalcRequestWriter writer(String mode, int queueCapacity, int batchSize) {
+        return new CalcRequestWriter(jdbc, schema, mode, 10, queueCapacity, batchSize, 50);
+    }
+
+    private QuoteService.Quote quote() {
+        var request = new OsagoController.CalcRequest(1L, 10L, 120, true, 12, null, null, "3");
+        BigDecimal one = new BigDecimal("1.0000");
+        return new QuoteService.Quote(
+                request, 1L, new BigDecimal("5000.00"), one, one, one, one, one, "3", one, null, null, new BigDecimal("5000.00")
+        );
+    }
+
+    @Test
+    void shouldAllocateIdsInBlocks() {
+        var writer = writer("sync", 500);
+
+        assertEquals(List.of(1L, 2L, 3L), writer.write(null, List.of(quote(), quote(), quote())));
+        assertEquals(List.of(4L), writer.write(null, List.of(quote())));
+        verify(jdbc, times(1)).queryForList(anyString(), eq(Long.class), eq(10));
+        verify(jdbc, times(2)).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void shouldBufferUntilFlushInWriteBehindMode() {
+        var writer = writer("write-behind", 2);
+
+        List<Long> ids = writer.write(7L, List.of(quote(), quote(), quote()));
+        assertEquals(3, writer.pendingCount());
+        verify(jdbc, never()).batchUpdate(anyString(), anyList());
+
+        writer.flushIfPending(999L);
+        verify(jdbc, never()).batchUpdate(anyString(), anyList());
+
+        writer.flushIfPending(ids.get(2));
+        assertEquals(0, writer.pendingCount());
+        verify(jdbc, times(2)).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void shouldPersistRecordBeforeFlushIfPendingReturnsWhileWriterRuns() {
+        var writer = writer("write-behind", 500);
+        writer.start();
+        try {
+            for (int i = 0; i < 200; i++) {
+                Long id = writer.write(7L, List.of(quote())).get(0);
+                writer.flushIfPending(id);
+                assertEquals(0, writer.pendingCount(), "record " + id + " still pending");
+            }
+        } finally {
+            writer.shutdown();
+        }
+    }
+
+    @Test
+    void shouldKeepRecordsPendingWhenFlushFails() {
+        var writer = writer("write-behind", 500);
+        writer.write(null, List.of(quote()));
+        when(jdbc.batchUpdate(anyString(), anyList()))
+                .thenThrow(new DataAccessResourceFailureException("down"))
+                .thenReturn(new int[]{1});
+
+        assertThrows(DataAccessResourceFailureException.class, writer::flush);
+        assertEquals(1, writer.pendingCount());
+
+        writer.shutdown();
+        assertEquals(0, writer.pendingCount());
+    }
+
+    @Test
+    void shouldStopDrainingWhileFailedChunkIsRetried() {
+        var writer = writer("write-behind", 2, 2);
+        writer.write(7L, List.of(quote(), quote()));
+        when(jdbc.batchUpdate(anyString(), anyList())).thenThrow(new DataAccessResourceFailureException("down"));
+        assertThrows(DataAccessResourceFailureException.class, writer::flush);
+
+        writer.write(7L, List.of(quote(), quote()));
+        assertThrows(DataAccessResourceFailureException.class, writer::flush);
+        assertEquals(2, writer.stats().retrying());
+
+        // The queue is full again because nothing was drained, so new quotes are inserted synchronously.
+        assertThrows(DataAccessResourceFailureException.class, () -> writer.write(7L, List.of(quote())));
+        assertEquals(2, writer.stats().retrying());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void shouldDropOnlyRecordsThatCanNeverBeInserted() {
+        var writer = writer("write-behind", 500);
+        List<Long> ids = writer.write(7L, List.of(quote(), quote(), quote()));
+        when(jdbc.batchUpdate(anyString(), anyList())).thenAnswer(invocation -> {
+            List<Object[]> args = invocation.getArgument(1);
+            if (args.stream().anyMatch(row -> ids.get(1).equals(row[0]))) {
+                throw new DataIntegrityViolationException("fk_osago_calc_requests_user");
+            }
+            return new int[args.size()];
+        });
+
+        writer.flush();
+
+        assertEquals(new CalcRequestWriter.Stats(0, 0, 2, 1), writer.stats());
+        verify(jdbc, times(4)).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void shouldRejectUnknownWriteMode() {
+        assertThrows(IllegalArgumentException.class, () -> writer("eventually", 10));
+    }
+}
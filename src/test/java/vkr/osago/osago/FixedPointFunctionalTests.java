@@ -0,0 +1,78 @@
+package vkr.osago.osago;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FixedPointFunctionalTests {
+
+    private static BigDecimal randomDecimal(Random random, long maxUnscaled, int maxScale) {
+        int scale = random.nextInt(maxScale + 1);
+        long unscaled = 1 + (long) (random.nextDouble() * maxUnscaled);
+        return BigDecimal.valueOf(unscaled, scale);
+    }
+
+    @Test
+    void shouldMatchBigDecimalHalfUpForRandomTariffs() {
+        Random random = new Random(20260301L);
+        for (int i = 0; i < 50_000; i++) {
+            BigDecimal base = randomDecimal(random, 2_000_000L, 2);
+            int count = 1 + random.nextInt(6);
+            BigDecimal[] coefficients = new BigDecimal[count];
+            for (int c = 0; c < count; c++) {
+                coefficients[c] = randomDecimal(random, 60_000L, 4);
+            }
+
+            BigDecimal expected = FixedPoint.premiumExact(base, coefficients);
+            BigDecimal actual = FixedPoint.premium(base, coefficients);
+            assertEquals(expected, actual, () -> "base=" + base + " coefficients=" + Arrays.toString(coefficients));
+        }
+    }
+
+    @Test
+    void shouldRoundExactHalvesUp() {
+        assertEquals(new BigDecimal("0.01"), FixedPoint.premium(new BigDecimal("0.01"), new BigDecimal("0.5000")));
+        assertEquals(new BigDecimal("0.00"), FixedPoint.premium(new BigDecimal("0.01"), new BigDecimal("0.4999")));
+        assertEquals(new BigDecimal("1.13"), FixedPoint.premium(new BigDecimal("1.00"), new BigDecimal("1.125")));
+        assertEquals(new BigDecimal("-1.13"), FixedPoint.premium(new BigDecimal("-1.00"), new BigDecimal("1.125")));
+        assertEquals(5_850L, FixedPoint.premiumCents(5_000L, 11_700L, FixedPoint.ONE, FixedPoint.ONE, FixedPoint.ONE, FixedPoint.ONE, FixedPoint.ONE));
+    }
+
+    @Test
+    void shouldFallBackToBigDecimalOnOverflow() {
+        long cents = FixedPoint.premiumCents(
+                Long.MAX_VALUE / 10, 19_999L, 19_999L, 19_999L, 19_999L, 19_999L, 19_999L
+        );
+        assertEquals(FixedPoint.NOT_REPRESENTABLE, cents);
+        assertEquals(FixedPoint.NOT_REPRESENTABLE, FixedPoint.premiumCents(
+                1L, FixedPoint.ONE, FixedPoint.NOT_REPRESENTABLE, FixedPoint.ONE, FixedPoint.ONE, FixedPoint.ONE, FixedPoint.ONE
+        ));
+        assertEquals(FixedPoint.NOT_REPRESENTABLE, FixedPoint.premiumCents(
+                1L, FixedPoint.ONE, FixedPoint.ONE, FixedPoint.ONE, FixedPoint.ONE, FixedPoint.ONE, FixedPoint.MISSING
+        ));
+
+        BigDecimal base = new BigDecimal("92233720368547758.07");
+        BigDecimal coefficient = new BigDecimal("1.9999");
+        assertEquals(
+                FixedPoint.premiumExact(base, coefficient, coefficient, coefficient),
+                FixedPoint.premium(base, coefficient, coefficient, coefficient)
+        );
+        assertEquals(
+                FixedPoint.premiumExact(new BigDecimal("5000.00"), new BigDecimal("1.00001")),
+                FixedPoint.premium(new BigDecimal("5000.00"), new BigDecimal("1.00001"))
+        );
+    }
+
+    @Test
+    void shouldConvertOnlyExactlyRepresentableValues() {
+        assertEquals(11_700L, FixedPoint.scaled(new BigDecimal("1.17"), FixedPoint.COEFFICIENT_SCALE));
+        assertEquals(500_000L, FixedPoint.scaled(new BigDecimal("5000.00"), FixedPoint.AMOUNT_SCALE));
+        assertEquals(FixedPoint.NOT_REPRESENTABLE, FixedPoint.scaled(new BigDecimal("1.00001"), FixedPoint.COEFFICIENT_SCALE));
+        assertEquals(FixedPoint.NOT_REPRESENTABLE, FixedPoint.scaled(new BigDecimal("1E+20"), FixedPoint.AMOUNT_SCALE));
+        assertEquals(FixedPoint.NOT_REPRESENTABLE, FixedPoint.scaled(null, FixedPoint.AMOUNT_SCALE));
+    }
+}
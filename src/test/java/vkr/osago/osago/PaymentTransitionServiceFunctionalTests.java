@@ -0,0 +1,143 @@
+package vkr.osago.osago;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.web.server.ResponseStatusException;
+import vkr.osago.policies.UnpaidApplicationSweeper;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class PaymentTransitionServiceFunctionalTests {
+
+    private JdbcTemplate jdbc;
+    private PaymentTransitionService service;
+
+    @BeforeEach
+    void setUp() {
+        jdbc = mock(JdbcTemplate.class);
+        UnpaidApplicationSweeper sweeper = mock(UnpaidApplicationSweeper.class);
+        when(sweeper.expiredPredicate("pa")).thenReturn("(false)");
+        service = new PaymentTransitionService(jdbc, sweeper);
+    }
+
+    private void stubOutcome(String marker, String status, Long targetPaymentId, long applications, long policies, Long paymentId) {
+        when(jdbc.query(contains(marker), any(RowMapper.class), any(Object[].class))).thenAnswer(invocation -> {
+            if (status == null) {
+                return List.of();
+            }
+            Map<String, Object> values = new HashMap<>();
+            values.put("target_payment_id", targetPaymentId);
+            values.put("payment_id", paymentId);
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getString("application_status")).thenReturn(status);
+            when(rs.getObject(anyString())).thenAnswer(call -> values.get(call.<String>getArgument(0)));
+            when(rs.getLong("applications")).thenReturn(applications);
+            when(rs.getLong("policies")).thenReturn(policies);
+            when(rs.getBigDecimal("amount")).thenReturn(paymentId == null ? null : new BigDecimal("34201.44"));
+            return List.of(invocation.<RowMapper<?>>getArgument(1).mapRow(rs, 0));
+        });
+    }
+
+    private void stubConfirm(String status, Long targetPaymentId, long applications, long policies, Long paymentId) {
+        stubOutcome("left join lateral", status, targetPaymentId, applications, policies, paymentId);
+    }
+
+    private void stubStart(String status, long applications, long policies, Long paymentId) {
+        stubOutcome("insert into insurance.payments", status, null, applications, policies, paymentId);
+    }
+
+    @Test
+    void shouldGuardTransitionsWithWorkflowStatuses() {
+        assertEquals("'APPROVED', 'PAYMENT_PENDING'", PaymentTransitionService.sqlList(PaymentWorkflow.PAYABLE_APP_STATUSES));
+        assertEquals("'NEW', 'PENDING'", PaymentTransitionService.sqlList(PaymentWorkflow.OPEN_PAYMENT_STATUSES));
+        assertEquals("'DRAFT', 'PENDING_PAY'", PaymentTransitionService.sqlList(PaymentWorkflow.UNPAID_POLICY_STATUSES));
+    }
+
+    @Test
+    void shouldConfirmPaymentInSingleStatement() {
+        stubConfirm("PAYMENT_PENDING", 31L, 1, 1, 31L);
+
+        var response = service.confirm(7L, 5L);
+
+        assertEquals(new OsagoController.PayConfirmResponse(31L, "SUCCESS", "ACTIVE"), response);
+        verify(jdbc, times(1)).query(anyString(), any(RowMapper.class), any(Object[].class));
+        verify(jdbc, never()).update(anyString(), any(Object[].class));
+    }
+
+    @Test
+    void shouldReportLostConfirmRaceAsConflict() {
+        stubConfirm("PAYMENT_PENDING", 31L, 0, 0, null);
+
+        assertThrows(IllegalStateException.class, () -> service.confirm(7L, 5L));
+    }
+
+    @Test
+    void shouldRollBackWhenPaymentChangedConcurrently() {
+        stubConfirm("PAYMENT_PENDING", 31L, 1, 1, null);
+
+        assertThrows(IllegalStateException.class, () -> service.confirm(7L, 5L));
+    }
+
+    @Test
+    void shouldRejectConfirmOutsidePendingState() {
+        stubConfirm("PAID", 31L, 0, 0, null);
+
+        assertThrows(IllegalStateException.class, () -> service.confirm(7L, 5L));
+    }
+
+    @Test
+    void shouldRejectConfirmWithoutPayment() {
+        stubConfirm("APPROVED", null, 0, 0, null);
+
+        var ex = assertThrows(ResponseStatusException.class, () -> service.confirm(7L, 5L));
+        assertEquals(400, ex.getStatusCode().value());
+    }
+
+    @Test
+    void shouldReportUnknownApplicationAsNotFound() {
+        stubConfirm(null, null, 0, 0, null);
+
+        var ex = assertThrows(ResponseStatusException.class, () -> service.confirm(7L, 5L));
+        assertEquals(404, ex.getStatusCode().value());
+    }
+
+    @Test
+    void shouldStartPaymentInSingleStatement() {
+        stubStart("approved", 1, 1, 41L);
+
+        var started = service.start(7L, 5L, new OsagoController.PayRequest(" card ", null));
+
+        assertEquals(41L, started.paymentId());
+        assertEquals("NEW", started.status());
+        assertEquals(new BigDecimal("34201.44"), started.amount());
+        assertEquals(36, started.externalId().length());
+        verify(jdbc).query(anyString(), any(RowMapper.class), eq(5L), eq(7L), eq("PAYMENT_PENDING"), eq("PENDING_PAY"), eq("NEW"), eq("card"), anyString());
+    }
+
+    @Test
+    void shouldRejectStartBeforeAgentApproval() {
+        stubStart("NEW", 0, 0, null);
+
+        assertThrows(IllegalStateException.class, () -> service.start(7L, 5L, new OsagoController.PayRequest("card", null)));
+    }
+
+    @Test
+    void shouldReportLostStartRaceAsConflict() {
+        stubStart("APPROVED", 0, 0, null);
+
+        assertThrows(IllegalStateException.class, () -> service.start(7L, 5L, new OsagoController.PayRequest("card", null)));
+    }
+}
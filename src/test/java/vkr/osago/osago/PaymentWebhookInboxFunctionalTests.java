@@ -0,0 +1,136 @@
+package vkr.osago.osago;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.CannotCreateTransactionException;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class PaymentWebhookInboxFunctionalTests {
+
+    private JdbcTemplate jdbc;
+    private PaymentWebhookInbox inbox;
+
+    @BeforeEach
+    void setUp() {
+        jdbc = mock(JdbcTemplate.class);
+        inbox = new PaymentWebhookInbox(jdbc, mock(PlatformTransactionManager.class), false, 1, 10, 10);
+    }
+
+    private static Map<String, Object> event(long id, String outcome, Long paymentId, String paymentStatus, String applicationStatus) {
+        Map<String, Object> values = new HashMap<>();
+        values.put("id", id);
+        values.put("outcome", outcome);
+        values.put("payment_id", paymentId);
+        values.put("payment_status", paymentStatus);
+        values.put("application_status", applicationStatus);
+        return values;
+    }
+
+    @SafeVarargs
+    private void stubClaim(Map<String, Object>... events) {
+        when(jdbc.query(contains("for update of i skip locked"), any(RowMapper.class), any(Object[].class))).thenAnswer(invocation -> {
+            List<Object> rows = new ArrayList<>();
+            for (Map<String, Object> values : events) {
+                ResultSet rs = mock(ResultSet.class);
+                when(rs.getLong("id")).thenReturn((Long) values.get("id"));
+                when(rs.getString(anyString())).thenAnswer(call -> values.get(call.<String>getArgument(0)));
+                when(rs.getObject(anyString())).thenAnswer(call -> values.get(call.<String>getArgument(0)));
+                rows.add(invocation.<RowMapper<?>>getArgument(1).mapRow(rs, rows.size()));
+            }
+            return rows;
+        });
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Object[]> batch(String marker) {
+        ArgumentCaptor<List<Object[]>> captor = ArgumentCaptor.forClass(List.class);
+        verify(jdbc).batchUpdate(contains(marker), captor.capture());
+        return captor.getValue();
+    }
+
+    @Test
+    void shouldStoreWebhookOnceAndIgnoreRedelivery() {
+        when(jdbc.update(contains("on conflict"), any(Object[].class))).thenReturn(1, 0);
+
+        assertTrue(inbox.receive("simulator", "ext-1", PaymentWorkflow.PaymentStatus.SUCCESS, "{}"));
+        assertFalse(inbox.receive("simulator", "ext-1", PaymentWorkflow.PaymentStatus.SUCCESS, "{}"));
+        assertEquals(1, inbox.stats().received());
+        assertThrows(IllegalArgumentException.class,
+                () -> inbox.receive("simulator", "ext-1", PaymentWorkflow.PaymentStatus.NEW, "{}"));
+    }
+
+    @Test
+    void shouldApplyBatchThroughPaymentWorkflow() {
+        stubClaim(
+                event(1, "SUCCESS", 31L, "NEW", "PAYMENT_PENDING"),
+                event(2, "FAILED", 32L, "NEW", "payment_pending"),
+                event(3, "SUCCESS", 33L, "SUCCESS", "PAID"),
+                event(4, "SUCCESS", null, null, null),
+                event(5, "SUCCESS", 35L, "NEW", "REJECTED")
+        );
+        when(jdbc.batchUpdate(contains("for update of pay, pol, pa"), anyList())).thenReturn(new int[]{1, 0});
+
+        assertEquals(5, inbox.drainBatch());
+
+        List<Object[]> applied = batch("for update of pay, pol, pa");
+        assertEquals(2, applied.size());
+        assertEquals(List.of(31L, "PAYMENT_PENDING", "SUCCESS", "ACTIVE", "Оплата полиса успешна", "Полис активирован. Статус: ACTIVE.", true, "PAID"),
+                Arrays.asList(applied.get(0)));
+        assertEquals(Arrays.asList(32L, "PAYMENT_PENDING", "FAIL", "DRAFT", null, null, false, "APPROVED"),
+                Arrays.asList(applied.get(1)));
+
+        Map<Object, Object> marks = new HashMap<>();
+        for (Object[] mark : batch("update insurance.payment_webhook_inbox")) {
+            marks.put(mark[2], mark[0]);
+        }
+        assertEquals(Map.of(1L, "PROCESSED", 2L, "REJECTED", 3L, "PROCESSED", 4L, "REJECTED", 5L, "REJECTED"), marks);
+        assertEquals(new PaymentWebhookInbox.Stats(0, 2, 3), inbox.stats());
+    }
+
+    @Test
+    void shouldSkipWritesWhenInboxIsEmpty() {
+        stubClaim();
+
+        assertEquals(0, inbox.drainBatch());
+        verify(jdbc, never()).batchUpdate(anyString(), anyList());
+    }
+
+    @Test
+    void shouldKeepWorkersAliveWhenTransactionCannotBeCreated() {
+        PlatformTransactionManager transactions = mock(PlatformTransactionManager.class);
+        when(transactions.getTransaction(any())).thenThrow(new CannotCreateTransactionException("pool exhausted"));
+        PaymentWebhookInbox running = new PaymentWebhookInbox(jdbc, transactions, true, 1, 10, 10);
+
+        running.start();
+        try {
+            verify(transactions, timeout(2_000).atLeast(3)).getTransaction(any());
+        } finally {
+            running.stop();
+        }
+    }
+
+    @Test
+    void shouldMapFailedStatusToDatabaseLabel() {
+        assertEquals("FAIL", PaymentWebhookInbox.toDb(PaymentWorkflow.PaymentStatus.FAILED));
+        assertEquals(PaymentWorkflow.PaymentStatus.FAILED, PaymentWebhookInbox.fromDb("FAIL"));
+        assertEquals(PaymentWorkflow.PaymentStatus.NEW, PaymentWebhookInbox.fromDb("NEW"));
+    }
+}
@@ -0,0 +1,250 @@
+package vkr.osago.osago;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class QuoteServiceFunctionalTests {
+
+    private TariffSnapshotService snapshots;
+    private CalcRequestWriter writer;
+    private QuoteResultCache cache;
+    private final AtomicLong clock = new AtomicLong();
+    private QuoteService service;
+
+    @BeforeEach
+    void setUp() {
+        var version = new TariffSnapshot.TariffVersion(
+                1L,
+                LocalDate.of(2020, 1, 1),
+                null,
+                Map.of(1L, new BigDecimal("5000.00")),
+                Map.of(10L, new BigDecimal("1.8000")),
+                List.of(
+                        new TariffSnapshot.PowerBand(1, 100, new BigDecimal("1.1000")),
+                        new TariffSnapshot.PowerBand(101, null, new BigDecimal("1.4000"))
+                ),
+                Map.of(12, new BigDecimal("1.0000"), 6, new BigDecimal("0.7000")),
+                new BigDecimal("1.0000"),
+                new BigDecimal("2.3200"),
+                List.of(),
+                Map.of("3", new BigDecimal("1.1700"), "4", new BigDecimal("1.0000"))
+        );
+        var snapshot = new TariffSnapshot(
+                List.of(version), Set.of(1L), Set.of(10L), Set.of(6, 12), true, false, OffsetDateTime.now()
+        );
+        snapshots = mock(TariffSnapshotService.class);
+        when(snapshots.current()).thenReturn(snapshot);
+
+        writer = mock(CalcRequestWriter.class);
+        AtomicLong sequence = new AtomicLong(99L);
+        when(writer.write(any(), anyList())).thenAnswer(invocation -> {
+            List<?> quotes = invocation.getArgument(1);
+            List<Long> ids = new ArrayList<>();
+            for (int i = 0; i < quotes.size(); i++) {
+                ids.add(sequence.incrementAndGet());
+            }
+            return ids;
+        });
+
+        cache = new QuoteResultCache(2, 60, clock::get);
+        service = new QuoteService(snapshots, writer, cache, 3);
+    }
+
+    private OsagoController.CalcRequest request(Integer powerHp, int termMonths, String kbmClass) {
+        return new OsagoController.CalcRequest(1L, 10L, powerHp, true, termMonths, null, null, kbmClass);
+    }
+
+    @Test
+    void shouldPriceSingleQuote() {
+        var response = service.quote(7L, request(120, 12, "4"));
+
+        assertEquals(100L, response.calcRequestId());
+        assertEquals(1L, response.tariffVersionId());
+        assertEquals(new BigDecimal("29232.00"), response.resultAmount());
+    }
+
+    @Test
+    void shouldPriceBatchWithSingleInsertAndPerItemErrors() {
+        var items = service.quoteBatch(7L, List.of(
+                request(120, 12, "3"),
+                request(null, 12, "3"),
+                request(90, 6, "4")
+        ));
+
+        assertEquals(3, items.size());
+        assertEquals(100L, items.get(0).result().calcRequestId());
+        assertEquals(new BigDecimal("34201.44"), items.get(0).result().resultAmount());
+        assertNull(items.get(1).result());
+        assertEquals("powerHp must be in range 1..2000", items.get(1).error());
+        assertEquals(101L, items.get(2).result().calcRequestId());
+        assertEquals(new BigDecimal("16077.60"), items.get(2).result().resultAmount());
+        verify(writer, times(1)).write(eq(7L), argThat(quotes -> quotes.size() == 2));
+    }
+
+    @Test
+    void shouldSkipInsertWhenNothingPriced() {
+        var items = service.quoteBatch(7L, List.of(request(120, 3, "3")));
+
+        assertEquals("termMonths is invalid", items.get(0).error());
+        verifyNoInteractions(writer);
+    }
+
+    @Test
+    void shouldReuseCachedResultForRepeatedQuote() {
+        var first = service.quote(7L, request(120, 12, " 3 "));
+        var second = service.quote(7L, request(120, 12, "3"));
+
+        assertEquals(first, second);
+        verify(writer, times(1)).write(any(), anyList());
+        assertEquals(1, cache.stats().hits());
+        assertEquals(1, cache.stats().misses());
+
+        service.quote(8L, request(120, 12, "3"));
+        service.quote(null, request(120, 12, "3"));
+        verify(writer, times(3)).write(any(), anyList());
+    }
+
+    @Test
+    void shouldExpireAndBoundCachedResults() {
+        service.quote(7L, request(120, 12, "3"));
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(61));
+        service.quote(7L, request(120, 12, "3"));
+        verify(writer, times(2)).write(any(), anyList());
+        assertEquals(1, cache.stats().evictions());
+
+        service.quote(7L, request(90, 12, "3"));
+        service.quote(7L, request(90, 6, "3"));
+        assertEquals(2, cache.stats().size());
+        assertEquals(2, cache.stats().evictions());
+
+        cache.evictCalcRequest(102L);
+        assertEquals(1, cache.stats().size());
+    }
+
+    @Test
+    void shouldInsertDuplicateBatchItemsOnce() {
+        service.quote(7L, request(90, 6, "4"));
+
+        var items = service.quoteBatch(7L, List.of(
+                request(120, 12, "3"),
+                request(120, 12, "3"),
+                request(90, 6, "4")
+        ));
+
+        assertEquals(items.get(0).result(), items.get(1).result());
+        assertEquals(100L, items.get(2).result().calcRequestId());
+        verify(writer, times(2)).write(eq(7L), argThat(quotes -> quotes.size() == 1));
+    }
+
+    @Test
+    void shouldShareCachedCalcRequestsBetweenAnonymousCallers() {
+        var first = service.quote(null, request(120, 12, "3"));
+        var second = service.quote(null, request(120, 12, "3"));
+        var owned = service.quote(7L, request(120, 12, "3"));
+
+        assertEquals(first, second);
+        assertNotEquals(first.calcRequestId(), owned.calcRequestId());
+        assertEquals(1, cache.stats().hits());
+        verify(writer, times(1)).write(isNull(), anyList());
+        verify(writer, times(1)).write(eq(7L), anyList());
+    }
+
+    @Test
+    void shouldFallBackToExactArithmeticForCoefficientsBeyondFourDecimals() {
+        var version = new TariffSnapshot.TariffVersion(
+                2L,
+                LocalDate.of(2020, 1, 1),
+                null,
+                Map.of(1L, new BigDecimal("5000.00")),
+                Map.of(10L, new BigDecimal("1.80005")),
+                List.of(new TariffSnapshot.PowerBand(1, null, new BigDecimal("1.1000"))),
+                Map.of(12, new BigDecimal("1.0000")),
+                new BigDecimal("1.0000"),
+                new BigDecimal("2.3200"),
+                List.of(),
+                Map.of("3", new BigDecimal("1.1700"))
+        );
+        when(snapshots.current()).thenReturn(new TariffSnapshot(
+                List.of(version), Set.of(1L), Set.of(10L), Set.of(12), true, false, OffsetDateTime.now()
+        ));
+
+        var response = service.quote(7L, request(120, 12, "3"));
+        var cell = service.matrix(1L, 10L, 120, null, null).cells().get(0);
+
+        BigDecimal expected = FixedPoint.premiumExact(
+                new BigDecimal("5000.00"), new BigDecimal("1.80005"), new BigDecimal("1.1000"),
+                new BigDecimal("2.3200"), new BigDecimal("1.1700")
+        );
+        assertEquals(expected, response.resultAmount());
+        assertEquals(expected, cell.resultAmount());
+    }
+
+    @Test
+    void shouldBuildMatrixMatchingSingleQuotes() {
+        LocalDate birth = LocalDate.now().minusYears(30);
+        LocalDate license = LocalDate.now().minusYears(5);
+
+        var matrix = service.matrix(1L, 10L, 120, birth, license);
+
+        assertEquals(List.of(6, 12), matrix.termMonths());
+        assertEquals(List.of("3", "4"), matrix.kbmClassCodes());
+        assertEquals(8, matrix.cells().size());
+        for (var cell : matrix.cells()) {
+            var single = service.price(
+                    new OsagoController.CalcRequest(
+                            1L, 10L, 120, cell.unlimitedDrivers(), cell.termMonths(),
+                            cell.unlimitedDrivers() ? null : birth,
+                            cell.unlimitedDrivers() ? null : license,
+                            cell.kbmClassCode()
+                    ),
+                    snapshots.current(),
+                    LocalDate.now(),
+                    new HashMap<>()
+            );
+            assertEquals(single.resultAmount(), cell.resultAmount(), cell::toString);
+        }
+        verifyNoInteractions(writer);
+    }
+
+    @Test
+    void shouldBuildUnlimitedOnlyMatrixWithoutDriverDates() {
+        var matrix = service.matrix(1L, 10L, 120, null, null);
+
+        assertEquals(4, matrix.cells().size());
+        assertTrue(matrix.cells().stream().allMatch(OsagoController.CalcMatrixCell::unlimitedDrivers));
+        assertEquals(new BigDecimal("34201.44"), matrix.cells().stream()
+                .filter(cell -> cell.termMonths() == 12 && cell.kbmClassCode().equals("3"))
+                .findFirst().orElseThrow().resultAmount());
+        assertThrows(IllegalArgumentException.class, () -> service.matrix(1L, 10L, 120, LocalDate.now().minusYears(30), null));
+        assertThrows(IllegalArgumentException.class, () -> service.matrix(1L, 99L, 120, null, null));
+    }
+
+    @Test
+    void shouldRejectEmptyOrOversizedBatch() {
+        assertThrows(IllegalArgumentException.class, () -> service.quoteBatch(null, List.of()));
+        List<OsagoController.CalcRequest> tooMany = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            tooMany.add(request(120, 12, "3"));
+        }
+        assertThrows(IllegalArgumentException.class, () -> service.quoteBatch(null, tooMany));
+    }
+}
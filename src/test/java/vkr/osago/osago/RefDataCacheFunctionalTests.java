@@ -0,0 +1,80 @@
+package vkr.osago.osago;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+import tools.jackson.databind.json.JsonMapper;
+import vkr.osago.common.SchemaCapabilities;
+
+import java.lang.reflect.Constructor;
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+class RefDataCacheFunctionalTests {
+
+    private final RefDataCache cache = new RefDataCache(
+            mock(JdbcTemplate.class),
+            mock(SchemaCapabilities.class),
+            JsonMapper.builder().build()
+    );
+
+    private OsagoController.RefDataResponse response(String regionName) {
+        return new OsagoController.RefDataResponse(
+                List.of(new OsagoController.RefVehicleCategoryDto(1L, "B", "Легковые")),
+                List.of(new OsagoController.RefRegionDto(10L, "77", regionName)),
+                List.of(new OsagoController.RefTermDto(12, "12 месяцев")),
+                List.of(new OsagoController.RefKbmClassDto("3", new BigDecimal("1.1700")))
+        );
+    }
+
+    // Every other collaborator is a plain Mockito mock, so new controller dependencies need no change here.
+    private static OsagoController controller(RefDataCache refDataCache, long maxAgeSeconds) throws Exception {
+        Constructor<?> constructor = OsagoController.class.getConstructors()[0];
+        Object[] args = Arrays.stream(constructor.getParameterTypes())
+                .map(type -> type == RefDataCache.class ? refDataCache : type == long.class ? maxAgeSeconds : mock(type))
+                .toArray();
+        return (OsagoController) constructor.newInstance(args);
+    }
+
+    @Test
+    void shouldDeriveVersionFromContent() {
+        var first = cache.serialize(response("Москва"));
+        var same = cache.serialize(response("Москва"));
+        var changed = cache.serialize(response("Санкт-Петербург"));
+
+        assertEquals(first.version(), same.version());
+        assertNotEquals(first.version(), changed.version());
+        assertEquals("\"" + first.version() + "\"", first.etag());
+    }
+
+    @Test
+    void shouldAnswerNotModifiedForMatchingEtag() throws Exception {
+        var cached = cache.serialize(response("Москва"));
+        RefDataCache refDataCache = mock(RefDataCache.class);
+        when(refDataCache.current()).thenReturn(cached);
+        MockMvc mockMvc = MockMvcBuilders.standaloneSetup(controller(refDataCache, 3600)).build();
+
+        mockMvc.perform(get("/api/osago/ref-data"))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", cached.etag()))
+                .andExpect(header().string("Cache-Control", "max-age=3600, must-revalidate, public"))
+                .andExpect(content().bytes(cached.body()));
+
+        mockMvc.perform(get("/api/osago/ref-data").header("If-None-Match", cached.etag()))
+                .andExpect(status().isNotModified())
+                .andExpect(header().string("ETag", cached.etag()))
+                .andExpect(content().bytes(new byte[0]));
+
+        mockMvc.perform(get("/api/osago/ref-data").header("If-None-Match", "\"stale\""))
+                .andExpect(status().isOk());
+    }
+}
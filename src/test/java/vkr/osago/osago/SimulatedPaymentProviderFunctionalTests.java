@@ -0,0 +1,65 @@
+package vkr.osago.osago;
+
+import org.junit.jupiter.api.Test;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.math.BigDecimal;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class SimulatedPaymentProviderFunctionalTests {
+
+    private final PaymentTransitionService.StartedPayment payment =
+            new PaymentTransitionService.StartedPayment(41L, "ext-41", new BigDecimal("34201.44"), "NEW");
+
+    private SimulatedPaymentProvider provider(PaymentWebhookInbox inbox, ScheduledExecutorService scheduler, double randomValue) {
+        return new SimulatedPaymentProvider(inbox, JsonMapper.builder().build(), 200, 1200, 0.1, scheduler, () -> randomValue);
+    }
+
+    @Test
+    void shouldDeliverSuccessWebhookAfterSimulatedLatency() {
+        PaymentWebhookInbox inbox = mock(PaymentWebhookInbox.class);
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        when(scheduler.schedule(any(Runnable.class), anyLong(), any())).thenAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        });
+
+        String url = provider(inbox, scheduler, 0.5).checkout(payment, null);
+
+        assertEquals("/cabinet/client/index.html", url);
+        verify(scheduler).schedule(any(Runnable.class), eq(700L), eq(TimeUnit.MILLISECONDS));
+        verify(inbox).receive(eq("simulator"), eq("ext-41"), eq(PaymentWorkflow.PaymentStatus.SUCCESS), contains("\"externalId\":\"ext-41\""));
+    }
+
+    @Test
+    void shouldDeliverFailuresAtConfiguredRate() {
+        PaymentWebhookInbox inbox = mock(PaymentWebhookInbox.class);
+        ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+        when(scheduler.schedule(any(Runnable.class), anyLong(), any())).thenAnswer(invocation -> {
+            invocation.<Runnable>getArgument(0).run();
+            return null;
+        });
+
+        provider(inbox, scheduler, 0.05).checkout(payment, "/back");
+
+        verify(inbox).receive(eq("simulator"), eq("ext-41"), eq(PaymentWorkflow.PaymentStatus.FAILED), anyString());
+        verify(scheduler).schedule(any(Runnable.class), eq(250L), eq(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void shouldRejectInvalidConfiguration() {
+        assertThrows(IllegalArgumentException.class, () -> new SimulatedPaymentProvider(
+                null, null, 500, 100, 0.1, mock(ScheduledExecutorService.class), () -> 0.0));
+        assertThrows(IllegalArgumentException.class, () -> new SimulatedPaymentProvider(
+                null, null, 0, 100, 1.5, mock(ScheduledExecutorService.class), () -> 0.0));
+    }
+}
@@ -0,0 +1,124 @@
+package vkr.osago.osago;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TariffIntervalIndexFunctionalTests {
+
+    private static TariffSnapshot.PowerBand band(int from, Integer to, String coefficient) {
+        return new TariffSnapshot.PowerBand(from, to, new BigDecimal(coefficient));
+    }
+
+    private static TariffSnapshot.KvsCell cell(int ageFrom, Integer ageTo, int expFrom, Integer expTo, String coefficient) {
+        return new TariffSnapshot.KvsCell(ageFrom, ageTo, expFrom, expTo, new BigDecimal(coefficient));
+    }
+
+    @Test
+    void shouldResolvePowerBandsByBinarySearch() {
+        var index = new PowerBandIndex(List.of(
+                band(151, null, "1.6000"),
+                band(1, 50, "0.6000"),
+                band(101, 120, "1.2000"),
+                band(51, 70, "1.0000"),
+                band(121, 150, "1.4000"),
+                band(71, 100, "1.1000")
+        ));
+
+        assertNull(index.coefficient(0));
+        assertEquals(new BigDecimal("0.6000"), index.coefficient(1));
+        assertEquals(new BigDecimal("0.6000"), index.coefficient(50));
+        assertEquals(new BigDecimal("1.0000"), index.coefficient(51));
+        assertEquals(new BigDecimal("1.1000"), index.coefficient(100));
+        assertEquals(new BigDecimal("1.4000"), index.coefficient(150));
+        assertEquals(new BigDecimal("1.6000"), index.coefficient(2000));
+        assertEquals(16_000L, index.scaledCoefficient(151));
+        assertEquals(FixedPoint.MISSING, index.scaledCoefficient(-5));
+    }
+
+    @Test
+    void shouldRejectPowerBandGapsAndOverlaps() {
+        var gap = assertThrows(IllegalArgumentException.class, () -> new PowerBandIndex(List.of(
+                band(1, 50, "1.0000"),
+                band(52, null, "1.2000")
+        )));
+        assertEquals("Power bands have a gap at 51 hp", gap.getMessage());
+
+        var overlap = assertThrows(IllegalArgumentException.class, () -> new PowerBandIndex(List.of(
+                band(1, 70, "1.0000"),
+                band(60, null, "1.2000")
+        )));
+        assertEquals("Power bands overlap at 60 hp", overlap.getMessage());
+
+        assertThrows(IllegalArgumentException.class, () -> new PowerBandIndex(List.of(
+                band(1, null, "1.0000"),
+                band(100, null, "1.2000")
+        )));
+        assertNull(new PowerBandIndex(List.of()).coefficient(100));
+    }
+
+    @Test
+    void shouldResolveKvsFromDenseGrid() {
+        var grid = new KvsGrid(List.of(
+                cell(0, 21, 0, 1, "2.2700"),
+                cell(0, 21, 2, null, "1.9200"),
+                cell(22, 29, 0, 1, "1.8800"),
+                cell(22, 29, 2, null, "1.7200"),
+                cell(30, null, 0, 1, "1.6300"),
+                cell(30, null, 2, null, "1.0000")
+        ));
+
+        assertEquals(new BigDecimal("2.2700"), grid.coefficient(18, 0));
+        assertEquals(new BigDecimal("1.9200"), grid.coefficient(21, 2));
+        assertEquals(new BigDecimal("1.8800"), grid.coefficient(22, 1));
+        assertEquals(new BigDecimal("1.7200"), grid.coefficient(29, 7));
+        assertEquals(new BigDecimal("1.6300"), grid.coefficient(30, 0));
+        assertEquals(new BigDecimal("1.0000"), grid.coefficient(95, 70));
+        assertEquals(17_200L, grid.scaledCoefficient(25, 5));
+        assertEquals(FixedPoint.MISSING, grid.scaledCoefficient(-1, 0));
+        assertNull(grid.coefficient(-1, 0));
+    }
+
+    @Test
+    void shouldRejectKvsGapsAndOverlaps() {
+        var gap = assertThrows(IllegalArgumentException.class, () -> new KvsGrid(List.of(
+                cell(0, 21, 0, null, "2.0000"),
+                cell(30, null, 0, null, "1.0000")
+        )));
+        assertEquals("KVS grid has a gap at age 22, experience 0", gap.getMessage());
+
+        var overlap = assertThrows(IllegalArgumentException.class, () -> new KvsGrid(List.of(
+                cell(0, null, 0, null, "1.0000"),
+                cell(22, 29, 2, 5, "1.5000")
+        )));
+        assertEquals("KVS cells overlap at age 22, experience 2", overlap.getMessage());
+
+        var bounded = new KvsGrid(List.of(cell(18, 65, 0, 40, "1.1000")));
+        assertNull(bounded.coefficient(17, 5));
+        assertNull(bounded.coefficient(66, 5));
+        assertEquals(new BigDecimal("1.1000"), bounded.coefficient(65, 40));
+        assertNull(new KvsGrid(List.of()).coefficient(30, 5));
+    }
+
+    @Test
+    void shouldRejectTariffVersionWithHoles() {
+        assertThrows(IllegalArgumentException.class, () -> new TariffSnapshot.TariffVersion(
+                1L,
+                LocalDate.of(2026, 1, 1),
+                null,
+                Map.of(1L, new BigDecimal("5000.00")),
+                Map.of(10L, new BigDecimal("1.0000")),
+                List.of(band(1, 50, "1.0000"), band(60, null, "1.2000")),
+                Map.of(12, new BigDecimal("1.0000")),
+                new BigDecimal("1.0000"),
+                new BigDecimal("2.3200"),
+                List.of(),
+                Map.of()
+        ));
+    }
+}
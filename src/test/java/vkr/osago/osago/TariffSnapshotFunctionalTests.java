@@ -0,0 +1,118 @@
+package vkr.osago.osago;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.OffsetDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TariffSnapshotFunctionalTests {
+
+    private static final LocalDate TODAY = LocalDate.of(2026, 3, 1);
+
+    private TariffSnapshot.TariffVersion version(long id, LocalDate validFrom, LocalDate validTo, BigDecimal baseRate) {
+        return new TariffSnapshot.TariffVersion(
+                id,
+                validFrom,
+                validTo,
+                Map.of(1L, baseRate),
+                Map.of(10L, new BigDecimal("1.8000")),
+                List.of(
+                        new TariffSnapshot.PowerBand(1, 70, new BigDecimal("1.0000")),
+                        new TariffSnapshot.PowerBand(71, 150, new BigDecimal("1.4000")),
+                        new TariffSnapshot.PowerBand(151, null, new BigDecimal("1.6000"))
+                ),
+                Map.of(12, new BigDecimal("1.0000"), 6, new BigDecimal("0.7000")),
+                new BigDecimal("1.0000"),
+                new BigDecimal("2.3200"),
+                List.of(
+                        new TariffSnapshot.KvsCell(0, 21, 0, 1, new BigDecimal("2.2700")),
+                        new TariffSnapshot.KvsCell(0, 21, 2, null, new BigDecimal("1.9200")),
+                        new TariffSnapshot.KvsCell(22, null, 0, null, new BigDecimal("1.0000"))
+                ),
+                Map.of("m", new BigDecimal("3.9200"), "3", new BigDecimal("1.1700"))
+        );
+    }
+
+    private TariffSnapshot snapshot(List<TariffSnapshot.TariffVersion> versions) {
+        return new TariffSnapshot(versions, Set.of(1L), Set.of(10L), Set.of(6, 12), true, true, OffsetDateTime.now());
+    }
+
+    @Test
+    void shouldPickLatestValidVersion() {
+        var older = version(1L, LocalDate.of(2025, 1, 1), null, new BigDecimal("4000.00"));
+        var newer = version(2L, LocalDate.of(2026, 1, 1), null, new BigDecimal("5000.00"));
+        var future = version(3L, LocalDate.of(2027, 1, 1), null, new BigDecimal("6000.00"));
+        var snapshot = snapshot(List.of(older, future, newer));
+
+        var found = snapshot.findTariff(TODAY, 1L, 10L, 120, 12, "3");
+        assertNotNull(found);
+        assertEquals(2L, found.id());
+        assertEquals(3L, snapshot.findTariff(LocalDate.of(2027, 2, 1), 1L, 10L, 120, 12, "3").id());
+    }
+
+    @Test
+    void shouldSkipVersionsMissingRequestedCoefficients() {
+        var expired = version(5L, LocalDate.of(2026, 2, 1), LocalDate.of(2026, 2, 28), new BigDecimal("7000.00"));
+        var current = version(4L, LocalDate.of(2026, 1, 1), null, new BigDecimal("5000.00"));
+        var snapshot = snapshot(List.of(expired, current));
+
+        assertEquals(4L, snapshot.findTariff(TODAY, 1L, 10L, 120, 12, "3").id());
+        assertNull(snapshot.findTariff(TODAY, 2L, 10L, 120, 12, "3"));
+        assertNull(snapshot.findTariff(TODAY, 1L, 99L, 120, 12, "3"));
+        assertNull(snapshot.findTariff(TODAY, 1L, 10L, 120, 3, "3"));
+        assertNull(snapshot.findTariff(TODAY, 1L, 10L, 120, 12, "13"));
+    }
+
+    @Test
+    void shouldResolveBandsAndClasses() {
+        var tariff = version(1L, LocalDate.of(2026, 1, 1), null, new BigDecimal("5000.00"));
+
+        assertEquals(new BigDecimal("1.0000"), tariff.powerCoefficient(70));
+        assertEquals(new BigDecimal("1.4000"), tariff.powerCoefficient(71));
+        assertEquals(new BigDecimal("1.6000"), tariff.powerCoefficient(2000));
+        assertNull(tariff.powerCoefficient(0));
+
+        assertEquals(new BigDecimal("2.2700"), tariff.kvsCoefficient(19, 1));
+        assertEquals(new BigDecimal("1.9200"), tariff.kvsCoefficient(21, 3));
+        assertEquals(new BigDecimal("1.0000"), tariff.kvsCoefficient(40, 20));
+
+        assertEquals(new BigDecimal("3.9200"), tariff.kbmCoefficient("M"));
+        assertEquals(new BigDecimal("2.3200"), tariff.driversCoefficient(true));
+        assertEquals(new BigDecimal("1.0000"), tariff.driversCoefficient(false));
+    }
+
+    @Test
+    void shouldPreScaleCoefficientsForFixedPointPricing() {
+        var tariff = version(1L, LocalDate.of(2026, 1, 1), null, new BigDecimal("5000.005"));
+
+        assertEquals(FixedPoint.NOT_REPRESENTABLE, tariff.baseRateCents(1L));
+        assertEquals(18_000L, tariff.regionCoefficientScaled(10L));
+        assertEquals(14_000L, tariff.powerCoefficientScaled(120));
+        assertEquals(7_000L, tariff.termCoefficientScaled(6));
+        assertEquals(23_200L, tariff.driversCoefficientScaled(true));
+        assertEquals(19_200L, tariff.kvsCoefficientScaled(21, 3));
+        assertEquals(39_200L, tariff.kbmCoefficientScaled("m"));
+        assertEquals(FixedPoint.MISSING, tariff.regionCoefficientScaled(99L));
+        assertEquals(FixedPoint.MISSING, tariff.powerCoefficientScaled(0));
+        assertEquals(FixedPoint.MISSING, tariff.kbmCoefficientScaled("13"));
+    }
+
+    @Test
+    void shouldExposeActiveReferenceData() {
+        var snapshot = snapshot(List.of());
+
+        assertTrue(snapshot.isActiveCategory(1L));
+        assertFalse(snapshot.isActiveCategory(2L));
+        assertTrue(snapshot.isActiveRegion(10L));
+        assertFalse(snapshot.isActiveRegion(null));
+        assertTrue(snapshot.isActiveTerm(6));
+        assertFalse(snapshot.isActiveTerm(3));
+        assertNull(snapshot.findTariff(TODAY, 1L, 10L, 120, 12, "3"));
+    }
+}
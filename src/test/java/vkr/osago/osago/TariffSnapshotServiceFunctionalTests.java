@@ -0,0 +1,100 @@
+package vkr.osago.osago;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.transaction.PlatformTransactionManager;
+import vkr.osago.common.SchemaCapabilities;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.Mockito.*;
+
+class TariffSnapshotServiceFunctionalTests {
+
+    private final JdbcTemplate jdbc = mock(JdbcTemplate.class);
+    private final TariffSnapshotService service = new TariffSnapshotService(
+            jdbc, mock(SchemaCapabilities.class), mock(PlatformTransactionManager.class)
+    );
+    private final List<ResultSet> versions = new ArrayList<>();
+    private final List<ResultSet> powerBands = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        stubRows("select id, valid_from, valid_to", versions);
+        stubRows("from insurance.osago_power_coefficients", powerBands);
+    }
+
+    private void stubRows(String fragment, List<ResultSet> rows) {
+        doAnswer(invocation -> {
+            RowCallbackHandler handler = invocation.getArgument(1);
+            for (ResultSet rs : List.copyOf(rows)) {
+                handler.processRow(rs);
+            }
+            return null;
+        }).when(jdbc).query(contains(fragment), any(RowCallbackHandler.class));
+    }
+
+    private void version(long id, LocalDate validFrom) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong("id")).thenReturn(id);
+        when(rs.getObject("valid_from", LocalDate.class)).thenReturn(validFrom);
+        versions.add(rs);
+    }
+
+    private void powerBand(long versionId, int hpFrom, Integer hpTo) throws Exception {
+        ResultSet rs = mock(ResultSet.class);
+        when(rs.getLong("tariff_version_id")).thenReturn(versionId);
+        when(rs.getInt("hp_from")).thenReturn(hpFrom);
+        when(rs.getObject("hp_to")).thenReturn(hpTo);
+        when(rs.getBigDecimal("coefficient")).thenReturn(new BigDecimal("1.4000"));
+        powerBands.add(rs);
+    }
+
+    @Test
+    void shouldReportRejectedOlderVersionAndKeepServingNewest() throws Exception {
+        version(1L, LocalDate.of(2025, 1, 1));
+        powerBand(1L, 1, 100);
+        powerBand(1L, 90, null);
+        version(2L, LocalDate.of(2026, 1, 1));
+        powerBand(2L, 1, 100);
+        powerBand(2L, 101, null);
+
+        TariffSnapshot snapshot = service.refresh();
+
+        assertEquals(List.of(2L), snapshot.versions().stream().map(TariffSnapshot.TariffVersion::id).toList());
+        TariffSnapshotService.Stats stats = service.stats();
+        assertEquals(List.of(2L), stats.versionIds());
+        assertTrue(stats.rejectedVersions().get(1L).contains("overlap"));
+        assertEquals(0, stats.failedRefreshes());
+    }
+
+    @Test
+    void shouldKeepPreviousSnapshotWhenNewestVersionIsRejected() throws Exception {
+        version(1L, LocalDate.of(2025, 1, 1));
+        powerBand(1L, 1, null);
+        TariffSnapshot previous = service.refresh();
+
+        version(2L, LocalDate.of(2026, 1, 1));
+        powerBand(2L, 1, 100);
+        powerBand(2L, 120, null);
+
+        IllegalStateException ex = assertThrows(IllegalStateException.class, service::refresh);
+        assertTrue(ex.getMessage().contains("gap"));
+        assertDoesNotThrow(service::scheduledRefresh);
+
+        assertSame(previous, service.current());
+        TariffSnapshotService.Stats stats = service.stats();
+        assertEquals(List.of(1L), stats.versionIds());
+        assertEquals(2, stats.failedRefreshes());
+        assertTrue(stats.lastRefreshError().contains("Newest tariff version 2"));
+    }
+}
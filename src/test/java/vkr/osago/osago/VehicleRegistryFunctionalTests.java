@@ -0,0 +1,136 @@
+package vkr.osago.osago;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+
+import java.sql.ResultSet;
+import java.util.ArrayDeque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.*;
+
+class VehicleRegistryFunctionalTests {
+
+    private JdbcTemplate jdbc;
+
+    @BeforeEach
+    void setUp() {
+        jdbc = mock(JdbcTemplate.class);
+    }
+
+    private void stubUpsert(Long id, Long ownerUserId) {
+        when(jdbc.queryForObject(contains("on conflict do nothing"), any(RowMapper.class), any(Object[].class))).thenAnswer(invocation -> {
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getObject("id")).thenReturn(id);
+            when(rs.getObject("owner_user_id")).thenReturn(ownerUserId);
+            return invocation.<RowMapper<?>>getArgument(1).mapRow(rs, 0);
+        });
+    }
+
+    private static OsagoController.VehicleDto vehicle(String model, String vin, String regNumber) {
+        return new OsagoController.VehicleDto("Audi", model, vin, regNumber);
+    }
+
+    @Test
+    void shouldNormalizeIdentifiers() {
+        assertEquals("WAUZZZ8K9BA123456", VehicleRegistry.normalizeVin(" wauzzz-8k9 ba123456 "));
+        assertEquals("А123ВС196", VehicleRegistry.normalizeRegNumber("а 123 вс 196"));
+        assertNull(VehicleRegistry.normalizeVin("  "));
+        assertNull(VehicleRegistry.normalizeRegNumber(null));
+    }
+
+    @Test
+    void shouldUpsertWithNormalizedKeysInSingleStatement() {
+        stubUpsert(900L, null);
+        var registry = new VehicleRegistry(jdbc, 100);
+
+        assertEquals(900L, registry.register(7L, vehicle(" A4 ", null, "a123bc 196")));
+        verify(jdbc).queryForObject(
+                anyString(),
+                any(RowMapper.class),
+                eq(7L), eq("Audi"), eq("A4"), isNull(), eq("A123BC196"),
+                isNull(), eq("A123BC196"), isNull(),
+                eq("Audi"), eq("A4"), isNull(), eq("A123BC196"),
+                eq(7L)
+        );
+        verify(jdbc, never()).update(anyString(), any(Object[].class));
+    }
+
+    @Test
+    void shouldServeRepeatRenewalFromCache() {
+        stubUpsert(900L, 7L);
+        var registry = new VehicleRegistry(jdbc, 100);
+
+        assertEquals(900L, registry.register(7L, vehicle("A4", null, "A123BC196")));
+        assertEquals(900L, registry.register(7L, vehicle("A4", null, "a123bc196")));
+        assertEquals(900L, registry.register(7L, vehicle("A6", null, "A123BC196")));
+
+        verify(jdbc, times(2)).queryForObject(anyString(), any(RowMapper.class), any(Object[].class));
+        assertEquals(new VehicleRegistry.Stats(1, 2, 1, 100), registry.stats());
+    }
+
+    @Test
+    void shouldKeepCacheBoundedAndScopedByOwner() {
+        stubUpsert(900L, null);
+        var registry = new VehicleRegistry(jdbc, 1);
+
+        registry.register(7L, vehicle("A4", null, "A123BC196"));
+        registry.register(8L, vehicle("A4", null, "B456CA196"));
+        registry.register(7L, vehicle("A4", null, "A123BC196"));
+
+        verify(jdbc, times(3)).queryForObject(anyString(), any(RowMapper.class), any(Object[].class));
+        assertEquals(1, registry.stats().size());
+    }
+
+    @Test
+    void shouldRejectVehicleOwnedByAnotherUser() {
+        stubUpsert(null, 99L);
+        var registry = new VehicleRegistry(jdbc, 100);
+
+        assertThrows(IllegalArgumentException.class, () -> registry.register(7L, vehicle("A4", "WAUZZZ8K9BA123456", null)));
+        assertEquals(0, registry.stats().size());
+    }
+
+    @Test
+    void shouldRetryOnceWhenConcurrentInsertIsNotYetVisible() {
+        var rows = new ArrayDeque<Long[]>(List.of(new Long[]{null, null}, new Long[]{900L, 7L}));
+        when(jdbc.queryForObject(contains("on conflict do nothing"), any(RowMapper.class), any(Object[].class))).thenAnswer(invocation -> {
+            Long[] row = rows.poll();
+            ResultSet rs = mock(ResultSet.class);
+            when(rs.getObject("id")).thenReturn(row[0]);
+            when(rs.getObject("owner_user_id")).thenReturn(row[1]);
+            return invocation.<RowMapper<?>>getArgument(1).mapRow(rs, 0);
+        });
+        var registry = new VehicleRegistry(jdbc, 100);
+
+        assertEquals(900L, registry.register(7L, vehicle("A4", "WAUZZZ8K9BA123456", null)));
+        verify(jdbc, times(2)).queryForObject(anyString(), any(RowMapper.class), any(Object[].class));
+    }
+
+    @Test
+    void shouldGiveUpWhenVehicleStaysInvisibleAfterRetry() {
+        stubUpsert(null, null);
+        var registry = new VehicleRegistry(jdbc, 100);
+
+        assertThrows(IllegalStateException.class, () -> registry.register(7L, vehicle("A4", "WAUZZZ8K9BA123456", null)));
+        verify(jdbc, times(2)).queryForObject(anyString(), any(RowMapper.class), any(Object[].class));
+    }
+
+    @Test
+    void shouldReportConflictingIdentifiers() {
+        when(jdbc.queryForObject(anyString(), any(RowMapper.class), any(Object[].class)))
+                .thenThrow(new DuplicateKeyException("uq_vehicle_reg"));
+        var registry = new VehicleRegistry(jdbc, 100);
+
+        assertThrows(IllegalStateException.class, () -> registry.register(7L, vehicle("A4", "WAUZZZ8K9BA123456", "A123BC196")));
+    }
+}
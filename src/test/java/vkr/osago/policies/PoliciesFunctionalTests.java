@@ -5,6 +5,7 @@ import org.mockito.ArgumentMatchers;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.security.core.userdetails.User;
+import org.springframework.transaction.PlatformTransactionManager;
 import vkr.osago.user.UserEntity;
 import vkr.osago.user.UserRepository;
 import vkr.osago.user.UserStatus;
@@ -119,15 +120,6 @@ class PoliciesFunctionalTests {
 
         when(users.findByEmail("client@test.local")).thenReturn(Optional.of(user));
 
-        Object staleRef = createStaleAppRef(111L, 222L);
-        @SuppressWarnings("unchecked")
-        List<ClientPoliciesController.PolicyDto> staleList = (List<ClientPoliciesController.PolicyDto>) (List<?>) List.of(staleRef);
-        when(jdbcTemplate.query(
-                argThat(sql -> sql != null && sql.contains("from insurance.policy_applications")),
-                ArgumentMatchers.<RowMapper<ClientPoliciesController.PolicyDto>>any(),
-                eq(10L)
-        )).thenReturn(staleList);
-
         var policy = new ClientPoliciesController.PolicyDto(
                 1L,
                 "EEE 000000001",
@@ -143,28 +135,20 @@ class PoliciesFunctionalTests {
         );
 
         when(jdbcTemplate.query(
-                argThat(sql -> sql != null && sql.contains("from insurance.policies")),
+                argThat(sql -> sql != null && sql.contains("from insurance.policies p")
+                        && sql.contains("not exists")),
                 ArgumentMatchers.<RowMapper<ClientPoliciesController.PolicyDto>>any(),
                 eq(10L)
         )).thenReturn(List.of(policy));
 
-        ClientPoliciesController controller = new ClientPoliciesController(jdbcTemplate, users);
+        ClientPoliciesController controller = new ClientPoliciesController(jdbcTemplate, users, sweeper());
         var principal = new User("client@test.local", "x", List.of());
         var result = controller.myPolicies(principal);
 
         assertEquals(1, result.size());
         assertEquals("EEE 000000001", result.get(0).number());
 
-        verify(jdbcTemplate, atLeastOnce()).update(
-                startsWith("delete from insurance.policy_applications"),
-                eq(111L),
-                eq(10L)
-        );
-        verify(jdbcTemplate, atLeastOnce()).update(
-                contains("delete from insurance.policies"),
-                eq(222L),
-                eq(10L)
-        );
+        verify(jdbcTemplate, never()).update(anyString(), any(Object[].class));
     }
 
     @Test
@@ -212,7 +196,7 @@ class PoliciesFunctionalTests {
                 eq(5L)
         )).thenReturn(List.of(detail));
 
-        ClientPoliciesController controller = new ClientPoliciesController(jdbcTemplate, users);
+        ClientPoliciesController controller = new ClientPoliciesController(jdbcTemplate, users, sweeper());
         var principal = new User("client@test.local", "x", List.of());
 
         var result = controller.policyById(principal, 7L);
@@ -273,7 +257,7 @@ class PoliciesFunctionalTests {
                 eq(5L)
         )).thenReturn(List.of(detail));
 
-        ClientPoliciesController controller = new ClientPoliciesController(jdbcTemplate, users);
+        ClientPoliciesController controller = new ClientPoliciesController(jdbcTemplate, users, sweeper());
         var principal = new User("client@test.local", "x", List.of());
         var response = controller.policyPdf(principal, 7L);
 
@@ -283,14 +267,7 @@ class PoliciesFunctionalTests {
         assertTrue(response.getHeaders().getContentType().toString().contains("application/pdf"));
     }
 
-    private Object createStaleAppRef(Long applicationId, Long policyId) {
-        try {
-            Class<?> refClass = Class.forName("vkr.osago.policies.ClientPoliciesController$StaleAppRef");
-            var ctor = refClass.getDeclaredConstructor(Long.class, Long.class);
-            ctor.setAccessible(true);
-            return ctor.newInstance(applicationId, policyId);
-        } catch (Exception ex) {
-            throw new IllegalStateException(ex);
-        }
+    private UnpaidApplicationSweeper sweeper() {
+        return new UnpaidApplicationSweeper(mock(JdbcTemplate.class), mock(PlatformTransactionManager.class), true, 24, 500);
     }
 }
@@ -0,0 +1,63 @@
+package vkr.osago.policies;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.contains;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class UnpaidApplicationSweeperFunctionalTests {
+
+    private JdbcTemplate jdbc;
+    private UnpaidApplicationSweeper sweeper;
+
+    @BeforeEach
+    void setUp() {
+        jdbc = mock(JdbcTemplate.class);
+        sweeper = new UnpaidApplicationSweeper(jdbc, mock(PlatformTransactionManager.class), true, 24, 2);
+    }
+
+    @Test
+    void shouldDeleteInBoundedBatchesUntilShortBatch() {
+        when(jdbc.queryForObject(contains("pg_try_advisory_xact_lock"), eq(Boolean.class))).thenReturn(true);
+        when(jdbc.queryForObject(contains("with stale as"), any(RowMapper.class), eq(2)))
+                .thenReturn(new UnpaidApplicationSweeper.SweepResult(2, 2))
+                .thenReturn(new UnpaidApplicationSweeper.SweepResult(1, 0));
+
+        var result = sweeper.sweep();
+
+        assertEquals(new UnpaidApplicationSweeper.SweepResult(3, 2), result);
+        verify(jdbc, times(2)).queryForObject(contains("for update of pa skip locked"), any(RowMapper.class), eq(2));
+        var stats = sweeper.stats();
+        assertEquals(1, stats.runs());
+        assertEquals(3, stats.deletedApplications());
+        assertEquals(2, stats.deletedPolicies());
+        assertNotNull(stats.lastRunAt());
+    }
+
+    @Test
+    void shouldSkipWhenAnotherNodeHoldsTheLock() {
+        when(jdbc.queryForObject(contains("pg_try_advisory_xact_lock"), eq(Boolean.class))).thenReturn(false);
+
+        assertEquals(new UnpaidApplicationSweeper.SweepResult(0, 0), sweeper.sweep());
+        assertEquals(1, sweeper.stats().skippedRuns());
+        verify(jdbc, never()).queryForObject(anyString(), any(RowMapper.class), any(Object[].class));
+    }
+
+    @Test
+    void shouldExposeExpiryPredicateForReadFilters() {
+        String predicate = sweeper.expiredPredicate("x");
+
+        assertTrue(predicate.contains("upper(x.status) in ('APPROVED', 'PAYMENT_PENDING')"));
+        assertTrue(predicate.contains("x.updated_at < now() - interval '24 hours'"));
+        assertThrows(IllegalArgumentException.class,
+                () -> new UnpaidApplicationSweeper(jdbc, mock(PlatformTransactionManager.class), true, 0, 10));
+    }
+}